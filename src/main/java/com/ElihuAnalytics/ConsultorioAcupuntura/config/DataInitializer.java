@@ -1,8 +1,11 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.config;
 
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.HorarioSemanal;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Medico;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.HorarioSemanalRepository;
 import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.UsuarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.CalendarioLaboral;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.UsuarioAdminService;
 import jakarta.transaction.Transactional;
 import org.springframework.boot.CommandLineRunner;
@@ -13,11 +16,17 @@ public class DataInitializer implements CommandLineRunner {
 
     private final UsuarioRepository usuarioRepository;
     private final UsuarioAdminService usuarioAdminService;
+    private final HorarioSemanalRepository horarioSemanalRepository;
+    private final CalendarioLaboral calendarioLaboral;
 
     public DataInitializer(UsuarioRepository usuarioRepository,
-                           UsuarioAdminService usuarioAdminService) {
+                           UsuarioAdminService usuarioAdminService,
+                           HorarioSemanalRepository horarioSemanalRepository,
+                           CalendarioLaboral calendarioLaboral) {
         this.usuarioRepository = usuarioRepository;
         this.usuarioAdminService = usuarioAdminService;
+        this.horarioSemanalRepository = horarioSemanalRepository;
+        this.calendarioLaboral = calendarioLaboral;
     }
 
     @Override
@@ -44,5 +53,12 @@ public class DataInitializer implements CommandLineRunner {
             usuarioAdminService.crearMedico(usernameMedico, passPlano, nombres, apellidos, celular);
             System.out.println("[DataInitializer] Medico creado: " + usernameMedico);
         });
+
+        // Plantilla semanal de atención (editable luego sin redesplegar)
+        if (horarioSemanalRepository.count() == 0) {
+            horarioSemanalRepository.saveAll(HorarioSemanal.predeterminados());
+            calendarioLaboral.recargar();
+            System.out.println("[DataInitializer] Horario semanal predeterminado creado");
+        }
     }
 }
\ No newline at end of file
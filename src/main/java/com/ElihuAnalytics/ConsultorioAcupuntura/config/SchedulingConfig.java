@@ -0,0 +1,15 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Activa las tareas @Scheduled (sesiones realizadas, recordatorios).
+ * Se puede desactivar con app.scheduling.enabled=false (p. ej. en pruebas).
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "app.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -1,6 +1,5 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.config;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -8,17 +7,14 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebStaticResourcesConfig implements WebMvcConfigurer {
 
-    @Value("${app.upload.dir}")
-    private String uploadDir;
-
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Mapear /pacientes-Uploads/ para archivos de pacientes (Railway Volumes o local)
-        registry.addResourceHandler("/pacientes-Uploads/**")
-                .addResourceLocations("file:" + uploadDir);
+        // Los archivos de pacientes (/pacientes-Uploads/, /uploads/) no se mapean aquí: los sirve
+        // FileController, solo con sesión iniciada. Su nombre es el SHA-256 del contenido y, servido
+        // sin sesión, dejaría comprobar si el consultorio guarda un documento dado.
 
         // Mapear /images/ para imágenes estáticas del frontend
         registry.addResourceHandler("/images/**")
                 .addResourceLocations("classpath:/META-INF/resources/images/");
     }
-}
\ No newline at end of file
+}
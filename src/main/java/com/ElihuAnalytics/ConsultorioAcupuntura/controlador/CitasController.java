@@ -0,0 +1,114 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio.AccionCita;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio.TokenApi;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * API REST de acciones sobre una cita, sin sesión de Vaadin: la usan el service worker
+ * ({@code sw.js}) desde los botones de la notificación push y los clientes con token de la API.
+ *
+ * Respuestas: 404 si la cita no existe o el token no la cubre (o no permite esa acción, como el
+ * de la notificación, que solo confirma o cancela), 409 si su estado (o la
+ * disponibilidad, al reprogramar) ya no permite la acción.
+ */
+@RestController
+@RequestMapping("/api/citas")
+public class CitasController {
+
+    private final SesionService sesionService;
+
+    public CitasController(SesionService sesionService) {
+        this.sesionService = sesionService;
+    }
+
+    public record Cita(Long id, LocalDateTime fecha, long duracionMinutos, String motivo, String lugar,
+                       Sesion.EstadoSesion estado) {
+
+        static Cita de(Sesion sesion) {
+            return new Cita(sesion.getId(), sesion.getFecha(),
+                    sesion.getDuracion() != null ? sesion.getDuracion().toMinutes() : 0,
+                    sesion.getMotivo(), sesion.getLugar(), sesion.getEstado());
+        }
+    }
+
+    public record Reprogramacion(LocalDateTime fecha) {
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Cita> consultar(@PathVariable Long id, @AuthenticationPrincipal TokenApi token) {
+        return sesionDelUsuario(id, token, AccionCita.CONSULTAR)
+                .map(sesion -> ResponseEntity.ok(Cita.de(sesion)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/confirmar/{id}")
+    public ResponseEntity<Cita> confirmar(@PathVariable Long id, @AuthenticationPrincipal TokenApi token) {
+        if (sesionDelUsuario(id, token, AccionCita.CONFIRMAR).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return sesionService.confirmarSesion(id)
+                .map(sesion -> ResponseEntity.ok(Cita.de(sesion)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    @PostMapping("/cancelar/{id}")
+    public ResponseEntity<Void> cancelar(@PathVariable Long id, @AuthenticationPrincipal TokenApi token) {
+        Optional<Sesion> sesion = sesionDelUsuario(id, token, AccionCita.CANCELAR);
+        if (sesion.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!esActiva(sesion.get())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        sesionService.cancelarSesion(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/reprogramar/{id}")
+    public ResponseEntity<Cita> reprogramar(@PathVariable Long id, @RequestBody Reprogramacion reprogramacion,
+                                            @AuthenticationPrincipal TokenApi token) {
+        if (reprogramacion.fecha() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<Sesion> sesion = sesionDelUsuario(id, token, AccionCita.REPROGRAMAR);
+        if (sesion.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!esActiva(sesion.get()) || !reprogramacion.fecha().isAfter(LocalDateTime.now())) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return sesionService.reprogramarSesion(id, reprogramacion.fecha(), sesion.get().getDuracion())
+                .map(reprogramada -> ResponseEntity.ok(Cita.de(reprogramada)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    private static boolean esActiva(Sesion sesion) {
+        return sesion.getEstado() == Sesion.EstadoSesion.PROGRAMADA || sesion.getEstado() == Sesion.EstadoSesion.CONFIRMADA;
+    }
+
+    // El paciente solo actúa sobre sus propias citas; el personal, sobre cualquiera.
+    // Un token limitado a una cita no sirve para otra, ni para una acción que no incluye.
+    private Optional<Sesion> sesionDelUsuario(Long sesionId, TokenApi token, AccionCita accion) {
+        if (token == null || !token.permite(accion, sesionId)) {
+            return Optional.empty();
+        }
+        boolean personal = token.rol() == Rol.MEDICO || token.rol() == Rol.ADMINISTRADOR;
+        return sesionService.obtenerSesion(sesionId)
+                .filter(s -> personal || (s.getPaciente() != null && token.usuarioId().equals(s.getPaciente().getId())));
+    }
+}
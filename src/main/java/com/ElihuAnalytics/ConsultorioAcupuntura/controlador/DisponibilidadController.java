@@ -0,0 +1,68 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.DisponibilidadDia;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Consulta de horas libres para agendar, sin sesión de Vaadin.
+ *
+ * Las respuestas llevan un ETag calculado sobre su contenido y {@code Cache-Control: no-cache}:
+ * el cliente vuelve a preguntar con {@code If-None-Match} y, si nada cambió, recibe un 304 sin
+ * cuerpo. El cálculo sale del índice de disponibilidad en memoria, así que la consulta repetida
+ * no toca la base de datos.
+ */
+@RestController
+@RequestMapping("/api/disponibilidad")
+public class DisponibilidadController {
+
+    private static final CacheControl REVALIDAR = CacheControl.noCache().cachePrivate();
+
+    private final SesionService sesionService;
+
+    public DisponibilidadController(SesionService sesionService) {
+        this.sesionService = sesionService;
+    }
+
+    public record Dia(LocalDate fecha, List<LocalTime> horasLibres, int capacidad) {
+
+        static Dia de(DisponibilidadDia dia) {
+            return new Dia(dia.getFecha(), dia.getHorasLibres(), dia.getCapacidad());
+        }
+    }
+
+    @GetMapping("/{fecha}")
+    public ResponseEntity<Dia> dia(@PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fecha) {
+        Dia dia = Dia.de(sesionService.getDisponibilidadMes(YearMonth.from(fecha)).get(fecha));
+        return conEtag(dia, List.of(dia));
+    }
+
+    @GetMapping("/mes/{mes}")
+    public ResponseEntity<List<Dia>> mes(@PathVariable @DateTimeFormat(pattern = "yyyy-MM") YearMonth mes) {
+        List<Dia> dias = sesionService.getDisponibilidadMes(mes).values().stream().map(Dia::de).toList();
+        return conEtag(dias, dias);
+    }
+
+    // Spring responde 304 por su cuenta cuando el If-None-Match coincide con este ETag
+    private static <T> ResponseEntity<T> conEtag(T cuerpo, List<Dia> dias) {
+        StringBuilder huella = new StringBuilder();
+        for (Dia dia : dias) {
+            huella.append(dia.fecha()).append('|').append(dia.capacidad()).append('|').append(dia.horasLibres()).append(';');
+        }
+        String etag = '"' + DigestUtils.md5DigestAsHex(huella.toString().getBytes(StandardCharsets.UTF_8)) + '"';
+        return ResponseEntity.ok().eTag(etag).cacheControl(REVALIDAR).body(cuerpo);
+    }
+}
@@ -1,40 +1,183 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.FileStorageService;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.VersionesImagen;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
-import java.net.MalformedURLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Controlador para servir archivos estáticos desde el directorio de subida.
+ *
+ * Es la única vía por la que salen los archivos de pacientes, tanto con las rutas guardadas
+ * ({@code /pacientes-Uploads/...}) como con {@code /uploads/...}, y exige sesión (SeguridadConfig).
+ * Lo que está en pendientes/ u originales/ no se alcanza: el nombre no puede llevar "/".
+ *
+ * Los adjuntos de la historia clínica (PDF, escaneos) pueden pesar decenas de MB, así que:
+ * - cada respuesta lleva ETag y Last-Modified, y If-None-Match / If-Modified-Since se responden con 304;
+ * - una petición Range de un solo intervalo se responde con 206, para reanudar descargas y para que
+ *   el visor de PDF pida solo las páginas que muestra (varios intervalos: archivo completo, como
+ *   permite el RFC 9110);
+ * - los bytes no pasan por el heap: en Tomcat el archivo se entrega al conector, que lo envía con
+ *   sendfile al terminar la petición; en otro contenedor se copia con {@link FileChannel#transferTo}.
+ *
+ * Con {@code ?w=} una imagen se sirve en la versión más liviana que cubre ese ancho (ver
+ * {@link VersionesImagen}): un avatar de 72 px baja la de 96 px, no la de 1024. Los nombres por
+ * contenido ya procesados se sirven como inmutables; el resto (adjuntos anteriores, una imagen
+ * sin versiones reducidas) se revalida con el ETag.
  */
 @RestController
 public class FileController {
 
-    @Value("${app.upload.dir:/volumes/uploads/}")
-    private String uploadDir;
+    // Atributos de petición con los que Tomcat envía un archivo por sendfile (los mismos que usa su DefaultServlet)
+    private static final String SENDFILE_SOPORTADO = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_ARCHIVO = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_INICIO = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FIN = "org.apache.tomcat.sendfile.end";
 
-    @GetMapping("/uploads/{filename:.+}")
-    public ResponseEntity<Resource> serveFile(@PathVariable String filename) {
+    private final Path uploadDir;
+
+    public FileController(@Value("${app.upload.dir:/volumes/uploads/}") String uploadDir) {
+        this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    @GetMapping({"/uploads/{filename:.+}", "/pacientes-Uploads/{filename:.+}"})
+    public void serveFile(@PathVariable String filename,
+                          @RequestParam(name = "w", required = false) Integer ancho,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String servido = filename;
+        boolean versionPedida = true;
+        if (ancho != null && ancho > 0 && VersionesImagen.esPorContenido(filename) && VersionesImagen.esImagen(filename)) {
+            List<String> candidatas = VersionesImagen.paraAncho(filename, ancho);
+            servido = candidatas.stream()
+                    .filter(nombre -> Files.isRegularFile(uploadDir.resolve(nombre)))
+                    .findFirst()
+                    .orElse(filename);
+            // Si falta la que corresponde (imagen anterior a las versiones) la elección puede cambiar
+            versionPedida = servido.equals(candidatas.get(0));
+        }
+        Path file = uploadDir.resolve(servido).normalize();
+        if (!file.startsWith(uploadDir) || !Files.isRegularFile(file) || !Files.isReadable(file)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        BasicFileAttributes atributos = Files.readAttributes(file, BasicFileAttributes.class);
+        long longitud = atributos.size();
+        long modificado = atributos.lastModifiedTime().toMillis();
+        String etag = etag(atributos);
+
+        // Antes de cualquier escritura: Spring Security solo pone su "no-store" si no hay Cache-Control
+        boolean inmutable = versionPedida && VersionesImagen.esPorContenido(filename)
+                && Files.notExists(uploadDir.resolve(FileStorageService.DIRECTORIO_PENDIENTES).resolve(filename));
+        CacheControl cache = inmutable
+                ? CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable()
+                : CacheControl.noCache().cachePrivate();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cache.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(etag, modificado)) {
+            return; // 304 (o 412 con If-Match), ya con ETag y Last-Modified
+        }
+
+        long inicio = 0;
+        long cantidad = longitud;
+        String rango = request.getHeader(HttpHeaders.RANGE);
+        if (rango != null && rangoVigente(request, etag, modificado)) {
+            List<HttpRange> intervalos;
+            try {
+                intervalos = HttpRange.parseRanges(rango);
+            } catch (IllegalArgumentException e) {
+                intervalos = List.of(); // Range mal formado: se ignora y va el archivo completo
+            }
+            if (intervalos.size() == 1) {
+                inicio = intervalos.get(0).getRangeStart(longitud);
+                if (inicio >= longitud) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + longitud);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                cantidad = intervalos.get(0).getRangeEnd(longitud) - inicio + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + inicio + "-" + (inicio + cantidad - 1) + "/" + longitud);
+            }
+        }
+
+        response.setContentType(MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.inline().filename(filename).build().toString());
+        response.setContentLengthLong(cantidad);
+        if (!"HEAD".equals(request.getMethod()) && cantidad > 0) {
+            enviar(file, inicio, cantidad, request, response);
+        }
+    }
+
+    // Los archivos subidos no se reescriben en su sitio (cada subida crea uno nuevo), así que tamaño
+    // y fecha de modificación identifican sus bytes y el ETag puede ser fuerte
+    private static String etag(BasicFileAttributes atributos) {
+        return "\"" + Long.toHexString(atributos.size()) + "-"
+                + Long.toHexString(atributos.lastModifiedTime().to(TimeUnit.MICROSECONDS)) + "\"";
+    }
+
+    // If-Range: el intervalo solo vale si el cliente aún tiene esta versión del archivo; si no, va completo
+    private static boolean rangoVigente(HttpServletRequest request, String etag, long modificado) {
+        String condicion = request.getHeader(HttpHeaders.IF_RANGE);
+        if (condicion == null) {
+            return true;
+        }
+        if (condicion.startsWith("\"") || condicion.startsWith("W/")) {
+            return condicion.equals(etag);
+        }
         try {
-            Path file = Paths.get(uploadDir).resolve(filename);
-            Resource resource = new UrlResource(file.toUri());
-            if (resource.exists() && resource.isReadable()) {
-                return ResponseEntity.ok()
-                        .header("Content-Disposition", "inline; filename=\"" + resource.getFilename() + "\"")
-                        .body(resource);
-            } else {
-                return ResponseEntity.notFound().build();
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == modificado / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void enviar(Path file, long inicio, long cantidad, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SOPORTADO))) {
+            request.setAttribute(SENDFILE_ARCHIVO, file.toString());
+            request.setAttribute(SENDFILE_INICIO, inicio);
+            request.setAttribute(SENDFILE_FIN, inicio + cantidad);
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel salida = Channels.newChannel(response.getOutputStream());
+            long enviados = 0;
+            while (enviados < cantidad) {
+                long n = canal.transferTo(inicio + enviados, cantidad - enviados, salida);
+                if (n <= 0) {
+                    throw new EOFException("El archivo se acortó mientras se enviaba: " + file);
+                }
+                enviados += n;
             }
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
         }
     }
-}
\ No newline at end of file
+}
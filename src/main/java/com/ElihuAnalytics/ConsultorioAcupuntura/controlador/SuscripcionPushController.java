@@ -0,0 +1,66 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Usuario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.ClavesVapid;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.EnvioWebPush;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Registro de los navegadores que reciben notificaciones Web Push.
+ * El cuerpo es el {@code PushSubscription.toJSON()} del navegador.
+ */
+@RestController
+@RequestMapping("/api/push")
+public class SuscripcionPushController {
+
+    private final EnvioWebPush envioWebPush;
+    private final ClavesVapid clavesVapid;
+
+    public SuscripcionPushController(EnvioWebPush envioWebPush, ClavesVapid clavesVapid) {
+        this.envioWebPush = envioWebPush;
+        this.clavesVapid = clavesVapid;
+    }
+
+    public record ClavesSuscripcion(String p256dh, String auth) {
+    }
+
+    public record Suscripcion(String endpoint, ClavesSuscripcion keys) {
+    }
+
+    @GetMapping("/clave-publica")
+    public String clavePublica() {
+        return clavesVapid.getClavePublica();
+    }
+
+    @PostMapping("/suscripciones")
+    public ResponseEntity<Void> suscribir(@RequestBody Suscripcion suscripcion, @AuthenticationPrincipal Usuario usuario) {
+        if (usuario == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            envioWebPush.suscribir(usuario.getId(), suscripcion.endpoint(),
+                    suscripcion.keys() != null ? suscripcion.keys().p256dh() : null,
+                    suscripcion.keys() != null ? suscripcion.keys().auth() : null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/suscripciones")
+    public ResponseEntity<Void> desuscribir(@RequestBody Suscripcion suscripcion, @AuthenticationPrincipal Usuario usuario) {
+        if (usuario == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        envioWebPush.desuscribir(usuario.getId(), suscripcion.endpoint());
+        return ResponseEntity.noContent().build();
+    }
+}
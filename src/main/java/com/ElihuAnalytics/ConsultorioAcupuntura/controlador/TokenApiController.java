@@ -0,0 +1,131 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Usuario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.UsuarioDetallesServicio;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Emisión de tokens de la API a partir del usuario y la contraseña de la aplicación
+ * (para clientes que no usan la interfaz web, como una app móvil).
+ *
+ * Contra el relleno de credenciales se cuentan los intentos fallidos por usuario y por dirección
+ * IP: al llegar al máximo dentro de una ventana de 15 minutos se responde 429 con
+ * {@code Retry-After} hasta que la ventana termine, aunque la contraseña sea correcta. Los
+ * contadores son de cada instancia.
+ */
+@RestController
+@RequestMapping("/api/auth")
+public class TokenApiController {
+
+    private static final Duration VENTANA = Duration.ofMinutes(15);
+    private static final int MAX_FALLOS_POR_USUARIO = 5;
+    private static final int MAX_FALLOS_POR_IP = 20;
+    private static final int MAX_CONTADORES = 10_000; // al superarlo se olvidan las ventanas terminadas
+
+    // Fallos dentro de la ventana que empezó en {@code desde} (System.nanoTime)
+    private record Fallos(long desde, int cantidad) {
+
+        boolean vigente(long ahora) {
+            return ahora - desde < VENTANA.toNanos();
+        }
+    }
+
+    private final UsuarioDetallesServicio usuarioDetallesServicio;
+    private final PasswordEncoder passwordEncoder;
+    private final TokenApiServicio tokenApiServicio;
+    private final Duration vigencia;
+    // "usuario:<username>" o "ip:<dirección>" -> fallos en la ventana actual
+    private final Map<String, Fallos> fallos = new ConcurrentHashMap<>();
+
+    public TokenApiController(UsuarioDetallesServicio usuarioDetallesServicio, PasswordEncoder passwordEncoder,
+                              TokenApiServicio tokenApiServicio,
+                              @Value("${app.api.token.vigencia:7d}") Duration vigencia) {
+        this.usuarioDetallesServicio = usuarioDetallesServicio;
+        this.passwordEncoder = passwordEncoder;
+        this.tokenApiServicio = tokenApiServicio;
+        this.vigencia = vigencia;
+    }
+
+    public record Credenciales(String username, String password) {
+    }
+
+    public record TokenEmitido(String token, Instant expira) {
+    }
+
+    @PostMapping("/token")
+    public ResponseEntity<TokenEmitido> emitir(@RequestBody Credenciales credenciales, HttpServletRequest request) {
+        if (credenciales.username() == null || credenciales.password() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        String porUsuario = "usuario:" + credenciales.username().trim().toLowerCase(Locale.ROOT);
+        String porIp = "ip:" + request.getRemoteAddr();
+        long ahora = System.nanoTime();
+        long espera = Math.max(espera(porUsuario, MAX_FALLOS_POR_USUARIO, ahora), espera(porIp, MAX_FALLOS_POR_IP, ahora));
+        if (espera > 0) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(Duration.ofNanos(espera).toSeconds() + 1))
+                    .build();
+        }
+
+        Usuario usuario = autenticar(credenciales);
+        if (usuario == null) {
+            registrarFallo(porUsuario, ahora);
+            registrarFallo(porIp, ahora);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        fallos.remove(porUsuario);
+        String token = tokenApiServicio.emitir(usuario.getId(), usuario.getRol(), null, vigencia);
+        return ResponseEntity.ok(new TokenEmitido(token, Instant.now().plus(vigencia)));
+    }
+
+    // El usuario si las credenciales son correctas y está activo; si no, null
+    private Usuario autenticar(Credenciales credenciales) {
+        UserDetails detalles;
+        try {
+            detalles = usuarioDetallesServicio.loadUserByUsername(credenciales.username());
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        if (!(detalles instanceof Usuario usuario) || !usuario.isEnabled()
+                || usuario.getPassword() == null
+                || !passwordEncoder.matches(credenciales.password(), usuario.getPassword())) {
+            return null;
+        }
+        return usuario;
+    }
+
+    // Nanosegundos hasta que termine la ventana si ya se alcanzó el máximo de fallos; si no, 0
+    private long espera(String clave, int maximo, long ahora) {
+        Fallos actuales = fallos.get(clave);
+        if (actuales == null || !actuales.vigente(ahora) || actuales.cantidad() < maximo) {
+            return 0;
+        }
+        return actuales.desde() + VENTANA.toNanos() - ahora;
+    }
+
+    private void registrarFallo(String clave, long ahora) {
+        if (fallos.size() >= MAX_CONTADORES) {
+            fallos.values().removeIf(f -> !f.vigente(ahora));
+        }
+        fallos.merge(clave, new Fallos(ahora, 1),
+                (previos, nuevo) -> previos.vigente(ahora) ? new Fallos(previos.desde(), previos.cantidad() + 1) : nuevo);
+    }
+}
@@ -18,8 +18,7 @@ public class AntecedenteRelevante {
     @Column(name = "creado_el", nullable = false, updatable = false)
     private LocalDateTime creadoEl;
 
-    @Lob
-    @Column(name = "descripcion")
+    @Column(name = "descripcion", columnDefinition = "TEXT")
     private String descripcion;
 
     /**
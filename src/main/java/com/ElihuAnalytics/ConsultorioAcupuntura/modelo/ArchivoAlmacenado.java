@@ -0,0 +1,51 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Archivo subido, guardado una sola vez con su SHA-256 como nombre.
+ * {@code referencias} cuenta cuántas rutas lo usan (adjuntos de antecedentes y seguimientos,
+ * fotos de perfil): el mismo escaneo subido dos veces es una fila con 2 referencias y un solo
+ * archivo en disco, que se borra cuando se quita la última.
+ */
+@Entity
+@Table(name = "archivo_almacenado")
+public class ArchivoAlmacenado {
+
+    // SHA-256 en hexadecimal más la extensión original (ej: 9f86d0...0a08.pdf)
+    @Id
+    @Column(length = 80)
+    private String nombre;
+
+    @Column(nullable = false)
+    private int referencias;
+
+    // Tamaño en bytes del archivo guardado (el de la imagen ya optimizada, una vez procesada)
+    @Column(nullable = false)
+    private long tamano;
+
+    @Column(nullable = false)
+    private LocalDateTime creado;
+
+    public ArchivoAlmacenado() {}
+
+    public ArchivoAlmacenado(String nombre, long tamano) {
+        this.nombre = nombre;
+        this.tamano = tamano;
+        this.referencias = 1;
+        this.creado = LocalDateTime.now();
+    }
+
+    public void sumarReferencia() { referencias++; }
+
+    /** @return las referencias que quedan */
+    public int restarReferencia() { return --referencias; }
+
+    public String getNombre() { return nombre; }
+    public int getReferencias() { return referencias; }
+    public long getTamano() { return tamano; }
+    public void setTamano(long tamano) { this.tamano = tamano; }
+    public LocalDateTime getCreado() { return creado; }
+}
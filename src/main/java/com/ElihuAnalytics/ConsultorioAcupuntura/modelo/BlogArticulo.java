@@ -5,7 +5,6 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
-import jakarta.persistence.Lob;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import java.time.LocalDateTime;
@@ -31,7 +30,7 @@ public class BlogArticulo {
     private String categoria;
 
     @NotBlank
-    @Lob // Large Object, permite texto muy largo (equivalente a TEXT en MySQL)
+    // Texto muy largo; en H2 TEXT es un VARCHAR de hasta 10^9 caracteres, no un CLOB
     @Column(columnDefinition = "TEXT")
     private String contenido;
 
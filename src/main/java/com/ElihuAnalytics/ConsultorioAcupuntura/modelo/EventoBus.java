@@ -0,0 +1,57 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento del bus entre instancias: un mensaje para las vistas abiertas de un usuario, o un
+ * cambio en datos en memoria ({@code tema}, sin usuario; el mensaje lleva el detalle).
+ * La tabla solo crece (cada instancia lee desde su propio cursor) y se depura por antigüedad.
+ */
+@Entity
+@Table(name = "evento_bus", indexes = @Index(name = "idx_evento_bus_creado", columnList = "creado"))
+public class EventoBus {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "usuario_id")
+    private Long usuarioId;
+
+    @Column(length = 50)
+    private String tema;
+
+    @Column(nullable = false, length = 1000)
+    private String mensaje;
+
+    // Instancia que lo publicó (ya lo entregó localmente)
+    @Column(name = "nodo_origen", nullable = false, length = 36)
+    private String nodoOrigen;
+
+    @Column(nullable = false)
+    private LocalDateTime creado;
+
+    public EventoBus() {}
+
+    public EventoBus(Long usuarioId, String mensaje, String nodoOrigen) {
+        this.usuarioId = usuarioId;
+        this.mensaje = mensaje;
+        this.nodoOrigen = nodoOrigen;
+        this.creado = LocalDateTime.now();
+    }
+
+    public static EventoBus cambio(String tema, String detalle, String nodoOrigen) {
+        EventoBus evento = new EventoBus(null, detalle == null ? "" : detalle, nodoOrigen);
+        evento.tema = tema;
+        return evento;
+    }
+
+    public Long getId() { return id; }
+    public Long getUsuarioId() { return usuarioId; }
+    public String getTema() { return tema; }
+    public String getMensaje() { return mensaje; }
+    public String getNodoOrigen() { return nodoOrigen; }
+    public LocalDateTime getCreado() { return creado; }
+}
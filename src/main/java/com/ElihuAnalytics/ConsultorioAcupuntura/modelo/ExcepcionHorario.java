@@ -0,0 +1,92 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Excepción a la plantilla semanal para un rango de fechas (ambas incluidas):
+ * - HORARIO_ESPECIAL: esos días se atiende de horaInicio a horaFin en lugar del horario semanal.
+ * - BLOQUEO: se bloquea el rango horaInicio-horaFin de esos días (sin horas = el día completo).
+ * - VACACIONES: esos días no se atiende.
+ */
+@Entity
+@Table(name = "excepcion_horario", indexes = {
+        @Index(name = "idx_excepcion_horario_fechas", columnList = "fecha_inicio, fecha_fin")
+})
+public class ExcepcionHorario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TipoExcepcion tipo;
+
+    @Column(name = "fecha_inicio", nullable = false)
+    private LocalDate fechaInicio;
+
+    @Column(name = "fecha_fin", nullable = false)
+    private LocalDate fechaFin;
+
+    @Column(name = "hora_inicio")
+    private LocalTime horaInicio;
+
+    @Column(name = "hora_fin")
+    private LocalTime horaFin;
+
+    @Column(length = 255)
+    private String descripcion;
+
+    public enum TipoExcepcion {
+        HORARIO_ESPECIAL,
+        BLOQUEO,
+        VACACIONES
+    }
+
+    public ExcepcionHorario() {}
+
+    public ExcepcionHorario(TipoExcepcion tipo, LocalDate fechaInicio, LocalDate fechaFin,
+                            LocalTime horaInicio, LocalTime horaFin, String descripcion) {
+        this.tipo = tipo;
+        this.fechaInicio = fechaInicio;
+        this.fechaFin = fechaFin;
+        this.horaInicio = horaInicio;
+        this.horaFin = horaFin;
+        this.descripcion = descripcion;
+    }
+
+    public Long getId() { return id; }
+
+    public TipoExcepcion getTipo() { return tipo; }
+    public void setTipo(TipoExcepcion tipo) { this.tipo = tipo; }
+
+    public LocalDate getFechaInicio() { return fechaInicio; }
+    public void setFechaInicio(LocalDate fechaInicio) { this.fechaInicio = fechaInicio; }
+
+    public LocalDate getFechaFin() { return fechaFin; }
+    public void setFechaFin(LocalDate fechaFin) { this.fechaFin = fechaFin; }
+
+    public LocalTime getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(LocalTime horaInicio) { this.horaInicio = horaInicio; }
+
+    public LocalTime getHoraFin() { return horaFin; }
+    public void setHoraFin(LocalTime horaFin) { this.horaFin = horaFin; }
+
+    public String getDescripcion() { return descripcion; }
+    public void setDescripcion(String descripcion) { this.descripcion = descripcion; }
+
+    @Override
+    public String toString() {
+        return "ExcepcionHorario{" +
+                "id=" + id +
+                ", tipo=" + tipo +
+                ", fechaInicio=" + fechaInicio +
+                ", fechaFin=" + fechaFin +
+                ", horaInicio=" + horaInicio +
+                ", horaFin=" + horaFin +
+                '}';
+    }
+}
@@ -27,7 +27,7 @@ public class HistoriaClinica {
     private AntecedenteRelevante antecedenteRelevante;
 
 
-    @Lob
+    @Column(columnDefinition = "TEXT")
     private String diagnosticoTradicional;
 
     @OneToMany(mappedBy = "historiaClinica", cascade = CascadeType.ALL, orphanRemoval = true)
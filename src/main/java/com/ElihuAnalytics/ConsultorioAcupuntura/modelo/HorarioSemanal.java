@@ -0,0 +1,81 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla semanal de atención: horario del consultorio para cada día de la semana.
+ * Un día sin hora de inicio/fin no es laborable (p. ej. el domingo).
+ */
+@Entity
+@Table(name = "horario_semanal", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_horario_semanal_dia", columnNames = "dia_semana")
+})
+public class HorarioSemanal {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "dia_semana", nullable = false, length = 10)
+    private DayOfWeek diaSemana;
+
+    @Column(name = "hora_inicio")
+    private LocalTime horaInicio;
+
+    @Column(name = "hora_fin")
+    private LocalTime horaFin;
+
+    public HorarioSemanal() {}
+
+    public HorarioSemanal(DayOfWeek diaSemana, LocalTime horaInicio, LocalTime horaFin) {
+        this.diaSemana = diaSemana;
+        this.horaInicio = horaInicio;
+        this.horaFin = horaFin;
+    }
+
+    /**
+     * Horario con el que arranca el consultorio si no hay plantilla guardada:
+     * lunes, miércoles y viernes de 8:00 a 14:00; martes, jueves y sábado de 8:00 a 17:00; domingo cerrado.
+     */
+    public static List<HorarioSemanal> predeterminados() {
+        List<HorarioSemanal> horarios = new ArrayList<>();
+        for (DayOfWeek dia : DayOfWeek.values()) {
+            switch (dia) {
+                case MONDAY, WEDNESDAY, FRIDAY -> horarios.add(new HorarioSemanal(dia, LocalTime.of(8, 0), LocalTime.of(14, 0)));
+                case SUNDAY -> horarios.add(new HorarioSemanal(dia, null, null));
+                default -> horarios.add(new HorarioSemanal(dia, LocalTime.of(8, 0), LocalTime.of(17, 0)));
+            }
+        }
+        return horarios;
+    }
+
+    public boolean esLaborable() {
+        return horaInicio != null && horaFin != null && horaInicio.isBefore(horaFin);
+    }
+
+    public Long getId() { return id; }
+
+    public DayOfWeek getDiaSemana() { return diaSemana; }
+    public void setDiaSemana(DayOfWeek diaSemana) { this.diaSemana = diaSemana; }
+
+    public LocalTime getHoraInicio() { return horaInicio; }
+    public void setHoraInicio(LocalTime horaInicio) { this.horaInicio = horaInicio; }
+
+    public LocalTime getHoraFin() { return horaFin; }
+    public void setHoraFin(LocalTime horaFin) { this.horaFin = horaFin; }
+
+    @Override
+    public String toString() {
+        return "HorarioSemanal{" +
+                "diaSemana=" + diaSemana +
+                ", horaInicio=" + horaInicio +
+                ", horaFin=" + horaFin +
+                '}';
+    }
+}
@@ -26,8 +26,7 @@ public class NotaPrivada {
     @Column(name = "fecha_hora", nullable = false, updatable = false)
     private LocalDateTime fechaHora;
 
-    @Lob
-    @Column(name = "texto", nullable = false)
+    @Column(name = "texto", nullable = false, columnDefinition = "TEXT")
     private String texto;
 
     // Relación N:1 con HistoriaClinica. Muchas notas pertenecen a una historia.
@@ -1,20 +1,26 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notificacion_enviada")
+@Table(name = "notificacion_enviada", indexes = {
+        @Index(name = "idx_notificacion_sesion_tipo_estado", columnList = "sesion_id, tipo, estado"),
+        @Index(name = "idx_notificacion_estado_proximo", columnList = "estado, proximo_intento")
+})
 public class NotificacionEnviada {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "sesion_id", nullable = false)
-    private Long sesionId;
+    @Column(name = "sesion_id")
+    private Long sesionId; // null en correos que no son de una cita (p. ej. código de verificación)
 
     @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.VARCHAR) // varchar y no ENUM de H2, para agregar tipos sin migrar la columna
     @Column(nullable = false, length = 50)
     private TipoNotificacion tipo;
 
@@ -22,7 +28,10 @@ public class NotificacionEnviada {
     @Column(nullable = false, length = 20)
     private CanalNotificacion canal;
 
-    @Column(name = "destinatario", length = 100)
+    // Lo mismo que un username (correo del usuario)
+    public static final int LONGITUD_DESTINATARIO = 255;
+
+    @Column(name = "destinatario", length = LONGITUD_DESTINATARIO)
     private String destinatario; // email o teléfono
 
     @Column(name = "fecha_envio", nullable = false)
@@ -38,6 +47,19 @@ public class NotificacionEnviada {
     @Column(name = "intentos", nullable = false)
     private Integer intentos = 0;
 
+    // Contenido del correo en la bandeja de salida (mientras está por enviarse y luego como historial,
+    // salvo el de CODIGO_VERIFICACION, que se borra al quedar ENVIADA o FALLIDA sin más reintentos)
+    @Column(name = "asunto", length = 200)
+    private String asunto;
+
+    @Column(name = "contenido", columnDefinition = "TEXT")
+    private String contenido;
+
+    // Cuándo puede volver a tomarse: reintento tras un fallo, o fin de la reserva de un envío en curso.
+    // En FALLIDA, null indica que no hay más reintentos.
+    @Column(name = "proximo_intento")
+    private LocalDateTime proximoIntento;
+
     // Constructores
     public NotificacionEnviada() {}
 
@@ -58,7 +80,9 @@ public class NotificacionEnviada {
         CONFIRMACION_CITA,
         CANCELACION_CITA,
         REPROGRAMACION_CITA,
-        CONFIRMACION_PACIENTE
+        CONFIRMACION_PACIENTE,
+        PROGRAMACION_CITA,
+        CODIGO_VERIFICACION
     }
 
     public enum CanalNotificacion {
@@ -103,5 +127,14 @@ public class NotificacionEnviada {
     public Integer getIntentos() { return intentos; }
     public void setIntentos(Integer intentos) { this.intentos = intentos; }
 
+    public String getAsunto() { return asunto; }
+    public void setAsunto(String asunto) { this.asunto = asunto; }
+
+    public String getContenido() { return contenido; }
+    public void setContenido(String contenido) { this.contenido = contenido; }
+
+    public LocalDateTime getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(LocalDateTime proximoIntento) { this.proximoIntento = proximoIntento; }
+
     public void incrementarIntentos() { this.intentos++; }
 }
\ No newline at end of file
@@ -13,7 +13,7 @@ public class Prescripcion {
 
     private LocalDateTime fecha = LocalDateTime.now();
 
-    @Lob
+    @Column(columnDefinition = "TEXT")
     private String indicaciones;
 
     @ManyToOne(optional = false)
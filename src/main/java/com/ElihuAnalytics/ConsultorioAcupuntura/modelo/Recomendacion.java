@@ -13,7 +13,7 @@ public class Recomendacion {
 
     private LocalDateTime fecha = LocalDateTime.now();
 
-    @Lob
+    @Column(columnDefinition = "TEXT")
     private String contenido;
 
     @ManyToOne(optional = false)
@@ -0,0 +1,40 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reserva de una franja de 30 minutos de la agenda por una sesión activa.
+ * La restricción única sobre {@code franja} hace que dos reservas simultáneas del mismo
+ * horario se resuelvan en la base de datos: solo una transacción puede insertar la fila.
+ */
+@Entity
+@Table(name = "reserva_horario",
+        uniqueConstraints = @UniqueConstraint(name = "uk_reserva_horario_franja", columnNames = "franja"),
+        indexes = @Index(name = "idx_reserva_horario_sesion", columnList = "sesion_id"))
+public class ReservaHorario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Inicio de la franja de 30 minutos reservada
+    @Column(nullable = false)
+    private LocalDateTime franja;
+
+    // Clave foránea a sesion (on delete cascade): las franjas se van con su sesión
+    @Column(name = "sesion_id", nullable = false)
+    private Long sesionId;
+
+    public ReservaHorario() {}
+
+    public ReservaHorario(LocalDateTime franja, Long sesionId) {
+        this.franja = franja;
+        this.sesionId = sesionId;
+    }
+
+    public Long getId() { return id; }
+    public LocalDateTime getFranja() { return franja; }
+    public Long getSesionId() { return sesionId; }
+}
@@ -17,7 +17,7 @@ public class SeguimientoSalud {
 
     private LocalDateTime fecha = LocalDateTime.now();
 
-    @Lob
+    @Column(columnDefinition = "TEXT")
     private String descripcion;
 
     // Archivos opcionales que el paciente puede subir
@@ -9,9 +9,14 @@ import java.util.Objects;
 
 /**
  * Entidad que representa una sesión o cita en el consultorio.
+ * Índices: las búsquedas de agenda filtran por estado y rango de fechas; las del paciente,
+ * por paciente y rango de fechas (este índice cubre también la clave foránea).
  */
 @Entity
-@Table(name = "sesion")
+@Table(name = "sesion", indexes = {
+        @Index(name = "idx_sesion_estado_fecha", columnList = "estado, fecha"),
+        @Index(name = "idx_sesion_paciente_fecha", columnList = "paciente_id, fecha")
+})
 public class Sesion {
 
     @Id
@@ -0,0 +1,58 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.modelo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Suscripción Web Push de un navegador: el endpoint del servicio de push y las claves
+ * con que se cifra el contenido para ese navegador (RFC 8291).
+ * Un usuario puede tener varias (uno por navegador o dispositivo).
+ */
+@Entity
+@Table(name = "suscripcion_push",
+        uniqueConstraints = @UniqueConstraint(name = "uk_suscripcion_push_endpoint", columnNames = "endpoint"),
+        indexes = @Index(name = "idx_suscripcion_push_usuario", columnList = "usuario_id"))
+public class SuscripcionPush {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(nullable = false, length = 1000)
+    private String endpoint;
+
+    // Clave pública P-256 del navegador (base64url, punto sin comprimir)
+    @Column(nullable = false, length = 100)
+    private String p256dh;
+
+    // Secreto de autenticación del navegador (base64url, 16 bytes)
+    @Column(nullable = false, length = 50)
+    private String auth;
+
+    @Column(nullable = false)
+    private LocalDateTime creado;
+
+    public SuscripcionPush() {}
+
+    public SuscripcionPush(Long usuarioId, String endpoint, String p256dh, String auth) {
+        this.usuarioId = usuarioId;
+        this.endpoint = endpoint;
+        this.p256dh = p256dh;
+        this.auth = auth;
+        this.creado = LocalDateTime.now();
+    }
+
+    public Long getId() { return id; }
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+    public String getEndpoint() { return endpoint; }
+    public String getP256dh() { return p256dh; }
+    public void setP256dh(String p256dh) { this.p256dh = p256dh; }
+    public String getAuth() { return auth; }
+    public void setAuth(String auth) { this.auth = auth; }
+    public LocalDateTime getCreado() { return creado; }
+}
@@ -0,0 +1,22 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ArchivoAlmacenado;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+/**
+ * Acceso a datos de los archivos subidos y sus referencias.
+ */
+public interface ArchivoAlmacenadoRepository extends JpaRepository<ArchivoAlmacenado, String> {
+
+    // SELECT ... FOR UPDATE: sumar o quitar una referencia y crear o borrar el archivo en disco
+    // ocurren sin que otra transacción toque el mismo archivo a la vez
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from ArchivoAlmacenado a where a.nombre = :nombre")
+    Optional<ArchivoAlmacenado> bloquear(@Param("nombre") String nombre);
+}
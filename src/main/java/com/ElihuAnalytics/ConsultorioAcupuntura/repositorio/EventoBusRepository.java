@@ -0,0 +1,29 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.EventoBus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Acceso a datos del registro de eventos entre instancias.
+ */
+public interface EventoBusRepository extends JpaRepository<EventoBus, Long> {
+
+    List<EventoBus> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pagina);
+
+    @Query("select coalesce(max(e.id), 0) from EventoBus e")
+    long findUltimoId();
+
+    // Depuración por antigüedad (sentencia directa, sin cargar las filas)
+    @Modifying
+    @Transactional
+    @Query("delete from EventoBus e where e.creado < :fecha")
+    int eliminarAnterioresA(@Param("fecha") LocalDateTime fecha);
+}
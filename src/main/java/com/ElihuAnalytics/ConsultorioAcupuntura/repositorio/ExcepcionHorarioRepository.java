@@ -0,0 +1,16 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ExcepcionHorario;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Acceso a datos de excepciones al horario (horarios especiales, bloqueos y vacaciones).
+ */
+public interface ExcepcionHorarioRepository extends JpaRepository<ExcepcionHorario, Long> {
+
+    // Excepciones vigentes: las que terminan en la fecha dada o después
+    List<ExcepcionHorario> findByFechaFinGreaterThanEqualOrderByFechaInicioAsc(LocalDate fecha);
+}
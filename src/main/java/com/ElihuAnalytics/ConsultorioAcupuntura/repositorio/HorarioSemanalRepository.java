@@ -0,0 +1,15 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.HorarioSemanal;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.DayOfWeek;
+import java.util.Optional;
+
+/**
+ * Acceso a datos de la plantilla semanal de atención.
+ */
+public interface HorarioSemanalRepository extends JpaRepository<HorarioSemanal, Long> {
+
+    Optional<HorarioSemanal> findByDiaSemana(DayOfWeek diaSemana);
+}
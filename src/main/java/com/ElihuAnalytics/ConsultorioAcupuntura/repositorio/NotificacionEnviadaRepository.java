@@ -5,7 +5,9 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public interface NotificacionEnviadaRepository extends JpaRepository<NotificacionEnviada, Long> {
 
@@ -18,11 +20,37 @@ public interface NotificacionEnviadaRepository extends JpaRepository<Notificacio
                                       @Param("tipo") NotificacionEnviada.TipoNotificacion tipo,
                                       @Param("desde") LocalDateTime desde);
 
-    @Query("SELECT n FROM NotificacionEnviada n " +
-            "WHERE n.estado = 'FALLIDA' " +
-            "AND n.intentos < 3 " +
-            "ORDER BY n.fechaEnvio ASC")
-    List<NotificacionEnviada> findNotificacionesPendientesReintento();
+    /**
+     * Lote de la bandeja de salida listo para enviarse: pendientes y fallidas con reintento vencido,
+     * en orden de llegada. Bloquea las filas con FOR UPDATE SKIP LOCKED: si otro proceso ya está
+     * tomando un lote, sus filas se saltan en lugar de esperar. Debe llamarse dentro de una transacción.
+     * Es SQL nativo porque el dialecto H2 de Hibernate no genera SKIP LOCKED (H2 y PostgreSQL sí lo aceptan).
+     */
+    @Query(value = "SELECT * FROM notificacion_enviada n " +
+            "WHERE n.canal = :canal " +
+            "AND ((n.estado = 'PENDIENTE' AND (n.proximo_intento IS NULL OR n.proximo_intento <= :ahora)) " +
+            "OR (n.estado = 'FALLIDA' AND n.proximo_intento <= :ahora)) " +
+            "ORDER BY n.id ASC LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<NotificacionEnviada> findNotificacionesPendientesReintento(@Param("canal") String canal,
+                                                                    @Param("ahora") LocalDateTime ahora,
+                                                                    @Param("limite") int limite);
+
+    long countByEstadoAndCanal(NotificacionEnviada.EstadoNotificacion estado, NotificacionEnviada.CanalNotificacion canal);
+
+    long countByEstadoAndCanalAndProximoIntentoIsNotNull(NotificacionEnviada.EstadoNotificacion estado,
+                                                         NotificacionEnviada.CanalNotificacion canal);
 
     List<NotificacionEnviada> findBySesionIdAndTipo(Long sesionId, NotificacionEnviada.TipoNotificacion tipo);
+
+    /**
+     * De las sesiones dadas, devuelve en una sola consulta (índice sesion_id, tipo, estado)
+     * las que ya tienen una notificación de alguno de los tipos que se envió o que la bandeja de
+     * salida todavía enviará: cualquier estado salvo FALLIDA sin más reintentos (proximo_intento null).
+     */
+    @Query("SELECT DISTINCT n.sesionId FROM NotificacionEnviada n " +
+            "WHERE n.sesionId IN :sesionIds " +
+            "AND n.tipo IN :tipos " +
+            "AND (n.estado <> 'FALLIDA' OR n.proximoIntento IS NOT NULL)")
+    Set<Long> findSesionIdsConNotificacionVigente(@Param("sesionIds") Collection<Long> sesionIds,
+                                                  @Param("tipos") Collection<NotificacionEnviada.TipoNotificacion> tipos);
 }
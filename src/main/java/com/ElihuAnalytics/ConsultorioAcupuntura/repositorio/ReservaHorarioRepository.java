@@ -0,0 +1,28 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ReservaHorario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Acceso a datos de las reservas de franjas de agenda.
+ */
+public interface ReservaHorarioRepository extends JpaRepository<ReservaHorario, Long> {
+
+    // Libera las franjas de una sesión (sentencia directa, sin cargar las filas)
+    @Modifying
+    @Query("delete from ReservaHorario r where r.sesionId = :sesionId")
+    int eliminarPorSesion(@Param("sesionId") Long sesionId);
+
+    // Las franjas pasadas ya no se pueden reservar: se eliminan en bloque
+    @Modifying
+    @Query("delete from ReservaHorario r where r.franja < :fecha")
+    int eliminarAnterioresA(@Param("fecha") LocalDateTime fecha);
+
+    boolean existsByFranjaIn(Collection<LocalDateTime> franjas);
+}
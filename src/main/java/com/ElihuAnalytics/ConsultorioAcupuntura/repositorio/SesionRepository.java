@@ -1,12 +1,17 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
 
-import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.EstadoSesion;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -15,6 +20,12 @@ import java.util.Set;
 @Repository
 public interface SesionRepository extends JpaRepository<Sesion, Long> {
 
+    // SELECT ... FOR UPDATE: el recordatorio de una cita lo encola un solo proceso aunque
+    // varios tengan su temporizador (la comprobación de "ya enviado" y el encolado van bajo este bloqueo)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from Sesion s where s.id = :id")
+    Optional<Sesion> bloquear(@Param("id") Long id);
+
     /**
      * Busca sesiones de un paciente en un rango de fechas.
      * @param pacienteId ID del paciente
@@ -53,21 +64,55 @@ public interface SesionRepository extends JpaRepository<Sesion, Long> {
     List<Sesion> findByFechaBetweenAndEstadoInOrderByFechaAsc(
             LocalDateTime start,
             LocalDateTime end,
-            Set<EstadoSesion> estados);
-    // --- FIN CORRECCIÓN ---    // Usado por getHorasDisponibles y estaDisponible (no necesita orden)
-    List<Sesion> findByFechaBetweenAndEstadoIn(
-            LocalDateTime start,
-            LocalDateTime end,
-            Set<EstadoSesion> estados);
+            Set<Sesion.EstadoSesion> estados);
+    // --- FIN CORRECCIÓN ---
 
     // Usado por findSesionesPorEstado
     List<Sesion> findByEstadoOrderByFechaAsc(
-            EstadoSesion estado);
+            Sesion.EstadoSesion estado);
 
     // Usado por buscarPendientesAntes
     List<Sesion> findByFechaBeforeAndEstadoIn(
             LocalDateTime fecha,
-            Set<EstadoSesion> estados);
+            Set<Sesion.EstadoSesion> estados);
+
+    /**
+     * Sesiones en [inicio, fin) con alguno de los estados dados, de todos los pacientes o de uno solo,
+     * con el paciente ya cargado (una sola consulta, sin una adicional por paciente).
+     * La historia clínica va en el mismo join: es el lado inverso de un uno a uno y Hibernate
+     * la consultaría aparte por cada paciente.
+     * @param pacienteId ID del paciente, o null para todos
+     * @return Lista de sesiones ordenada por fecha
+     */
+    @Query("select s from Sesion s join fetch s.paciente p left join fetch p.historiaClinica " +
+            "where s.fecha >= :inicio and s.fecha < :fin and s.estado in :estados " +
+            "and (:pacienteId is null or p.id = :pacienteId) order by s.fecha asc")
+    List<Sesion> findConPacienteEntre(@Param("inicio") LocalDateTime inicio,
+                                      @Param("fin") LocalDateTime fin,
+                                      @Param("estados") Set<Sesion.EstadoSesion> estados,
+                                      @Param("pacienteId") Long pacienteId);
+
+    /**
+     * Cambia de estado, en una sola sentencia, todas las sesiones anteriores a una fecha
+     * que estén en alguno de los estados dados.
+     * @return Número de sesiones actualizadas
+     */
+    @Modifying
+    @Query("update Sesion s set s.estado = :nuevoEstado where s.fecha < :fecha and s.estado in :estados")
+    int actualizarEstadoAntesDe(@Param("fecha") LocalDateTime fecha,
+                                @Param("estados") Set<Sesion.EstadoSesion> estados,
+                                @Param("nuevoEstado") Sesion.EstadoSesion nuevoEstado);
+
+    // Usado al arrancar para recuperar los recordatorios de citas confirmadas futuras
+    List<Sesion> findByFechaAfterAndEstadoOrderByFechaAsc(
+            LocalDateTime fecha,
+            Sesion.EstadoSesion estado);
+
+    // Sesiones activas desde una fecha que aún no tienen franjas reservadas (datos previos a las reservas)
+    @Query("select s from Sesion s where s.fecha >= :desde and s.estado in :estados " +
+            "and not exists (select r.id from ReservaHorario r where r.sesionId = s.id)")
+    List<Sesion> findSinReservaDesde(@Param("desde") LocalDateTime desde,
+                                     @Param("estados") Set<Sesion.EstadoSesion> estados);
 
 
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.SuscripcionPush;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Acceso a datos de las suscripciones Web Push.
+ */
+public interface SuscripcionPushRepository extends JpaRepository<SuscripcionPush, Long> {
+
+    List<SuscripcionPush> findByUsuarioId(Long usuarioId);
+
+    Optional<SuscripcionPush> findByEndpoint(String endpoint);
+
+    // El servicio de push respondió 404/410: el navegador ya no existe o retiró el permiso
+    @Modifying
+    @Transactional
+    @Query("delete from SuscripcionPush s where s.endpoint = :endpoint")
+    int eliminarPorEndpoint(@Param("endpoint") String endpoint);
+
+    @Modifying
+    @Transactional
+    @Query("delete from SuscripcionPush s where s.endpoint = :endpoint and s.usuarioId = :usuarioId")
+    int eliminarDelUsuario(@Param("usuarioId") Long usuarioId, @Param("endpoint") String endpoint);
+}
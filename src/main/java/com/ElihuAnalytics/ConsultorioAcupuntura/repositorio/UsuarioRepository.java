@@ -1,12 +1,22 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
 
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Usuario;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     Optional<? extends Usuario> findByUsername(String username);
     boolean existsByUsername(String username);
 
+    // Un token de la API solo vale mientras el usuario siga activo y con el mismo rol
+    boolean existsByIdAndRolAndActivoTrue(Long id, Rol rol);
+
+    @Query("select u.id from Usuario u where u.rol = :rol")
+    List<Long> findIdsByRol(@Param("rol") Rol rol);
+
 }
@@ -0,0 +1,43 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.seguridad;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Autentica las peticiones de la API con el token de la cabecera {@code Authorization: Bearer}.
+ * El principal es el {@link TokenApiServicio.TokenApi}; sin token válido la petición sigue
+ * anónima y la regla de autorización la rechaza con 401.
+ */
+class FiltroTokenApi extends OncePerRequestFilter {
+
+    private static final String PREFIJO = "Bearer ";
+
+    private final TokenApiServicio tokenApiServicio;
+
+    FiltroTokenApi(TokenApiServicio tokenApiServicio) {
+        this.tokenApiServicio = tokenApiServicio;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String cabecera = request.getHeader("Authorization");
+        if (cabecera != null && cabecera.startsWith(PREFIJO)) {
+            tokenApiServicio.validar(cabecera.substring(PREFIJO.length()).trim()).ifPresent(token -> {
+                var autenticacion = new UsernamePasswordAuthenticationToken(token, null,
+                        List.of(new SimpleGrantedAuthority("ROLE_" + token.rol().name())));
+                SecurityContextHolder.getContext().setAuthentication(autenticacion);
+            });
+        }
+        chain.doFilter(request, response);
+    }
+}
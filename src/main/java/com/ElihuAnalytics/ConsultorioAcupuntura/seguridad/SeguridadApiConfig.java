@@ -0,0 +1,39 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.seguridad;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+
+/**
+ * Seguridad de la API REST de citas, separada de la de Vaadin ({@link SeguridadConfig}).
+ * Sin estado: cada petición se autentica con su token Bearer, no se crea sesión HTTP ni
+ * se carga la aplicación Vaadin. Como el token no lo envía el navegador por su cuenta
+ * (no es una cookie), no hace falta protección CSRF.
+ */
+@Configuration
+public class SeguridadApiConfig {
+
+    @Bean
+    @Order(1) // antes de la cadena de Vaadin, que atiende todo lo demás
+    public SecurityFilterChain apiFilterChain(HttpSecurity http, TokenApiServicio tokenApiServicio) throws Exception {
+        http
+                .securityMatcher("/api/citas/**", "/api/disponibilidad/**", "/api/auth/**")
+                .csrf(csrf -> csrf.disable())
+                .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .requestCache(c -> c.disable())
+                .addFilterBefore(new FiltroTokenApi(tokenApiServicio), UsernamePasswordAuthenticationFilter.class)
+                .authorizeHttpRequests(auth -> auth
+                        .requestMatchers(HttpMethod.POST, "/api/auth/token").permitAll()
+                        .anyRequest().authenticated())
+                // Sin redirección al login: un cliente de la API espera un 401
+                .exceptionHandling(e -> e.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)));
+        return http.build();
+    }
+}
@@ -14,7 +14,9 @@ import org.springframework.security.web.authentication.logout.LogoutSuccessHandl
 import org.springframework.security.web.authentication.logout.SecurityContextLogoutHandler;
 import org.springframework.security.web.savedrequest.NullRequestCache;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
 import org.springframework.security.web.util.matcher.RegexRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestHeaderRequestMatcher;
 
 /**
  * Configuración central de Seguridad para la aplicación del Consultorio.
@@ -99,6 +101,12 @@ public class SeguridadConfig extends VaadinWebSecurity {
                         .ignoringRequestMatchers(new RegexRequestMatcher("^/login$", "POST"))
                         // 2. La consola H2 es una herramienta antigua que no soporta tokens CSRF.
                         .ignoringRequestMatchers("/h2-console/**")
+                        // 3. La suscripción push desde la página (única llamada JSON con sesión): en lugar
+                        //    del token exige una cabecera propia, que otro sitio no puede enviar sin CORS.
+                        //    Solo esa ruta; la API de citas va por SeguridadApiConfig, con token Bearer y sin sesión.
+                        .ignoringRequestMatchers(new AndRequestMatcher(
+                                new RegexRequestMatcher("^/api/push/suscripciones$", null),
+                                new RequestHeaderRequestMatcher("X-Requested-With")))
                 )
 
                 // --- REGLAS DE AUTORIZACIÓN DE RUTAS ---
@@ -109,7 +117,6 @@ public class SeguridadConfig extends VaadinWebSecurity {
                                 "/images/**", "/icons/**", "/favicon.ico", // Recursos visuales
                                 "/VAADIN/**", "/frontend/**", "/webjars/**", "/line-awesome/**", // Framework
                                 "/styles/**", "/manifest.webmanifest", "/sw.js", "/offline.html", // PWA
-                                "/files/**", "/pacientes-Uploads/**", // Archivos adjuntos y fotos
                                 "/sitemap.xml"
                         ).permitAll()
 
@@ -121,6 +128,9 @@ public class SeguridadConfig extends VaadinWebSecurity {
                         .requestMatchers("/admin", "/admin/**").hasAnyRole("ADMINISTRADOR", "MEDICO")
                         .requestMatchers("/medico", "/medico/**").hasAnyRole("MEDICO", "ADMINISTRADOR")
                         .requestMatchers("/paciente", "/paciente/**").hasRole("PACIENTE")
+
+                        // Archivos adjuntos y fotos (FileController): con sesión, por la regla general de Vaadin.
+                        // Nunca públicos: el nombre es el SHA-256 del contenido.
                 )
 
                 // --- CONFIGURACIÓN DE LOGOUT ---
@@ -0,0 +1,154 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.seguridad;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.UsuarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tokens de acceso a la API REST ({@code Authorization: Bearer}).
+ * Van firmados con HMAC-SHA256 y no crean sesión HTTP. Al validarlos se consulta además al
+ * usuario por su clave primaria: un usuario desactivado o con otro rol deja de poder usar los
+ * tokens ya emitidos. Un token puede limitarse a una sola cita y a algunas acciones sobre las
+ * citas, ambas cosas dentro de lo firmado (el que viaja dentro de la notificación push solo sirve
+ * para confirmar o cancelar esa cita: no para consultarla ni reprogramarla).
+ *
+ * Todas las instancias deben compartir {@code app.api.token.secreto} (base64); sin él se genera
+ * uno al arrancar y los tokens emitidos dejan de valer al reiniciar.
+ */
+@Service
+public class TokenApiServicio {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenApiServicio.class);
+
+    /**
+     * Acciones de la API sobre una cita.
+     */
+    public enum AccionCita {
+        CONSULTAR, CONFIRMAR, CANCELAR, REPROGRAMAR
+    }
+
+    /**
+     * Contenido de un token válido.
+     *
+     * @param usuarioId Usuario autenticado.
+     * @param rol       Rol del usuario al emitir el token.
+     * @param sesionId  Única cita sobre la que actúa el token, o null si no tiene ese límite.
+     * @param acciones  Acciones sobre citas que permite el token.
+     * @param expira    Fin de la vigencia.
+     */
+    public record TokenApi(Long usuarioId, Rol rol, Long sesionId, Set<AccionCita> acciones, Instant expira) {
+
+        public boolean permite(AccionCita accion, Long id) {
+            return acciones.contains(accion) && (sesionId == null || sesionId.equals(id));
+        }
+    }
+
+    private final UsuarioRepository usuarioRepository;
+    private final SecretKeySpec clave;
+
+    public TokenApiServicio(UsuarioRepository usuarioRepository, @Value("${app.api.token.secreto:}") String secreto) {
+        this.usuarioRepository = usuarioRepository;
+        byte[] bytes;
+        if (secreto.isBlank()) {
+            log.warn("Sin app.api.token.secreto: los tokens de la API dejarán de valer al reiniciar.");
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+        } else {
+            bytes = Base64.getDecoder().decode(secreto.trim());
+        }
+        this.clave = new SecretKeySpec(bytes, "HmacSHA256");
+    }
+
+    /**
+     * Emite un token para el usuario con todas las acciones sobre sus citas.
+     *
+     * @param sesionId Cita a la que se limita, o null.
+     */
+    public String emitir(Long usuarioId, Rol rol, Long sesionId, Duration vigencia) {
+        return emitir(usuarioId, rol, sesionId, EnumSet.allOf(AccionCita.class), vigencia);
+    }
+
+    /**
+     * Emite un token para el usuario que solo permite {@code acciones}.
+     *
+     * @param sesionId Cita a la que se limita, o null.
+     */
+    public String emitir(Long usuarioId, Rol rol, Long sesionId, Set<AccionCita> acciones, Duration vigencia) {
+        if (acciones.isEmpty()) {
+            throw new IllegalArgumentException("Un token de la API necesita al menos una acción");
+        }
+        long expira = Instant.now().plus(vigencia).getEpochSecond();
+        String contenido = usuarioId + ":" + rol.name() + ":" + (sesionId != null ? sesionId : "") + ":"
+                + acciones.stream().map(Enum::name).sorted().collect(Collectors.joining(",")) + ":" + expira;
+        String parte = base64Url(contenido.getBytes(StandardCharsets.UTF_8));
+        return parte + "." + base64Url(firmar(parte));
+    }
+
+    /**
+     * Comprueba firma y vigencia, y que el usuario siga activo con el rol del token.
+     */
+    public Optional<TokenApi> validar(String token) {
+        int punto = token.indexOf('.');
+        if (punto <= 0) {
+            return Optional.empty();
+        }
+        String parte = token.substring(0, punto);
+        try {
+            byte[] firma = Base64.getUrlDecoder().decode(token.substring(punto + 1));
+            if (!MessageDigest.isEqual(firma, firmar(parte))) {
+                return Optional.empty();
+            }
+            // usuario:rol:cita:acciones:expira (un token sin acciones no vale)
+            String[] campos = new String(Base64.getUrlDecoder().decode(parte), StandardCharsets.UTF_8).split(":", -1);
+            if (campos.length != 5) {
+                return Optional.empty();
+            }
+            Instant expira = Instant.ofEpochSecond(Long.parseLong(campos[4]));
+            if (expira.isBefore(Instant.now())) {
+                return Optional.empty();
+            }
+            Set<AccionCita> acciones = EnumSet.noneOf(AccionCita.class);
+            Arrays.stream(campos[3].split(",")).map(AccionCita::valueOf).forEach(acciones::add);
+            TokenApi valido = new TokenApi(Long.valueOf(campos[0]), Rol.valueOf(campos[1]),
+                    campos[2].isEmpty() ? null : Long.valueOf(campos[2]), Set.copyOf(acciones), expira);
+            if (!usuarioRepository.existsByIdAndRolAndActivoTrue(valido.usuarioId(), valido.rol())) {
+                return Optional.empty();
+            }
+            return Optional.of(valido);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            return Optional.empty(); // base64 o campos mal formados
+        }
+    }
+
+    private byte[] firmar(String parte) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(clave);
+            return mac.doFinal(parte.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar el token", e);
+        }
+    }
+
+    private static String base64Url(byte[] datos) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(datos);
+    }
+}
@@ -0,0 +1,306 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.NotificacionEnviada;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.NotificacionEnviadaRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Transacciones;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// IMPORTS DE BREVO (Sendinblue)
+import sendinblue.ApiException;
+import sibModel.SendSmtpEmail;
+import sibModel.SendSmtpEmailMessageVersions;
+import sibModel.SendSmtpEmailSender;
+import sibModel.SendSmtpEmailTo;
+import sibModel.SendSmtpEmailTo1;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bandeja de salida de correos.
+ * Los correos se guardan como {@link NotificacionEnviada} PENDIENTE dentro de la transacción del
+ * cambio que los origina (confirmar, cancelar, reprogramar...) y se envían después del commit
+ * en segundo plano, así que quien confirma una cita no espera a Brevo.
+ *
+ * El despachador toma lotes con FOR UPDATE SKIP LOCKED y los reserva por unos minutos
+ * ({@code proximo_intento}), así que dos procesos nunca envían el mismo correo y, si uno muere a mitad
+ * de un envío, el lote vuelve a quedar disponible. Los envíos corren en hilos virtuales y
+ * {@link TransporteCorreoBrevo} limita cuántos están en curso a la vez. El resultado de cada envío
+ * se guarda apenas termina, y un envío que ya no alcanzaría a terminar dentro de la reserva (por
+ * esperar turno detrás del resto del lote) no se inicia: queda para cuando la reserva venza, así
+ * que otro proceso nunca retoma un correo que este ya envió. Los correos idénticos
+ * (mismo asunto y texto) de un lote salen en una sola llamada con una versión por destinatario.
+ * Cada correo termina ENVIADA o FALLIDA; los fallos transitorios (red, 429, 5xx) se reintentan
+ * con retroceso exponencial hasta {@value #MAX_INTENTOS} intentos. Al terminar, el texto de un
+ * código de verificación se borra: la fila queda como historial, pero sin el código.
+ */
+@Service
+public class BandejaSalidaCorreo {
+
+    private static final Logger log = LoggerFactory.getLogger(BandejaSalidaCorreo.class);
+
+    private static final int TAMANO_LOTE = 100;
+    private static final int MAX_VERSIONES_POR_ENVIO = 50;
+    static final int MAX_INTENTOS = 5;
+    private static final Duration ESPERA_INICIAL = Duration.ofMinutes(1); // 1, 2, 4, 8 minutos...
+    private static final Duration ESPERA_MAXIMA = Duration.ofHours(1);
+    private static final Duration RESERVA_ENVIO = Duration.ofMinutes(5);
+    private static final Duration INTERVALO_REVISION = Duration.ofSeconds(30); // para los reintentos vencidos
+    private static final String NOMBRE_REMITENTE = "Buena Vida Medicina";
+
+    private final NotificacionEnviadaRepository notificacionEnviadaRepository;
+    private final TransporteCorreoBrevo transporte;
+    private final TransactionTemplate transactionTemplate;
+    private final SendSmtpEmailSender remitente;
+
+    private final ScheduledExecutorService despachador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "bandeja-salida-correo");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final ExecutorService envios = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean drenajeSolicitado = new AtomicBoolean();
+
+    // Contadores desde el arranque (diagnóstico)
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong reintentosProgramados = new AtomicLong();
+
+    public BandejaSalidaCorreo(NotificacionEnviadaRepository notificacionEnviadaRepository,
+                               TransporteCorreoBrevo transporte,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${sendgrid.from.email:rafael.antonio.diaz@gmail.com}") String fromEmail) {
+        this.notificacionEnviadaRepository = notificacionEnviadaRepository;
+        this.transporte = transporte;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.remitente = new SendSmtpEmailSender().email(fromEmail).name(NOMBRE_REMITENTE);
+    }
+
+    /**
+     * Guarda un correo para enviarlo después del commit de la transacción activa.
+     *
+     * @param sesionId     Sesión relacionada, o null si el correo no es de una cita.
+     * @param tipo         Tipo de notificación.
+     * @param destinatario Correo del destinatario.
+     * @param asunto       Asunto.
+     * @param contenido    Texto plano del correo.
+     * @throws IllegalArgumentException si falta el destinatario o no cabe en la columna: se
+     *         rechaza antes del INSERT, que dejaría la transacción del que llama solo para rollback
+     */
+    public void encolar(Long sesionId, NotificacionEnviada.TipoNotificacion tipo,
+                        String destinatario, String asunto, String contenido) {
+        if (destinatario == null || destinatario.isBlank()
+                || destinatario.length() > NotificacionEnviada.LONGITUD_DESTINATARIO) {
+            throw new IllegalArgumentException("Destinatario de correo inválido: " + destinatario);
+        }
+        NotificacionEnviada correo = new NotificacionEnviada(sesionId, tipo,
+                NotificacionEnviada.CanalNotificacion.EMAIL, destinatario);
+        correo.setAsunto(asunto);
+        correo.setContenido(contenido);
+        notificacionEnviadaRepository.save(correo);
+        Transacciones.despuesDelCommit(this::despertar);
+    }
+
+    /**
+     * Al arrancar envía lo que quedó pendiente y empieza a revisar periódicamente los reintentos.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        despachador.scheduleWithFixedDelay(this::despertar, 0, INTERVALO_REVISION.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pide al despachador que envíe los correos listos.
+     */
+    public void despertar() {
+        if (drenajeSolicitado.compareAndSet(false, true)) {
+            despachador.execute(this::drenar);
+        }
+    }
+
+    /**
+     * Profundidad de la bandeja y envíos desde el arranque.
+     */
+    public EstadoBandeja estado() {
+        return new EstadoBandeja(
+                notificacionEnviadaRepository.countByEstadoAndCanal(
+                        NotificacionEnviada.EstadoNotificacion.PENDIENTE, NotificacionEnviada.CanalNotificacion.EMAIL),
+                notificacionEnviadaRepository.countByEstadoAndCanalAndProximoIntentoIsNotNull(
+                        NotificacionEnviada.EstadoNotificacion.FALLIDA, NotificacionEnviada.CanalNotificacion.EMAIL),
+                enviados.get(), fallidos.get(), reintentosProgramados.get());
+    }
+
+    /**
+     * @param pendientes     Correos que aún no se han intentado.
+     * @param enReintento    Correos fallidos con un reintento programado.
+     * @param enviados       Enviados desde el arranque.
+     * @param fallidos       Fallidos sin más reintentos desde el arranque.
+     * @param reintentos     Reintentos programados desde el arranque.
+     */
+    public record EstadoBandeja(long pendientes, long enReintento, long enviados, long fallidos, long reintentos) {
+    }
+
+    @PreDestroy
+    public void detener() {
+        despachador.shutdownNow();
+        envios.shutdownNow();
+    }
+
+    private void drenar() {
+        drenajeSolicitado.set(false);
+        try {
+            List<NotificacionEnviada> lote;
+            while (!(lote = reclamarLote()).isEmpty()) {
+                long inicio = System.nanoTime();
+                enviarLote(lote);
+                long ms = (System.nanoTime() - inicio) / 1_000_000;
+                log.info("Bandeja de salida: lote de {} correo(s) procesado en {} ms ({}/s).",
+                        lote.size(), ms, ms > 0 ? lote.size() * 1000 / ms : lote.size());
+            }
+        } catch (Exception e) {
+            log.error("Error en la bandeja de salida de correos: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Toma un lote listo para enviar y lo reserva: mientras dure la reserva nadie más lo toma.
+     */
+    private List<NotificacionEnviada> reclamarLote() {
+        // El fin de la reserva va en cada correo (proximoIntento) y enviarGrupo lo usa como límite
+        return transactionTemplate.execute(tx -> {
+            LocalDateTime ahora = LocalDateTime.now();
+            List<NotificacionEnviada> lote = notificacionEnviadaRepository.findNotificacionesPendientesReintento(
+                    NotificacionEnviada.CanalNotificacion.EMAIL.name(), ahora, TAMANO_LOTE);
+            LocalDateTime finReserva = ahora.plus(RESERVA_ENVIO);
+            lote.forEach(n -> n.setProximoIntento(finReserva)); // se guarda al hacer commit
+            return lote;
+        });
+    }
+
+    /**
+     * Envía un lote agrupando los correos idénticos y deja cada correo en su nuevo estado.
+     */
+    private void enviarLote(List<NotificacionEnviada> lote) throws InterruptedException {
+        Map<ClaveContenido, List<NotificacionEnviada>> grupos = new LinkedHashMap<>();
+        for (NotificacionEnviada correo : lote) {
+            grupos.computeIfAbsent(new ClaveContenido(correo.getAsunto(), correo.getContenido()), k -> new ArrayList<>())
+                    .add(correo);
+        }
+        List<Future<?>> resultados = new ArrayList<>();
+        for (List<NotificacionEnviada> grupo : grupos.values()) {
+            for (int i = 0; i < grupo.size(); i += MAX_VERSIONES_POR_ENVIO) {
+                List<NotificacionEnviada> parte = grupo.subList(i, Math.min(i + MAX_VERSIONES_POR_ENVIO, grupo.size()));
+                resultados.add(envios.submit(() -> enviarGrupo(parte)));
+            }
+        }
+        for (Future<?> resultado : resultados) {
+            try {
+                resultado.get();
+            } catch (ExecutionException e) {
+                // Los correos de ese grupo conservan su reserva y se retoman cuando venza
+                log.error("Error inesperado enviando correos: {}", e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    // Corre en un hilo virtual; actualiza y guarda el estado de los correos del grupo
+    private void enviarGrupo(List<NotificacionEnviada> grupo) {
+        NotificacionEnviada primero = grupo.get(0);
+        LocalDateTime finReserva = primero.getProximoIntento();
+        SendSmtpEmail correo = new SendSmtpEmail()
+                .sender(remitente)
+                .subject(primero.getAsunto())
+                .textContent(primero.getContenido()); // texto plano, como siempre
+        if (grupo.size() == 1) {
+            correo.setTo(List.of(new SendSmtpEmailTo().email(primero.getDestinatario())));
+        } else {
+            // Una versión por destinatario: nadie ve la dirección de los demás
+            for (NotificacionEnviada n : grupo) {
+                correo.addMessageVersionsItem(new SendSmtpEmailMessageVersions()
+                        .to(List.of(new SendSmtpEmailTo1().email(n.getDestinatario()))));
+            }
+        }
+        try {
+            if (!transporte.enviarAntesDe(correo, finReserva)) {
+                log.warn("Correo \"{}\" sin turno antes de que venza su reserva; se retomará después.", primero.getAsunto());
+                return; // sin guardar: conserva la reserva y se toma de nuevo cuando venza
+            }
+            for (NotificacionEnviada n : grupo) {
+                n.incrementarIntentos();
+                n.setEstado(NotificacionEnviada.EstadoNotificacion.ENVIADA);
+                n.setFechaEnvio(LocalDateTime.now());
+                n.setProximoIntento(null);
+                n.setMensajeError(null);
+                descartarContenidoSensible(n);
+            }
+            enviados.addAndGet(grupo.size());
+            log.info("✅ Correo \"{}\" enviado a {} destinatario(s) vía Brevo", primero.getAsunto(), grupo.size());
+        } catch (ApiException e) {
+            boolean transitorio = e.getCode() == 0 || e.getCode() == 429 || e.getCode() >= 500;
+            registrarFallo(grupo, "HTTP " + e.getCode() + ": " + e.getMessage(), transitorio);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            registrarFallo(grupo, "Envío interrumpido", true);
+        } catch (Exception e) {
+            registrarFallo(grupo, e.getMessage(), true);
+        }
+        notificacionEnviadaRepository.saveAll(grupo);
+    }
+
+    private void registrarFallo(List<NotificacionEnviada> grupo, String error, boolean transitorio) {
+        String mensaje = error != null && error.length() > 500 ? error.substring(0, 500) : error;
+        for (NotificacionEnviada n : grupo) {
+            n.incrementarIntentos();
+            n.setEstado(NotificacionEnviada.EstadoNotificacion.FALLIDA);
+            n.setMensajeError(mensaje);
+            if (transitorio && n.getIntentos() < MAX_INTENTOS) {
+                n.setProximoIntento(LocalDateTime.now().plus(esperaTrasIntentos(n.getIntentos())));
+                reintentosProgramados.incrementAndGet();
+            } else {
+                n.setProximoIntento(null); // sin más reintentos
+                descartarContenidoSensible(n);
+                fallidos.incrementAndGet();
+            }
+        }
+        log.error("❌ Error al enviar correo \"{}\" a {} destinatario(s){}: {}", grupo.get(0).getAsunto(), grupo.size(),
+                transitorio ? " (se reintentará)" : "", error);
+    }
+
+    // Solo se llama cuando el correo ya no se volverá a enviar
+    private static void descartarContenidoSensible(NotificacionEnviada n) {
+        if (n.getTipo() == NotificacionEnviada.TipoNotificacion.CODIGO_VERIFICACION) {
+            n.setContenido(null);
+        }
+    }
+
+    /**
+     * Espera antes del siguiente intento: se duplica con cada fallo, con un máximo.
+     */
+    static Duration esperaTrasIntentos(int intentos) {
+        long minutos = ESPERA_INICIAL.toMinutes() << Math.min(Math.max(intentos - 1, 0), 20);
+        return minutos >= ESPERA_MAXIMA.toMinutes() ? ESPERA_MAXIMA : Duration.ofMinutes(minutos);
+    }
+
+    private record ClaveContenido(String asunto, String contenido) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+/**
+ * Bus de eventos hacia las vistas abiertas de cada usuario.
+ * Con una sola instancia basta {@link BusEventosLocal}; con varias instancias detrás de un
+ * balanceador, {@link BusEventosBaseDatos} hace llegar el mensaje a la instancia que tenga
+ * abierta la vista del usuario. Se elige con {@code app.eventos.bus} ({@code local} o {@code base-datos}).
+ * Por el mismo camino viajan los cambios que invalidan datos en memoria de cada instancia.
+ */
+public interface BusEventos {
+
+    /**
+     * Publica un mensaje para las vistas del usuario. Si hay una transacción activa,
+     * el mensaje solo se entrega si la transacción hace commit.
+     */
+    void publicar(Long usuarioId, String mensaje);
+
+    /**
+     * Avisa a todas las instancias, esta incluida, de un cambio en datos que guardan en memoria:
+     * cada una lo recibe como {@link CambioCompartido} en sus {@code @EventListener}. Como
+     * {@link #publicar}, solo si la transacción activa hace commit; en las demás instancias llega
+     * con la siguiente lectura del bus.
+     */
+    void publicarCambio(String tema, String detalle);
+}
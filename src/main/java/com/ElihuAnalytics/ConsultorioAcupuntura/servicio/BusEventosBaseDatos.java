@@ -0,0 +1,143 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.EventoBus;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.EventoBusRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Broadcaster;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Transacciones;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bus de eventos entre instancias sobre una tabla de solo inserción ({@code evento_bus}).
+ *
+ * Publicar inserta el evento en la transacción actual y, tras el commit, lo entrega de inmediato a
+ * las vistas de esta instancia. Cada instancia lee los eventos nuevos cada {@code app.eventos.intervalo}
+ * desde su propio cursor y entrega los publicados por las demás. H2 no tiene LISTEN/NOTIFY, así que
+ * se consulta periódicamente; la consulta usa la clave primaria y no cuesta nada si no hay eventos.
+ * Los cambios de datos en memoria ({@link #publicarCambio}) se guardan igual, con tema y sin usuario.
+ */
+@Component
+@ConditionalOnProperty(name = "app.eventos.bus", havingValue = "base-datos")
+public class BusEventosBaseDatos implements BusEventos {
+
+    private static final Logger log = LoggerFactory.getLogger(BusEventosBaseDatos.class);
+
+    private static final int TAMANO_LOTE = 500;
+    // Los id se asignan al insertar pero se ven al hacer commit: se relee un margen hacia atrás
+    // para no saltarse eventos de transacciones que terminaron en desorden
+    private static final long MARGEN_IDS = 200;
+    private static final Duration RETENCION = Duration.ofHours(1);
+    private static final Duration INTERVALO_DEPURACION = Duration.ofMinutes(10);
+
+    private final EventoBusRepository eventoBusRepository;
+    private final ApplicationEventPublisher publicador;
+    private final Duration intervalo;
+    private final String nodo = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService lector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "bus-eventos");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    // Solo los usa el hilo lector
+    private long cursor;
+    private final TreeSet<Long> vistos = new TreeSet<>();
+
+    public BusEventosBaseDatos(EventoBusRepository eventoBusRepository, ApplicationEventPublisher publicador,
+                               @Value("${app.eventos.intervalo:1s}") Duration intervalo) {
+        this.eventoBusRepository = eventoBusRepository;
+        this.publicador = publicador;
+        this.intervalo = intervalo;
+    }
+
+    @Override
+    public void publicar(Long usuarioId, String mensaje) {
+        eventoBusRepository.save(new EventoBus(usuarioId, mensaje, nodo));
+        Transacciones.despuesDelCommit(() -> Broadcaster.broadcast(usuarioId, mensaje));
+    }
+
+    @Override
+    public void publicarCambio(String tema, String detalle) {
+        eventoBusRepository.save(EventoBus.cambio(tema, detalle, nodo));
+        Transacciones.despuesDelCommit(() -> publicador.publishEvent(new CambioCompartido(tema, detalle)));
+    }
+
+    /**
+     * Empieza a leer desde el último evento existente (los anteriores ya no tienen a quién llegar).
+     * Los que ya se ven dentro del margen de relectura cuentan como vistos: sin esto la primera
+     * lectura volvería a mostrar en las vistas los últimos avisos de los demás nodos.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        cursor = eventoBusRepository.findUltimoId();
+        eventoBusRepository.findByIdGreaterThanOrderByIdAsc(Math.max(0, cursor - MARGEN_IDS),
+                        PageRequest.of(0, (int) MARGEN_IDS)).stream()
+                .map(EventoBus::getId)
+                .filter(id -> id <= cursor) // uno posterior al cursor es nuevo y se entrega
+                .forEach(vistos::add);
+        lector.scheduleWithFixedDelay(this::leerNuevos, intervalo.toMillis(), intervalo.toMillis(), TimeUnit.MILLISECONDS);
+        lector.scheduleWithFixedDelay(this::depurar, 0, INTERVALO_DEPURACION.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Bus de eventos en base de datos iniciado (nodo {}, desde el evento {}).", nodo, cursor);
+    }
+
+    @PreDestroy
+    public void detener() {
+        lector.shutdownNow();
+    }
+
+    private void leerNuevos() {
+        try {
+            List<EventoBus> eventos;
+            do {
+                eventos = eventoBusRepository.findByIdGreaterThanOrderByIdAsc(
+                        Math.max(0, cursor - MARGEN_IDS), PageRequest.of(0, TAMANO_LOTE));
+                for (EventoBus evento : eventos) {
+                    if (!vistos.add(evento.getId())) {
+                        continue;
+                    }
+                    cursor = Math.max(cursor, evento.getId());
+                    if (nodo.equals(evento.getNodoOrigen())) {
+                        continue;
+                    }
+                    if (evento.getTema() != null) {
+                        String detalle = evento.getMensaje().isEmpty() ? null : evento.getMensaje();
+                        publicador.publishEvent(new CambioCompartido(evento.getTema(), detalle));
+                    } else {
+                        Broadcaster.broadcast(evento.getUsuarioId(), evento.getMensaje());
+                    }
+                }
+                vistos.headSet(cursor - MARGEN_IDS).clear();
+            } while (eventos.size() == TAMANO_LOTE); // cada lote lleno avanza el cursor al menos TAMANO_LOTE - MARGEN_IDS
+        } catch (Exception e) {
+            log.warn("Error leyendo el bus de eventos: {}", e.getMessage());
+        }
+    }
+
+    private void depurar() {
+        try {
+            int eliminados = eventoBusRepository.eliminarAnterioresA(LocalDateTime.now().minus(RETENCION));
+            if (eliminados > 0) {
+                log.debug("{} eventos antiguos eliminados del bus.", eliminados);
+            }
+        } catch (Exception e) {
+            log.warn("Error depurando el bus de eventos: {}", e.getMessage());
+        }
+    }
+}
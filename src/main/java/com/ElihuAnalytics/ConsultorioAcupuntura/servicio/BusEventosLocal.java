@@ -0,0 +1,31 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Broadcaster;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Transacciones;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bus de eventos dentro del proceso: entrega directamente a las vistas de esta instancia.
+ */
+@Component
+@ConditionalOnProperty(name = "app.eventos.bus", havingValue = "local", matchIfMissing = true)
+public class BusEventosLocal implements BusEventos {
+
+    private final ApplicationEventPublisher publicador;
+
+    public BusEventosLocal(ApplicationEventPublisher publicador) {
+        this.publicador = publicador;
+    }
+
+    @Override
+    public void publicar(Long usuarioId, String mensaje) {
+        Transacciones.despuesDelCommit(() -> Broadcaster.broadcast(usuarioId, mensaje));
+    }
+
+    @Override
+    public void publicarCambio(String tema, String detalle) {
+        Transacciones.despuesDelCommit(() -> publicador.publishEvent(new CambioCompartido(tema, detalle)));
+    }
+}
@@ -0,0 +1,215 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ExcepcionHorario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.HorarioSemanal;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ExcepcionHorarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.HorarioSemanalRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calendario laboral del consultorio.
+ * La plantilla semanal y las excepciones (horarios especiales, bloqueos y vacaciones) se guardan
+ * en la base de datos y se compilan en una agenda inmutable indexada por fecha. Las consultas de
+ * disponibilidad solo leen esa agenda; se vuelve a compilar cuando cambia el horario, así el
+ * consultorio puede ajustar sus horas sin redesplegar. El cambio se publica en el
+ * {@link BusEventos}: todas las instancias recompilan la suya, no solo la que lo guardó.
+ */
+@Service
+public class CalendarioLaboral {
+
+    private static final Logger log = LoggerFactory.getLogger(CalendarioLaboral.class);
+
+    public static final String TEMA = "calendario";
+
+    private final HorarioSemanalRepository horarioSemanalRepository;
+    private final ExcepcionHorarioRepository excepcionHorarioRepository;
+    private final BusEventos busEventos;
+
+    private volatile AgendaCompilada agenda = new AgendaCompilada(new EnumMap<>(DayOfWeek.class), Map.of());
+
+    public CalendarioLaboral(HorarioSemanalRepository horarioSemanalRepository,
+                             ExcepcionHorarioRepository excepcionHorarioRepository,
+                             BusEventos busEventos) {
+        this.horarioSemanalRepository = horarioSemanalRepository;
+        this.excepcionHorarioRepository = excepcionHorarioRepository;
+        this.busEventos = busEventos;
+    }
+
+    /**
+     * Horario resuelto de una fecha (plantilla semanal + excepciones). No consulta la base de datos.
+     */
+    public HorarioDia horarioDe(LocalDate fecha) {
+        return agenda.horarioDe(fecha);
+    }
+
+    /**
+     * Vuelve a leer la plantilla y las excepciones vigentes y reemplaza la agenda compilada.
+     * Si aún no hay plantilla guardada se usa {@link HorarioSemanal#predeterminados()}.
+     */
+    @PostConstruct
+    public synchronized void recargar() {
+        List<HorarioSemanal> semana = horarioSemanalRepository.findAll();
+        if (semana.isEmpty()) {
+            log.info("No hay plantilla semanal guardada; se usa el horario predeterminado.");
+            semana = HorarioSemanal.predeterminados();
+        }
+        List<ExcepcionHorario> excepciones =
+                excepcionHorarioRepository.findByFechaFinGreaterThanEqualOrderByFechaInicioAsc(LocalDate.now());
+        agenda = compilar(semana, excepciones, LocalDate.now());
+        log.info("Calendario laboral compilado: {} días de la semana, {} excepciones vigentes, {} fechas con horario propio.",
+                agenda.semanal.size(), excepciones.size(), agenda.porFecha.size());
+    }
+
+    /**
+     * Recompila la agenda cuando esta instancia u otra cambia el horario.
+     */
+    @EventListener
+    public void alCambiar(CambioCompartido cambio) {
+        if (TEMA.equals(cambio.tema())) {
+            recargar();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<HorarioSemanal> obtenerPlantillaSemanal() {
+        return horarioSemanalRepository.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public List<ExcepcionHorario> obtenerExcepcionesVigentes() {
+        return excepcionHorarioRepository.findByFechaFinGreaterThanEqualOrderByFechaInicioAsc(LocalDate.now());
+    }
+
+    /**
+     * Cambia el horario de un día de la semana. Con horas nulas el día queda como no laborable.
+     */
+    @Transactional
+    public void guardarHorarioSemanal(DayOfWeek dia, LocalTime horaInicio, LocalTime horaFin) {
+        if (dia == null) { throw new IllegalArgumentException("Día de la semana nulo"); }
+        if ((horaInicio == null) != (horaFin == null) || (horaInicio != null && !horaInicio.isBefore(horaFin))) {
+            throw new IllegalArgumentException("Horario inválido para " + dia + ": " + horaInicio + " - " + horaFin);
+        }
+        HorarioSemanal horario = horarioSemanalRepository.findByDiaSemana(dia)
+                .orElseGet(() -> new HorarioSemanal(dia, null, null));
+        horario.setHoraInicio(horaInicio);
+        horario.setHoraFin(horaFin);
+        horarioSemanalRepository.save(horario);
+        log.info("Horario semanal actualizado: {}", horario);
+        busEventos.publicarCambio(TEMA, null);
+    }
+
+    @Transactional
+    public ExcepcionHorario guardarExcepcion(ExcepcionHorario excepcion) {
+        validar(excepcion);
+        ExcepcionHorario guardada = excepcionHorarioRepository.save(excepcion);
+        log.info("Excepción de horario guardada: {}", guardada);
+        busEventos.publicarCambio(TEMA, null);
+        return guardada;
+    }
+
+    @Transactional
+    public void eliminarExcepcion(Long id) {
+        if (id == null) { throw new IllegalArgumentException("ID nulo"); }
+        excepcionHorarioRepository.deleteById(id);
+        log.info("Excepción de horario ID {} eliminada.", id);
+        busEventos.publicarCambio(TEMA, null);
+    }
+
+    private static void validar(ExcepcionHorario excepcion) {
+        if (excepcion == null || excepcion.getTipo() == null
+                || excepcion.getFechaInicio() == null || excepcion.getFechaFin() == null) {
+            throw new IllegalArgumentException("Excepción de horario incompleta");
+        }
+        if (excepcion.getFechaFin().isBefore(excepcion.getFechaInicio())) {
+            throw new IllegalArgumentException("La fecha final es anterior a la inicial");
+        }
+        LocalTime inicio = excepcion.getHoraInicio();
+        LocalTime fin = excepcion.getHoraFin();
+        boolean conHoras = inicio != null && fin != null;
+        if ((inicio == null) != (fin == null) || (conHoras && !inicio.isBefore(fin))) {
+            throw new IllegalArgumentException("Rango de horas inválido: " + inicio + " - " + fin);
+        }
+        if (excepcion.getTipo() == ExcepcionHorario.TipoExcepcion.HORARIO_ESPECIAL && !conHoras) {
+            throw new IllegalArgumentException("Un horario especial requiere hora de inicio y fin");
+        }
+    }
+
+    /**
+     * Compila la plantilla y las excepciones en una agenda inmutable. Prioridad por fecha:
+     * vacaciones sobre horario especial sobre plantilla semanal; los bloqueos se suman encima.
+     * Las fechas anteriores a {@code hoy} se ignoran.
+     */
+    static AgendaCompilada compilar(List<HorarioSemanal> semana, List<ExcepcionHorario> excepciones, LocalDate hoy) {
+        EnumMap<DayOfWeek, HorarioDia> semanal = new EnumMap<>(DayOfWeek.class);
+        for (HorarioSemanal h : semana) {
+            semanal.put(h.getDiaSemana(), h.esLaborable()
+                    ? new HorarioDia(h.getHoraInicio(), h.getHoraFin(), 0L)
+                    : HorarioDia.NO_LABORABLE);
+        }
+        AgendaCompilada base = new AgendaCompilada(semanal, Map.of());
+
+        Map<LocalDate, HorarioDia> porFecha = new HashMap<>();
+        for (ExcepcionHorario.TipoExcepcion tipo : ExcepcionHorario.TipoExcepcion.values()) {
+            for (ExcepcionHorario e : excepciones) {
+                if (e.getTipo() != tipo) {
+                    continue;
+                }
+                LocalDate desde = e.getFechaInicio().isBefore(hoy) ? hoy : e.getFechaInicio();
+                for (LocalDate d = desde; !d.isAfter(e.getFechaFin()); d = d.plusDays(1)) {
+                    HorarioDia actual = porFecha.getOrDefault(d, base.horarioDe(d));
+                    porFecha.put(d, aplicar(e, actual));
+                }
+            }
+        }
+        return new AgendaCompilada(semanal, Map.copyOf(porFecha));
+    }
+
+    private static HorarioDia aplicar(ExcepcionHorario e, HorarioDia actual) {
+        return switch (e.getTipo()) {
+            case VACACIONES -> HorarioDia.NO_LABORABLE;
+            case HORARIO_ESPECIAL -> new HorarioDia(e.getHoraInicio(), e.getHoraFin(), actual.getBloqueos());
+            case BLOQUEO -> {
+                if (!actual.esLaborable() || e.getHoraInicio() == null) {
+                    yield HorarioDia.NO_LABORABLE;
+                }
+                long mascara = IndiceDisponibilidad.mascaraFranjas(
+                        e.getHoraInicio().toSecondOfDay() / 60, e.getHoraFin().toSecondOfDay() / 60);
+                yield new HorarioDia(actual.getInicio(), actual.getFin(), actual.getBloqueos() | mascara);
+            }
+        };
+    }
+
+    /**
+     * Agenda compilada: horario por día de la semana más las fechas con excepciones ya resueltas.
+     */
+    static final class AgendaCompilada {
+        private final EnumMap<DayOfWeek, HorarioDia> semanal;
+        private final Map<LocalDate, HorarioDia> porFecha;
+
+        AgendaCompilada(EnumMap<DayOfWeek, HorarioDia> semanal, Map<LocalDate, HorarioDia> porFecha) {
+            this.semanal = semanal;
+            this.porFecha = porFecha;
+        }
+
+        HorarioDia horarioDe(LocalDate fecha) {
+            HorarioDia propio = porFecha.get(fecha);
+            if (propio != null) {
+                return propio;
+            }
+            return semanal.getOrDefault(fecha.getDayOfWeek(), HorarioDia.NO_LABORABLE);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+/**
+ * Cambio en datos que cada instancia guarda en memoria (índice de disponibilidad, calendario
+ * laboral). {@link BusEventos#publicarCambio} lo entrega como evento de Spring en todas las
+ * instancias, incluida la que lo publicó.
+ *
+ * @param tema    Qué datos cambiaron (p. ej. {@link IndiceDisponibilidad#TEMA}).
+ * @param detalle Qué parte cambió (p. ej. la fecha), o null si cambió todo.
+ */
+public record CambioCompartido(String tema, String detalle) {
+}
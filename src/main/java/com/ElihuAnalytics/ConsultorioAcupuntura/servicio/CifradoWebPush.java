@@ -0,0 +1,191 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPrivateKeySpec;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Cifrado del contenido de un mensaje Web Push (RFC 8291, codificación aes128gcm de RFC 8188)
+ * con las primitivas del JDK: ECDH sobre P-256, HKDF-SHA256 y AES-128-GCM.
+ */
+final class CifradoWebPush {
+
+    static final ECParameterSpec P256;
+    // Un solo registro: el servicio de push no acepta cuerpos de más de 4096 bytes
+    static final int TAMANO_REGISTRO = 4096;
+    private static final int LARGO_CABECERA = 16 + 4 + 1 + 65; // sal, tamaño de registro, largo y clave pública
+    static final int MAX_CONTENIDO = TAMANO_REGISTRO - LARGO_CABECERA - 16 - 1; // menos etiqueta GCM y delimitador
+
+    private static final SecureRandom aleatorio = new SecureRandom();
+
+    static {
+        try {
+            AlgorithmParameters parametros = AlgorithmParameters.getInstance("EC");
+            parametros.init(new ECGenParameterSpec("secp256r1"));
+            P256 = parametros.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Curva P-256 no disponible", e);
+        }
+    }
+
+    private CifradoWebPush() {
+    }
+
+    /**
+     * Cifra el contenido para un navegador.
+     *
+     * @param contenido Texto claro (a lo sumo {@value #MAX_CONTENIDO} bytes).
+     * @param p256dh    Clave pública del navegador (punto sin comprimir, 65 bytes).
+     * @param auth      Secreto de autenticación del navegador (16 bytes).
+     * @return Cuerpo de la petición, listo para enviarse con {@code Content-Encoding: aes128gcm}.
+     */
+    static byte[] cifrar(byte[] contenido, byte[] p256dh, byte[] auth) {
+        if (contenido.length > MAX_CONTENIDO) {
+            throw new IllegalArgumentException("Contenido push demasiado largo: " + contenido.length + " bytes");
+        }
+        try {
+            ECPublicKey receptor = clavePublica(p256dh);
+            KeyPair efimero = generarPar();
+            byte[] publicaEfimera = sinComprimir((ECPublicKey) efimero.getPublic());
+
+            KeyAgreement acuerdo = KeyAgreement.getInstance("ECDH");
+            acuerdo.init(efimero.getPrivate());
+            acuerdo.doPhase(receptor, true);
+            byte[] secretoCompartido = acuerdo.generateSecret();
+
+            // IKM = HKDF(auth, secreto, "WebPush: info" || 0 || clave del navegador || clave efímera, 32)
+            byte[] ikm = hkdf(auth, secretoCompartido,
+                    concatenar(ascii("WebPush: info\0"), p256dh, publicaEfimera), 32);
+            byte[] sal = new byte[16];
+            aleatorio.nextBytes(sal);
+            byte[] cek = hkdf(sal, ikm, ascii("Content-Encoding: aes128gcm\0"), 16);
+            byte[] nonce = hkdf(sal, ikm, ascii("Content-Encoding: nonce\0"), 12);
+
+            Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+            aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cek, "AES"), new GCMParameterSpec(128, nonce));
+            byte[] cifrado = aes.doFinal(concatenar(contenido, new byte[]{2})); // 2 = último registro
+
+            return ByteBuffer.allocate(LARGO_CABECERA + cifrado.length)
+                    .put(sal)
+                    .putInt(TAMANO_REGISTRO)
+                    .put((byte) publicaEfimera.length)
+                    .put(publicaEfimera)
+                    .put(cifrado)
+                    .array();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo cifrar el mensaje push", e);
+        }
+    }
+
+    static KeyPair generarPar() {
+        try {
+            KeyPairGenerator generador = KeyPairGenerator.getInstance("EC");
+            generador.initialize(P256, aleatorio);
+            return generador.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo generar un par de claves P-256", e);
+        }
+    }
+
+    /**
+     * Reconstruye una clave pública P-256 a partir del punto sin comprimir (0x04 || X || Y).
+     */
+    static ECPublicKey clavePublica(byte[] punto) {
+        if (punto.length != 65 || punto[0] != 4) {
+            throw new IllegalArgumentException("Clave pública P-256 inválida");
+        }
+        ECPoint w = new ECPoint(new BigInteger(1, Arrays.copyOfRange(punto, 1, 33)),
+                new BigInteger(1, Arrays.copyOfRange(punto, 33, 65)));
+        try {
+            return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(w, P256));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Clave pública P-256 inválida", e);
+        }
+    }
+
+    /**
+     * Reconstruye una clave privada P-256 a partir del escalar de 32 bytes.
+     */
+    static ECPrivateKey clavePrivada(byte[] escalar) {
+        try {
+            return (ECPrivateKey) KeyFactory.getInstance("EC")
+                    .generatePrivate(new ECPrivateKeySpec(new BigInteger(1, escalar), P256));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Clave privada P-256 inválida", e);
+        }
+    }
+
+    static byte[] sinComprimir(ECPublicKey clave) {
+        byte[] punto = new byte[65];
+        punto[0] = 4;
+        enteroFijo(clave.getW().getAffineX(), punto, 1);
+        enteroFijo(clave.getW().getAffineY(), punto, 33);
+        return punto;
+    }
+
+    static byte[] escalar(ECPrivateKey clave) {
+        byte[] escalar = new byte[32];
+        enteroFijo(clave.getS(), escalar, 0);
+        return escalar;
+    }
+
+    static String base64Url(byte[] datos) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(datos);
+    }
+
+    // Acepta base64url con o sin relleno (los navegadores lo envían sin él)
+    static byte[] desdeBase64Url(String texto) {
+        return Base64.getUrlDecoder().decode(texto.trim().replace("=", ""));
+    }
+
+    // HKDF-SHA256 de un solo bloque (largo <= 32): extraer y expandir
+    static byte[] hkdf(byte[] sal, byte[] ikm, byte[] info, int largo) throws GeneralSecurityException {
+        byte[] prk = hmac(sal, ikm);
+        return Arrays.copyOf(hmac(prk, concatenar(info, new byte[]{1})), largo);
+    }
+
+    private static byte[] hmac(byte[] clave, byte[] datos) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(clave, "HmacSHA256"));
+        return mac.doFinal(datos);
+    }
+
+    private static void enteroFijo(BigInteger valor, byte[] destino, int desde) {
+        byte[] bytes = valor.toByteArray(); // puede traer un 0 de signo o venir más corto
+        int largo = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - largo, destino, desde + 32 - largo, largo);
+    }
+
+    private static byte[] ascii(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concatenar(byte[]... partes) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        for (byte[] parte : partes) {
+            salida.writeBytes(parte);
+        }
+        return salida.toByteArray();
+    }
+}
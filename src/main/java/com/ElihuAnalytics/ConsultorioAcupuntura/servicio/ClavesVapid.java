@@ -0,0 +1,105 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identificación del servidor ante los servicios de push (VAPID, RFC 8292).
+ * Cada petición lleva un JWT ES256 firmado con la clave privada; el navegador solo acepta
+ * mensajes firmados con la clave pública que se usó al suscribirse.
+ *
+ * Las claves se configuran en base64url ({@code app.push.vapid.publica}: punto sin comprimir,
+ * {@code app.push.vapid.privada}: escalar de 32 bytes). Si faltan se generan al arrancar, y las
+ * suscripciones dejan de valer en el siguiente reinicio.
+ */
+@Component
+public class ClavesVapid {
+
+    private static final Logger log = LoggerFactory.getLogger(ClavesVapid.class);
+
+    private static final Duration VIGENCIA_FIRMA = Duration.ofHours(12); // el máximo admitido es 24 h
+    private static final Duration RENOVAR_ANTES = Duration.ofHours(1);
+
+    private final ECPublicKey clavePublica;
+    private final ECPrivateKey clavePrivada;
+    private final String clavePublicaTexto;
+    private final String sujeto;
+
+    // Origen del servicio de push -> firma vigente (se reutiliza en todos los envíos a ese origen)
+    private final Map<String, FirmaVapid> firmas = new ConcurrentHashMap<>();
+
+    public ClavesVapid(@Value("${app.push.vapid.publica:}") String publica,
+                       @Value("${app.push.vapid.privada:}") String privada,
+                       @Value("${app.push.vapid.sujeto:mailto:rafael.antonio.diaz@gmail.com}") String sujeto) {
+        if (publica.isBlank() || privada.isBlank()) {
+            log.warn("Sin claves VAPID configuradas (app.push.vapid.*): se usan claves temporales " +
+                    "y las suscripciones push dejarán de valer al reiniciar.");
+            KeyPair par = CifradoWebPush.generarPar();
+            this.clavePublica = (ECPublicKey) par.getPublic();
+            this.clavePrivada = (ECPrivateKey) par.getPrivate();
+        } else {
+            this.clavePublica = CifradoWebPush.clavePublica(CifradoWebPush.desdeBase64Url(publica));
+            this.clavePrivada = CifradoWebPush.clavePrivada(CifradoWebPush.desdeBase64Url(privada));
+        }
+        this.clavePublicaTexto = CifradoWebPush.base64Url(CifradoWebPush.sinComprimir(clavePublica));
+        this.sujeto = sujeto;
+    }
+
+    /**
+     * Clave pública en base64url, la que el navegador recibe como {@code applicationServerKey}.
+     */
+    public String getClavePublica() {
+        return clavePublicaTexto;
+    }
+
+    /**
+     * Valor de la cabecera {@code Authorization} para un envío al endpoint dado.
+     */
+    public String autorizacion(String endpoint) {
+        URI uri = URI.create(endpoint);
+        String audiencia = uri.getScheme() + "://" + uri.getRawAuthority();
+        Instant ahora = Instant.now();
+        FirmaVapid firma = firmas.compute(audiencia, (aud, actual) ->
+                actual != null && actual.vence().minus(RENOVAR_ANTES).isAfter(ahora)
+                        ? actual
+                        : firmar(aud, ahora.plus(VIGENCIA_FIRMA)));
+        return "vapid t=" + firma.jwt() + ", k=" + clavePublicaTexto;
+    }
+
+    private FirmaVapid firmar(String audiencia, Instant vence) {
+        String cabecera = base64Url("{\"typ\":\"JWT\",\"alg\":\"ES256\"}");
+        String reclamos = base64Url("{\"aud\":\"" + audiencia + "\",\"exp\":" + vence.getEpochSecond()
+                + ",\"sub\":\"" + sujeto + "\"}");
+        String firmado = cabecera + "." + reclamos;
+        try {
+            // JWS exige la firma como R || S (64 bytes), no en DER
+            Signature ecdsa = Signature.getInstance("SHA256withECDSAinP1363Format");
+            ecdsa.initSign(clavePrivada);
+            ecdsa.update(firmado.getBytes(StandardCharsets.US_ASCII));
+            return new FirmaVapid(firmado + "." + CifradoWebPush.base64Url(ecdsa.sign()), vence);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar el JWT de VAPID", e);
+        }
+    }
+
+    private static String base64Url(String json) {
+        return CifradoWebPush.base64Url(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private record FirmaVapid(String jwt, Instant vence) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Resumen de la disponibilidad de un día para el calendario de agendamiento.
+ * Incluye las horas libres y la capacidad del día (horas que se ofrecerían sin ninguna cita),
+ * lo que permite sombrear días llenos, parciales o libres sin más consultas.
+ */
+public class DisponibilidadDia {
+
+    private final LocalDate fecha;
+    private final List<LocalTime> horasLibres;
+    private final int capacidad;
+
+    public DisponibilidadDia(LocalDate fecha, List<LocalTime> horasLibres, int capacidad) {
+        this.fecha = fecha;
+        this.horasLibres = List.copyOf(horasLibres);
+        this.capacidad = capacidad;
+    }
+
+    public LocalDate getFecha() {
+        return fecha;
+    }
+
+    public List<LocalTime> getHorasLibres() {
+        return horasLibres;
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /** Día no agendable: pasado, domingo, festivo o sin horario laboral. */
+    public boolean esNoLaborable() {
+        return capacidad == 0;
+    }
+
+    /** Día laborable sin ninguna hora libre. */
+    public boolean estaLleno() {
+        return capacidad > 0 && horasLibres.isEmpty();
+    }
+
+    /** Día laborable con algunas horas ocupadas y otras libres. */
+    public boolean esParcial() {
+        return !horasLibres.isEmpty() && horasLibres.size() < capacidad;
+    }
+
+    /** Día laborable sin ninguna cita. */
+    public boolean estaLibre() {
+        return capacidad > 0 && horasLibres.size() == capacidad;
+    }
+
+    @Override
+    public String toString() {
+        return "DisponibilidadDia{" +
+                "fecha=" + fecha +
+                ", horasLibres=" + horasLibres.size() +
+                ", capacidad=" + capacidad +
+                '}';
+    }
+}
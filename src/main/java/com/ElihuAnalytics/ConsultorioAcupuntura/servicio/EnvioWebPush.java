@@ -0,0 +1,385 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.SuscripcionPush;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SuscripcionPushRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Transacciones;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entrega de notificaciones Web Push (VAPID) a los navegadores suscritos de un usuario.
+ * A diferencia del {@link BusEventos}, no necesita una vista abierta: el service worker
+ * ({@code sw.js}) muestra la notificación aunque la aplicación esté cerrada.
+ *
+ * Los avisos entran a una cola acotada después del commit y un despachador los reparte entre las
+ * suscripciones del usuario. A cada endpoint se le envía como máximo un mensaje por intervalo
+ * ({@code app.push.intervalo-por-destino}); los que llegan antes esperan su turno y un 429/503 del
+ * servicio de push aplaza el endpoint lo que indique {@code Retry-After}. Los mensajes que esperan
+ * turno tienen el mismo límite que la cola ({@code app.push.capacidad-cola}), y el envío lo hace un
+ * hilo virtual: ni el despachador ni el temporizador esperan a que haya un envío libre. Si la cola
+ * o la espera se llenan, el aviso se descarta: el correo y la vista abierta siguen siendo los
+ * canales confiables.
+ *
+ * Solo se aceptan (y solo se contactan) endpoints de los servicios de push de los navegadores
+ * ({@code app.push.servicios}: FCM, Mozilla, Apple y WNS, con sus subdominios). La URL la entrega
+ * el navegador de un usuario cualquiera: sin esta lista el servidor haría POST a la dirección que
+ * se le indique, incluidas las de la red interna.
+ */
+@Service
+public class EnvioWebPush {
+
+    private static final Logger log = LoggerFactory.getLogger(EnvioWebPush.class);
+
+    private static final int MAX_INTENTOS = 3;
+    private static final Duration ESPERA_SIN_RETRY_AFTER = Duration.ofMinutes(1);
+    private static final Duration INTERVALO_DEPURACION = Duration.ofMinutes(10);
+    private static final int MAX_CUERPO = 1000; // caracteres; el mensaje cifrado cabe de sobra en 4 KB
+    private static final ObjectMapper json = new ObjectMapper();
+
+    /**
+     * Contenido que el service worker muestra como notificación.
+     *
+     * @param titulo   Título de la notificación.
+     * @param cuerpo   Texto.
+     * @param sesionId Cita relacionada (para las acciones), o null.
+     * @param acciones Acciones del service worker ({@code confirmar}, {@code cancelar}...).
+     * @param token    Token de la API con que el service worker ejecuta las acciones, o null.
+     */
+    public record AvisoPush(String titulo, String cuerpo, Long sesionId, List<String> acciones, String token) {
+
+        public AvisoPush(String titulo, String cuerpo, Long sesionId, List<String> acciones) {
+            this(titulo, cuerpo, sesionId, acciones, null);
+        }
+    }
+
+    private record Pendiente(Long usuarioId, byte[] contenido) {
+    }
+
+    private record Entrega(String endpoint, byte[] p256dh, byte[] auth, byte[] contenido, int intento) {
+        Entrega siguienteIntento() {
+            return new Entrega(endpoint, p256dh, auth, contenido, intento + 1);
+        }
+    }
+
+    private final SuscripcionPushRepository suscripcionPushRepository;
+    private final ClavesVapid clavesVapid;
+    private final BlockingQueue<Pendiente> cola;
+    private final long intervaloPorDestinoNs;
+    private final Duration ttl;
+    private final Semaphore enviosSimultaneos;
+    private final List<String> servicios;
+    // Mensajes ya repartidos a un endpoint que aún no se envían (esperan turno o un envío libre)
+    private final int capacidadEspera;
+    private final Semaphore plazasEnEspera;
+    private final HttpClient http;
+
+    // Endpoint -> instante (System.nanoTime) a partir del cual se le puede enviar el siguiente mensaje
+    private final Map<String, Long> siguienteTurno = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService temporizador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "web-push-turnos");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final Thread despachador;
+    private final ExecutorService envios = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Contadores desde el arranque (diagnóstico)
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+
+    public EnvioWebPush(SuscripcionPushRepository suscripcionPushRepository,
+                        ClavesVapid clavesVapid,
+                        @Value("${app.push.capacidad-cola:1000}") int capacidadCola,
+                        @Value("${app.push.intervalo-por-destino:2s}") Duration intervaloPorDestino,
+                        @Value("${app.push.envios-simultaneos:8}") int enviosSimultaneos,
+                        @Value("${app.push.ttl:12h}") Duration ttl,
+                        @Value("${app.push.servicios:fcm.googleapis.com,push.services.mozilla.com,push.apple.com,notify.windows.com}")
+                        List<String> servicios) {
+        this.suscripcionPushRepository = suscripcionPushRepository;
+        this.clavesVapid = clavesVapid;
+        this.cola = new ArrayBlockingQueue<>(capacidadCola);
+        this.intervaloPorDestinoNs = intervaloPorDestino.toNanos();
+        this.ttl = ttl;
+        this.enviosSimultaneos = new Semaphore(enviosSimultaneos);
+        this.servicios = List.copyOf(servicios);
+        this.capacidadEspera = capacidadCola;
+        this.plazasEnEspera = new Semaphore(capacidadCola);
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.despachador = Thread.ofPlatform().name("web-push").daemon().unstarted(this::despachar);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        despachador.start();
+        temporizador.scheduleWithFixedDelay(this::depurarTurnos,
+                INTERVALO_DEPURACION.toMillis(), INTERVALO_DEPURACION.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void detener() {
+        despachador.interrupt();
+        temporizador.shutdownNow();
+        envios.shutdownNow();
+    }
+
+    /**
+     * Envía el aviso a todos los navegadores suscritos del usuario, después del commit de la
+     * transacción activa. No bloquea.
+     */
+    public void enviar(Long usuarioId, AvisoPush aviso) {
+        byte[] contenido = serializar(aviso);
+        Transacciones.despuesDelCommit(() -> {
+            if (!cola.offer(new Pendiente(usuarioId, contenido))) {
+                descartados.incrementAndGet();
+                log.warn("Cola de Web Push llena; se descarta el aviso para el usuario {}", usuarioId);
+            }
+        });
+    }
+
+    /**
+     * Guarda (o actualiza) la suscripción del navegador para el usuario.
+     */
+    @Transactional
+    public void suscribir(Long usuarioId, String endpoint, String p256dh, String auth) {
+        validarSuscripcion(endpoint, p256dh, auth);
+        SuscripcionPush suscripcion = suscripcionPushRepository.findByEndpoint(endpoint)
+                .orElseGet(() -> new SuscripcionPush(usuarioId, endpoint, p256dh, auth));
+        // El mismo navegador puede pasar a otro usuario (cierre de sesión y nuevo ingreso)
+        suscripcion.setUsuarioId(usuarioId);
+        suscripcion.setP256dh(p256dh);
+        suscripcion.setAuth(auth);
+        suscripcionPushRepository.save(suscripcion);
+    }
+
+    public void desuscribir(Long usuarioId, String endpoint) {
+        suscripcionPushRepository.eliminarDelUsuario(usuarioId, endpoint);
+    }
+
+    /**
+     * Avisos en cola, mensajes esperando turno y envíos desde el arranque.
+     */
+    public EstadoEnvioPush estado() {
+        return new EstadoEnvioPush(cola.size(), capacidadEspera - plazasEnEspera.availablePermits(),
+                enviados.get(), fallidos.get(), descartados.get());
+    }
+
+    public record EstadoEnvioPush(int enCola, int esperandoTurno, long enviados, long fallidos, long descartados) {
+    }
+
+    private void despachar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Pendiente pendiente = cola.take();
+                for (SuscripcionPush suscripcion : suscripcionPushRepository.findByUsuarioId(pendiente.usuarioId())) {
+                    if (!esServicioDePush(suscripcion.getEndpoint())) {
+                        // Guardada antes de que existiera la lista: no se contacta
+                        log.warn("Suscripción Web Push a un servicio no permitido, se omite: {}", origen(suscripcion.getEndpoint()));
+                        continue;
+                    }
+                    programar(new Entrega(suscripcion.getEndpoint(),
+                            CifradoWebPush.desdeBase64Url(suscripcion.getP256dh()),
+                            CifradoWebPush.desdeBase64Url(suscripcion.getAuth()),
+                            pendiente.contenido(), 1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error repartiendo un aviso Web Push: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    // Reserva el siguiente turno libre del endpoint y envía entonces, en un hilo virtual. Sin plaza
+    // de espera el mensaje se descarta antes de reservar el turno.
+    private void programar(Entrega entrega) {
+        if (!plazasEnEspera.tryAcquire()) {
+            descartados.incrementAndGet();
+            log.warn("Demasiados Web Push esperando turno; se descarta el mensaje a {}", origen(entrega.endpoint()));
+            return;
+        }
+        Runnable envio = () -> envios.execute(() -> {
+            try {
+                transmitir(entrega);
+            } finally {
+                plazasEnEspera.release();
+            }
+        });
+        long ahora = System.nanoTime();
+        long turno = siguienteTurno.merge(entrega.endpoint(), ahora + intervaloPorDestinoNs,
+                (previo, nuevo) -> Math.max(previo, ahora) + intervaloPorDestinoNs) - intervaloPorDestinoNs;
+        long espera = turno - ahora;
+        if (espera <= 0) {
+            envio.run();
+        } else {
+            temporizador.schedule(envio, espera, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void transmitir(Entrega entrega) {
+        HttpRequest peticion;
+        try {
+            peticion = HttpRequest.newBuilder(URI.create(entrega.endpoint()))
+                    .timeout(Duration.ofSeconds(15))
+                    .header("Authorization", clavesVapid.autorizacion(entrega.endpoint()))
+                    .header("Content-Encoding", "aes128gcm")
+                    .header("Content-Type", "application/octet-stream")
+                    .header("TTL", Long.toString(ttl.toSeconds()))
+                    .header("Urgency", "high")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(
+                            CifradoWebPush.cifrar(entrega.contenido(), entrega.p256dh(), entrega.auth())))
+                    .build();
+            enviosSimultaneos.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            fallidos.incrementAndGet();
+            log.warn("No se pudo preparar el envío Web Push a {}: {}", origen(entrega.endpoint()), e.getMessage());
+            return;
+        }
+        http.sendAsync(peticion, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((respuesta, error) -> {
+                    enviosSimultaneos.release();
+                    if (error != null) {
+                        reintentar(entrega, ESPERA_SIN_RETRY_AFTER, error.getMessage());
+                    } else {
+                        procesarRespuesta(entrega, respuesta);
+                    }
+                });
+    }
+
+    private void procesarRespuesta(Entrega entrega, HttpResponse<Void> respuesta) {
+        int codigo = respuesta.statusCode();
+        if (codigo >= 200 && codigo < 300) {
+            enviados.incrementAndGet();
+        } else if (codigo == 404 || codigo == 410) {
+            // Suscripción vencida o retirada por el usuario: no se vuelve a intentar
+            suscripcionPushRepository.eliminarPorEndpoint(entrega.endpoint());
+            log.info("Suscripción Web Push eliminada (HTTP {}): {}", codigo, origen(entrega.endpoint()));
+        } else if (codigo == 429 || codigo >= 500) {
+            reintentar(entrega, retryAfter(respuesta), "HTTP " + codigo);
+        } else {
+            fallidos.incrementAndGet();
+            log.warn("El servicio de push {} rechazó el mensaje: HTTP {}", origen(entrega.endpoint()), codigo);
+        }
+    }
+
+    // Aplaza el endpoint (todos sus mensajes, no solo este) y vuelve a poner el mensaje en turno
+    private void reintentar(Entrega entrega, Duration espera, String motivo) {
+        if (entrega.intento() >= MAX_INTENTOS) {
+            fallidos.incrementAndGet();
+            log.warn("Web Push a {} fallido tras {} intentos: {}", origen(entrega.endpoint()), entrega.intento(), motivo);
+            return;
+        }
+        long hasta = System.nanoTime() + espera.toNanos();
+        siguienteTurno.merge(entrega.endpoint(), hasta, Math::max);
+        log.debug("Web Push a {} aplazado {} s: {}", origen(entrega.endpoint()), espera.toSeconds(), motivo);
+        programar(entrega.siguienteIntento());
+    }
+
+    // Olvida los endpoints que ya no tienen mensajes en espera
+    private void depurarTurnos() {
+        long ahora = System.nanoTime();
+        siguienteTurno.values().removeIf(turno -> turno - ahora < 0);
+    }
+
+    private static Duration retryAfter(HttpResponse<?> respuesta) {
+        return respuesta.headers().firstValue("Retry-After")
+                .map(valor -> {
+                    try {
+                        return Duration.ofSeconds(Long.parseLong(valor.trim()));
+                    } catch (NumberFormatException e) {
+                        return ESPERA_SIN_RETRY_AFTER; // formato de fecha HTTP: se usa la espera por defecto
+                    }
+                })
+                .orElse(ESPERA_SIN_RETRY_AFTER);
+    }
+
+    private static byte[] serializar(AvisoPush aviso) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("titulo", aviso.titulo());
+        String cuerpo = aviso.cuerpo();
+        datos.put("cuerpo", cuerpo != null && cuerpo.length() > MAX_CUERPO ? cuerpo.substring(0, MAX_CUERPO) + "…" : cuerpo);
+        datos.put("sesionId", aviso.sesionId());
+        datos.put("acciones", aviso.acciones() != null ? aviso.acciones() : List.of());
+        if (aviso.token() != null) {
+            datos.put("token", aviso.token());
+        }
+        try {
+            return json.writeValueAsString(datos).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el aviso push", e);
+        }
+    }
+
+    private void validarSuscripcion(String endpoint, String p256dh, String auth) {
+        if (endpoint == null || !endpoint.startsWith("https://") || endpoint.length() > 1000) {
+            throw new IllegalArgumentException("Endpoint de push inválido");
+        }
+        if (!esServicioDePush(endpoint)) {
+            throw new IllegalArgumentException("El endpoint no es de un servicio de push conocido");
+        }
+        if (p256dh == null || auth == null) {
+            throw new IllegalArgumentException("Faltan las claves de la suscripción push");
+        }
+        CifradoWebPush.clavePublica(CifradoWebPush.desdeBase64Url(p256dh));
+        if (CifradoWebPush.desdeBase64Url(auth).length != 16) {
+            throw new IllegalArgumentException("Secreto de autenticación push inválido");
+        }
+    }
+
+    // El host es uno de los servicios permitidos o un subdominio suyo
+    private boolean esServicioDePush(String endpoint) {
+        String host;
+        try {
+            URI uri = URI.create(endpoint);
+            host = uri.getHost();
+            if (host == null || uri.getRawUserInfo() != null) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String nombre = host.toLowerCase(Locale.ROOT);
+        return servicios.stream().anyMatch(servicio -> nombre.equals(servicio) || nombre.endsWith("." + servicio));
+    }
+
+    // Para los logs: el endpoint completo identifica al navegador
+    private static String origen(String endpoint) {
+        URI uri = URI.create(endpoint);
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+}
@@ -1,82 +1,506 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
 
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ArchivoAlmacenado;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ArchivoAlmacenadoRepository;
+import jakarta.annotation.PreDestroy;
 import net.coobird.thumbnailator.Thumbnails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.Arrays;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Servicio para gestionar el almacenamiento de archivos en el sistema de archivos.
  * Los archivos se guardan en el volumen de Railway configurado en app.upload.dir.
+ *
+ * El nombre de cada archivo es el SHA-256 de los bytes subidos: un nombre siempre corresponde al
+ * mismo contenido, así que se sirven como inmutables (ver FileController, solo con sesión), y el mismo
+ * archivo subido varias veces se guarda una sola vez. {@link ArchivoAlmacenado} cuenta las
+ * referencias (cada {@link #save} suma una, cada {@link #delete} quita una) y el archivo se borra
+ * con la última.
+ *
+ * Las imágenes no se reducen durante la subida: {@link #save} copia los bytes a
+ * {@value #DIRECTORIO_PENDIENTES}/ y vuelve enseguida, y un grupo fijo de hilos
+ * ({@code app.imagenes.hilos}) genera la versión de 1024 px y las reducidas de
+ * {@link VersionesImagen} y las pone en sus nombres definitivos. Lo subido queda como original en
+ * {@value #DIRECTORIO_ORIGINALES}/, que no se sirve (conserva los metadatos EXIF de la cámara).
+ * Hasta entonces esos nombres no existen; {@link #procesado} avisa cuando están listos. Lo que
+ * quede pendiente al detenerse la aplicación se procesa al arrancar.
+ *
+ * La memoria no depende del tamaño de lo subido: {@link #save} copia a disco con un búfer fijo y
+ * corta la copia si se pasa del máximo de multipart o si los primeros bytes no son del tipo que
+ * dice la extensión ({@link TipoArchivo}). Una imagen de más de {@code app.imagenes.max-megapixeles}
+ * se rechaza leyendo solo su cabecera, y las decodificaciones en curso comparten ese mismo
+ * presupuesto de megapíxeles (unos 4 bytes de heap por píxel): una foto enorme espera a que
+ * terminen las demás en lugar de sumarse a ellas.
  */
 @Service
 public class FileStorageService {
 
     private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
 
-    @Value("${app.upload.dir:/volumes/uploads/}")
-    private String uploadDir;
-    // Lista de extensiones que SÍ vamos a comprimir
-    private static final List<String> EXTENSIONES_IMAGEN = Arrays.asList(".jpg", ".jpeg", ".png", ".webp");
-    public FileStorageService() {
-        // Constructor vacío para inyección de dependencias
+    public static final String DIRECTORIO_PENDIENTES = "pendientes";
+    public static final String DIRECTORIO_ORIGINALES = "originales";
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    private static final CompletableFuture<Void> LISTO = CompletableFuture.completedFuture(null);
+
+    private final String uploadDir;
+    private final long maxBytes;
+    private final int maxMegapixeles;
+    // Megapíxeles que se pueden estar decodificando a la vez
+    private final Semaphore decodificando;
+    // Megapíxeles decodificándose ahora y el máximo que se llegó a tener a la vez
+    private final AtomicInteger megapixelesEnUso = new AtomicInteger();
+    private final AtomicInteger picoMegapixeles = new AtomicInteger();
+    private final ArchivoAlmacenadoRepository archivoAlmacenadoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService procesadores;
+    // Imágenes en cola o en proceso, por nombre de archivo
+    private final Map<String, CompletableFuture<Void>> enProceso = new ConcurrentHashMap<>();
+
+    public FileStorageService(@Value("${app.upload.dir:/volumes/uploads/}") String uploadDir,
+                              @Value("${app.imagenes.hilos:2}") int hilos,
+                              @Value("${spring.servlet.multipart.max-file-size:50MB}") String maxTamano,
+                              @Value("${app.imagenes.max-megapixeles:50}") int maxMegapixeles,
+                              ArchivoAlmacenadoRepository archivoAlmacenadoRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.uploadDir = uploadDir;
+        // El mismo límite de multipart, también para los flujos que no pasan por él (UploadHandler)
+        this.maxBytes = DataSize.parse(maxTamano).toBytes();
+        this.maxMegapixeles = maxMegapixeles;
+        this.decodificando = new Semaphore(maxMegapixeles);
+        this.archivoAlmacenadoRepository = archivoAlmacenadoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger contador = new AtomicInteger();
+        this.procesadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "procesar-imagen-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
     }
 
     /**
-     * Comprime y guarda un archivo en el sistema de archivos y devuelve su ruta web relativa.
+     * Guarda un archivo en el sistema de archivos y devuelve su ruta web relativa.
+     * Si ya existía un archivo con el mismo contenido, no se escribe otro: se suma una referencia.
+     * Las imágenes se comprimen después, en segundo plano: ver {@link #procesado}.
      *
      * @param inputStream Flujo de entrada del archivo a guardar
      * @param originalName Nombre original del archivo (se usa para extraer la extensión)
-     * @return Ruta web relativa para acceder al archivo (ej: /pacientes-Uploads/abc-123.jpg)
+     * @return Ruta web relativa para acceder al archivo (ej: /pacientes-Uploads/9f86d0...0a08.jpg)
+     * @throws ArchivoRechazadoException si el tipo no es admitido o no coincide con el contenido, si
+     *         supera el tamaño máximo o si es una imagen de demasiados píxeles
      * @throws IOException si ocurre un error al crear directorios o guardar el archivo
      */
     public String save(InputStream inputStream, String originalName) throws IOException {
         String extension = "";
         try {
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
+            Path pendientes = Paths.get(uploadDir, DIRECTORIO_PENDIENTES);
+            if (!Files.exists(pendientes)) {
+                Files.createDirectories(pendientes);
             }
 
             if (originalName != null && originalName.contains(".")) {
                 extension = originalName.substring(originalName.lastIndexOf(".")).toLowerCase();
             }
-            String fileName = UUID.randomUUID().toString() + extension;
-            Path filePath = uploadPath.resolve(fileName);
-
-            if (EXTENSIONES_IMAGEN.contains(extension)) {
-                log.info("Comprimiendo imagen: {}", originalName);
-                Thumbnails.of(inputStream)
-                        .size(1024, 1024)
-                        .outputQuality(0.80)
-                        .toFile(filePath.toFile());
-            } else {
-                Files.copy(inputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
+            TipoArchivo tipo = TipoArchivo.deExtension(extension)
+                    .orElseThrow(() -> new ArchivoRechazadoException("Tipo de archivo no permitido: " + originalName));
+            boolean imagen = VersionesImagen.esImagen(extension);
+            if (Files.getFileStore(pendientes).getUsableSpace() < maxBytes) {
+                throw new IOException("No queda espacio en disco para recibir " + originalName);
             }
 
-            String webPath = "/pacientes-Uploads/" + fileName;
-            log.info("Archivo guardado (Optimizado): {}", webPath);
-            return webPath;
+            // Copia directa a un temporal, calculando el hash de paso (el nombre depende del contenido)
+            Path temporal = Files.createTempFile(pendientes, "subida-", extension);
+            try {
+                MessageDigest sha256 = sha256();
+                try (OutputStream salida = new DigestOutputStream(Files.newOutputStream(temporal), sha256)) {
+                    copiar(inputStream, salida, tipo, originalName);
+                }
+                if (imagen) {
+                    Optional<Dimension> tamano = dimensiones(temporal);
+                    if (tamano.isPresent() && pixeles(tamano.get()) > maxMegapixeles * 1_000_000L) {
+                        throw new ArchivoRechazadoException(String.format(
+                                "La imagen %s es demasiado grande (%d x %d px; máximo %d megapíxeles)",
+                                originalName, tamano.get().width, tamano.get().height, maxMegapixeles));
+                    }
+                }
 
+                String fileName = HexFormat.of().formatHex(sha256.digest()) + extension;
+                boolean nuevo = registrarReferencia(fileName, temporal, imagen);
+                if (nuevo && imagen) {
+                    encolar(fileName);
+                }
+
+                String webPath = "/pacientes-Uploads/" + fileName;
+                log.info("Archivo guardado{}: {}", nuevo ? (imagen ? " (se optimizará)" : "") : " (ya existía)", webPath);
+                return webPath;
+            } finally {
+                Files.deleteIfExists(temporal);
+            }
+
+        } catch (ArchivoRechazadoException ex) {
+            log.warn("Archivo rechazado: {}", ex.getMessage());
+            throw ex;
         } catch (IOException ex) {
             log.error("Error guardando archivo originalName={} extension={} uploadDir={}",
                     originalName, extension, uploadDir, ex);
             throw ex;
         }
     }
+
+    // Copia con un búfer fijo. Se corta en cuanto se pasa del máximo o la cabecera no es del tipo
+    // esperado, sin esperar a que termine de llegar el archivo.
+    private void copiar(InputStream entrada, OutputStream salida, TipoArchivo tipo, String originalName)
+            throws IOException {
+        byte[] buffer = new byte[TAMANO_BUFFER];
+        byte[] cabecera = new byte[TipoArchivo.BYTES_CABECERA];
+        int enCabecera = 0;
+        long total = 0;
+        int leidos;
+        while ((leidos = entrada.read(buffer)) != -1) {
+            if (enCabecera < cabecera.length) {
+                int n = Math.min(leidos, cabecera.length - enCabecera);
+                System.arraycopy(buffer, 0, cabecera, enCabecera, n);
+                enCabecera += n;
+                if (enCabecera == cabecera.length) {
+                    verificarTipo(tipo, cabecera, enCabecera, originalName);
+                }
+            }
+            total += leidos;
+            if (total > maxBytes) {
+                throw new ArchivoRechazadoException("El archivo " + originalName + " supera el máximo de "
+                        + DataSize.ofBytes(maxBytes).toMegabytes() + " MB");
+            }
+            salida.write(buffer, 0, leidos);
+        }
+        if (enCabecera < cabecera.length) {
+            verificarTipo(tipo, cabecera, enCabecera, originalName);
+        }
+    }
+
+    private static void verificarTipo(TipoArchivo tipo, byte[] cabecera, int longitud, String originalName)
+            throws ArchivoRechazadoException {
+        if (!tipo.firma(cabecera, longitud)) {
+            throw new ArchivoRechazadoException("El contenido de " + originalName + " no es " + tipo);
+        }
+    }
+
+    // Ancho y alto según la cabecera, sin decodificar la imagen. Vacío si ImageIO no reconoce el
+    // formato (WebP) o la cabecera está dañada: esas no se pueden decodificar y se publican tal cual.
+    private static Optional<Dimension> dimensiones(Path imagen) {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(imagen.toFile())) {
+            Iterator<ImageReader> lectores = entrada == null ? Collections.emptyIterator() : ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                return Optional.of(new Dimension(lector.getWidth(0), lector.getHeight(0)));
+            } finally {
+                lector.dispose();
+            }
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static long pixeles(Dimension tamano) {
+        return (long) tamano.width * tamano.height;
+    }
+
+    /**
+     * Subida que no se guarda por su contenido (tipo, tamaño o dimensiones), no por un fallo de disco.
+     */
+    public static class ArchivoRechazadoException extends IOException {
+        public ArchivoRechazadoException(String mensaje) {
+            super(mensaje);
+        }
+    }
+
+    /**
+     * Se completa cuando el archivo de la ruta ya se puede servir: enseguida, salvo para una
+     * imagen recién subida que aún se está optimizando. Si esa imagen no se pudo procesar se
+     * completa con error: su nombre no existe (queda pendiente hasta el próximo arranque).
+     *
+     * @param webPath Ruta devuelta por {@link #save}
+     */
+    public CompletableFuture<Void> procesado(String webPath) {
+        if (webPath == null || webPath.isBlank()) {
+            return LISTO;
+        }
+        return enProceso.getOrDefault(nombreArchivo(webPath), LISTO);
+    }
+
+    /**
+     * Al arrancar optimiza las imágenes que quedaron pendientes (la aplicación se detuvo antes) y
+     * aparta las originales que se guardaron junto a las versiones públicas.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reanudarPendientes() {
+        apartarOriginales();
+        Path pendientes = Paths.get(uploadDir, DIRECTORIO_PENDIENTES);
+        if (!Files.isDirectory(pendientes)) {
+            return;
+        }
+        try (Stream<Path> archivos = Files.list(pendientes)) {
+            archivos.map(p -> p.getFileName().toString())
+                    .filter(nombre -> !nombre.startsWith("subida-"))
+                    .forEach(this::encolar);
+        } catch (IOException e) {
+            log.error("No se pudieron revisar las imágenes pendientes en {}", pendientes, e);
+        }
+    }
+
+    // Antes las originales quedaban en el directorio que se sirve: se mueven a originales/
+    private void apartarOriginales() {
+        Path directorio = Paths.get(uploadDir);
+        if (!Files.isDirectory(directorio)) {
+            return;
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            List<Path> originales = archivos
+                    .filter(p -> p.getFileName().toString().matches("[0-9a-f]{64}-original(\\.[a-z0-9]{1,10})?"))
+                    .toList();
+            if (!originales.isEmpty()) {
+                Files.createDirectories(directorio.resolve(DIRECTORIO_ORIGINALES));
+            }
+            for (Path original : originales) {
+                Files.move(original, directorio.resolve(DIRECTORIO_ORIGINALES).resolve(original.getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (!originales.isEmpty()) {
+                log.info("{} imagen(es) original(es) movidas a {}/", originales.size(), DIRECTORIO_ORIGINALES);
+            }
+        } catch (IOException e) {
+            log.error("No se pudieron apartar las imágenes originales de {}", directorio, e);
+        }
+    }
+
+    /**
+     * Máximo de megapíxeles que se llegaron a decodificar a la vez desde el arranque.
+     */
+    int picoMegapixelesDecodificando() {
+        return picoMegapixeles.get();
+    }
+
+    @PreDestroy
+    public void detener() {
+        procesadores.shutdownNow();
+    }
+
+    private void encolar(String fileName) {
+        CompletableFuture<Void> listo = new CompletableFuture<>();
+        if (enProceso.putIfAbsent(fileName, listo) == null) {
+            procesadores.execute(() -> {
+                boolean procesada = false;
+                try {
+                    procesada = procesar(fileName);
+                } finally {
+                    enProceso.remove(fileName);
+                    if (procesada) {
+                        listo.complete(null);
+                    } else {
+                        listo.completeExceptionally(new IOException("No se pudo procesar la imagen " + fileName));
+                    }
+                }
+            });
+        }
+    }
+
+    // Genera las versiones de la imagen pendiente y las pone en sus nombres definitivos, si aún
+    // tiene referencias; lo subido queda como original, fuera de lo que se sirve. Si no se puede leer como imagen, la vista
+    // es la original tal como se subió y no hay versiones reducidas. Devuelve false si queda pendiente.
+    private boolean procesar(String fileName) {
+        Path pendiente = Paths.get(uploadDir, DIRECTORIO_PENDIENTES, fileName);
+        List<Path> temporales = new ArrayList<>();
+        try {
+            Map<String, Path> versiones;
+            // Sin cabecera legible se reserva todo el presupuesto: no se sabe cuánto ocupará
+            int megapixeles = dimensiones(pendiente)
+                    .map(tamano -> Math.clamp((pixeles(tamano) + 999_999) / 1_000_000, 1, maxMegapixeles))
+                    .orElse(maxMegapixeles);
+            decodificando.acquire(megapixeles);
+            picoMegapixeles.accumulateAndGet(megapixelesEnUso.addAndGet(megapixeles), Math::max);
+            try {
+                versiones = generarVersiones(pendiente, fileName, temporales);
+            } catch (IOException | RuntimeException e) {
+                log.warn("No se pudo optimizar la imagen {}, se conserva la original: {}", fileName, e.getMessage());
+                Path copia = temporal(fileName, temporales);
+                Files.copy(pendiente, copia, StandardCopyOption.REPLACE_EXISTING);
+                versiones = Map.of(fileName, copia);
+            } finally {
+                megapixelesEnUso.addAndGet(-megapixeles);
+                decodificando.release(megapixeles);
+            }
+
+            Map<String, Path> listas = versiones;
+            transactionTemplate.executeWithoutResult(estado -> {
+                Optional<ArchivoAlmacenado> registrado = archivoAlmacenadoRepository.bloquear(fileName);
+                try {
+                    if (registrado.isPresent()) {
+                        registrado.get().setTamano(Files.size(listas.get(fileName)));
+                        for (Map.Entry<String, Path> version : listas.entrySet()) {
+                            Files.move(version.getValue(), Paths.get(uploadDir, version.getKey()),
+                                    StandardCopyOption.ATOMIC_MOVE);
+                        }
+                        // Lo último: sin archivo pendiente, todas las versiones están en su sitio
+                        Files.createDirectories(Paths.get(uploadDir, DIRECTORIO_ORIGINALES));
+                        Files.move(pendiente, Paths.get(uploadDir, DIRECTORIO_ORIGINALES, VersionesImagen.original(fileName)),
+                                StandardCopyOption.ATOMIC_MOVE);
+                    } else {
+                        Files.deleteIfExists(pendiente);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            log.info("Imagen optimizada: {}", fileName);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error procesando la imagen {} (queda pendiente hasta el próximo arranque)", fileName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Procesamiento de {} interrumpido, queda pendiente hasta el próximo arranque", fileName);
+        } finally {
+            for (Path temporal : temporales) {
+                try {
+                    Files.deleteIfExists(temporal);
+                } catch (IOException e) {
+                    log.warn("No se pudo borrar el temporal {}", temporal, e);
+                }
+            }
+        }
+        return false;
+    }
+
+    // Decodifica la imagen una vez: la vista sale del archivo (Thumbnailator respeta la orientación
+    // EXIF) y las reducidas de la vista. Una reducida más ancha que la vista es la vista misma
+    // re-codificada, para que siempre existan todas. Devuelve nombre definitivo -> temporal, con
+    // las reducidas antes que la vista.
+    private Map<String, Path> generarVersiones(Path pendiente, String fileName, List<Path> temporales)
+            throws IOException {
+        String formato = fileName.substring(fileName.lastIndexOf('.') + 1);
+        BufferedImage vista = Thumbnails.of(pendiente.toFile())
+                .size(VersionesImagen.ANCHO_VISTA, VersionesImagen.ANCHO_VISTA)
+                .asBufferedImage();
+        int lado = Math.max(vista.getWidth(), vista.getHeight());
+
+        Map<String, Path> versiones = new LinkedHashMap<>();
+        for (int ancho : VersionesImagen.ANCHOS_REDUCIDOS) {
+            String nombre = VersionesImagen.reducida(fileName, ancho);
+            Thumbnails.Builder<BufferedImage> reducida = lado > ancho
+                    ? Thumbnails.of(vista).size(ancho, ancho)
+                    : Thumbnails.of(vista).scale(1.0);
+            versiones.put(nombre, escribir(reducida, formato, temporal(fileName, temporales)));
+        }
+        versiones.put(fileName, escribir(Thumbnails.of(vista).scale(1.0), formato, temporal(fileName, temporales)));
+        return versiones;
+    }
+
+    private static Path escribir(Thumbnails.Builder<BufferedImage> imagen, String formato, Path destino)
+            throws IOException {
+        imagen.outputFormat(formato).outputQuality(0.80).toFile(destino.toFile());
+        return destino;
+    }
+
+    private Path temporal(String fileName, List<Path> temporales) throws IOException {
+        Path temporal = Files.createTempFile(Paths.get(uploadDir, DIRECTORIO_PENDIENTES), "subida-",
+                fileName.substring(fileName.lastIndexOf('.')));
+        temporales.add(temporal);
+        return temporal;
+    }
+
+    // Suma una referencia al archivo, o lo crea moviendo el temporal a su nombre definitivo (a
+    // pendientes si es una imagen). Dos subidas simultáneas del mismo archivo nuevo chocan en la
+    // clave primaria: la segunda reintenta y encuentra la fila de la primera. Devuelve true si el
+    // archivo es nuevo.
+    private boolean registrarReferencia(String fileName, Path temporal, boolean imagen) throws IOException {
+        try {
+            return registrarReferenciaEnTransaccion(fileName, temporal, imagen);
+        } catch (DataIntegrityViolationException e) {
+            return registrarReferenciaEnTransaccion(fileName, temporal, imagen);
+        }
+    }
+
+    private boolean registrarReferenciaEnTransaccion(String fileName, Path temporal, boolean imagen) throws IOException {
+        Path destino = Paths.get(uploadDir, fileName);
+        Path pendiente = Paths.get(uploadDir, DIRECTORIO_PENDIENTES, fileName);
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(estado -> {
+                Optional<ArchivoAlmacenado> existente = archivoAlmacenadoRepository.bloquear(fileName);
+                try {
+                    if (existente.isPresent()) {
+                        existente.get().sumarReferencia();
+                        if (Files.notExists(destino) && Files.notExists(pendiente)) {
+                            log.warn("Archivo registrado sin contenido en disco, se restaura: {}", destino);
+                            Files.move(temporal, imagen ? pendiente : destino, StandardCopyOption.ATOMIC_MOVE);
+                            return imagen; // la imagen restaurada también hay que procesarla
+                        }
+                        return false;
+                    }
+                    archivoAlmacenadoRepository.saveAndFlush(new ArchivoAlmacenado(fileName, Files.size(temporal)));
+                    // Mismo volumen: renombrar es atómico, nadie ve el archivo a medio escribir
+                    Files.move(temporal, imagen ? pendiente : destino, StandardCopyOption.ATOMIC_MOVE);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
     /**
-     * Elimina un archivo del sistema de archivos.
+     * Quita una referencia a un archivo y lo elimina del sistema de archivos si era la última.
+     * Los archivos guardados antes de los nombres por contenido no llevan cuenta y se eliminan directamente.
      *
      * @param webPath Ruta web del archivo (ej: /pacientes-Uploads/abc-123.jpg)
      */
@@ -87,35 +511,62 @@ public class FileStorageService {
         }
 
         try {
-            // Extraer solo el nombre del archivo de la ruta web
-            String fileName = webPath;
+            String fileName = nombreArchivo(webPath);
+            Path filePath = Paths.get(uploadDir, fileName);
+            // El archivo se borra con la fila bloqueada: una subida simultánea del mismo contenido
+            // espera y luego lo vuelve a crear, en lugar de quedarse con una referencia a nada
+            transactionTemplate.executeWithoutResult(estado -> {
+                Optional<ArchivoAlmacenado> registrado = archivoAlmacenadoRepository.bloquear(fileName);
+                if (registrado.isPresent() && registrado.get().restarReferencia() > 0) {
+                    log.info("Archivo conservado, aún tiene {} referencia(s): webPath={}",
+                            registrado.get().getReferencias(), webPath);
+                    return;
+                }
+                registrado.ifPresent(archivoAlmacenadoRepository::delete);
+                try {
+                    // Una imagen que aún no se procesó solo está en pendientes
+                    boolean deleted = Files.deleteIfExists(filePath)
+                            | Files.deleteIfExists(Paths.get(uploadDir, DIRECTORIO_PENDIENTES, fileName));
+                    if (VersionesImagen.esPorContenido(fileName)) {
+                        for (String derivada : VersionesImagen.derivadas(fileName)) {
+                            Files.deleteIfExists(Paths.get(uploadDir, derivada));
+                        }
+                        Files.deleteIfExists(Paths.get(uploadDir, DIRECTORIO_ORIGINALES, VersionesImagen.original(fileName)));
+                    }
 
-            // Si la ruta contiene /pacientes-Uploads/, extraer solo el nombre del archivo
-            if (fileName.contains("/pacientes-Uploads/")) {
-                fileName = fileName.substring(fileName.lastIndexOf("/pacientes-Uploads/") + "/pacientes-Uploads/".length());
-            } else if (fileName.contains("/uploads/")) {
-                fileName = fileName.substring(fileName.lastIndexOf("/uploads/") + "/uploads/".length());
-            } else if (fileName.startsWith("/")) {
-                // Si es una ruta que empieza con /, quitar el /
-                fileName = fileName.substring(fileName.lastIndexOf("/") + 1);
-            }
+                    if (deleted) {
+                        log.info("Archivo eliminado exitosamente: webPath={}, filePath={}", webPath, filePath.toAbsolutePath());
+                    } else {
+                        log.warn("Archivo no encontrado para eliminar: webPath={}, filePath={}", webPath, filePath.toAbsolutePath());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            log.error("Error al eliminar archivo: webPath={}, mensaje={}", webPath, ex.getCause().getMessage(), ex);
+        }
+    }
 
-            // Si contiene parámetros de query (?v=...), eliminarlos
-            if (fileName.contains("?")) {
-                fileName = fileName.substring(0, fileName.indexOf("?"));
-            }
+    // Extrae solo el nombre del archivo de la ruta web
+    private static String nombreArchivo(String webPath) {
+        String fileName = webPath;
 
-            Path filePath = Paths.get(uploadDir, fileName);
-            boolean deleted = Files.deleteIfExists(filePath);
+        // Si la ruta contiene /pacientes-Uploads/, extraer solo el nombre del archivo
+        if (fileName.contains("/pacientes-Uploads/")) {
+            fileName = fileName.substring(fileName.lastIndexOf("/pacientes-Uploads/") + "/pacientes-Uploads/".length());
+        } else if (fileName.contains("/uploads/")) {
+            fileName = fileName.substring(fileName.lastIndexOf("/uploads/") + "/uploads/".length());
+        } else if (fileName.startsWith("/")) {
+            // Si es una ruta que empieza con /, quitar el /
+            fileName = fileName.substring(fileName.lastIndexOf("/") + 1);
+        }
 
-            if (deleted) {
-                log.info("Archivo eliminado exitosamente: webPath={}, filePath={}", webPath, filePath.toAbsolutePath());
-            } else {
-                log.warn("Archivo no encontrado para eliminar: webPath={}, filePath={}", webPath, filePath.toAbsolutePath());
-            }
-        } catch (IOException ex) {
-            log.error("Error al eliminar archivo: webPath={}, mensaje={}", webPath, ex.getMessage(), ex);
+        // Si contiene parámetros de query (?v=...), eliminarlos
+        if (fileName.contains("?")) {
+            fileName = fileName.substring(0, fileName.indexOf("?"));
         }
+        return fileName;
     }
 
     /**
@@ -145,4 +596,4 @@ public class FileStorageService {
             return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,87 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Horario ya resuelto de un día concreto: hora de inicio, hora de fin y franjas bloqueadas
+ * (mismo mapa de bits de 30 minutos que usa {@link IndiceDisponibilidad}).
+ * Es inmutable; {@link CalendarioLaboral} lo construye una vez al compilar la agenda.
+ */
+public final class HorarioDia {
+
+    public static final HorarioDia NO_LABORABLE = new HorarioDia(null, null, 0L);
+
+    private final LocalTime inicio;
+    private final LocalTime fin;
+    private final long bloqueos;
+
+    HorarioDia(LocalTime inicio, LocalTime fin, long bloqueos) {
+        this.inicio = inicio;
+        this.fin = fin;
+        this.bloqueos = bloqueos;
+    }
+
+    public boolean esLaborable() {
+        return inicio != null && fin != null && inicio.isBefore(fin);
+    }
+
+    public LocalTime getInicio() {
+        return inicio;
+    }
+
+    public LocalTime getFin() {
+        return fin;
+    }
+
+    /** Franjas de 30 minutos bloqueadas ese día (bit encendido = bloqueada). */
+    public long getBloqueos() {
+        return bloqueos;
+    }
+
+    /**
+     * Indica si una sesión que empieza a {@code hora} y dura {@code duracion} cabe en el horario
+     * del día sin tocar franjas bloqueadas. Solo se admiten inicios en punto o y media: la
+     * reserva en base de datos ocupa franjas enteras de 30 minutos (ver ReservasHorario), y un
+     * inicio intermedio ocuparía una franja que otra sesión podría estar usando solo en parte.
+     */
+    public boolean admite(LocalTime hora, Duration duracion) {
+        if (!esLaborable() || hora.isBefore(inicio) || !enLaCuadricula(hora)) {
+            return false;
+        }
+        long finMin = hora.toSecondOfDay() / 60 + duracion.toMinutes();
+        return finMin <= fin.toSecondOfDay() / 60 && IndiceDisponibilidad.estaLibre(bloqueos, hora, duracion);
+    }
+
+    /**
+     * Horas de inicio candidatas del día, cada {@code paso} desde la primera franja que empieza
+     * dentro del horario, para sesiones de {@code duracion} que terminen a más tardar a la hora
+     * de cierre (sin descontar bloqueos ni sesiones).
+     */
+    public List<LocalTime> horasInicio(Duration duracion, Duration paso) {
+        List<LocalTime> horas = new ArrayList<>();
+        if (!esLaborable()) {
+            return horas;
+        }
+        long finMin = fin.toSecondOfDay() / 60;
+        long franja = IndiceDisponibilidad.MINUTOS_FRANJA;
+        long primera = (inicio.toSecondOfDay() / 60 + franja - 1) / franja * franja;
+        for (long min = primera; min + duracion.toMinutes() <= finMin; min += paso.toMinutes()) {
+            horas.add(LocalTime.ofSecondOfDay(min * 60));
+        }
+        return horas;
+    }
+
+    private static boolean enLaCuadricula(LocalTime hora) {
+        return hora.toSecondOfDay() % (IndiceDisponibilidad.MINUTOS_FRANJA * 60) == 0 && hora.getNano() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return esLaborable()
+                ? "HorarioDia{" + inicio + " - " + fin + (bloqueos != 0 ? ", con bloqueos" : "") + '}'
+                : "HorarioDia{no laborable}";
+    }
+}
@@ -1,5 +1,10 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
 
 public interface ICorreoService {
+
+    /**
+     * Deja el código para enviarlo en segundo plano. Que no lance excepción solo indica que quedó
+     * en la bandeja de salida: un fallo del proveedor se reintenta y no llega a quien llama.
+     */
     void enviarCodigo(String destino, String codigo);
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Índice en memoria de la ocupación de cada día de agenda.
+ * Cada día se guarda como un mapa de bits de 48 posiciones (una por cada franja de 30 minutos):
+ * un bit encendido indica que la franja está ocupada por una sesión o por el tiempo de
+ * desplazamiento que la rodea. Así, buscar horas libres es un recorrido de bits y la base
+ * de datos solo se consulta cuando el día no está en el índice.
+ *
+ * Cada instancia tiene su propio índice: las invalidaciones se publican en el {@link BusEventos}
+ * y llegan a todas. Con {@code app.eventos.bus=base-datos} otra instancia puede mostrar un día
+ * desactualizado hasta su siguiente lectura del bus ({@code app.eventos.intervalo}); reservar no
+ * depende del índice (ver ReservasHorario), así que eso nunca deja reservar una franja ocupada.
+ */
+@Component
+public class IndiceDisponibilidad {
+
+    private static final Logger log = LoggerFactory.getLogger(IndiceDisponibilidad.class);
+
+    public static final String TEMA = "disponibilidad";
+
+    static final int MINUTOS_FRANJA = 30;
+    static final int FRANJAS_POR_DIA = 24 * 60 / MINUTOS_FRANJA; // 48, cabe en un long
+
+    private final ConcurrentHashMap<LocalDate, Long> ocupacionPorDia = new ConcurrentHashMap<>();
+    // Se incrementa en cada invalidación; evita guardar un día que se leyó antes de un cambio
+    private final AtomicLong generacion = new AtomicLong();
+    private final BusEventos busEventos;
+
+    public IndiceDisponibilidad(BusEventos busEventos) {
+        this.busEventos = busEventos;
+    }
+
+    /**
+     * Devuelve el mapa de ocupación del día, calculándolo con el cargador si no está en el índice.
+     *
+     * @param fecha    Día a consultar.
+     * @param cargador Calcula la ocupación desde la base de datos (solo se usa en un fallo de caché).
+     * @return Mapa de bits de ocupación del día.
+     */
+    public long obtenerOcupacion(LocalDate fecha, Supplier<Long> cargador) {
+        Long ocupacion = ocupacionPorDia.get(fecha);
+        if (ocupacion != null) {
+            return ocupacion;
+        }
+        long generacionLectura = generacion.get();
+        long calculada = cargador.get();
+        if (generacion.get() == generacionLectura) {
+            descartarDiasPasados();
+            ocupacionPorDia.putIfAbsent(fecha, calculada);
+        } else {
+            log.debug("Ocupación de {} no se guarda en el índice: hubo cambios durante la carga.", fecha);
+        }
+        return calculada;
+    }
+
+    /**
+     * Devuelve la ocupación de todos los días de un rango. Si falta algún día en el índice,
+     * el rango completo se carga con una sola llamada al cargador y se guarda en el índice.
+     *
+     * @param desde    Primer día del rango (incluido).
+     * @param hasta    Último día del rango (incluido).
+     * @param cargador Calcula la ocupación de cada día del rango; los días sin sesiones pueden faltar.
+     * @return Ocupación por día para todos los días del rango.
+     */
+    public Map<LocalDate, Long> obtenerOcupacionRango(LocalDate desde, LocalDate hasta,
+                                                      Supplier<Map<LocalDate, Long>> cargador) {
+        Map<LocalDate, Long> resultado = new HashMap<>();
+        boolean completo = true;
+        for (LocalDate d = desde; !d.isAfter(hasta); d = d.plusDays(1)) {
+            Long ocupacion = ocupacionPorDia.get(d);
+            if (ocupacion == null) {
+                completo = false;
+                break;
+            }
+            resultado.put(d, ocupacion);
+        }
+        if (completo) {
+            return resultado;
+        }
+
+        long generacionLectura = generacion.get();
+        Map<LocalDate, Long> cargada = cargador.get();
+        resultado.clear();
+        for (LocalDate d = desde; !d.isAfter(hasta); d = d.plusDays(1)) {
+            resultado.put(d, cargada.getOrDefault(d, 0L));
+        }
+        if (generacion.get() == generacionLectura) {
+            descartarDiasPasados();
+            LocalDate hoy = LocalDate.now();
+            resultado.forEach((d, ocupacion) -> {
+                if (!d.isBefore(hoy)) {
+                    ocupacionPorDia.putIfAbsent(d, ocupacion);
+                }
+            });
+        } else {
+            log.debug("Ocupación de {} - {} no se guarda en el índice: hubo cambios durante la carga.", desde, hasta);
+        }
+        return resultado;
+    }
+
+    /**
+     * Invalida un día del índice en todas las instancias. Si hay una transacción activa, la
+     * invalidación se aplica después del commit para que ninguna lectura concurrente vuelva a
+     * cargar el estado anterior.
+     */
+    public void invalidar(LocalDate fecha) {
+        if (fecha == null) {
+            return;
+        }
+        busEventos.publicarCambio(TEMA, fecha.toString());
+    }
+
+    /**
+     * Vacía el índice completo en todas las instancias (p. ej. cuando no se conoce la fecha
+     * anterior de una sesión modificada).
+     */
+    public void invalidarTodo() {
+        busEventos.publicarCambio(TEMA, null);
+    }
+
+    /**
+     * Aplica una invalidación publicada por esta instancia o por otra.
+     */
+    @EventListener
+    public void alCambiar(CambioCompartido cambio) {
+        if (!TEMA.equals(cambio.tema())) {
+            return;
+        }
+        generacion.incrementAndGet();
+        if (cambio.detalle() == null) {
+            ocupacionPorDia.clear();
+            log.debug("Índice de disponibilidad vaciado.");
+        } else {
+            LocalDate fecha = LocalDate.parse(cambio.detalle());
+            ocupacionPorDia.remove(fecha);
+            log.trace("Día {} invalidado en el índice de disponibilidad.", fecha);
+        }
+    }
+
+    /**
+     * Construye el mapa de bits de ocupación de un día a partir de sus sesiones activas.
+     *
+     * @param fecha              Día a calcular.
+     * @param sesiones           Sesiones PROGRAMADA/CONFIRMADA de ese día.
+     * @param duracionPredet     Duración a usar cuando la sesión no la tiene.
+     * @param tiempoDesplazamiento Margen que se bloquea antes y después de cada sesión.
+     * @return Mapa de bits con las franjas ocupadas.
+     */
+    public static long calcularOcupacion(LocalDate fecha, List<Sesion> sesiones,
+                                         Duration duracionPredet, Duration tiempoDesplazamiento) {
+        LocalDateTime inicioDia = fecha.atStartOfDay();
+        long[] ocupacion = {0L};
+        IntervalosOcupados.desdeSesiones(sesiones, duracionPredet, tiempoDesplazamiento, null)
+                .paraCadaIntervalo((inicio, fin) -> ocupacion[0] |= mascaraFranjas(
+                        Duration.between(inicioDia, inicio).toMinutes(),
+                        Duration.between(inicioDia, fin).toMinutes()));
+        return ocupacion[0];
+    }
+
+    /**
+     * Indica si un intervalo que empieza en {@code hora} y dura {@code duracion} cae solo sobre franjas libres.
+     */
+    public static boolean estaLibre(long ocupacion, LocalTime hora, Duration duracion) {
+        long inicioMin = hora.toSecondOfDay() / 60;
+        return (ocupacion & mascaraFranjas(inicioMin, inicioMin + duracion.toMinutes())) == 0;
+    }
+
+    // Bits de las franjas que se cruzan con [inicioMin, finMin), recortado al día
+    static long mascaraFranjas(long inicioMin, long finMin) {
+        long desde = Math.max(0, inicioMin) / MINUTOS_FRANJA;
+        long hasta = (Math.min(FRANJAS_POR_DIA * MINUTOS_FRANJA, finMin) + MINUTOS_FRANJA - 1) / MINUTOS_FRANJA;
+        if (hasta <= desde) {
+            return 0L;
+        }
+        long bits = (hasta - desde) >= 64 ? -1L : (1L << (hasta - desde)) - 1;
+        return bits << desde;
+    }
+
+    private void descartarDiasPasados() {
+        LocalDate hoy = LocalDate.now();
+        ocupacionPorDia.keySet().removeIf(d -> d.isBefore(hoy));
+    }
+}
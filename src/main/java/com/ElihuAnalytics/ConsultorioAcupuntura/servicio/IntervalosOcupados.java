@@ -0,0 +1,139 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Conjunto inmutable de intervalos ocupados de la agenda.
+ * Las sesiones se ordenan una sola vez y sus rangos ocupados (duración + tiempo de desplazamiento
+ * antes y después) se fusionan en intervalos disjuntos. Con eso:
+ * - {@link #estaLibre} responde si [inicio, fin) está libre con una búsqueda binaria, O(log n).
+ * - {@link #horasInicioLibres} recorre los intervalos una sola vez (barrido) para listar
+ *   todas las horas de inicio libres de una duración dada.
+ */
+public final class IntervalosOcupados {
+
+    // Segundos "locales" (sin zona) de inicio y fin de cada intervalo fusionado, ordenados
+    private final long[] inicios;
+    private final long[] fines;
+
+    private IntervalosOcupados(long[] inicios, long[] fines) {
+        this.inicios = inicios;
+        this.fines = fines;
+    }
+
+    /**
+     * Construye los intervalos ocupados a partir de sesiones activas.
+     *
+     * @param sesiones             Sesiones PROGRAMADA/CONFIRMADA a considerar.
+     * @param duracionPredet       Duración a usar cuando la sesión no la tiene.
+     * @param tiempoDesplazamiento Margen que se bloquea antes y después de cada sesión.
+     * @param excludeId            ID de una sesión a ignorar (p. ej. la que se reprograma), o null.
+     */
+    public static IntervalosOcupados desdeSesiones(Collection<Sesion> sesiones, Duration duracionPredet,
+                                                   Duration tiempoDesplazamiento, Long excludeId) {
+        long[][] rangos = new long[sesiones.size()][];
+        int n = 0;
+        for (Sesion sesion : sesiones) {
+            if (excludeId != null && excludeId.equals(sesion.getId())) {
+                continue;
+            }
+            Duration duracion = sesion.getDuracion() != null ? sesion.getDuracion() : duracionPredet;
+            rangos[n++] = new long[]{
+                    segundos(sesion.getFecha().minus(tiempoDesplazamiento)),
+                    segundos(sesion.getFecha().plus(duracion).plus(tiempoDesplazamiento))
+            };
+        }
+        Arrays.sort(rangos, 0, n, (a, b) -> Long.compare(a[0], b[0]));
+
+        long[] inicios = new long[n];
+        long[] fines = new long[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m > 0 && rangos[i][0] <= fines[m - 1]) {
+                fines[m - 1] = Math.max(fines[m - 1], rangos[i][1]);
+            } else {
+                inicios[m] = rangos[i][0];
+                fines[m] = rangos[i][1];
+                m++;
+            }
+        }
+        return new IntervalosOcupados(Arrays.copyOf(inicios, m), Arrays.copyOf(fines, m));
+    }
+
+    /**
+     * Indica si el intervalo [inicio, fin) no se cruza con ningún intervalo ocupado.
+     */
+    public boolean estaLibre(LocalDateTime inicio, LocalDateTime fin) {
+        long a = segundos(inicio);
+        long b = segundos(fin);
+        // Último intervalo que empieza antes de 'b': es el único que puede cruzarse con [a, b)
+        int i = ultimoQueEmpiezaAntesDe(b);
+        return i < 0 || fines[i] <= a;
+    }
+
+    /**
+     * Lista las horas de inicio libres entre {@code desde} y {@code hasta}, avanzando de {@code paso}
+     * en {@code paso}, para un intervalo de {@code duracion} que debe terminar a más tardar en {@code hasta}.
+     */
+    public List<LocalDateTime> horasInicioLibres(LocalDateTime desde, LocalDateTime hasta, Duration duracion, Duration paso) {
+        List<LocalDateTime> libres = new ArrayList<>();
+        long d = duracion.getSeconds();
+        long p = paso.getSeconds();
+        long limite = segundos(hasta);
+        long t = segundos(desde);
+        int i = Math.max(0, ultimoQueEmpiezaAntesDe(t));
+        for (; t + d <= limite; t += p) {
+            while (i < fines.length && fines[i] <= t) {
+                i++;
+            }
+            if (i == inicios.length || inicios[i] >= t + d) {
+                libres.add(LocalDateTime.ofEpochSecond(t, 0, ZoneOffset.UTC));
+            }
+        }
+        return libres;
+    }
+
+    /**
+     * Recorre los intervalos ocupados fusionados en orden.
+     */
+    public void paraCadaIntervalo(BiConsumer<LocalDateTime, LocalDateTime> accion) {
+        for (int i = 0; i < inicios.length; i++) {
+            accion.accept(LocalDateTime.ofEpochSecond(inicios[i], 0, ZoneOffset.UTC),
+                    LocalDateTime.ofEpochSecond(fines[i], 0, ZoneOffset.UTC));
+        }
+    }
+
+    /** Número de intervalos disjuntos tras la fusión. */
+    public int tamanio() {
+        return inicios.length;
+    }
+
+    private int ultimoQueEmpiezaAntesDe(long instante) {
+        int bajo = 0;
+        int alto = inicios.length - 1;
+        int resultado = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (inicios[medio] < instante) {
+                resultado = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return resultado;
+    }
+
+    private static long segundos(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -1,62 +1,90 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
 
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
-import com.vaadin.flow.component.UI;
-import com.vaadin.flow.server.VaadinSession;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.UsuarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio.AccionCita;
 import org.springframework.stereotype.Service;
 
-import java.time.format.DateTimeFormatter;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Notificaciones nativas del navegador para cada usuario.
+ * Se publican en el {@link BusEventos}, así que llegan al destinatario en la instancia y la
+ * pestaña donde esté conectado, no a la UI de quien hace la llamada. También salen por
+ * {@link EnvioWebPush} a los navegadores suscritos, para quien no tenga la aplicación abierta.
+ */
 @Service
 public class NotificacionNativaService {
 
-    private static final Logger log = LoggerFactory.getLogger(NotificacionNativaService.class);
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+    private static final String TITULO = "Buena Vida Acupuntura";
+    // Vigencia del token que viaja en la notificación para confirmar o cancelar esa cita
+    private static final Duration VIGENCIA_TOKEN_ACCION = Duration.ofDays(7);
 
-    // Envía notificación nativa solo si hay UI activa
-    public void enviarNotificacionNativa(Sesion sesion, String mensaje) {
-        Optional<UI> activeUI = getActiveUI();
-        if (activeUI.isEmpty()) {
-            return; // No loggear; es un caso esperado en tareas programadas
+    private final BusEventos busEventos;
+    private final UsuarioRepository usuarioRepository;
+    private final EnvioWebPush envioWebPush;
+    private final TokenApiServicio tokenApiServicio;
+
+    public NotificacionNativaService(BusEventos busEventos, UsuarioRepository usuarioRepository,
+                                     EnvioWebPush envioWebPush, TokenApiServicio tokenApiServicio) {
+        this.busEventos = busEventos;
+        this.usuarioRepository = usuarioRepository;
+        this.envioWebPush = envioWebPush;
+        this.tokenApiServicio = tokenApiServicio;
+    }
+
+    /**
+     * Envía la notificación al paciente de la sesión. Si la cita aún admite confirmarse o
+     * cancelarse, la notificación push lleva esas acciones y un token de la API limitado a esa
+     * cita y a esas acciones.
+     * Si hay una transacción activa, se entrega después del commit.
+     */
+    public void enviarAlPaciente(Sesion sesion, String mensaje) {
+        if (sesion.getPaciente() != null && sesion.getPaciente().getId() != null) {
+            Long pacienteId = sesion.getPaciente().getId();
+            busEventos.publicar(pacienteId, mensaje);
+            List<String> acciones = accionesDe(sesion);
+            String token = acciones.isEmpty() ? null
+                    : tokenApiServicio.emitir(pacienteId, Rol.PACIENTE, sesion.getId(), permitidas(acciones), VIGENCIA_TOKEN_ACCION);
+            envioWebPush.enviar(pacienteId,
+                    new EnvioWebPush.AvisoPush(TITULO, mensaje, sesion.getId(), acciones, token));
         }
-        UI ui = activeUI.get();
-        ui.access(() -> {
-            String script = buildNotificationScript(mensaje);
-            ui.getPage().executeJs(script);
-        });
     }
 
-    // Construye el script JS para la notificación nativa
-    private String buildNotificationScript(String mensaje) {
-        String textoEscapado = escaparTextoJavaScript(mensaje);
-        return String.format(
-                "if (window.Notification && Notification.permission === 'granted') {" +
-                        "  new Notification('%s');" +
-                        "} else if (window.Notification && Notification.permission !== 'denied') {" +
-                        "  Notification.requestPermission().then(p => { if(p === 'granted') { new Notification('%s'); } });" +
-                        "}", textoEscapado, textoEscapado
-        );
+    /**
+     * Envía la notificación a los médicos.
+     */
+    public void enviarAlMedico(String mensaje) {
+        EnvioWebPush.AvisoPush aviso = new EnvioWebPush.AvisoPush(TITULO, mensaje, null, List.of());
+        for (Long medicoId : usuarioRepository.findIdsByRol(Rol.MEDICO)) {
+            busEventos.publicar(medicoId, mensaje);
+            envioWebPush.enviar(medicoId, aviso);
+        }
     }
 
-    // Escapa texto para evitar inyecciones en JS
-    private String escaparTextoJavaScript(String texto) {
-        if (texto == null) return "";
-        return texto.replace("'", "\\'").replace("\"", "\\\"").replace("\n", "\\n");
+    // Las acciones del token son exactamente las de los botones
+    private static Set<AccionCita> permitidas(List<String> acciones) {
+        return acciones.stream()
+                .map(accion -> AccionCita.valueOf(accion.toUpperCase(Locale.ROOT)))
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(AccionCita.class)));
     }
 
-    // Obtiene la UI activa sin generar logs
-    private Optional<UI> getActiveUI() {
-        try {
-            VaadinSession session = VaadinSession.getCurrent();
-            if (session != null) {
-                return session.getUIs().stream().findFirst();
-            }
-        } catch (Exception ignored) {
-            // No loggear; es normal en contextos sin UI
+    // Acciones que sw.js resuelve con /api/citas/{accion}/{id}
+    private static List<String> accionesDe(Sesion sesion) {
+        if (sesion.getId() == null || sesion.getEstado() == null) {
+            return List.of();
         }
-        return Optional.empty();
+        return switch (sesion.getEstado()) {
+            case PROGRAMADA -> List.of("confirmar", "cancelar");
+            case CONFIRMADA -> List.of("cancelar");
+            default -> List.of();
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ReservaHorario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ReservaHorarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reserva de franjas de agenda a nivel de base de datos.
+ * Cada sesión activa ocupa una fila por franja de 30 minutos desde su inicio hasta el final
+ * de su tiempo de desplazamiento posterior. Como {@code franja} es única, dos reservas
+ * simultáneas del mismo horario no pueden confirmarse ambas: la segunda falla al insertar
+ * y se informa como horario no disponible, sin bloqueos globales.
+ * Debe usarse dentro de la transacción que guarda la sesión.
+ */
+@Component
+public class ReservasHorario {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservasHorario.class);
+
+    private final ReservaHorarioRepository reservaHorarioRepository;
+
+    public ReservasHorario(ReservaHorarioRepository reservaHorarioRepository) {
+        this.reservaHorarioRepository = reservaHorarioRepository;
+    }
+
+    /**
+     * Reserva las franjas de una sesión ya guardada, liberando antes las que tuviera.
+     *
+     * @throws IllegalStateException si alguna franja ya está reservada por otra sesión.
+     */
+    public void reservar(Sesion sesion, Duration duracion, Duration tiempoDesplazamiento) {
+        reservaHorarioRepository.eliminarPorSesion(sesion.getId());
+        List<ReservaHorario> filas = new ArrayList<>();
+        for (LocalDateTime franja : franjasDe(sesion.getFecha(), duracion, tiempoDesplazamiento)) {
+            filas.add(new ReservaHorario(franja, sesion.getId()));
+        }
+        try {
+            reservaHorarioRepository.saveAllAndFlush(filas);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Franjas de {} ya reservadas por otra sesión (sesión ID {}).", sesion.getFecha(), sesion.getId());
+            throw new IllegalStateException("El horario seleccionado ya no está disponible.", e);
+        }
+        log.trace("Sesión ID {}: {} franjas reservadas desde {}", sesion.getId(), filas.size(), sesion.getFecha());
+    }
+
+    /**
+     * Indica si alguna de las franjas de la sesión ya está reservada (sin escribir nada).
+     */
+    public boolean hayConflicto(Sesion sesion, Duration duracion, Duration tiempoDesplazamiento) {
+        return reservaHorarioRepository.existsByFranjaIn(franjasDe(sesion.getFecha(), duracion, tiempoDesplazamiento));
+    }
+
+    /**
+     * Libera las franjas de una sesión (cancelada, realizada o eliminada).
+     */
+    public void liberar(Long sesionId) {
+        if (sesionId != null) {
+            reservaHorarioRepository.eliminarPorSesion(sesionId);
+        }
+    }
+
+    /**
+     * Elimina las reservas de franjas anteriores a la fecha dada (ya no pueden reservarse).
+     */
+    public int liberarAnterioresA(LocalDateTime fecha) {
+        return reservaHorarioRepository.eliminarAnterioresA(fecha);
+    }
+
+    /**
+     * Franjas de 30 minutos que ocupa una sesión: desde su inicio hasta el fin de la sesión más el
+     * tiempo de desplazamiento (redondeado hacia arriba). El inicio siempre cae en una franja
+     * ({@link HorarioDia#admite} rechaza los demás); el de una sesión anterior a esa regla se
+     * redondea hacia abajo. Basta con el margen posterior: el anterior de una sesión coincide con
+     * el posterior de la previa.
+     */
+    static List<LocalDateTime> franjasDe(LocalDateTime inicio, Duration duracion, Duration tiempoDesplazamiento) {
+        LocalDateTime fin = inicio.plus(duracion).plus(tiempoDesplazamiento);
+        LocalDateTime franja = inicio.withSecond(0).withNano(0)
+                .minusMinutes(inicio.getMinute() % IndiceDisponibilidad.MINUTOS_FRANJA);
+        List<LocalDateTime> franjas = new ArrayList<>();
+        for (; franja.isBefore(fin); franja = franja.plusMinutes(IndiceDisponibilidad.MINUTOS_FRANJA)) {
+            franjas.add(franja);
+        }
+        return franjas;
+    }
+}
@@ -5,15 +5,34 @@ import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
 
 import java.time.*;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface SesionService {
     List<Sesion> obtenerSesionesPorPacienteYMes(Long pacienteId, YearMonth yearMonth);
     List<Sesion> buscarPendientesEntre(LocalDateTime inicio, LocalDateTime fin);
+
+    /**
+     * Sesiones PROGRAMADA/CONFIRMADA de los días [desde, hasta] (ambos incluidos), ordenadas por fecha,
+     * con una sola consulta y el paciente ya cargado.
+     *
+     * @param pacienteId Solo las de este paciente, o null para todos.
+     */
+    List<Sesion> buscarPendientesEntre(LocalDate desde, LocalDate hasta, Long pacienteId);
+    Optional<Sesion> obtenerSesion(Long sesionId);
     Optional<Sesion> confirmarSesion(Long sesionId);
     void cancelarSesion(Long sesionId);
     void guardarSesion(Sesion sesion);
     List<Sesion> buscarPendientesAntes(LocalDateTime fecha);
+
+    /**
+     * Marca como REALIZADA, con una sola actualización en bloque, toda sesión PROGRAMADA/CONFIRMADA
+     * cuya fecha sea anterior a la dada.
+     *
+     * @param fecha Límite (exclusivo) de fecha y hora.
+     * @return Número de sesiones marcadas.
+     */
+    int marcarRealizadasAntes(LocalDateTime fecha);
     boolean estaDisponible(LocalDateTime fecha, Duration duracion);
     boolean estaDisponible(LocalDateTime fecha, Duration duracion, Long excludeId);
     List<Sesion> obtenerSesionesPorPacienteYDia(Long pacienteId, LocalDate dia);
@@ -30,6 +49,26 @@ public interface SesionService {
      */
     List<LocalTime> getHorasDisponibles(LocalDate fecha);
 
+    /**
+     * Igual que {@link #getHorasDisponibles(LocalDate)}, pero sin contar la ocupación de una sesión
+     * (la que se está reprogramando), para que pueda moverse a horas cercanas a su horario actual.
+     *
+     * @param fecha     La fecha para la cual calcular la disponibilidad.
+     * @param excludeId ID de la sesión a ignorar, o null.
+     * @return Lista de LocalTime disponibles para iniciar una sesión.
+     */
+    List<LocalTime> getHorasDisponibles(LocalDate fecha, Long excludeId);
+
+    /**
+     * Calcula la disponibilidad de todos los días de un mes con una sola consulta
+     * de sesiones PROGRAMADA/CONFIRMADA. Útil para sombrear el calendario
+     * (días llenos, parciales o libres) sin consultar día por día.
+     *
+     * @param mes El mes a calcular.
+     * @return Disponibilidad por día, ordenada por fecha.
+     */
+    Map<LocalDate, DisponibilidadDia> getDisponibilidadMes(YearMonth mes);
+
     /**
      * Busca todas las sesiones que se encuentran en un estado específico.
      * Útil para el panel del médico (ej. listar PROGRAMADA).
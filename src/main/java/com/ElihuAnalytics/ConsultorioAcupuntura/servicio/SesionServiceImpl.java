@@ -5,6 +5,7 @@ import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
 import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository; // Asegúrate que este existe y es necesario
 import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.tareas.RecordatorioCitasScheduler;
 // Importa tu clase de festivos
 import com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.util.FestivosColombia;
 import jakarta.persistence.EntityManager;
@@ -12,6 +13,8 @@ import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired; // Necesario para el constructor
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,8 +22,11 @@ import java.time.*; // Importa todo java.time
 import java.util.ArrayList; // Necesario
 import java.util.Arrays; // Necesario para EnumSet o List
 import java.util.EnumSet; // Necesario para filtrar estados
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.stream.Collectors; // Necesario si usas streams
 
 import static com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion.EstadoSesion.*;
@@ -33,12 +39,12 @@ public class SesionServiceImpl implements SesionService {
     private static final Logger log = LoggerFactory.getLogger(SesionServiceImpl.class);
 
     // --- Constantes para Agendamiento (Ajusta según tu necesidad) ---
-    private static final LocalTime HORA_INICIO_LABORAL = LocalTime.of(8, 0);
-    private static final LocalTime HORA_FIN_LABORAL_NORMAL = LocalTime.of(17, 0); // 5 PM
-    private static final LocalTime HORA_FIN_LABORAL_RESTRINGIDA = LocalTime.of(14, 0); // 2 PM para L, M, V
+    // El horario laboral (plantilla semanal, bloqueos, vacaciones) vive en CalendarioLaboral
     private static final Duration DURACION_SESION_PREDET = Duration.ofHours(1); // Duración estándar
     private static final Duration TIEMPO_DESPLAZAMIENTO = Duration.ofMinutes(30);
     private static final Duration INTERVALO_AGENDAMIENTO = Duration.ofMinutes(30); // Pasos para buscar disponibilidad
+    // Estados que ocupan agenda. Debe ser el enum de la entidad (Sesion.EstadoSesion) para que Hibernate lo enlace
+    private static final List<Sesion.EstadoSesion> ESTADOS_ACTIVOS = List.of(PROGRAMADA, CONFIRMADA);
 
     private final SesionRepository sesionRepository;
     @PersistenceContext
@@ -47,12 +53,26 @@ public class SesionServiceImpl implements SesionService {
     // private final PacienteRepository pacienteRepository;
     // Inyecta NotificacionService (Asegúrate que exista la interfaz/clase)
     private final NotificacionService notificacionService;
+    // Ocupación por día en memoria (se invalida al guardar, reprogramar o cancelar)
+    private final IndiceDisponibilidad indiceDisponibilidad;
+    private final CalendarioLaboral calendarioLaboral;
+    // Franjas reservadas en BD: evita dobles reservas concurrentes del mismo horario
+    private final ReservasHorario reservasHorario;
+    // Temporizadores de recordatorio de las citas confirmadas
+    private final RecordatorioCitasScheduler recordatorios;
 
     // --- Constructor (Asegúrate que coincida con tus Beans) ---
     @Autowired
-    public SesionServiceImpl(SesionRepository sesionRepository, NotificacionService notificacionService /*, PacienteRepository pacienteRepository*/) {
+    public SesionServiceImpl(SesionRepository sesionRepository, NotificacionService notificacionService,
+                             IndiceDisponibilidad indiceDisponibilidad, CalendarioLaboral calendarioLaboral,
+                             ReservasHorario reservasHorario, RecordatorioCitasScheduler recordatorios
+                             /*, PacienteRepository pacienteRepository*/) {
         this.sesionRepository = sesionRepository;
         this.notificacionService = notificacionService;
+        this.indiceDisponibilidad = indiceDisponibilidad;
+        this.calendarioLaboral = calendarioLaboral;
+        this.reservasHorario = reservasHorario;
+        this.recordatorios = recordatorios;
         // this.pacienteRepository = pacienteRepository;
     }
 
@@ -60,89 +80,167 @@ public class SesionServiceImpl implements SesionService {
     @Override
     @Transactional(readOnly = true)
     public List<LocalTime> getHorasDisponibles(LocalDate fecha) {
-        List<LocalTime> horariosDisponibles = new ArrayList<>();
         log.debug("Calculando horas disponibles para fecha: {}", fecha);
 
         // 1. Validaciones iniciales
-        if (fecha.isBefore(LocalDate.now())) {
-            log.debug("Fecha {} es pasada.", fecha); return horariosDisponibles;
-        }
-        if (FestivosColombia.esFestivo(fecha)) {
-            log.debug("Fecha {} es festivo.", fecha); return horariosDisponibles;
-        }
-        DayOfWeek diaSemana = fecha.getDayOfWeek();
-        if (diaSemana == DayOfWeek.SUNDAY) { // Asumiendo no domingos
-            log.debug("Fecha {} es domingo.", fecha); return horariosDisponibles;
+        if (!esDiaAgendable(fecha)) {
+            return new ArrayList<>();
         }
 
-        // 2. Determinar hora de fin
-        LocalTime horaFinLaboral = (diaSemana == DayOfWeek.MONDAY || diaSemana == DayOfWeek.WEDNESDAY || diaSemana == DayOfWeek.FRIDAY)
-                ? HORA_FIN_LABORAL_RESTRINGIDA : HORA_FIN_LABORAL_NORMAL;
-        // Lógica Sábado si es diferente:
-        // if (diaSemana == DayOfWeek.SATURDAY) { horaFinLaboral = LocalTime.of(12, 0); }
-        log.debug("Horario laboral para {}: {} - {}", fecha, HORA_INICIO_LABORAL, horaFinLaboral);
-
+        // 2. Obtener la ocupación del día (índice en memoria; solo consulta la BD si el día no está cargado)
+        long ocupacion = indiceDisponibilidad.obtenerOcupacion(fecha, () -> {
+            List<Sesion> sesionesExistentes = sesionRepository.findByFechaBetweenAndEstadoIn(
+                    fecha.atStartOfDay(),
+                    fecha.plusDays(1).atStartOfDay(),
+                    ESTADOS_ACTIVOS
+            );
+            log.debug("Sesiones existentes encontradas (Programadas/Confirmadas) para {}: {}", fecha, sesionesExistentes.size());
+            return IndiceDisponibilidad.calcularOcupacion(fecha, sesionesExistentes, DURACION_SESION_PREDET, TIEMPO_DESPLAZAMIENTO);
+        });
+
+        // 3. Generar y filtrar horarios
+        List<LocalTime> horariosDisponibles = calcularHorasLibres(fecha, ocupacion);
+        log.debug("Horarios disponibles calculados para {}: {}", fecha, horariosDisponibles);
+        return horariosDisponibles;
+    }
 
-        // 3. Obtener sesiones existentes (PROGRAMADA y CONFIRMADA)
-        LocalDateTime inicioDia = fecha.atStartOfDay();
-        LocalDateTime finDia = fecha.plusDays(1).atStartOfDay();
-        // Usa el método del repositorio que busca por fecha Y estado
+    @Override
+    @Transactional(readOnly = true)
+    public List<LocalTime> getHorasDisponibles(LocalDate fecha, Long excludeId) {
+        if (excludeId == null) {
+            return getHorasDisponibles(fecha);
+        }
+        log.debug("Calculando horas disponibles para fecha: {} ignorando sesión ID {}", fecha, excludeId);
+        if (!esDiaAgendable(fecha)) {
+            return new ArrayList<>();
+        }
+        // La sesión a mover no debe bloquearse a sí misma: se calcula fuera del índice
         List<Sesion> sesionesExistentes = sesionRepository.findByFechaBetweenAndEstadoIn(
-                inicioDia,
-                finDia,
-                EnumSet.of(EstadoSesion.PROGRAMADA, EstadoSesion.CONFIRMADA)
+                fecha.atStartOfDay(),
+                fecha.plusDays(1).atStartOfDay(),
+                ESTADOS_ACTIVOS
         );
-        log.debug("Sesiones existentes encontradas (Programadas/Confirmadas) para {}: {}", fecha, sesionesExistentes.size());
+        HorarioDia horario = calendarioLaboral.horarioDe(fecha);
+        LocalDateTime ahora = LocalDateTime.now();
+        return intervalosOcupados(sesionesExistentes, excludeId)
+                .horasInicioLibres(fecha.atTime(horario.getInicio()), fecha.atTime(horario.getFin()),
+                        DURACION_SESION_PREDET, INTERVALO_AGENDAMIENTO)
+                .stream()
+                .filter(inicio -> inicio.isAfter(ahora))
+                .filter(inicio -> horario.admite(inicio.toLocalTime(), DURACION_SESION_PREDET))
+                .map(LocalDateTime::toLocalTime)
+                .collect(Collectors.toList());
+    }
 
-        // 4. Generar y filtrar horarios
-        LocalTime horaPosible = HORA_INICIO_LABORAL;
-        while (horaPosible.plus(DURACION_SESION_PREDET).isBefore(horaFinLaboral) || horaPosible.plus(DURACION_SESION_PREDET).equals(horaFinLaboral)) {
-            LocalDateTime inicioPropuesto = fecha.atTime(horaPosible);
-            LocalDateTime finPropuesto = inicioPropuesto.plus(DURACION_SESION_PREDET);
+    // --- IMPLEMENTACIÓN getDisponibilidadMes ---
+    @Override
+    @Transactional(readOnly = true)
+    public Map<LocalDate, DisponibilidadDia> getDisponibilidadMes(YearMonth mes) {
+        if (mes == null) { log.error("Mes nulo"); throw new IllegalArgumentException("Mes nulo"); }
+        LocalDate primerDia = mes.atDay(1);
+        LocalDate ultimoDia = mes.atEndOfMonth();
+        log.debug("Calculando disponibilidad del mes {}", mes);
+
+        // Una sola consulta por rango para todo el mes (o ninguna si el índice ya tiene todos los días)
+        Map<LocalDate, Long> ocupacionMes = indiceDisponibilidad.obtenerOcupacionRango(primerDia, ultimoDia, () -> {
+            List<Sesion> sesionesMes = sesionRepository.findByFechaBetweenAndEstadoIn(
+                    primerDia.atStartOfDay(),
+                    ultimoDia.plusDays(1).atStartOfDay(),
+                    ESTADOS_ACTIVOS
+            );
+            log.debug("Sesiones existentes encontradas (Programadas/Confirmadas) para {}: {}", mes, sesionesMes.size());
+            Map<LocalDate, List<Sesion>> sesionesPorDia = sesionesMes.stream()
+                    .collect(Collectors.groupingBy(s -> s.getFecha().toLocalDate()));
+            Map<LocalDate, Long> ocupacionPorDia = new HashMap<>();
+            sesionesPorDia.forEach((dia, sesiones) -> ocupacionPorDia.put(dia,
+                    IndiceDisponibilidad.calcularOcupacion(dia, sesiones, DURACION_SESION_PREDET, TIEMPO_DESPLAZAMIENTO)));
+            return ocupacionPorDia;
+        });
+
+        Map<LocalDate, DisponibilidadDia> disponibilidad = new TreeMap<>();
+        for (LocalDate dia = primerDia; !dia.isAfter(ultimoDia); dia = dia.plusDays(1)) {
+            if (!esDiaAgendable(dia)) {
+                disponibilidad.put(dia, new DisponibilidadDia(dia, List.of(), 0));
+                continue;
+            }
+            int capacidad = calcularHorasLibres(dia, 0L).size();
+            List<LocalTime> horasLibres = calcularHorasLibres(dia, ocupacionMes.getOrDefault(dia, 0L));
+            disponibilidad.put(dia, new DisponibilidadDia(dia, horasLibres, capacidad));
+        }
+        return disponibilidad;
+    }
+
+    // --- MÉTODOS AUXILIARES DE HORARIO ---
+    private boolean esDiaAgendable(LocalDate fecha) {
+        if (fecha.isBefore(LocalDate.now())) {
+            log.debug("Fecha {} es pasada.", fecha); return false;
+        }
+        if (FestivosColombia.esFestivo(fecha)) {
+            log.debug("Fecha {} es festivo.", fecha); return false;
+        }
+        if (!calendarioLaboral.horarioDe(fecha).esLaborable()) { // Domingo, vacaciones o día bloqueado
+            log.debug("Fecha {} no tiene horario laboral.", fecha); return false;
+        }
+        return true;
+    }
+
+    // Horas de inicio libres de un día agendable según su mapa de ocupación
+    private List<LocalTime> calcularHorasLibres(LocalDate fecha, long ocupacion) {
+        List<LocalTime> horariosDisponibles = new ArrayList<>();
+        HorarioDia horario = calendarioLaboral.horarioDe(fecha);
+        log.trace("Horario laboral para {}: {}", fecha, horario);
+        // Las franjas bloqueadas del día cuentan como ocupadas
+        long ocupado = ocupacion | horario.getBloqueos();
 
-            // Verificar disponibilidad usando la lógica refinada
-            boolean disponible = verificarDisponibilidadSlot(inicioPropuesto, finPropuesto, sesionesExistentes, null);
+        boolean esHoy = fecha.isEqual(LocalDate.now());
+        LocalTime ahora = LocalTime.now();
+        for (LocalTime horaPosible : horario.horasInicio(DURACION_SESION_PREDET, INTERVALO_AGENDAMIENTO)) {
+            // Verificar disponibilidad contra las franjas ocupadas (incluye tiempo de desplazamiento)
+            boolean disponible = IndiceDisponibilidad.estaLibre(ocupado, horaPosible, DURACION_SESION_PREDET);
 
             if (disponible) {
                 // No añadir horarios pasados si es hoy
-                if (!fecha.isEqual(LocalDate.now()) || horaPosible.isAfter(LocalTime.now())) {
+                if (!esHoy || horaPosible.isAfter(ahora)) {
                     log.trace("Horario {} añadido.", horaPosible);
                     horariosDisponibles.add(horaPosible);
                 } else {
                     log.trace("Horario {} descartado (pasado hoy).", horaPosible);
                 }
             }
-
-            horaPosible = horaPosible.plus(INTERVALO_AGENDAMIENTO);
         }
-        log.debug("Horarios disponibles calculados para {}: {}", fecha, horariosDisponibles);
         return horariosDisponibles;
     }
 
-    // --- MÉTODO AUXILIAR PARA VERIFICAR DISPONIBILIDAD (Reutiliza lógica) ---
-    private boolean verificarDisponibilidadSlot(LocalDateTime inicioPropuesto, LocalDateTime finPropuesto, List<Sesion> sesionesExistentes, Long excludeId) {
-        log.trace("Verificando slot: {} - {}, excludeId={}", inicioPropuesto, finPropuesto, excludeId);
-        for (Sesion existente : sesionesExistentes) {
-            // Ignorar la sesión excluida (para reprogramar)
-            if (excludeId != null && existente.getId() != null && existente.getId().equals(excludeId)) {
-                log.trace("Ignorando sesión existente ID {}", excludeId);
+    private static Duration duracionDe(Sesion sesion) {
+        return sesion.getDuracion() != null ? sesion.getDuracion() : DURACION_SESION_PREDET;
+    }
+
+    /**
+     * Reserva las franjas de las sesiones futuras que se crearon antes de existir las reservas.
+     * Si dos sesiones antiguas ya se cruzaban, la segunda se deja sin reserva y se registra.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void reservarSesionesExistentes() {
+        List<Sesion> sinReserva = sesionRepository.findSinReservaDesde(
+                LocalDateTime.now(), EnumSet.of(PROGRAMADA, CONFIRMADA));
+        int reservadas = 0;
+        for (Sesion sesion : sinReserva) {
+            if (reservasHorario.hayConflicto(sesion, duracionDe(sesion), TIEMPO_DESPLAZAMIENTO)) {
+                log.warn("Sesión ID {} en {} se cruza con otra ya reservada; se deja sin reserva.", sesion.getId(), sesion.getFecha());
                 continue;
             }
-            // Usa la duración real de la sesión existente si está disponible, sino la predeterminada
-            Duration duracionExistente = existente.getDuracion() != null ? existente.getDuracion() : DURACION_SESION_PREDET;
-            LocalDateTime inicioOcupado = existente.getFecha().minus(TIEMPO_DESPLAZAMIENTO);
-            LocalDateTime finOcupado = existente.getFecha().plus(duracionExistente).plus(TIEMPO_DESPLAZAMIENTO);
-
-            // Comprobar solapamiento: Si el propuesto empieza antes de que termine el ocupado
-            // Y el propuesto termina después de que empiece el ocupado
-            if (inicioPropuesto.isBefore(finOcupado) && finPropuesto.isAfter(inicioOcupado)) {
-                log.trace("Conflicto con sesión ID {}. Ocupado: {} - {}. Propuesto: {} - {}",
-                        existente.getId(), inicioOcupado, finOcupado, inicioPropuesto, finPropuesto);
-                return false; // Hay solapamiento
-            }
+            reservasHorario.reservar(sesion, duracionDe(sesion), TIEMPO_DESPLAZAMIENTO);
+            reservadas++;
+        }
+        if (reservadas > 0) {
+            log.info("Franjas reservadas para {} sesiones existentes.", reservadas);
         }
-        log.trace("Slot {} - {} está LIBRE.", inicioPropuesto, finPropuesto);
-        return true; // No hubo solapamientos
+    }
+
+    // --- MÉTODO AUXILIAR PARA VERIFICAR DISPONIBILIDAD (Reutiliza lógica) ---
+    private IntervalosOcupados intervalosOcupados(List<Sesion> sesionesExistentes, Long excludeId) {
+        return IntervalosOcupados.desdeSesiones(sesionesExistentes, DURACION_SESION_PREDET, TIEMPO_DESPLAZAMIENTO, excludeId);
     }
 
 
@@ -151,8 +249,8 @@ public class SesionServiceImpl implements SesionService {
     @Transactional(readOnly = true)
     public List<Sesion> findSesionesPorEstado(EstadoSesion estado) {
         log.debug("Buscando sesiones con estado: {}", estado);
-        // Necesitas el método findByEstadoOrderByFechaAsc en SesionRepository
-        return sesionRepository.findByEstadoOrderByFechaAsc(estado);
+        // La columna guarda el enum de la entidad; los nombres de ambos enums coinciden
+        return sesionRepository.findByEstadoOrderByFechaAsc(Sesion.EstadoSesion.valueOf(estado.name()));
     }
 
     // --- IMPLEMENTACIÓN findSesionesConfirmadasEntre ---
@@ -165,7 +263,7 @@ public class SesionServiceImpl implements SesionService {
         return sesionRepository.findByFechaBetweenAndEstadoInOrderByFechaAsc( // <-- Nombre corregido
                 inicio,
                 fin,
-                EnumSet.of(EstadoSesion.CONFIRMADA)
+                EnumSet.of(CONFIRMADA) // el enum de la entidad, que es el que Hibernate enlaza
         );
     }
 
@@ -191,21 +289,41 @@ public class SesionServiceImpl implements SesionService {
         return sesionRepository.findByFechaBetweenAndEstadoInOrderByFechaAsc( // <-- Nombre corregido
                 inicio,
                 fin,
-                EnumSet.of(EstadoSesion.PROGRAMADA, EstadoSesion.CONFIRMADA)
+                EnumSet.copyOf(ESTADOS_ACTIVOS)
         );
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<Sesion> buscarPendientesEntre(LocalDate desde, LocalDate hasta, Long pacienteId) {
+        if (desde == null || hasta == null) { log.error("Fechas nulas"); throw new IllegalArgumentException("Fechas nulas"); }
+        log.debug("Buscando sesiones PROGRAMADAS/CONFIRMADAS del {} al {} (paciente {})", desde, hasta, pacienteId);
+        return sesionRepository.findConPacienteEntre(desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay(),
+                EnumSet.copyOf(ESTADOS_ACTIVOS), pacienteId);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<Sesion> buscarPendientesAntes(LocalDateTime fecha) {
         log.debug("Buscando sesiones PROGRAMADAS/CONFIRMADAS antes de {}", fecha);
-        // Necesitas findByFechaHoraBeforeAndEstadoIn en SesionRepository
         return sesionRepository.findByFechaBeforeAndEstadoIn(
                 fecha, // El límite superior es la fecha dada
-                EnumSet.of(EstadoSesion.PROGRAMADA, EstadoSesion.CONFIRMADA)
+                EnumSet.copyOf(ESTADOS_ACTIVOS)
         );
     }
 
+    @Override
+    @Transactional
+    public int marcarRealizadasAntes(LocalDateTime fecha) {
+        if (fecha == null) { log.error("Fecha nula"); throw new IllegalArgumentException("Fecha nula"); }
+        // Sentencia en bloque: no pasa por estaDisponible ni carga entidades.
+        // Sus franjas futuras (resto de la sesión y desplazamiento) siguen reservadas hasta pasar.
+        int marcadas = sesionRepository.actualizarEstadoAntesDe(fecha, EnumSet.copyOf(ESTADOS_ACTIVOS), REALIZADA);
+        int liberadas = reservasHorario.liberarAnterioresA(fecha);
+        log.debug("{} sesiones marcadas como REALIZADA antes de {}; {} franjas pasadas liberadas.", marcadas, fecha, liberadas);
+        return marcadas;
+    }
+
     @Override
     @Transactional
     public Optional<Sesion> confirmarSesion(Long sesionId) {
@@ -217,21 +335,20 @@ public class SesionServiceImpl implements SesionService {
             if (sesion.getEstado() == PROGRAMADA) {
                 sesion.setEstado(CONFIRMADA);
                 Sesion sesionConfirmada = sesionRepository.save(sesion);
+                // PROGRAMADA y CONFIRMADA ocupan la agenda por igual: el índice de disponibilidad no cambia
+                recordatorios.programar(sesionConfirmada);
                 log.info("Sesión ID {} confirmada.", sesionId);
-                // Enviar notificación (Fase 4)
-                try {
-                    notificacionService.enviarConfirmacionPaciente(sesionConfirmada,
-                            "Se confirma su cita para el dia "
-                            + sesion.getFecha().format(DateTimeFormatter.ofPattern("DD/MM/YYYY 'a las' HH:mm"))
-                            + " en "
-                            + sesion.getLugar()
-                            + ".\\n Gracias por la oportunidad!."
-                            + "\\n Hasta entonces !"
-                            );
-                    log.info("Notificación de confirmación enviada para sesión ID {}", sesionConfirmada.getId());
-                } catch (Exception e) {
-                    log.error("Error al enviar notificación de confirmación para sesión {}: {}", sesionConfirmada.getId(), e.getMessage(), e);
-                }
+                // Enviar notificación (Fase 4). El correo va en esta transacción: si no se puede
+                // encolar, la confirmación tampoco se guarda
+                notificacionService.enviarConfirmacionPaciente(sesionConfirmada,
+                        "Se confirma su cita para el dia "
+                        + sesion.getFecha().format(DateTimeFormatter.ofPattern("DD/MM/YYYY 'a las' HH:mm"))
+                        + " en "
+                        + sesion.getLugar()
+                        + ".\\n Gracias por la oportunidad!."
+                        + "\\n Hasta entonces !"
+                        );
+                log.info("Notificación de confirmación enviada para sesión ID {}", sesionConfirmada.getId());
                 return Optional.of(sesionConfirmada);
             } else {
                 log.warn("Intento de confirmar sesión ID {} que no estaba PROGRAMADA (estado: {})", sesionId, sesion.getEstado());
@@ -242,6 +359,13 @@ public class SesionServiceImpl implements SesionService {
         return Optional.empty();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Sesion> obtenerSesion(Long sesionId) {
+        if (sesionId == null) { log.error("ID nulo"); throw new IllegalArgumentException("ID nulo"); }
+        return sesionRepository.findById(sesionId);
+    }
+
     @Override
     @Transactional
     public void cancelarSesion(Long sesionId) {
@@ -253,19 +377,13 @@ public class SesionServiceImpl implements SesionService {
             if (sesion.getEstado() == PROGRAMADA || sesion.getEstado() == CONFIRMADA) {
                 sesion.setEstado(CANCELADA);
                 sesionRepository.save(sesion);
+                reservasHorario.liberar(sesion.getId());
+                recordatorios.cancelar(sesion.getId());
+                indiceDisponibilidad.invalidar(sesion.getFecha().toLocalDate());
                 log.info("Sesión ID {} cancelada.", sesionId);
-                // Enviar notificación (Fase 4)
-                try {
-                    String motivo = "Cancelada por el médico."; // Añadir motivo real si se pasa
-
-
-                    notificacionService.enviarRecordatorioPaciente(sesion);
-
-
-                    log.info("Notificación de cancelación enviada para sesión ID {}", sesion.getId());
-                } catch (Exception e) {
-                    log.error("Error al enviar notificación de cancelación para sesión {}: {}", sesion.getId(), e.getMessage(), e);
-                }
+                // Enviar notificación (Fase 4), en la misma transacción que la cancelación
+                notificacionService.enviarRecordatorioPaciente(sesion);
+                log.info("Notificación de cancelación enviada para sesión ID {}", sesion.getId());
             } else if (sesion.getEstado() == CANCELADA) {
                 log.warn("Sesión ID {} ya estaba cancelada.", sesionId);
                 // No hacemos nada si ya estaba cancelada
@@ -290,23 +408,21 @@ public class SesionServiceImpl implements SesionService {
         LocalTime horaInicio = inicio.toLocalTime();
         if (inicio.isBefore(LocalDateTime.now())) { log.warn("Intento de verificar disponibilidad en el pasado: {}", inicio); return false; }
         if (FestivosColombia.esFestivo(fecha)) { log.debug("Fecha {} es festivo.", fecha); return false; }
-        DayOfWeek diaSemana = fecha.getDayOfWeek();
-        if (diaSemana == DayOfWeek.SUNDAY) { log.debug("Fecha {} es domingo.", fecha); return false; }
-
-        LocalTime horaFinLaboral = (diaSemana == DayOfWeek.MONDAY || diaSemana == DayOfWeek.WEDNESDAY || diaSemana == DayOfWeek.FRIDAY)
-                ? HORA_FIN_LABORAL_RESTRINGIDA : HORA_FIN_LABORAL_NORMAL;
-        // if (diaSemana == DayOfWeek.SATURDAY) { horaFinLaboral = LocalTime.of(12, 0); }
-        if (horaInicio.isBefore(HORA_INICIO_LABORAL) || fin.toLocalTime().isAfter(horaFinLaboral) || (fin.toLocalTime().equals(horaFinLaboral) && !horaInicio.equals(horaFinLaboral.minus(duracion)))) {
-            log.debug("Horario {} - {} fuera de horas laborales.", inicio, fin); return false;
+
+        // Horario del día ya compilado: incluye domingos, vacaciones, horarios especiales y bloqueos
+        if (!calendarioLaboral.horarioDe(fecha).admite(horaInicio, duracion)) {
+            log.debug("Horario {} - {} fuera de horas laborales o bloqueado.", inicio, fin); return false;
         }
 
         // 2. Comprobar solapamiento usando el método auxiliar
         LocalDateTime inicioBusqueda = inicio.minus(DURACION_SESION_PREDET).minus(TIEMPO_DESPLAZAMIENTO);
         LocalDateTime finBusqueda = fin.plus(DURACION_SESION_PREDET).plus(TIEMPO_DESPLAZAMIENTO);
         List<Sesion> sesionesCercanas = sesionRepository.findByFechaBetweenAndEstadoIn(
-                inicioBusqueda, finBusqueda, EnumSet.of(EstadoSesion.PROGRAMADA, EstadoSesion.CONFIRMADA));
+                inicioBusqueda, finBusqueda, ESTADOS_ACTIVOS);
 
-        return verificarDisponibilidadSlot(inicio, fin, sesionesCercanas, excludeId);
+        boolean libre = intervalosOcupados(sesionesCercanas, excludeId).estaLibre(inicio, fin);
+        log.trace("Slot {} - {} (excludeId={}) {}", inicio, fin, excludeId, libre ? "está LIBRE." : "tiene conflicto.");
+        return libre;
     }
     // Sobrecarga sin excludeId (se mantiene igual)
     @Override
@@ -336,12 +452,13 @@ public class SesionServiceImpl implements SesionService {
             throw new IllegalArgumentException("Sesión o paciente inválido para guardar");
         }
 
-        // Re-adjuntar paciente si está detached
+        // Re-adjuntar paciente si está detached. Por referencia y no con merge: el merge copiaría su
+        // lista de sesiones (vacía o vieja) y orphanRemoval borraría las demás sesiones del paciente.
         Paciente paciente = sesion.getPaciente();
         if (!entityManager.contains(paciente)) {
-            log.debug("Paciente ID {} está detached. Haciendo merge.", paciente.getId());
+            log.debug("Paciente ID {} está detached. Tomando su referencia.", paciente.getId());
             try {
-                paciente = entityManager.merge(paciente);
+                paciente = entityManager.getReference(Paciente.class, paciente.getId());
                 sesion.setPaciente(paciente);
             } catch (Exception e) {
                 log.error("Error al hacer merge del paciente ID {}: {}", sesion.getPaciente().getId(), e.getMessage(), e);
@@ -363,7 +480,7 @@ public class SesionServiceImpl implements SesionService {
         }
 
         // Antes de guardar, verificar disponibilidad por si acaso
-        if (!estaDisponible(sesion.getFecha(), sesion.getDuracion() != null ? sesion.getDuracion() : DURACION_SESION_PREDET, sesion.getId())) {
+        if (!estaDisponible(sesion.getFecha(), duracionDe(sesion), sesion.getId())) {
             log.error("Intento de guardar sesión ID {} en horario NO disponible: {}", sesion.getId(), sesion.getFecha());
             throw new IllegalStateException("El horario seleccionado ya no está disponible."); // Lanza excepción
         }
@@ -371,16 +488,32 @@ public class SesionServiceImpl implements SesionService {
 
         Sesion sesionGuardada = sesionRepository.save(sesion);
         log.debug("Sesión guardada/actualizada con ID {}", sesionGuardada.getId());
+        // La reserva de franjas decide en BD si dos guardados simultáneos pasaron la verificación anterior
+        if (sesionGuardada.getEstado() == PROGRAMADA || sesionGuardada.getEstado() == CONFIRMADA) {
+            reservasHorario.reservar(sesionGuardada, duracionDe(sesionGuardada), TIEMPO_DESPLAZAMIENTO);
+        } else {
+            reservasHorario.liberar(sesionGuardada.getId());
+        }
+        if (!esNueva) {
+            // Una sesión modificada puede haber cambiado de fecha o de estado
+            if (sesionGuardada.getEstado() == CONFIRMADA) {
+                recordatorios.programar(sesionGuardada);
+            } else {
+                recordatorios.cancelar(sesionGuardada.getId());
+            }
+        }
+        if (esNueva) {
+            indiceDisponibilidad.invalidar(sesionGuardada.getFecha().toLocalDate());
+        } else {
+            // No se conoce la fecha anterior de una sesión modificada: se vacía el índice
+            indiceDisponibilidad.invalidarTodo();
+        }
 
         // Enviar notificación de programación SOLO si es una sesión NUEVA
         if (esNueva) {
             log.debug("Intentando enviar notificación de programación para sesión ID {}", sesionGuardada.getId());
-            try {
-                notificacionService.enviarNotificacionProgramacionMedico(sesionGuardada);
-                log.info("Notificación de programación enviada para sesión ID {}", sesionGuardada.getId());
-            } catch (Exception e) {
-                log.error("Error al enviar notificación de programación para sesión {}: {}", sesionGuardada.getId(), e.getMessage(), e);
-            }
+            notificacionService.enviarNotificacionProgramacionMedico(sesionGuardada);
+            log.info("Notificación de programación enviada para sesión ID {}", sesionGuardada.getId());
         }
     }
 
@@ -416,17 +549,16 @@ public class SesionServiceImpl implements SesionService {
                 sesion.setDuracion(duracion);
                 sesion.setEstado(PROGRAMADA); // Volver a programada requiere reconfirmación
                 Sesion reprogramada = sesionRepository.save(sesion);
+                reservasHorario.reservar(reprogramada, duracion, TIEMPO_DESPLAZAMIENTO);
+                recordatorios.cancelar(sesionId); // Vuelve a PROGRAMADA: se reprograma al confirmarla
+                indiceDisponibilidad.invalidar(fechaAnterior.toLocalDate());
+                indiceDisponibilidad.invalidar(nuevaFechaHora.toLocalDate());
                 log.info("Sesión ID {} reprogramada de {} a {}.", sesionId, fechaAnterior, nuevaFechaHora);
 
-                // Enviar notificación (Fase 4)
-                try {
-                    log.debug("Intentando enviar notificación de reprogramación para sesión ID {}", reprogramada.getId());
-                    // Necesitarás añadir enviarReprogramacionCita a NotificacionService
-                    notificacionService.enviarReprogramacionCita(reprogramada, fechaAnterior);
-                    log.info("Notificación de reprogramación enviada para sesión ID {}", reprogramada.getId());
-                } catch (Exception e) {
-                    log.error("Error enviando notificación de reprogramación para {}: {}", sesionId, e.getMessage(), e);
-                }
+                // Enviar notificación (Fase 4), en la misma transacción que la reprogramación
+                log.debug("Intentando enviar notificación de reprogramación para sesión ID {}", reprogramada.getId());
+                notificacionService.enviarReprogramacionCita(reprogramada, fechaAnterior);
+                log.info("Notificación de reprogramación enviada para sesión ID {}", reprogramada.getId());
                 return Optional.of(reprogramada);
             } else {
                 log.warn("Intento de reprogramar sesión ID {} en estado inesperado: {}", sesionId, sesion.getEstado());
@@ -0,0 +1,59 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tipos de archivo que se aceptan como adjunto o foto, reconocidos por sus primeros bytes
+ * (la extensión la elige quien sube el archivo; la firma no).
+ */
+enum TipoArchivo {
+
+    PDF(List.of(".pdf")) {
+        @Override
+        boolean firma(byte[] cabecera, int longitud) {
+            return empieza(cabecera, longitud, 0, "%PDF-".getBytes(StandardCharsets.US_ASCII));
+        }
+    },
+    JPEG(List.of(".jpg", ".jpeg")) {
+        @Override
+        boolean firma(byte[] cabecera, int longitud) {
+            return empieza(cabecera, longitud, 0, new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        }
+    },
+    PNG(List.of(".png")) {
+        @Override
+        boolean firma(byte[] cabecera, int longitud) {
+            return empieza(cabecera, longitud, 0, new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        }
+    },
+    WEBP(List.of(".webp")) {
+        @Override
+        boolean firma(byte[] cabecera, int longitud) {
+            return empieza(cabecera, longitud, 0, "RIFF".getBytes(StandardCharsets.US_ASCII))
+                    && empieza(cabecera, longitud, 8, "WEBP".getBytes(StandardCharsets.US_ASCII));
+        }
+    };
+
+    /** Bytes del comienzo del archivo que bastan para reconocer cualquiera de los tipos. */
+    static final int BYTES_CABECERA = 12;
+
+    private final List<String> extensiones;
+
+    TipoArchivo(List<String> extensiones) {
+        this.extensiones = extensiones;
+    }
+
+    abstract boolean firma(byte[] cabecera, int longitud);
+
+    static Optional<TipoArchivo> deExtension(String extension) {
+        return Arrays.stream(values()).filter(tipo -> tipo.extensiones.contains(extension)).findFirst();
+    }
+
+    private static boolean empieza(byte[] cabecera, int longitud, int desde, byte[] esperado) {
+        return longitud >= desde + esperado.length
+                && Arrays.equals(cabecera, desde, desde + esperado.length, esperado, 0, esperado.length);
+    }
+}
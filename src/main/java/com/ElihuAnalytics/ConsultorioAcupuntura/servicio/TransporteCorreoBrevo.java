@@ -0,0 +1,102 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// IMPORTS DE BREVO (Sendinblue)
+import sendinblue.ApiClient;
+import sendinblue.ApiException;
+import sendinblue.auth.ApiKeyAuth;
+import sibApi.TransactionalEmailsApi;
+import sibModel.CreateSmtpEmail;
+import sibModel.SendSmtpEmail;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente HTTP compartido para enviar correos por la API de Brevo.
+ * Se configura una sola vez (clave, URL, tiempos de espera) sin tocar el cliente global de
+ * {@code Configuration}, reutiliza conexiones con keep-alive desde un pool y limita cuántos
+ * envíos pueden estar en curso a la vez. Es seguro usarlo desde varios hilos.
+ */
+@Component
+public class TransporteCorreoBrevo {
+
+    private static final Logger log = LoggerFactory.getLogger(TransporteCorreoBrevo.class);
+
+    private final TransactionalEmailsApi emailsApi;
+    private final Semaphore enviosEnCurso;
+    // Lo más que puede tardar un envío ya iniciado antes de que salte un tiempo de espera
+    private final Duration duracionMaxima;
+
+    public TransporteCorreoBrevo(@Value("${sendgrid.api.key}") String brevoApiKey,
+                                 @Value("${app.correo.brevo.url:}") String urlBase,
+                                 @Value("${app.correo.conexiones-inactivas-max:8}") int conexionesInactivasMax,
+                                 @Value("${app.correo.keep-alive:5m}") Duration keepAlive,
+                                 @Value("${app.correo.timeout-conexion:5s}") Duration timeoutConexion,
+                                 @Value("${app.correo.timeout-lectura:20s}") Duration timeoutLectura,
+                                 @Value("${app.correo.envios-simultaneos:4}") int enviosSimultaneos) {
+        ApiClient cliente = new ApiClient();
+        ((ApiKeyAuth) cliente.getAuthentication("api-key")).setApiKey(brevoApiKey);
+        if (urlBase != null && !urlBase.isBlank()) {
+            cliente.setBasePath(urlBase);
+        }
+        // Se parte del cliente del SDK para conservar sus interceptores
+        OkHttpClient http = cliente.getHttpClient().newBuilder()
+                .connectionPool(new ConnectionPool(conexionesInactivasMax, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                .connectTimeout(timeoutConexion)
+                .readTimeout(timeoutLectura)
+                .writeTimeout(timeoutLectura)
+                // El POST de envío no es idempotente: si una conexión del pool resultó cerrada, okhttp
+                // lo repetiría sin saber si Brevo ya lo recibió. El fallo (código 0) va a la bandeja de
+                // salida, que lo reintenta como transitorio y deja constancia del intento.
+                .retryOnConnectionFailure(false)
+                .build();
+        cliente.setHttpClient(http);
+        this.emailsApi = new TransactionalEmailsApi(cliente);
+        this.enviosEnCurso = new Semaphore(enviosSimultaneos, true); // justo: turnos en orden de llegada (mejor p99)
+        this.duracionMaxima = timeoutConexion.plus(timeoutLectura).plus(timeoutLectura);
+        log.info("Transporte de correo Brevo listo: {} envíos simultáneos, keep-alive {}.", enviosSimultaneos, keepAlive);
+    }
+
+    /**
+     * Envía un correo transaccional, esperando turno si ya hay demasiados envíos en curso.
+     *
+     * @throws ApiException         si Brevo responde con error o falla la conexión (código 0).
+     * @throws InterruptedException si el hilo se interrumpe mientras espera turno.
+     */
+    public CreateSmtpEmail enviar(SendSmtpEmail correo) throws ApiException, InterruptedException {
+        enviosEnCurso.acquire();
+        try {
+            return emailsApi.sendTransacEmail(correo);
+        } finally {
+            enviosEnCurso.release();
+        }
+    }
+
+    /**
+     * Como {@link #enviar}, pero solo si consigue turno a tiempo para que el envío termine antes
+     * de {@code limite} aun en el peor caso (todos los tiempos de espera agotados).
+     *
+     * @return false si no se envió porque no había tiempo
+     */
+    public boolean enviarAntesDe(SendSmtpEmail correo, LocalDateTime limite) throws ApiException, InterruptedException {
+        long esperaNs = Duration.between(LocalDateTime.now(), limite).minus(duracionMaxima).toNanos();
+        if (esperaNs <= 0 || !enviosEnCurso.tryAcquire(esperaNs, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        try {
+            emailsApi.sendTransacEmail(correo);
+            return true;
+        } finally {
+            enviosEnCurso.release();
+        }
+    }
+}
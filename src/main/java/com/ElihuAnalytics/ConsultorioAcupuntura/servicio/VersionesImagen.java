@@ -0,0 +1,89 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Versiones de cada imagen subida y sus nombres.
+ *
+ * Junto al nombre que guardan las entidades ({@code <sha256>.jpg}, la vista de hasta
+ * {@value #ANCHO_VISTA} px) {@link FileStorageService} deja {@code <sha256>-96.jpg} (avatares) y
+ * {@code <sha256>-320.jpg} (miniaturas). FileController sirve la más pequeña que cubre el ancho
+ * pedido con {@code ?w=}. Los bytes tal como se subieron ({@code <sha256>-original.jpg}) se guardan
+ * aparte, en {@value FileStorageService#DIRECTORIO_ORIGINALES}/, y no se sirven: llevan los metadatos
+ * de la cámara (posición GPS, dispositivo), que las versiones re-codificadas ya no tienen.
+ */
+public final class VersionesImagen {
+
+    public static final int ANCHO_VISTA = 1024;
+    // Versiones reducidas, de menor a mayor (todas por debajo de la vista)
+    public static final List<Integer> ANCHOS_REDUCIDOS = List.of(96, 320);
+
+    // Extensiones que se procesan como imagen
+    private static final List<String> EXTENSIONES = List.of(".jpg", ".jpeg", ".png", ".webp");
+    // Nombre por contenido; sin grupos de captura para poder usarlo en un patrón de URL de Spring
+    public static final String PATRON_POR_CONTENIDO = "[0-9a-f]{64}(?:\\.[a-z0-9]{1,10})?";
+    private static final Pattern POR_CONTENIDO = Pattern.compile(PATRON_POR_CONTENIDO);
+
+    private VersionesImagen() {}
+
+    public static boolean esImagen(String nombre) {
+        int punto = nombre.lastIndexOf('.');
+        return punto >= 0 && EXTENSIONES.contains(nombre.substring(punto).toLowerCase());
+    }
+
+    /** Nombre asignado por {@link FileStorageService} (hash del contenido), no uno anterior a ese esquema. */
+    public static boolean esPorContenido(String nombre) {
+        return POR_CONTENIDO.matcher(nombre).matches();
+    }
+
+    public static String reducida(String nombre, int ancho) {
+        return conSufijo(nombre, "-" + ancho);
+    }
+
+    public static String original(String nombre) {
+        return conSufijo(nombre, "-original");
+    }
+
+    /** Las versiones que se sirven junto a la vista: las reducidas. */
+    public static List<String> derivadas(String nombre) {
+        List<String> derivadas = new ArrayList<>();
+        ANCHOS_REDUCIDOS.forEach(ancho -> derivadas.add(reducida(nombre, ancho)));
+        return derivadas;
+    }
+
+    /**
+     * Versiones que sirven para mostrar la imagen a {@code ancho} px, de la más liviana a la más
+     * pesada. La vista es la mayor que se sirve, también para anchos por encima de {@value #ANCHO_VISTA}.
+     */
+    public static List<String> paraAncho(String nombre, int ancho) {
+        List<String> candidatas = new ArrayList<>();
+        for (int reducido : ANCHOS_REDUCIDOS) {
+            if (reducido >= ancho) {
+                candidatas.add(reducida(nombre, reducido));
+            }
+        }
+        candidatas.add(nombre);
+        return candidatas;
+    }
+
+    /**
+     * URL de la imagen para mostrarla a {@code ancho} px (CSS), servida por FileController.
+     *
+     * @param rutaWeb Ruta devuelta por {@link FileStorageService#save} (ej: /pacientes-Uploads/9f86d0...0a08.jpg)
+     */
+    public static String url(String rutaWeb, int ancho) {
+        String nombre = rutaWeb.replace("\\", "/");
+        if (nombre.contains("?")) {
+            nombre = nombre.substring(0, nombre.indexOf('?'));
+        }
+        nombre = nombre.substring(nombre.lastIndexOf('/') + 1);
+        return "/uploads/" + nombre + "?w=" + ancho;
+    }
+
+    private static String conSufijo(String nombre, String sufijo) {
+        int punto = nombre.lastIndexOf('.');
+        return punto < 0 ? nombre + sufijo : nombre.substring(0, punto) + sufijo + nombre.substring(punto);
+    }
+}
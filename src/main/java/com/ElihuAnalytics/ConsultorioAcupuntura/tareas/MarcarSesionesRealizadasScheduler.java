@@ -1,6 +1,5 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.tareas;
 
-import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,10 +7,10 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 /**
  * Scheduler para marcar sesiones como REALIZADA cuando su fecha y hora han pasado.
+ * Usa una sola actualización en bloque, así que su costo no depende de cuántas sesiones haya pendientes.
  */
 @Component
 public class MarcarSesionesRealizadasScheduler {
@@ -25,29 +24,13 @@ public class MarcarSesionesRealizadasScheduler {
 
     @Scheduled(fixedRate = 600000) // Cada 10 minutos
     public void marcarSesionesRealizadas() {
-        LocalDateTime ahora = LocalDateTime.now();
-        List<Sesion> sesionesPendientes = sesionService.buscarPendientesAntes(ahora);
-
-        if (sesionesPendientes.isEmpty()) {
-            return;
-        }
-
-        int sesionesMarcadas = 0;
-        for (Sesion sesion : sesionesPendientes) {
-            if (sesion.getEstado() == Sesion.EstadoSesion.PROGRAMADA || sesion.getEstado() == Sesion.EstadoSesion.CONFIRMADA) {
-                try {
-                    sesion.setEstado(Sesion.EstadoSesion.REALIZADA);
-                    sesionService.guardarSesion(sesion);
-                    sesionesMarcadas++;
-                    log.info("Sesión ID {} marcada como REALIZADA", sesion.getId());
-                } catch (Exception e) {
-                    log.warn("Error al marcar sesión ID {} como REALIZADA: {}", sesion.getId(), e.getMessage());
-                }
+        try {
+            int sesionesMarcadas = sesionService.marcarRealizadasAntes(LocalDateTime.now());
+            if (sesionesMarcadas > 0) {
+                log.info("{} sesiones marcadas como REALIZADA", sesionesMarcadas);
             }
-        }
-
-        if (sesionesMarcadas < sesionesPendientes.size()) {
-            log.warn("Solo se marcaron {} de {} sesiones como REALIZADA.", sesionesMarcadas, sesionesPendientes.size());
+        } catch (Exception e) {
+            log.warn("Error al marcar sesiones como REALIZADA: {}", e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+}
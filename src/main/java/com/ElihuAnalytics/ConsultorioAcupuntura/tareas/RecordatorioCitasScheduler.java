@@ -1,153 +1,214 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.tareas;
 
-import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.NotificacionEnviada; // <-- Importar
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.NotificacionEnviada;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
-import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.EstadoSesion; // <-- Importar EstadoSesion
-import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.NotificacionEnviadaRepository; // <-- Importar Repositorio
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.NotificacionEnviadaRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.NotificacionService;
-import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Transacciones;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional; // <-- Importar Transactional
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.LocalTime; // <-- Importar LocalTime
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Scheduler para enviar recordatorios automáticos de citas confirmadas.
+ * Recordatorios automáticos de citas confirmadas, programados a la hora exacta.
  * Reglas: 2 horas antes, o día anterior a las 7 PM si la cita es antes de las 9 AM.
+ *
+ * Cada cita confirmada tiene un temporizador en una cola de retardo en memoria: se registra al
+ * confirmar la cita, se quita al cancelarla o reprogramarla y, al arrancar, se reconstruye desde
+ * las sesiones CONFIRMADA futuras (la base de datos es la fuente persistente). Si el momento
+ * de envío ya pasó (p. ej. la aplicación estaba detenida) y la cita aún no empieza, se envía de inmediato.
+ * No hay consultas periódicas a la tabla de sesiones.
+ *
+ * Con varias instancias, cada una tiene el temporizador de la misma cita y se disparan a la vez. Al
+ * despachar se bloquea la fila de la sesión (FOR UPDATE) antes de comprobar si ya hay recordatorio:
+ * la segunda instancia espera a que la primera haga commit y entonces ve el suyo.
  */
 @Component
 public class RecordatorioCitasScheduler {
 
     private static final Logger log = LoggerFactory.getLogger(RecordatorioCitasScheduler.class);
-    private final SesionService sesionService;
-    private final NotificacionService notificacionService;
-    private final NotificacionEnviadaRepository notificacionEnviadaRepository; // <-- Inyectar Repositorio
 
     // --- Constantes para la Lógica ---
     private static final LocalTime HORA_LIMITE_MANANA = LocalTime.of(9, 0); // 9 AM
     private static final LocalTime HORA_ENVIO_NOCTURNO = LocalTime.of(19, 0); // 7 PM
-    // Asegúrate que TipoNotificacion.RECORDATORIO_CITA exista en tu Enum
-    private static final NotificacionEnviada.TipoNotificacion TIPO_NOTIFICACION = NotificacionEnviada.TipoNotificacion.CONFIRMACION_CITA;
-    private static final int FRECUENCIA_SCHEDULER_MINUTOS = 15; // Ejecutar cada 15 min
-    public RecordatorioCitasScheduler(SesionService sesionService,
+    private static final Duration ANTICIPACION_NORMAL = Duration.ofHours(2);
+    // Registros que cuentan como "recordatorio ya enviado" (o en camino, incluido un FALLIDA que la
+    // bandeja de salida aún reintentará). El correo al paciente queda en la bandeja de salida como
+    // RECORDATORIO_PACIENTE; CONFIRMACION_CITA es el marcador que se usaba antes.
+    private static final Set<NotificacionEnviada.TipoNotificacion> TIPOS_RECORDATORIO =
+            EnumSet.of(NotificacionEnviada.TipoNotificacion.CONFIRMACION_CITA, NotificacionEnviada.TipoNotificacion.RECORDATORIO_PACIENTE);
+    private static final int TAMANO_LOTE_IDS = 500; // límite prudente de parámetros en IN
+
+    private final SesionRepository sesionRepository;
+    private final NotificacionService notificacionService;
+    private final NotificacionEnviadaRepository notificacionEnviadaRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // Cola de retardo: un hilo basta, los envíos son pocos y cortos
+    private final ScheduledExecutorService temporizador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread hilo = new Thread(r, "recordatorios-citas");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    private final ConcurrentHashMap<Long, ScheduledFuture<?>> pendientes = new ConcurrentHashMap<>();
+
+    public RecordatorioCitasScheduler(SesionRepository sesionRepository,
                                       NotificacionService notificacionService,
-                                      NotificacionEnviadaRepository notificacionEnviadaRepository) { // <-- Añadir al constructor
-        this.sesionService = sesionService;
+                                      NotificacionEnviadaRepository notificacionEnviadaRepository,
+                                      PlatformTransactionManager transactionManager) {
+        this.sesionRepository = sesionRepository;
         this.notificacionService = notificacionService;
-        this.notificacionEnviadaRepository = notificacionEnviadaRepository; // <-- Asignar
+        this.notificacionEnviadaRepository = notificacionEnviadaRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
-     * Se ejecuta periódicamente para buscar citas confirmadas que necesiten recordatorio.
+     * Reconstruye los temporizadores de las citas confirmadas futuras al arrancar.
      */
-    @Scheduled(fixedRate = FRECUENCIA_SCHEDULER_MINUTOS * 60000) // Convertir minutos a ms
-    @Transactional // Para leer y escribir en NotificacionEnviadaRepository
-    public void enviarRecordatorios() {
-        LocalDateTime ahora = LocalDateTime.now();
-        log.debug("Ejecutando scheduler de recordatorios a las {}", ahora);
+    @EventListener(ApplicationReadyEvent.class)
+    public void recuperarPendientes() {
+        List<Sesion> confirmadas = sesionRepository.findByFechaAfterAndEstadoOrderByFechaAsc(
+                LocalDateTime.now(), Sesion.EstadoSesion.CONFIRMADA);
+        // Una consulta por lote (no una por sesión) para descartar las que ya tienen recordatorio
+        Set<Long> yaEnviados = sesionesConRecordatorio(confirmadas.stream().map(Sesion::getId).toList());
+        int recuperados = 0;
+        for (Sesion s : confirmadas) {
+            if (!yaEnviados.contains(s.getId())) {
+                registrar(s.getId(), s.getFecha());
+                recuperados++;
+            }
+        }
+        log.info("Recordatorios recuperados al arrancar: {} ({} ya enviados)", recuperados, yaEnviados.size());
+    }
 
-        // Ventana de búsqueda: desde ahora hasta suficiente tiempo adelante para cubrir ambos casos
-        LocalDateTime ventanaInicio = ahora;
-        // Buscamos hasta 25 horas adelante para incluir citas de mañana < 9 AM
-        LocalDateTime ventanaFin = ahora.plusHours(25);
+    /**
+     * Programa (o reprograma) el recordatorio de una cita confirmada. Si hay una transacción
+     * activa, el temporizador se registra después del commit.
+     */
+    public void programar(Sesion sesion) {
+        Long sesionId = sesion.getId();
+        LocalDateTime fechaCita = sesion.getFecha();
+        Transacciones.despuesDelCommit(() -> registrar(sesionId, fechaCita));
+    }
 
-        // Usamos el método específico para buscar confirmadas
-        List<Sesion> proximasSesionesConfirmadas = sesionService.findSesionesConfirmadasEntre(ventanaInicio, ventanaFin);
-        log.debug("Se encontraron {} sesiones confirmadas en la ventana {} - {}",
-                proximasSesionesConfirmadas.size(), ventanaInicio, ventanaFin);
+    /**
+     * Quita el recordatorio pendiente de una cita (cancelada o reprogramada).
+     */
+    public void cancelar(Long sesionId) {
+        Transacciones.despuesDelCommit(() -> {
+            ScheduledFuture<?> anterior = pendientes.remove(sesionId);
+            if (anterior != null) {
+                anterior.cancel(false);
+                log.debug("Recordatorio de sesión ID {} cancelado.", sesionId);
+            }
+        });
+    }
 
-        if (proximasSesionesConfirmadas.isEmpty()) {
-            return;
+    /**
+     * Momento de envío del recordatorio según la hora de la cita.
+     */
+    public static LocalDateTime momentoRecordatorio(LocalDateTime fechaCita) {
+        if (fechaCita.toLocalTime().isBefore(HORA_LIMITE_MANANA)) {
+            // Cita < 9 AM: Enviar día anterior ~7 PM
+            return fechaCita.toLocalDate().minusDays(1).atTime(HORA_ENVIO_NOCTURNO);
         }
+        // Cita >= 9 AM: Enviar 2 horas antes
+        return fechaCita.minus(ANTICIPACION_NORMAL);
+    }
 
-        int recordatoriosEnviados = 0;
-        for (Sesion sesion : proximasSesionesConfirmadas) {
-            // Verificar si ya se envió un recordatorio ANTES de calcular tiempos
-            boolean yaEnviado = verificarSiYaSeEnvio(sesion.getId());
-            if (yaEnviado) {
-                log.trace("Recordatorio para sesión ID {} ya fue enviado.", sesion.getId());
-                continue;
-            }
+    /** Número de recordatorios en espera (para diagnóstico). */
+    public int pendientes() {
+        return pendientes.size();
+    }
 
+    boolean programado(Long sesionId) {
+        return pendientes.containsKey(sesionId);
+    }
 
-            LocalDateTime fechaCita = sesion.getFecha();
-            LocalTime horaCita = fechaCita.toLocalTime();
-            boolean enviarAhora = false;
+    @PreDestroy
+    public void detener() {
+        temporizador.shutdownNow();
+    }
 
-            // --- Lógica de Tiempo ---
-            if (horaCita.isBefore(HORA_LIMITE_MANANA)) {
-                // Cita < 9 AM: Enviar día anterior ~7 PM
-                LocalDateTime momentoEnvioNocturno = fechaCita.toLocalDate().minusDays(1).atTime(HORA_ENVIO_NOCTURNO);
-                // Comprobar si 'ahora' está dentro de la ventana de ejecución del scheduler alrededor de las 7 PM
-                if (ahora.isAfter(momentoEnvioNocturno.minusMinutes(FRECUENCIA_SCHEDULER_MINUTOS / 2)) &&
-                        ahora.isBefore(momentoEnvioNocturno.plusMinutes(FRECUENCIA_SCHEDULER_MINUTOS / 2 + 1))) { // Ventana basada en frecuencia
-                    enviarAhora = true;
-                    log.debug("Sesión ID {} (< 9 AM). Cumple ventana de envío nocturno.", sesion.getId());
-                }
-            } else {
-                // Cita >= 9 AM: Enviar 2 horas antes
-                LocalDateTime momentoEnvioNormal = fechaCita.minusHours(2);
-                // Comprobar si 'ahora' está dentro de la ventana de ejecución alrededor de 2h antes
-                if (ahora.isAfter(momentoEnvioNormal.minusMinutes(FRECUENCIA_SCHEDULER_MINUTOS / 2)) &&
-                        ahora.isBefore(momentoEnvioNormal.plusMinutes(FRECUENCIA_SCHEDULER_MINUTOS / 2 + 1))) { // Ventana basada en frecuencia
-                    enviarAhora = true;
-                    log.debug("Sesión ID {} (>= 9 AM). Cumple ventana de envío 2h antes.", sesion.getId());
-                }
+    private void registrar(Long sesionId, LocalDateTime fechaCita) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (sesionId == null || !fechaCita.isAfter(ahora)) {
+            return;
+        }
+        long retardoMs = Math.max(0, Duration.between(ahora, momentoRecordatorio(fechaCita)).toMillis());
+        // Dentro de compute: si el retardo es 0, el despacho espera a que el temporizador quede
+        // registrado para quitarlo (si no, quedaría uno ya ejecutado en pendientes)
+        pendientes.compute(sesionId, (id, anterior) -> {
+            if (anterior != null) {
+                anterior.cancel(false);
             }
+            return temporizador.schedule(() -> despachar(sesionId, fechaCita), retardoMs, TimeUnit.MILLISECONDS);
+        });
+        log.debug("Recordatorio de sesión ID {} programado en {} ms (cita {}).", sesionId, retardoMs, fechaCita);
+    }
 
-            // --- Envío y Registro ---
-            if (enviarAhora) {
-                try {
-                    log.info("Enviando recordatorios (paciente y médico) para sesión ID: {}", sesion.getId());
-                    // Asegúrate que estos métodos existan en NotificacionService
-                    notificacionService.enviarRecordatorioPaciente(sesion);
-                    notificacionService.enviarRecordatorioMedico(sesion);
-
-                    // Registrar envío
-                    registrarEnvio(sesion, ahora);
-
-                    recordatoriosEnviados++;
-                    log.info("Recordatorios enviados y registrados para sesión ID: {}", sesion.getId());
-
-                } catch (Exception e) {
-                    log.error("Error al enviar o registrar recordatorios para sesión ID {}: {}", sesion.getId(), e.getMessage(), e);
-                    // Considera registrar el fallo en NotificacionEnviada con estado FALLIDA
+    // Se ejecuta en el hilo del temporizador a la hora exacta
+    private void despachar(Long sesionId, LocalDateTime fechaProgramada) {
+        pendientes.remove(sesionId);
+        try {
+            transactionTemplate.executeWithoutResult(estado -> {
+                Sesion sesion = sesionRepository.bloquear(sesionId).orElse(null);
+                // La cita pudo cambiar desde que se programó el temporizador
+                if (sesion == null || sesion.getEstado() != Sesion.EstadoSesion.CONFIRMADA
+                        || !sesion.getFecha().equals(fechaProgramada)) {
+                    log.debug("Recordatorio de sesión ID {} descartado: la cita ya no está confirmada para {}.", sesionId, fechaProgramada);
+                    return;
                 }
-            } else {
-                log.trace("Aún no es momento para enviar recordatorio para sesión ID {}", sesion.getId());
-            }
-        } // Fin del for
-
-        log.debug("Scheduler finalizado. {} recordatorios enviados.", recordatoriosEnviados);
+                if (verificarSiYaSeEnvio(sesionId)) {
+                    log.trace("Recordatorio para sesión ID {} ya fue enviado.", sesionId);
+                    return;
+                }
+                log.info("Enviando recordatorios (paciente y médico) para sesión ID: {}", sesionId);
+                notificacionService.enviarRecordatorioPaciente(sesion);
+                notificacionService.enviarRecordatorioMedico(sesion);
+                log.info("Recordatorios en bandeja de salida para sesión ID: {}", sesionId);
+            });
+        } catch (Exception e) {
+            log.error("Error al enviar o registrar recordatorios para sesión ID {}: {}", sesionId, e.getMessage(), e);
+        }
     }
 
     /**
      * Verifica en la base de datos si ya se envió un recordatorio para la sesión dada.
      */
     private boolean verificarSiYaSeEnvio(Long sesionId) {
-        // Usa el método simple del repositorio que asume TipoNotificacion
-        List<NotificacionEnviada> enviadas = notificacionEnviadaRepository.findBySesionIdAndTipo(sesionId, TIPO_NOTIFICACION);
-        // Considera solo las enviadas con éxito si tienes un campo 'estado' en NotificacionEnviada
-        // return enviadas.stream().anyMatch(n -> "ENVIADA".equals(n.getEstado()));
-        return !enviadas.isEmpty(); // Devuelve true si encuentra alguna (simple)
+        return !sesionesConRecordatorio(List.of(sesionId)).isEmpty();
     }
 
     /**
-     * Guarda un registro en la tabla NotificacionEnviada.
+     * De las sesiones dadas, las que ya tienen recordatorio registrado (consulta indexada por lotes).
      */
-    private void registrarEnvio(Sesion sesion, LocalDateTime fechaEnvio) {
-        NotificacionEnviada registro = new NotificacionEnviada();
-        registro.setSesionId(sesion.getId());
-        // O si solo guardas el ID: registro.setSesionId(sesion.getId());
-        registro.setTipo(TIPO_NOTIFICACION);
-        registro.setFechaEnvio(fechaEnvio);
-        // Si tienes estado: registro.setEstado("ENVIADA");
-        // Si tienes intentos: registro.setIntentos(1);
-        notificacionEnviadaRepository.save(registro);
+    private Set<Long> sesionesConRecordatorio(List<Long> sesionIds) {
+        Set<Long> resultado = new HashSet<>();
+        for (int i = 0; i < sesionIds.size(); i += TAMANO_LOTE_IDS) {
+            List<Long> lote = new ArrayList<>(sesionIds.subList(i, Math.min(i + TAMANO_LOTE_IDS, sesionIds.size())));
+            resultado.addAll(notificacionEnviadaRepository.findSesionIdsConNotificacionVigente(lote, TIPOS_RECORDATORIO));
+        }
+        return resultado;
     }
-}
\ No newline at end of file
+}
@@ -1,36 +1,117 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.util;
 
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.shared.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
- * Broadcaster simple para enviar mensajes (notificaciones) en tiempo real
- * a todas las vistas que estén suscritas.
+ * Broadcaster para enviar mensajes (notificaciones) en tiempo real a las vistas de un usuario.
+ *
+ * Los suscriptores se agrupan por id de usuario, así que un mensaje solo recorre las pestañas
+ * abiertas de ese usuario. Cada suscriptor tiene una cola acotada y los mensajes se entregan en
+ * otro hilo mediante {@link UI#access}: quien publica nunca espera a una pestaña lenta y, si una
+ * pestaña no alcanza a vaciar su cola, se descartan sus mensajes más antiguos.
  */
 public class Broadcaster {
 
-    // Lista de listeners (cada paciente conectado escucha aquí)
-    private static final CopyOnWriteArrayList<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(Broadcaster.class);
+
+    private static final int CAPACIDAD_COLA = 32;
+
+    // Usuario -> vistas suscritas (cada pestaña abierta del usuario escucha aquí)
+    private static final Map<Long, Set<Suscriptor>> suscriptores = new ConcurrentHashMap<>();
+    private static final ExecutorService entregas = Executors.newVirtualThreadPerTaskExecutor();
+
+    private Broadcaster() {
+    }
 
     /**
-     * Registra un nuevo listener (ej: un paciente en su vista).
+     * Registra un nuevo listener de un usuario (ej: un paciente en su vista).
+     * El listener se ejecuta dentro de {@code ui.access}, con la sesión de Vaadin bloqueada.
      * Retorna un Registration para que luego se pueda de-suscribir.
      */
-    public static Registration register(Consumer<String> listener) {
-        listeners.add(listener);
+    public static Registration register(Long usuarioId, UI ui, Consumer<String> listener) {
+        Suscriptor suscriptor = new Suscriptor(usuarioId, ui, listener);
+        suscriptores.computeIfAbsent(usuarioId, id -> ConcurrentHashMap.newKeySet()).add(suscriptor);
 
         // Devuelve un "de-suscriptor" que elimina al listener cuando ya no se necesite
-        return () -> listeners.remove(listener);
+        return suscriptor::quitar;
+    }
+
+    /**
+     * Envía un mensaje a las vistas registradas del usuario. No bloquea.
+     */
+    public static void broadcast(Long usuarioId, String message) {
+        Set<Suscriptor> delUsuario = suscriptores.get(usuarioId);
+        if (delUsuario == null) {
+            return;
+        }
+        for (Suscriptor suscriptor : delUsuario) {
+            suscriptor.publicar(message);
+        }
     }
 
     /**
-     * Envía un mensaje a todos los listeners registrados.
+     * Número de vistas suscritas (para diagnóstico).
      */
-    public static void broadcast(String message) {
-        for (Consumer<String> listener : listeners) {
-            listener.accept(message);
+    public static int suscritos() {
+        return suscriptores.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private static final class Suscriptor {
+        private final Long usuarioId;
+        private final UI ui;
+        private final Consumer<String> listener;
+        private final ArrayBlockingQueue<String> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+        private final AtomicBoolean entregaProgramada = new AtomicBoolean();
+
+        private Suscriptor(Long usuarioId, UI ui, Consumer<String> listener) {
+            this.usuarioId = usuarioId;
+            this.ui = ui;
+            this.listener = listener;
+        }
+
+        void publicar(String mensaje) {
+            while (!cola.offer(mensaje)) {
+                String descartado = cola.poll(); // cola llena: se pierde el más antiguo
+                log.debug("Cola de notificaciones llena para usuario {}; se descarta: {}", usuarioId, descartado);
+            }
+            if (entregaProgramada.compareAndSet(false, true)) {
+                entregas.execute(() -> {
+                    try {
+                        ui.access(this::entregar);
+                    } catch (UIDetachedException e) {
+                        quitar();
+                    }
+                });
+            }
+        }
+
+        // Corre con la sesión de la UI bloqueada
+        private void entregar() {
+            entregaProgramada.set(false);
+            String mensaje;
+            while ((mensaje = cola.poll()) != null) {
+                listener.accept(mensaje);
+            }
+        }
+
+        void quitar() {
+            suscriptores.computeIfPresent(usuarioId, (id, delUsuario) -> {
+                delUsuario.remove(this);
+                return delUsuario.isEmpty() ? null : delUsuario;
+            });
         }
     }
 }
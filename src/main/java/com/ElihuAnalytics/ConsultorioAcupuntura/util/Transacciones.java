@@ -0,0 +1,30 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utilidades para coordinar cachés en memoria con las transacciones de la base de datos.
+ */
+public final class Transacciones {
+
+    private Transacciones() {
+    }
+
+    /**
+     * Ejecuta la acción después del commit de la transacción activa, o de inmediato si no hay ninguna.
+     * Si la transacción se revierte, la acción no se ejecuta.
+     */
+    public static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
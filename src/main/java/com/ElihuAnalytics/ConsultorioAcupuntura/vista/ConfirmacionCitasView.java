@@ -29,11 +29,8 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @Route(value = "medico/citas", layout = LayoutPrincipal.class)
 @PageTitle("Confirmación de citas")
@@ -142,24 +139,10 @@ public class ConfirmacionCitasView extends VerticalLayout {
         deHoy.forEach(s -> lista.add(itemSesion(s)));
     }
 
+    // Una sola consulta para todo el rango (y el paciente elegido, si lo hay)
     private List<Sesion> buscarPendientesEntre(LocalDate ini, LocalDate fin) {
-        List<Paciente> pacientes = cbPaciente.getValue() != null
-                ? List.of(cbPaciente.getValue())
-                : pacienteService.listarTodos();
-
-        Stream<YearMonth> meses = Stream.iterate(YearMonth.from(ini),
-                ym -> !ym.isAfter(YearMonth.from(fin)),
-                ym -> ym.plusMonths(1));
-
-        return meses.flatMap(ym -> pacientes.stream()
-                        .flatMap(p -> sesionService.obtenerSesionesPorPacienteYMes(p.getId(), ym).stream()))
-                .filter(s -> {
-                    LocalDate d = s.getFecha().toLocalDate();
-                    return !d.isBefore(ini) && !d.isAfter(fin);
-                })
-                .filter(s -> s.getEstado() == Sesion.EstadoSesion.PROGRAMADA || s.getEstado() == Sesion.EstadoSesion.CONFIRMADA)
-                .sorted(Comparator.comparing(Sesion::getFecha))
-                .collect(Collectors.toList());
+        Long pacienteId = cbPaciente.getValue() != null ? cbPaciente.getValue().getId() : null;
+        return sesionService.buscarPendientesEntre(ini, fin, pacienteId);
     }
 
     private Component itemSesion(Sesion s) {
@@ -1,6 +1,10 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.vista;
 
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
 import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.AutenticacionServicio;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Broadcaster;
+import com.vaadin.flow.component.AttachEvent;
+import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.applayout.AppLayout;
 import com.vaadin.flow.component.button.Button;
@@ -11,6 +15,7 @@ import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.VaadinIcon;
 import com.vaadin.flow.component.orderedlayout.FlexComponent;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
+import com.vaadin.flow.shared.Registration;
 import com.vaadin.flow.spring.annotation.UIScope;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.security.PermitAll;
@@ -26,6 +31,7 @@ import org.springframework.stereotype.Component;
  *  - Botones de acción (notificación demo y cerrar sesión).
  *
  * En modo producción (app.demo.enabled = false), se oculta el botón de notificaciones.
+ * Para el médico, también recibe sus notificaciones en tiempo real (nuevas citas, cancelaciones...).
  */
 @UIScope
 @Component
@@ -43,11 +49,42 @@ public class LayoutPrincipal extends AppLayout {
     @Value("${app.demo.enabled:false}")
     private boolean demoEnabled;
 
+    // Suscripción del médico a sus notificaciones (los pacientes se suscriben en PacienteView)
+    private Registration broadcasterRegistration;
+
     @PostConstruct
     public void init() {
         crearEncabezado();
     }
 
+    @Override
+    protected void onAttach(AttachEvent attachEvent) {
+        super.onAttach(attachEvent);
+        auth.getUsuarioAutenticado()
+                .filter(usuario -> usuario.getRol() == Rol.MEDICO)
+                .ifPresent(medico -> broadcasterRegistration =
+                        Broadcaster.register(medico.getId(), attachEvent.getUI(), this::mostrarNotificacion));
+    }
+
+    @Override
+    protected void onDetach(DetachEvent detachEvent) {
+        if (broadcasterRegistration != null) {
+            broadcasterRegistration.remove();
+            broadcasterRegistration = null;
+        }
+        super.onDetach(detachEvent);
+    }
+
+    // Recibe mensajes del Broadcaster (ya dentro de ui.access) y muestra notificación nativa
+    private void mostrarNotificacion(String mensaje) {
+        getUI().ifPresent(ui -> ui.getPage().executeJs(
+                "if (window.Notification && Notification.permission === 'granted') {" +
+                        " new Notification($0);" +
+                        "} else if (window.Notification && Notification.permission !== 'denied') {" +
+                        " Notification.requestPermission().then(p => { if(p === 'granted') { new Notification($0); } });" +
+                        "}", mensaje));
+    }
+
     /**
      * Crea el encabezado principal de la aplicación (topbar).
      * Se construye de forma flexible para adaptarse a diferentes tamaños de pantalla.
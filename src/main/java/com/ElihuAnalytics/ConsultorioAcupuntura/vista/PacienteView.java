@@ -35,6 +35,7 @@ public class PacienteView extends VerticalLayout {
     private final UI ui;
     // Para poder cancelar la suscripción cuando se cierre la vista
     private Registration broadcasterRegistration;
+    private Long pacienteId; // clave de las notificaciones en tiempo real
     private final HistoriaClinicaService historiaClinicaService;
     private final AutenticacionServicio autenticacionServicio;
     private final FileStorageService fileStorageService;
@@ -70,6 +71,7 @@ public class PacienteView extends VerticalLayout {
             if (usuario.getRol() == Rol.PACIENTE) {
                 try {
                     Paciente pacienteActual = pacienteService.buscarPorUsuarioId(usuario.getId());
+                    pacienteId = pacienteActual.getId();
                     HistoriaClinica hc = historiaClinicaService.obtenerOCrearPorPacienteId(pacienteActual.getId());
                     construirDashboard(pacienteActual, hc);
                 } catch (Exception ex) {
@@ -151,8 +153,12 @@ public class PacienteView extends VerticalLayout {
      */
     @Override
     protected void onAttach(AttachEvent attachEvent) {
-        // Nos guardamos el registration
-        broadcasterRegistration = Broadcaster.register(this::mostrarConfirmacion);
+        // Nos guardamos el registration (solo llegan los mensajes de este paciente)
+        if (pacienteId != null) {
+            broadcasterRegistration = Broadcaster.register(pacienteId, attachEvent.getUI(), this::mostrarConfirmacion);
+            // Suscribe el navegador a las notificaciones push (recordatorios con la app cerrada)
+            attachEvent.getUI().getPage().addJavaScript("/js/notification-service.js");
+        }
     }
 
     /**
@@ -172,11 +178,9 @@ public class PacienteView extends VerticalLayout {
      * Método que recibe una confirmación desde el Broadcaster.
      * Muestra un aviso en pantalla (notificación de Vaadin + notificación nativa del navegador).
      */
-    // Recibe mensajes del Broadcaster y muestra notificación nativa
+    // Recibe mensajes del Broadcaster (ya dentro de ui.access) y muestra notificación nativa
     public void mostrarConfirmacion(String mensaje) {
-        UI ui = UI.getCurrent();
-        if (ui != null) {
-            ui.access(() -> {
+        getUI().ifPresent(ui ->
                 // Solo notificación nativa del navegador
                 ui.getPage().executeJs(
                         "if (window.Notification && Notification.permission === 'granted') {" +
@@ -184,8 +188,6 @@ public class PacienteView extends VerticalLayout {
                                 "} else if (window.Notification && Notification.permission !== 'denied') {" +
                                 " Notification.requestPermission().then(p => { if(p === 'granted') { new Notification($0); } });" +
                                 "}", mensaje
-                );
-            });
-        }
+                ));
     }
 }
\ No newline at end of file
@@ -185,10 +185,12 @@ public class RegistroView extends VerticalLayout {
             codigoGenerado[0] = String.valueOf(new Random().nextInt(900000) + 100000);
 
             try {
-                // Usamos el servicio actualizado (que ahora usa Brevo por dentro)
+                // Queda en la bandeja de salida: un fallo de Brevo no se ve aquí, por eso se ofrece reenviar
                 correoService.enviarCodigo(email, codigoGenerado[0]);
 
-                Notification.show("Código enviado a " + email, 3000, Notification.Position.MIDDLE);
+                Notification.show("Te enviaremos el código a " + email
+                                + ". Si no llega en unos minutos, pulsa de nuevo \"Enviar código\".",
+                        6000, Notification.Position.MIDDLE);
             } catch (Exception ex) {
                 logger.error("Error en vista enviando código: {}", ex.getMessage());
                 Notification.show("No se pudo enviar el correo. Intenta de nuevo.",
@@ -224,7 +224,8 @@ public class AntecedentesCard extends Div {
                             fileStorageService.delete(rutaRelativa);
                             return;
                         }
-                        onConfirm.accept(rutaRelativa, originalName, descripcion.trim());
+                        adjuntosHelper.registrarCuandoEsteProcesado(ui, rutaRelativa, originalName,
+                                () -> onConfirm.accept(rutaRelativa, originalName, descripcion.trim()));
                     }, () -> {
                         fileStorageService.delete(rutaRelativa);
                         onCancelUpload.run();
@@ -3,6 +3,7 @@ package com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.FileStorageService;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.PacienteService;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.VersionesImagen;
 import com.vaadin.flow.component.avatar.Avatar;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
@@ -30,6 +31,7 @@ public class PerfilFotoCard extends Div {
 
     private static final Logger log = LoggerFactory.getLogger(PerfilFotoCard.class);
     private static final long MAX_FILE_SIZE = 20 * 1024 * 1024; // 20 MB
+    private static final int ANCHO_AVATAR = 128;
 
     private final Paciente paciente;
     private final FileStorageService fileStorageService;
@@ -59,23 +61,23 @@ public class PerfilFotoCard extends Div {
         Div avatarBox = new Div();
         avatarBox.getStyle()
                 .set("position", "relative")
-                .set("width", "128px")
-                .set("height", "128px")
+                .set("width", ANCHO_AVATAR + "px")
+                .set("height", ANCHO_AVATAR + "px")
                 .set("display", "inline-flex")
                 .set("align-items", "center")
                 .set("justify-content", "center");
 
         // Avatar principal
         avatar = new Avatar(paciente.getNombres() + " " + paciente.getApellidos());
-        avatar.setWidth("128px");
-        avatar.setHeight("128px");
+        avatar.setWidth(ANCHO_AVATAR + "px");
+        avatar.setHeight(ANCHO_AVATAR + "px");
         avatar.getElement().setAttribute("aria-label", "Foto de perfil");
 
         // Cargar foto guardada si existe
         if (paciente.getRutaFotoPerfil() != null && !paciente.getRutaFotoPerfil().isBlank()) {
             String rutaLimpia = limpiarRutaWeb(paciente.getRutaFotoPerfil());
             log.info("Cargando foto de perfil: pacienteId={}, ruta={}", paciente.getId(), rutaLimpia);
-            avatar.setImage(agregarCacheBuster(rutaLimpia));
+            avatar.setImage(VersionesImagen.url(rutaLimpia, ANCHO_AVATAR));
         }
 
         // Configurar upload con UploadHandler
@@ -109,8 +111,17 @@ public class PerfilFotoCard extends Div {
                     String rutaWeb = fileStorageService.save(inputStream, nombreArchivo);
                     log.info("Archivo guardado: pacienteId={}, rutaWeb={}", paciente.getId(), rutaWeb);
 
-                    // Ejecutar actualización en el hilo de UI
-                    getUI().ifPresent(ui -> ui.access(() -> {
+                    // La foto nueva reemplaza a la anterior cuando ya está optimizada (por push):
+                    // hasta entonces su nombre no existe
+                    getUI().ifPresent(ui -> fileStorageService.procesado(rutaWeb).whenComplete((listo, error) -> ui.access(() -> {
+                        if (error != null) {
+                            log.error("No se pudo procesar la foto de perfil: pacienteId={}, rutaWeb={}",
+                                    paciente.getId(), rutaWeb, error);
+                            fileStorageService.delete(rutaWeb);
+                            upload.clearFileList();
+                            mostrarNotificacion("No se pudo procesar la foto. Intente de nuevo.", NotificationVariant.LUMO_ERROR);
+                            return;
+                        }
                         try {
                             // Eliminar foto anterior si existe
                             String rutaAnterior = paciente.getRutaFotoPerfil();
@@ -124,9 +135,7 @@ public class PerfilFotoCard extends Div {
                             pacienteService.actualizarRutaFotoPerfil(paciente.getId(), rutaWeb);
                             paciente.setRutaFotoPerfil(rutaWeb);
 
-                            // Actualizar la imagen en el avatar
-                            String rutaLimpia = limpiarRutaWeb(rutaWeb);
-                            avatar.setImage(agregarCacheBuster(rutaLimpia));
+                            avatar.setImage(VersionesImagen.url(limpiarRutaWeb(rutaWeb), ANCHO_AVATAR));
 
                             // Limpiar el upload
                             upload.clearFileList();
@@ -142,7 +151,7 @@ public class PerfilFotoCard extends Div {
                             mostrarNotificacion("Error al actualizar la foto: " + ex.getMessage(),
                                     NotificationVariant.LUMO_ERROR);
                         }
-                    }));
+                    })));
 
                 } catch (IOException ex) {
                     log.error("Error al guardar la foto de perfil: pacienteId={}, archivo={}, error={}",
@@ -265,22 +274,6 @@ public class PerfilFotoCard extends Div {
         return rutaLimpia;
     }
 
-    /**
-     * Agrega un parámetro de cache buster para forzar la recarga de la imagen.
-     * Esto evita que el navegador use versiones cacheadas de la foto.
-     *
-     * @param url URL base de la imagen
-     * @return URL con parámetro de versión timestamp
-     */
-    private String agregarCacheBuster(String url) {
-        if (url == null || url.isBlank()) {
-            return url;
-        }
-
-        String separator = url.contains("?") ? "&" : "?";
-        return url + separator + "v=" + System.currentTimeMillis();
-    }
-
     /**
      * Muestra una notificación toast al usuario.
      *
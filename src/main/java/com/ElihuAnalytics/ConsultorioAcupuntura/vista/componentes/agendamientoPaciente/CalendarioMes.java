@@ -1,6 +1,7 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.agendamientoPaciente;
 
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.DisponibilidadDia;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
 import com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.util.FestivosColombia;
 import com.vaadin.flow.component.button.Button;
@@ -57,6 +58,7 @@ public class CalendarioMes extends VerticalLayout {
     private final Button btnMesSiguiente;
 
     private Map<LocalDate, Set<Sesion.EstadoSesion>> sesionesDelMes = Collections.emptyMap(); // Para marcar días con citas
+    private Map<LocalDate, DisponibilidadDia> disponibilidadDelMes = Collections.emptyMap(); // Para sombrear cupo por día
 
     public CalendarioMes(Long pacienteId, SesionService sesionService, Consumer<LocalDate> onDateSelected, Consumer<List<LocalTime>> onHoursAvailable) {
         this.pacienteId = pacienteId;
@@ -120,6 +122,13 @@ public class CalendarioMes extends VerticalLayout {
             sesionesDelMes = Collections.emptyMap();
             // Considera mostrar notificación de error
         }
+        try {
+            // Una sola consulta para el cupo de todo el mes
+            disponibilidadDelMes = sesionService.getDisponibilidadMes(mesActual);
+        } catch (Exception e) {
+            log.error("Error al cargar disponibilidad para el mes {}: {}", mesActual, e.getMessage(), e);
+            disponibilidadDelMes = Collections.emptyMap();
+        }
         // No es necesario repintar aquí, se hace al cambiar mes o seleccionar día
     }
 
@@ -186,12 +195,17 @@ public class CalendarioMes extends VerticalLayout {
 
 
             // --- Lógica de Selección y Obtención de Horas ---
-            // Solo permitir seleccionar días válidos (no pasados, no domingos, no festivos)
-            if (fechaDia.isBefore(LocalDate.now()) || dow == DayOfWeek.SUNDAY || FestivosColombia.esFestivo(fechaDia)) {
+            // Solo permitir seleccionar días válidos (no pasados, no festivos, con horario laboral)
+            DisponibilidadDia disponibilidad = disponibilidadDelMes.get(fechaDia);
+            boolean noAgendable = disponibilidad != null
+                    ? disponibilidad.esNoLaborable()
+                    : fechaDia.isBefore(LocalDate.now()) || dow == DayOfWeek.SUNDAY || FestivosColombia.esFestivo(fechaDia);
+            if (noAgendable) {
                 cellDia.addClassName("deshabilitado");
             } else {
                 // Habilitar click solo en días válidos
                 cellDia.addClickListener(e -> seleccionarDia(fechaDia));
+                marcarCupo(cellDia, disponibilidad);
             }
 
             gridDias.add(cellDia);
@@ -200,6 +214,24 @@ public class CalendarioMes extends VerticalLayout {
         btnMesAnterior.setEnabled(!mesActual.equals(YearMonth.now())); // No ir a meses pasados desde hoy
     }
 
+    /**
+     * Sombrea la celda según el cupo del día: sin cupo, cupo parcial o libre.
+     */
+    private void marcarCupo(Div cellDia, DisponibilidadDia disponibilidad) {
+        if (disponibilidad == null || disponibilidad.esNoLaborable()) {
+            return;
+        }
+        if (disponibilidad.estaLleno()) {
+            cellDia.addClassName("sin-cupo");
+        } else if (disponibilidad.esParcial()) {
+            cellDia.addClassName("cupo-parcial");
+        } else {
+            cellDia.addClassName("cupo-libre");
+        }
+        cellDia.getElement().setAttribute("title",
+                disponibilidad.getHorasLibres().size() + " de " + disponibilidad.getCapacidad() + " horas libres");
+    }
+
     /**
      * Se ejecuta al hacer clic en un día válido.
      * Marca el día, notifica la fecha seleccionada y obtiene/notifica las horas disponibles.
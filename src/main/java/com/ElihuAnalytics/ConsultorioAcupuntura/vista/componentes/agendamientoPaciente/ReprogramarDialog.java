@@ -7,6 +7,7 @@ import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.datetimepicker.DateTimePicker;
 import com.vaadin.flow.component.dialog.Dialog;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.notification.NotificationVariant;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
@@ -15,9 +16,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Componente para el diálogo de reprogramación de citas.
@@ -52,6 +57,20 @@ public class ReprogramarDialog {
         nuevaFechaPicker.setMin(LocalDateTime.now());
         nuevaFechaPicker.setValue(sesion.getFecha());
 
+        // Horas libres del día elegido (sin contar la propia cita que se mueve)
+        Span horasLibres = new Span();
+        horasLibres.getStyle()
+                .set("font-size", "var(--lumo-font-size-s)")
+                .set("color", "var(--lumo-secondary-text-color)");
+        mostrarHorasLibres(horasLibres, sesion.getFecha(), sesion.getId());
+        nuevaFechaPicker.addValueChangeListener(ev -> {
+            LocalDateTime anterior = ev.getOldValue();
+            LocalDateTime nueva = ev.getValue();
+            if (nueva == null || anterior == null || !anterior.toLocalDate().equals(nueva.toLocalDate())) {
+                mostrarHorasLibres(horasLibres, nueva, sesion.getId());
+            }
+        });
+
         Button guardar = new Button("Guardar", e -> {
             LocalDateTime nuevaFecha = nuevaFechaPicker.getValue();
             if (nuevaFecha == null) {
@@ -93,10 +112,28 @@ public class ReprogramarDialog {
 
         HorizontalLayout botones = new HorizontalLayout(guardar, cancelar);
         dialog.removeAll();
-        dialog.add(nuevaFechaPicker, botones);
+        dialog.add(nuevaFechaPicker, horasLibres, botones);
         dialog.open();
     }
 
+    private void mostrarHorasLibres(Span destino, LocalDateTime fecha, Long sesionId) {
+        if (fecha == null) {
+            destino.setText("");
+            return;
+        }
+        LocalDate dia = fecha.toLocalDate();
+        try {
+            List<LocalTime> horas = sesionService.getHorasDisponibles(dia, sesionId);
+            destino.setText(horas.isEmpty()
+                    ? "No hay horas libres el " + dia.format(FORMATO_FECHA) + "."
+                    : "Horas libres el " + dia.format(FORMATO_FECHA) + ": " +
+                    horas.stream().map(h -> h.format(FORMATO_HORA)).collect(Collectors.joining(", ")));
+        } catch (Exception ex) {
+            log.warn("No se pudieron calcular las horas libres para {}: {}", dia, ex.getMessage());
+            destino.setText("");
+        }
+    }
+
     private void mostrarNotificacion(String mensaje, NotificationVariant variant) {
         Notification notification = new Notification(mensaje, 3000, Notification.Position.TOP_CENTER);
         notification.addThemeVariants(variant);
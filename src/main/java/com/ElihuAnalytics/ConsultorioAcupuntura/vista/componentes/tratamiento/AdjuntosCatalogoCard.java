@@ -6,22 +6,30 @@ import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.HistoriaClinica;
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.SeguimientoSalud;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.FileStorageService;
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.HistoriaClinicaService;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.VersionesImagen;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.html.Anchor;
 import com.vaadin.flow.component.html.Div;
 import com.vaadin.flow.component.html.H3;
+import com.vaadin.flow.component.html.Image;
 import com.vaadin.flow.component.html.Paragraph;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Catálogo de adjuntos reunidos desde antecedentes y seguimientos.
+ * Las imágenes se muestran como miniatura (versión reducida) que enlaza al archivo completo;
+ * una que aún se está optimizando muestra su nombre y la miniatura llega por push al terminar.
  * (Puedes extenderlo con upload y gestión si lo deseas.)
  */
 public class AdjuntosCatalogoCard extends Div {
 
+    private static final int ANCHO_MINIATURA = 160;
+
     public AdjuntosCatalogoCard(HistoriaClinica hc,
                                 HistoriaClinicaService service,
                                 FileStorageService storage) {
@@ -41,13 +49,34 @@ public class AdjuntosCatalogoCard extends Div {
             return;
         }
 
+        UI ui = UI.getCurrent();
         VerticalLayout lista = new VerticalLayout();
         lista.setPadding(false);
         lista.setSpacing(false);
         rutas.forEach(r -> {
             String rutaWeb = (r == null ? "" : r.replace("\\", "/"));
             String nombre = nombreArchivo(rutaWeb);
-            Anchor link = new Anchor("/" + rutaWeb, nombre);
+            String href = rutaWeb.startsWith("/") ? rutaWeb : "/" + rutaWeb;
+            Anchor link;
+            if (VersionesImagen.esImagen(nombre)) {
+                Image miniatura = new Image(VersionesImagen.url(rutaWeb, ANCHO_MINIATURA), nombre);
+                miniatura.setWidth(ANCHO_MINIATURA + "px");
+                miniatura.getElement().setAttribute("loading", "lazy");
+                CompletableFuture<Void> procesado = storage.procesado(rutaWeb);
+                if (procesado.isDone() || ui == null) {
+                    link = new Anchor(href, miniatura);
+                } else {
+                    link = new Anchor(href, nombre);
+                    Anchor enlace = link;
+                    procesado.thenRun(() -> ui.access(() -> {
+                        enlace.removeAll();
+                        enlace.add(miniatura);
+                    }));
+                }
+                link.getElement().setAttribute("title", nombre);
+            } else {
+                link = new Anchor(href, nombre);
+            }
             link.setTarget("_blank");
             lista.add(link);
         });
@@ -1,6 +1,7 @@
 package com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.tratamiento;
 
 import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.VersionesImagen;
 import com.vaadin.flow.component.Text;
 import com.vaadin.flow.component.avatar.Avatar;
 import com.vaadin.flow.component.html.Div;
@@ -11,7 +12,7 @@ import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 
 /**
  * Muestra foto (rutaFotoPerfil) y datos básicos del paciente.
- * Normaliza la ruta a /pacientes-Uploads/... para recursos estáticos en local y Railway Volumes.
+ * La foto se pide a /uploads/...?w=72, que sirve la versión reducida para avatar.
  */
 public class PacienteHeaderCard extends Div {
 
@@ -60,8 +61,7 @@ public class PacienteHeaderCard extends Div {
             return null;
         }
 
-        // Devolver ruta relativa para recursos estáticos (/pacientes-Uploads/nombreArchivo)
-        // Compatible con local (./pacientes-Uploads/) y Railway (/volumes/uploads/pacientes-Uploads/)
-        return "/pacientes-Uploads/" + fileName;
+        // Versión del tamaño del avatar (72 px), no la vista de 1024
+        return VersionesImagen.url(fileName, 72);
     }
 }
\ No newline at end of file
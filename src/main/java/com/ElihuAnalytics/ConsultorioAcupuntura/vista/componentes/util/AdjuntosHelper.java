@@ -2,6 +2,7 @@ package com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.util;
 
 import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.FileStorageService;
 import com.vaadin.flow.component.Component;
+import com.vaadin.flow.component.UI;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.confirmdialog.ConfirmDialog;
 import com.vaadin.flow.component.html.Anchor;
@@ -64,7 +65,8 @@ public class AdjuntosHelper {
                             fileStorageService.delete(rutaRelativa);
                             return;
                         }
-                        onConfirm.accept(rutaRelativa, originalName, descripcion.trim());
+                        registrarCuandoEsteProcesado(ui, rutaRelativa, originalName,
+                                () -> onConfirm.accept(rutaRelativa, originalName, descripcion.trim()));
                     }, () -> {
                         fileStorageService.delete(rutaRelativa);
                         onCancelUpload.run();
@@ -83,6 +85,23 @@ public class AdjuntosHelper {
         return upload;
     }
 
+    /**
+     * Una imagen recién subida no tiene su nombre definitivo hasta que termina de optimizarse:
+     * el adjunto se registra (y su enlace se muestra) cuando ya se puede ver. Si no se pudo
+     * procesar, se avisa y se descarta la subida.
+     */
+    public void registrarCuandoEsteProcesado(UI ui, String rutaRelativa, String originalName, Runnable registrar) {
+        fileStorageService.procesado(rutaRelativa).whenComplete((listo, error) -> ui.access(() -> {
+            if (error != null) {
+                log.error("No se pudo procesar el adjunto {} ({})", originalName, rutaRelativa, error);
+                Notification.show("No se pudo procesar " + originalName + ". Vuelva a subirlo.");
+                fileStorageService.delete(rutaRelativa);
+                return;
+            }
+            registrar.run();
+        }));
+    }
+
     /**
      * Diálogo para pedir la descripción del archivo subido.
      */
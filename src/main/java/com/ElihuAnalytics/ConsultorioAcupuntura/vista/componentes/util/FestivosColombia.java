@@ -4,16 +4,62 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.Month;
 import java.time.temporal.TemporalAdjusters;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Festivos de Colombia (fijos, de Pascua y trasladados a lunes por la Ley Emiliani).
+ * Cada año se calcula una sola vez y se guarda inmutable. Además, un rango de años
+ * (por defecto el anterior y los 10 siguientes al actual; ajustable con las propiedades de sistema
+ * {@code festivos.aniosAtras} y {@code festivos.aniosAdelante}) se precalcula en un bitset indexado
+ * por día época, así {@link #esFestivo} no crea objetos en el camino habitual.
+ */
 public final class FestivosColombia {
 
+    // Festivos por año ya calculados (mapas inmutables, en orden de cálculo)
+    private static final ConcurrentHashMap<Integer, Map<LocalDate, String>> CACHE_POR_ANIO = new ConcurrentHashMap<>();
+
+    // Bitset del rango precalculado; se reemplaza completo en precalcular()
+    private static volatile TablaFestivos tabla;
+
+    static {
+        int anioActual = LocalDate.now().getYear();
+        precalcular(anioActual - Integer.getInteger("festivos.aniosAtras", 1),
+                anioActual + Integer.getInteger("festivos.aniosAdelante", 10));
+    }
+
     private FestivosColombia() {}
 
+    /**
+     * Precalcula el bitset de festivos para los años {@code desde}..{@code hasta} (ambos incluidos).
+     * Los años fuera del rango siguen funcionando a través de la caché por año.
+     */
+    public static void precalcular(int desde, int hasta) {
+        if (hasta < desde) {
+            throw new IllegalArgumentException("Rango de años inválido: " + desde + " - " + hasta);
+        }
+        long base = LocalDate.of(desde, Month.JANUARY, 1).toEpochDay();
+        long dias = LocalDate.of(hasta + 1, Month.JANUARY, 1).toEpochDay() - base;
+        long[] bits = new long[(int) ((dias + 63) / 64)];
+        for (int anio = desde; anio <= hasta; anio++) {
+            for (LocalDate festivo : festivosPorAnio(anio).keySet()) {
+                long i = festivo.toEpochDay() - base;
+                bits[(int) (i >>> 6)] |= 1L << i;
+            }
+        }
+        tabla = new TablaFestivos(base, dias, bits);
+    }
+
     public static boolean esFestivo(LocalDate fecha) {
-        return nombreFestivo(fecha).isPresent();
+        TablaFestivos t = tabla;
+        long i = fecha.toEpochDay() - t.base;
+        if (i >= 0 && i < t.dias) {
+            return (t.bits[(int) (i >>> 6)] & (1L << i)) != 0;
+        }
+        return festivosPorAnio(fecha.getYear()).containsKey(fecha);
     }
 
     public static Optional<String> nombreFestivo(LocalDate fecha) {
@@ -21,7 +67,15 @@ public final class FestivosColombia {
         return Optional.ofNullable(festivos.get(fecha));
     }
 
+    /**
+     * Festivos del año (fecha observada -> nombre). El mapa es inmutable y se calcula una sola vez por año.
+     */
     public static Map<LocalDate, String> festivosPorAnio(int year) {
+        return CACHE_POR_ANIO.computeIfAbsent(year, y -> Collections.unmodifiableMap(calcularFestivos(y)));
+    }
+
+    // Cálculo completo de un año, sin caché
+    static Map<LocalDate, String> calcularFestivos(int year) {
         Map<LocalDate, String> res = new LinkedHashMap<>();
 
         // Fijos (no se mueven)
@@ -83,4 +137,16 @@ public final class FestivosColombia {
         int day = ((h + l - 7 * m + 114) % 31) + 1;
         return LocalDate.of(year, month, day);
     }
+
+    private static final class TablaFestivos {
+        private final long base;   // día época del 1 de enero del primer año
+        private final long dias;   // días cubiertos
+        private final long[] bits;
+
+        private TablaFestivos(long base, long dias, long[] bits) {
+            this.base = base;
+            this.dias = dias;
+            this.bits = bits;
+        }
+    }
 }
\ No newline at end of file
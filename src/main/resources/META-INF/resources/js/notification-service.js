@@ -19,6 +19,36 @@ class NotificationService {
         }
 
         console.log('Notificaciones inicializadas. Permiso:', this.permission);
+
+        if (this.permission === 'granted') {
+            await this.suscribirPush();
+        }
+    }
+
+    // Registra este navegador para recibir notificaciones push del servidor (con la app cerrada)
+    async suscribirPush() {
+        if (!('serviceWorker' in navigator) || !('PushManager' in window)) {
+            return;
+        }
+        try {
+            const registro = await navigator.serviceWorker.ready;
+            let suscripcion = await registro.pushManager.getSubscription();
+            if (!suscripcion) {
+                const clave = await (await fetch('/api/push/clave-publica', { credentials: 'same-origin' })).text();
+                suscripcion = await registro.pushManager.subscribe({
+                    userVisibleOnly: true,
+                    applicationServerKey: base64UrlABytes(clave)
+                });
+            }
+            await fetch('/api/push/suscripciones', {
+                method: 'POST',
+                credentials: 'same-origin',
+                headers: { 'Content-Type': 'application/json', 'X-Requested-With': 'notification-service' },
+                body: JSON.stringify(suscripcion.toJSON())
+            });
+        } catch (error) {
+            console.warn('No se pudo activar la notificación push:', error);
+        }
     }
 
     // Mostrar notificación nativa del sistema
@@ -108,6 +138,12 @@ class NotificationService {
     }
 }
 
+function base64UrlABytes(texto) {
+    const relleno = '='.repeat((4 - texto.length % 4) % 4);
+    const binario = atob((texto + relleno).replace(/-/g, '+').replace(/_/g, '/'));
+    return Uint8Array.from(binario, (c) => c.charCodeAt(0));
+}
+
 // Instancia global
 window.notificationService = new NotificationService();
 
@@ -1,3 +1,38 @@
+// Peticiones a la API de citas: sin sesión, con el token limitado a la cita que trae la notificación
+const apiPost = (token) => ({
+    method: 'POST',
+    credentials: 'omit',
+    headers: token ? { 'Authorization': 'Bearer ' + token } : {}
+});
+
+const ACCIONES = {
+    confirmar: 'Confirmar',
+    cancelar: 'Cancelar'
+};
+
+// Notificaciones Web Push enviadas por el servidor (llegan aunque la aplicación esté cerrada)
+self.addEventListener('push', (event) => {
+    let datos = {};
+    try {
+        datos = event.data ? event.data.json() : {};
+    } catch (e) {
+        datos = { cuerpo: event.data ? event.data.text() : '' };
+    }
+
+    const opciones = {
+        body: datos.cuerpo || '',
+        icon: '/icons/icon-192x192.png',
+        badge: '/icons/badge-72x72.png',
+        tag: datos.sesionId ? 'cita-' + datos.sesionId : undefined,
+        data: { sesionId: datos.sesionId || null, token: datos.token || null },
+        actions: (datos.acciones || [])
+            .filter((accion) => ACCIONES[accion])
+            .map((accion) => ({ action: accion, title: ACCIONES[accion] }))
+    };
+
+    event.waitUntil(self.registration.showNotification(datos.titulo || 'Buena Vida', opciones));
+});
+
 self.addEventListener('notificationclick', (event) => {
     const notification = event.notification;
     const action = event.action;
@@ -13,14 +48,14 @@ self.addEventListener('notificationclick', (event) => {
 
         switch (action) {
             case 'confirmar':
-                await fetch('/api/citas/confirmar/' + sesionId, { method: 'POST' });
+                await fetch('/api/citas/confirmar/' + sesionId, apiPost(data.token));
                 break;
             case 'reagendar':
                 // Abrir la app en la página de reagendamiento
                 clients.openWindow('/reagendar/' + sesionId);
                 return;
             case 'cancelar':
-                await fetch('/api/citas/cancelar/' + sesionId, { method: 'POST' });
+                await fetch('/api/citas/cancelar/' + sesionId, apiPost(data.token));
                 break;
             default:
                 // Click en la notificación sin botón específico
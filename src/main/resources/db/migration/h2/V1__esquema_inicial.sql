@@ -0,0 +1,240 @@
+-- Esquema inicial: el que ddl-auto=update había creado en las bases existentes hasta la
+-- introducción de las migraciones. En esas bases Flyway marca esta versión como línea base
+-- (spring.flyway.baseline-on-migrate) y no la ejecuta; en una base vacía crea todo desde cero.
+
+create table administrador (
+    id bigint not null,
+    primary key (id)
+);
+
+create table antecedente_adjuntos (
+    antecedente_id bigint not null,
+    ruta varchar(191) not null,
+    descripcion varchar(255),
+    primary key (antecedente_id, ruta)
+);
+
+create table antecedente_relevante (
+    creado_el timestamp(6) not null,
+    historia_clinica_id bigint not null unique,
+    id bigint generated by default as identity,
+    descripcion clob,
+    primary key (id)
+);
+
+create table antecedente_relevante_rutas_archivos (
+    antecedente_id bigint not null,
+    ruta varchar(191)
+);
+
+create table blog_articulo (
+    fecha_creacion timestamp(6),
+    fecha_modificacion timestamp(6),
+    id bigint generated by default as identity,
+    categoria varchar(100) not null,
+    slug varchar(255) not null unique,
+    titulo varchar(255) not null,
+    contenido TEXT not null,
+    primary key (id)
+);
+
+create table codigo_verificacion (
+    verificado boolean not null,
+    expira_el timestamp(6) not null,
+    generado_el timestamp(6) not null,
+    id bigint generated by default as identity,
+    codigo varchar(255) not null,
+    email varchar(255) not null,
+    primary key (id)
+);
+
+create table documento (
+    fecha_subida timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null,
+    tipo varchar(50) not null,
+    nombre varchar(200) not null,
+    ruta_archivo varchar(500) not null,
+    primary key (id)
+);
+
+create table historia_clinica (
+    creada_el timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null unique,
+    diagnostico_tradicional clob,
+    primary key (id)
+);
+
+create table medico (
+    id bigint not null,
+    primary key (id)
+);
+
+create table notas_privadas (
+    fecha_hora timestamp(6) not null,
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    texto clob not null,
+    primary key (id)
+);
+
+create table notificacion_enviada (
+    intentos integer not null,
+    fecha_envio timestamp(6) not null,
+    id bigint generated by default as identity,
+    sesion_id bigint not null,
+    destinatario varchar(100),
+    mensaje_error varchar(500),
+    canal enum ('EMAIL','PUSH','SMS','WHATSAPP') not null,
+    estado enum ('ENVIADA','FALLIDA','PENDIENTE','REINTENTANDO') not null,
+    tipo enum ('CANCELACION_CITA','CONFIRMACION_CITA','CONFIRMACION_PACIENTE','RECORDATORIO_MEDICO','RECORDATORIO_PACIENTE','REPROGRAMACION_CITA') not null,
+    primary key (id)
+);
+
+create table paciente (
+    id bigint not null,
+    ruta_foto_perfil varchar(512),
+    primary key (id)
+);
+
+create table prescripcion (
+    orden_prescripcion integer,
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    indicaciones clob,
+    primary key (id)
+);
+
+create table recomendacion (
+    orden_recomendacion integer,
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    contenido clob,
+    primary key (id)
+);
+
+create table seguimiento_adjuntos (
+    seguimiento_id bigint not null,
+    ruta varchar(191) not null,
+    descripcion varchar(255),
+    primary key (seguimiento_id, ruta)
+);
+
+create table seguimiento_salud (
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    descripcion clob,
+    primary key (id)
+);
+
+create table seguimiento_salud_archivos (
+    seguimiento_id bigint not null,
+    ruta varchar(191)
+);
+
+create table sesion (
+    duracion numeric(21,0) not null,
+    fecha timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null,
+    motivo varchar(500) not null,
+    lugar varchar(255),
+    estado enum ('CANCELADA','CONFIRMADA','PROGRAMADA','REALIZADA') not null,
+    primary key (id)
+);
+
+create table usuario (
+    activo boolean not null,
+    fecha_registro timestamp(6),
+    id bigint generated by default as identity,
+    dtype varchar(31) not null,
+    apellidos varchar(255),
+    celular varchar(255),
+    nombres varchar(255),
+    password varchar(255),
+    username varchar(255) not null unique,
+    rol enum ('ADMINISTRADOR','MEDICO','PACIENTE'),
+    primary key (id)
+);
+
+create index idx_notaprivada_hc_fecha
+   on notas_privadas (historia_clinica_id, fecha_hora desc);
+
+alter table administrador
+   add constraint FK2pojw9weqmkc0476cs86vyyrb
+   foreign key (id)
+   references usuario;
+
+alter table antecedente_adjuntos
+   add constraint FKhuuyofm4ocx0s8kwdi8pm452x
+   foreign key (antecedente_id)
+   references antecedente_relevante;
+
+alter table antecedente_relevante
+   add constraint FKd47w2m851tij9yac977g7mdmu
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table antecedente_relevante_rutas_archivos
+   add constraint FKb5sdw5tr3ced3ewqro3tj1tai
+   foreign key (antecedente_id)
+   references antecedente_relevante;
+
+alter table documento
+   add constraint FKnaky61bo88l1id8ftq5wf3ik9
+   foreign key (paciente_id)
+   references paciente;
+
+alter table historia_clinica
+   add constraint FKp54oxk24fs8u4i7ddoas4geqg
+   foreign key (paciente_id)
+   references paciente;
+
+alter table medico
+   add constraint FKhwcpg2pf8x1908r4evgekm0cl
+   foreign key (id)
+   references usuario;
+
+alter table notas_privadas
+   add constraint fk_nota_privada_hc_id
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table paciente
+   add constraint FKnk7alk2a1iathi4h7mqftlbn
+   foreign key (id)
+   references usuario;
+
+alter table prescripcion
+   add constraint FK4mr9plfsb364lmck883ff9mcl
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table recomendacion
+   add constraint FK1r592l9djhdriyje0riyf71ch
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table seguimiento_adjuntos
+   add constraint FKruau2xvdcskxy8dm63udeniq2
+   foreign key (seguimiento_id)
+   references seguimiento_salud;
+
+alter table seguimiento_salud
+   add constraint FKj3s8wrand4rijh0h1s6uhyk0e
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table seguimiento_salud_archivos
+   add constraint FK6qaudhgrys2rn8rm97tyf30e7
+   foreign key (seguimiento_id)
+   references seguimiento_salud;
+
+alter table sesion
+   add constraint FKcsbtqeyricjfpiwp39j1qam4a
+   foreign key (paciente_id)
+   references paciente;
@@ -0,0 +1,85 @@
+-- Cambios de esquema posteriores a la línea base, hasta ahora aplicados por ddl-auto=update
+-- (y por AjusteEsquemaNotificaciones, que esta migración reemplaza). Una base existente puede
+-- tener cualquier parte de ellos según la última versión desplegada, así que todas las
+-- sentencias son idempotentes.
+
+-- Bandeja de salida de notificaciones
+alter table notificacion_enviada add column if not exists proximo_intento timestamp(6);
+alter table notificacion_enviada add column if not exists asunto varchar(200);
+alter table notificacion_enviada add column if not exists contenido clob;
+-- Correos que no son de una cita (código de verificación)
+alter table notificacion_enviada alter column sesion_id set null;
+-- El ENUM nativo de H2 no admite valores nuevos sin reescribir la columna
+alter table notificacion_enviada alter column tipo set data type varchar(50);
+
+create table if not exists evento_bus (
+    creado timestamp(6) not null,
+    id bigint generated by default as identity,
+    usuario_id bigint not null,
+    nodo_origen varchar(36) not null,
+    mensaje varchar(1000) not null,
+    primary key (id)
+);
+
+create table if not exists excepcion_horario (
+    fecha_fin date not null,
+    fecha_inicio date not null,
+    hora_fin time(6),
+    hora_inicio time(6),
+    id bigint generated by default as identity,
+    descripcion varchar(255),
+    tipo enum ('BLOQUEO','HORARIO_ESPECIAL','VACACIONES') not null,
+    primary key (id)
+);
+
+create table if not exists horario_semanal (
+    hora_fin time(6),
+    hora_inicio time(6),
+    id bigint generated by default as identity,
+    dia_semana enum ('FRIDAY','MONDAY','SATURDAY','SUNDAY','THURSDAY','TUESDAY','WEDNESDAY') not null,
+    primary key (id),
+    constraint uk_horario_semanal_dia unique (dia_semana)
+);
+
+create table if not exists reserva_horario (
+    franja timestamp(6) not null,
+    id bigint generated by default as identity,
+    sesion_id bigint not null,
+    primary key (id),
+    constraint uk_reserva_horario_franja unique (franja)
+);
+
+create table if not exists suscripcion_push (
+    creado timestamp(6) not null,
+    id bigint generated by default as identity,
+    usuario_id bigint not null,
+    auth varchar(50) not null,
+    p256dh varchar(100) not null,
+    endpoint varchar(1000) not null,
+    primary key (id),
+    constraint uk_suscripcion_push_endpoint unique (endpoint)
+);
+
+create index if not exists idx_evento_bus_creado
+   on evento_bus (creado);
+
+create index if not exists idx_excepcion_horario_fechas
+   on excepcion_horario (fecha_inicio, fecha_fin);
+
+create index if not exists idx_notificacion_sesion_tipo_estado
+   on notificacion_enviada (sesion_id, tipo, estado);
+
+create index if not exists idx_notificacion_estado_proximo
+   on notificacion_enviada (estado, proximo_intento);
+
+create index if not exists idx_reserva_horario_sesion
+   on reserva_horario (sesion_id);
+
+create index if not exists idx_sesion_estado_fecha
+   on sesion (estado, fecha);
+
+create index if not exists idx_sesion_paciente_fecha
+   on sesion (paciente_id, fecha);
+
+create index if not exists idx_suscripcion_push_usuario
+   on suscripcion_push (usuario_id);
@@ -0,0 +1,10 @@
+-- Los textos largos dejan de ser @Lob: en PostgreSQL Hibernate los guardaría como objetos grandes
+-- (oid), que no se pueden leer fuera de una transacción. En H2 pasan de CLOB a VARCHAR sin largo
+-- (hasta 10^9 caracteres), que es lo que H2 crea para TEXT. El resto de la columna se conserva.
+alter table antecedente_relevante alter column descripcion set data type character varying;
+alter table historia_clinica alter column diagnostico_tradicional set data type character varying;
+alter table notas_privadas alter column texto set data type character varying;
+alter table notificacion_enviada alter column contenido set data type character varying;
+alter table prescripcion alter column indicaciones set data type character varying;
+alter table recomendacion alter column contenido set data type character varying;
+alter table seguimiento_salud alter column descripcion set data type character varying;
@@ -0,0 +1,4 @@
+-- El bus entre instancias también lleva cambios de datos en memoria (índice de disponibilidad,
+-- calendario laboral): esos eventos tienen tema y no van a un usuario.
+alter table evento_bus alter column usuario_id set null;
+alter table evento_bus add column tema varchar(50);
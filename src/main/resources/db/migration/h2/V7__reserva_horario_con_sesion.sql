@@ -0,0 +1,5 @@
+-- Las franjas reservadas pertenecen a una sesión: al borrarla se borran con ella. Antes se
+-- quitan las que hubieran quedado de sesiones ya eliminadas.
+delete from reserva_horario where sesion_id not in (select id from sesion);
+alter table reserva_horario add constraint fk_reserva_horario_sesion
+    foreign key (sesion_id) references sesion (id) on delete cascade;
@@ -0,0 +1,335 @@
+-- Esquema inicial para PostgreSQL: equivale al de H2 tras db/migration/h2/V1..V3 (una base
+-- PostgreSQL siempre empieza vacía, así que no necesita los pasos intermedios). Las migraciones
+-- siguientes llevan el mismo número de versión en ambas carpetas.
+
+create table administrador (
+    id bigint not null,
+    primary key (id)
+);
+
+create table antecedente_adjuntos (
+    antecedente_id bigint not null,
+    ruta varchar(191) not null,
+    descripcion varchar(255),
+    primary key (antecedente_id, ruta)
+);
+
+create table antecedente_relevante (
+    creado_el timestamp(6) not null,
+    historia_clinica_id bigint not null unique,
+    id bigint generated by default as identity,
+    descripcion text,
+    primary key (id)
+);
+
+create table antecedente_relevante_rutas_archivos (
+    antecedente_id bigint not null,
+    ruta varchar(191)
+);
+
+create table blog_articulo (
+    fecha_creacion timestamp(6),
+    fecha_modificacion timestamp(6),
+    id bigint generated by default as identity,
+    categoria varchar(100) not null,
+    contenido text not null,
+    slug varchar(255) not null unique,
+    titulo varchar(255) not null,
+    primary key (id)
+);
+
+create table codigo_verificacion (
+    verificado boolean not null,
+    expira_el timestamp(6) not null,
+    generado_el timestamp(6) not null,
+    id bigint generated by default as identity,
+    codigo varchar(255) not null,
+    email varchar(255) not null,
+    primary key (id)
+);
+
+create table documento (
+    fecha_subida timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null,
+    tipo varchar(50) not null,
+    nombre varchar(200) not null,
+    ruta_archivo varchar(500) not null,
+    primary key (id)
+);
+
+create table evento_bus (
+    creado timestamp(6) not null,
+    id bigint generated by default as identity,
+    usuario_id bigint not null,
+    nodo_origen varchar(36) not null,
+    mensaje varchar(1000) not null,
+    primary key (id)
+);
+
+create table excepcion_horario (
+    fecha_fin date not null,
+    fecha_inicio date not null,
+    hora_fin time(6),
+    hora_inicio time(6),
+    id bigint generated by default as identity,
+    tipo varchar(20) not null check (tipo in ('HORARIO_ESPECIAL','BLOQUEO','VACACIONES')),
+    descripcion varchar(255),
+    primary key (id)
+);
+
+create table historia_clinica (
+    creada_el timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null unique,
+    diagnostico_tradicional text,
+    primary key (id)
+);
+
+create table horario_semanal (
+    hora_fin time(6),
+    hora_inicio time(6),
+    id bigint generated by default as identity,
+    dia_semana varchar(10) not null check (dia_semana in ('MONDAY','TUESDAY','WEDNESDAY','THURSDAY','FRIDAY','SATURDAY','SUNDAY')),
+    primary key (id),
+    constraint uk_horario_semanal_dia unique (dia_semana)
+);
+
+create table medico (
+    id bigint not null,
+    primary key (id)
+);
+
+create table notas_privadas (
+    fecha_hora timestamp(6) not null,
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    texto text not null,
+    primary key (id)
+);
+
+create table notificacion_enviada (
+    intentos integer not null,
+    fecha_envio timestamp(6) not null,
+    id bigint generated by default as identity,
+    proximo_intento timestamp(6),
+    sesion_id bigint,
+    canal varchar(20) not null check (canal in ('WHATSAPP','PUSH','EMAIL','SMS')),
+    estado varchar(20) not null check (estado in ('PENDIENTE','ENVIADA','FALLIDA','REINTENTANDO')),
+    tipo varchar(50) not null,
+    destinatario varchar(100),
+    asunto varchar(200),
+    mensaje_error varchar(500),
+    contenido text,
+    primary key (id)
+);
+
+create table paciente (
+    id bigint not null,
+    ruta_foto_perfil varchar(512),
+    primary key (id)
+);
+
+create table prescripcion (
+    orden_prescripcion integer,
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    indicaciones text,
+    primary key (id)
+);
+
+create table recomendacion (
+    orden_recomendacion integer,
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    contenido text,
+    primary key (id)
+);
+
+create table reserva_horario (
+    franja timestamp(6) not null,
+    id bigint generated by default as identity,
+    sesion_id bigint not null,
+    primary key (id),
+    constraint uk_reserva_horario_franja unique (franja)
+);
+
+create table seguimiento_adjuntos (
+    seguimiento_id bigint not null,
+    ruta varchar(191) not null,
+    descripcion varchar(255),
+    primary key (seguimiento_id, ruta)
+);
+
+create table seguimiento_salud (
+    fecha timestamp(6),
+    historia_clinica_id bigint not null,
+    id bigint generated by default as identity,
+    descripcion text,
+    primary key (id)
+);
+
+create table seguimiento_salud_archivos (
+    seguimiento_id bigint not null,
+    ruta varchar(191)
+);
+
+create table sesion (
+    duracion numeric(21,0) not null,
+    fecha timestamp(6) not null,
+    id bigint generated by default as identity,
+    paciente_id bigint not null,
+    estado varchar(20) not null check (estado in ('PROGRAMADA','CONFIRMADA','REALIZADA','CANCELADA')),
+    motivo varchar(500) not null,
+    lugar varchar(255),
+    primary key (id)
+);
+
+create table suscripcion_push (
+    creado timestamp(6) not null,
+    id bigint generated by default as identity,
+    usuario_id bigint not null,
+    auth varchar(50) not null,
+    p256dh varchar(100) not null,
+    endpoint varchar(1000) not null,
+    primary key (id),
+    constraint uk_suscripcion_push_endpoint unique (endpoint)
+);
+
+create table usuario (
+    activo boolean not null,
+    fecha_registro timestamp(6),
+    id bigint generated by default as identity,
+    dtype varchar(31) not null,
+    apellidos varchar(255),
+    celular varchar(255),
+    nombres varchar(255),
+    password varchar(255),
+    rol varchar(255) check (rol in ('PACIENTE','MEDICO','ADMINISTRADOR')),
+    username varchar(255) not null unique,
+    primary key (id)
+);
+
+create index idx_evento_bus_creado
+   on evento_bus (creado);
+
+create index idx_excepcion_horario_fechas
+   on excepcion_horario (fecha_inicio, fecha_fin);
+
+create index idx_notaprivada_hc_fecha
+   on notas_privadas (historia_clinica_id, fecha_hora desc);
+
+create index idx_notificacion_sesion_tipo_estado
+   on notificacion_enviada (sesion_id, tipo, estado);
+
+create index idx_notificacion_estado_proximo
+   on notificacion_enviada (estado, proximo_intento);
+
+create index idx_reserva_horario_sesion
+   on reserva_horario (sesion_id);
+
+create index idx_sesion_estado_fecha
+   on sesion (estado, fecha);
+
+create index idx_sesion_paciente_fecha
+   on sesion (paciente_id, fecha);
+
+create index idx_suscripcion_push_usuario
+   on suscripcion_push (usuario_id);
+
+-- PostgreSQL no indexa las claves foráneas por su cuenta (H2 sí): las de las colecciones
+-- que se cargan por su dueño se indexan aquí para que ambos motores se comporten igual.
+create index idx_documento_paciente
+   on documento (paciente_id);
+
+create index idx_prescripcion_historia
+   on prescripcion (historia_clinica_id);
+
+create index idx_recomendacion_historia
+   on recomendacion (historia_clinica_id);
+
+create index idx_seguimiento_salud_historia
+   on seguimiento_salud (historia_clinica_id);
+
+create index idx_seguimiento_salud_archivos_seguimiento
+   on seguimiento_salud_archivos (seguimiento_id);
+
+create index idx_antecedente_rutas_antecedente
+   on antecedente_relevante_rutas_archivos (antecedente_id);
+
+alter table administrador
+   add constraint FK2pojw9weqmkc0476cs86vyyrb
+   foreign key (id)
+   references usuario;
+
+alter table antecedente_adjuntos
+   add constraint FKhuuyofm4ocx0s8kwdi8pm452x
+   foreign key (antecedente_id)
+   references antecedente_relevante;
+
+alter table antecedente_relevante
+   add constraint FKd47w2m851tij9yac977g7mdmu
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table antecedente_relevante_rutas_archivos
+   add constraint FKb5sdw5tr3ced3ewqro3tj1tai
+   foreign key (antecedente_id)
+   references antecedente_relevante;
+
+alter table documento
+   add constraint FKnaky61bo88l1id8ftq5wf3ik9
+   foreign key (paciente_id)
+   references paciente;
+
+alter table historia_clinica
+   add constraint FKp54oxk24fs8u4i7ddoas4geqg
+   foreign key (paciente_id)
+   references paciente;
+
+alter table medico
+   add constraint FKhwcpg2pf8x1908r4evgekm0cl
+   foreign key (id)
+   references usuario;
+
+alter table notas_privadas
+   add constraint fk_nota_privada_hc_id
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table paciente
+   add constraint FKnk7alk2a1iathi4h7mqftlbn
+   foreign key (id)
+   references usuario;
+
+alter table prescripcion
+   add constraint FK4mr9plfsb364lmck883ff9mcl
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table recomendacion
+   add constraint FK1r592l9djhdriyje0riyf71ch
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table seguimiento_adjuntos
+   add constraint FKruau2xvdcskxy8dm63udeniq2
+   foreign key (seguimiento_id)
+   references seguimiento_salud;
+
+alter table seguimiento_salud
+   add constraint FKj3s8wrand4rijh0h1s6uhyk0e
+   foreign key (historia_clinica_id)
+   references historia_clinica;
+
+alter table seguimiento_salud_archivos
+   add constraint FK6qaudhgrys2rn8rm97tyf30e7
+   foreign key (seguimiento_id)
+   references seguimiento_salud;
+
+alter table sesion
+   add constraint FKcsbtqeyricjfpiwp39j1qam4a
+   foreign key (paciente_id)
+   references paciente;
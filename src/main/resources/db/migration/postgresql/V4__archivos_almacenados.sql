@@ -0,0 +1,10 @@
+-- Archivos subidos con nombre por contenido (SHA-256) y contador de referencias: el mismo
+-- archivo subido varias veces se guarda una vez. Los archivos anteriores (nombre UUID) no
+-- tienen fila y se siguen borrando directamente.
+create table archivo_almacenado (
+    referencias integer not null,
+    creado timestamp(6) not null,
+    tamano bigint not null,
+    nombre varchar(80) not null,
+    primary key (nombre)
+);
@@ -0,0 +1,3 @@
+-- El destinatario de un correo es el username del paciente (varchar(255)): con 100 caracteres
+-- una dirección larga hacía fallar el INSERT en la bandeja de salida.
+alter table notificacion_enviada alter column destinatario type varchar(255);
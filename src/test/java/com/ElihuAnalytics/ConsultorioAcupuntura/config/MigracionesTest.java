@@ -0,0 +1,83 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.config;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Paso a migraciones de una base de producción creada por ddl-auto=update (sin historial de
+ * Flyway): la versión 1 se toma como línea base y la 2 deja el esquema como el de una base nueva,
+ * sin importar cuántos de esos cambios ya tenía. El esquema de una base nueva lo valida Hibernate
+ * en el resto de las pruebas (ddl-auto=validate).
+ */
+class MigracionesTest {
+
+    @Test
+    void baseConEsquemaInicial_recibeLosCambiosPosteriores() throws SQLException {
+        DataSource base = baseExistente("migraciones_inicial", "db/migration/h2/V1__esquema_inicial.sql");
+        JdbcTemplate jdbc = new JdbcTemplate(base);
+        jdbc.update("insert into usuario (activo, dtype, username, rol) values (true, 'Paciente', 'migracion@prueba.com', 'PACIENTE')");
+        Long usuarioId = jdbc.queryForObject("select id from usuario", Long.class);
+        jdbc.update("insert into paciente (id) values (?)", usuarioId);
+        jdbc.update("insert into historia_clinica (creada_el, paciente_id, diagnostico_tradicional) values (current_timestamp, ?, ?)",
+                usuarioId, "Deficiencia de Qi de bazo");
+
+        assertEquals(7, migrar(base));
+
+        assertEquals("CHARACTER VARYING", tipoColumna(jdbc, "NOTIFICACION_ENVIADA", "TIPO"));
+        assertEquals(255, jdbc.queryForObject("select character_maximum_length from information_schema.columns " +
+                "where table_name = 'NOTIFICACION_ENVIADA' and column_name = 'DESTINATARIO'", Integer.class));
+        assertEquals("CHARACTER VARYING", tipoColumna(jdbc, "HISTORIA_CLINICA", "DIAGNOSTICO_TRADICIONAL"));
+        assertEquals("YES", jdbc.queryForObject("select is_nullable from information_schema.columns " +
+                "where table_name = 'NOTIFICACION_ENVIADA' and column_name = 'SESION_ID'", String.class));
+        assertEquals(1, jdbc.queryForObject("select count(*) from information_schema.indexes " +
+                "where index_name = 'IDX_SESION_ESTADO_FECHA'", Integer.class));
+        assertEquals("Deficiencia de Qi de bazo",
+                jdbc.queryForObject("select diagnostico_tradicional from historia_clinica", String.class));
+    }
+
+    @Test
+    void baseQueYaTeniaLosCambios_migraSinErrores() throws SQLException {
+        DataSource base = baseExistente("migraciones_completa",
+                "db/migration/h2/V1__esquema_inicial.sql", "db/migration/h2/V2__cambios_previos_a_migraciones.sql");
+
+        assertEquals(7, migrar(base));
+    }
+
+    // Base H2 como la de producción (modo MySQL), con el esquema dado y sin historial de Flyway
+    private DataSource baseExistente(String nombre, String... scripts) throws SQLException {
+        DataSource base = new DriverManagerDataSource("jdbc:h2:mem:" + nombre + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Connection conexion = base.getConnection()) {
+            for (String script : scripts) {
+                ScriptUtils.executeSqlScript(conexion, new ClassPathResource(script));
+            }
+        }
+        return base;
+    }
+
+    // Misma configuración que spring.flyway.* en application.properties; devuelve la versión final
+    private int migrar(DataSource base) {
+        Flyway flyway = Flyway.configure()
+                .dataSource(base)
+                .locations("classpath:db/migration/h2")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+        flyway.migrate();
+        return Integer.parseInt(flyway.info().current().getVersion().getVersion());
+    }
+
+    private String tipoColumna(JdbcTemplate jdbc, String tabla, String columna) {
+        return jdbc.queryForObject("select data_type from information_schema.columns where table_name = ? and column_name = ?",
+                String.class, tabla, columna);
+    }
+}
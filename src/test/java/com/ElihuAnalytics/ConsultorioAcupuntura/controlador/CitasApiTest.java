@@ -0,0 +1,187 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio;
+import com.ElihuAnalytics.ConsultorioAcupuntura.seguridad.TokenApiServicio.AccionCita;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.NotificacionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * API REST de citas: autenticación con token Bearer (que deja de valer si el usuario se
+ * desactiva o cambia de rol), alcance del token (cita y acciones), límite de intentos al pedir un token y GET
+ * condicional de la disponibilidad.
+ */
+@SpringBootTest(properties = "spring.profiles.active=test")
+@AutoConfigureMockMvc
+class CitasApiTest {
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private TokenApiServicio tokenApiServicio;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @MockitoBean
+    private NotificacionService notificacionService;
+
+    private Paciente paciente;
+    private Sesion sesion;
+
+    @BeforeEach
+    void preparar() {
+        Paciente nuevo = new Paciente();
+        nuevo.setUsername("api@prueba.com");
+        nuevo.setNombres("Prueba");
+        nuevo.setApellidos("Api");
+        nuevo.setRol(Rol.PACIENTE);
+        nuevo.setPassword(passwordEncoder.encode("clave-correcta"));
+        paciente = pacienteRepository.save(nuevo);
+        sesion = sesionRepository.save(new Sesion(LocalDateTime.now().plusDays(3).withHour(9).withMinute(0).withSecond(0).withNano(0),
+                "Control", Sesion.EstadoSesion.PROGRAMADA, paciente));
+    }
+
+    @AfterEach
+    void limpiar() {
+        sesionRepository.deleteAll();
+        pacienteRepository.delete(paciente);
+    }
+
+    @Test
+    void sinToken_respondeNoAutorizadoSinRedirigir() throws Exception {
+        mvc.perform(post("/api/citas/confirmar/" + sesion.getId()))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void tokenDeLaCita_confirmaSinSesionHttp() throws Exception {
+        String token = tokenApiServicio.emitir(paciente.getId(), Rol.PACIENTE, sesion.getId(), Duration.ofMinutes(5));
+
+        mvc.perform(post("/api/citas/confirmar/" + sesion.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estado").value("CONFIRMADA"))
+                .andExpect(header().doesNotExist("Set-Cookie"));
+        assertEquals(Sesion.EstadoSesion.CONFIRMADA, sesionRepository.findById(sesion.getId()).orElseThrow().getEstado());
+
+        // Ya confirmada: no se puede volver a confirmar
+        mvc.perform(post("/api/citas/confirmar/" + sesion.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void tokenLimitadoAOtraCita_oDeOtroPaciente_noActua() throws Exception {
+        String otraCita = tokenApiServicio.emitir(paciente.getId(), Rol.PACIENTE, sesion.getId() + 1, Duration.ofMinutes(5));
+        Paciente otro = new Paciente();
+        otro.setUsername("api-otro@prueba.com");
+        otro.setRol(Rol.PACIENTE);
+        otro = pacienteRepository.save(otro);
+        try {
+            String otroPaciente = tokenApiServicio.emitir(otro.getId(), Rol.PACIENTE, null, Duration.ofMinutes(5));
+
+            mvc.perform(post("/api/citas/cancelar/" + sesion.getId()).header("Authorization", "Bearer " + otraCita))
+                    .andExpect(status().isNotFound());
+            mvc.perform(post("/api/citas/cancelar/" + sesion.getId()).header("Authorization", "Bearer " + otroPaciente))
+                    .andExpect(status().isNotFound());
+            mvc.perform(post("/api/citas/cancelar/" + sesion.getId()).header("Authorization", "Bearer " + otraCita + "x"))
+                    .andExpect(status().isUnauthorized());
+        } finally {
+            pacienteRepository.delete(otro);
+        }
+    }
+
+    @Test
+    void tokenDeLaNotificacion_soloConfirmaOCancela() throws Exception {
+        String token = tokenApiServicio.emitir(paciente.getId(), Rol.PACIENTE, sesion.getId(),
+                EnumSet.of(AccionCita.CONFIRMAR, AccionCita.CANCELAR), Duration.ofMinutes(5));
+        String nuevaFecha = "{\"fecha\":\"" + sesion.getFecha().plusDays(1) + "\"}";
+
+        mvc.perform(post("/api/citas/reprogramar/" + sesion.getId()).header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON).content(nuevaFecha))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/citas/" + sesion.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isNotFound());
+        assertEquals(sesion.getFecha(), sesionRepository.findById(sesion.getId()).orElseThrow().getFecha());
+
+        mvc.perform(post("/api/citas/cancelar/" + sesion.getId()).header("Authorization", "Bearer " + token))
+                .andExpect(status().isNoContent());
+    }
+
+    @Test
+    void usuarioDesactivadoOConOtroRol_suTokenDejaDeValer() throws Exception {
+        String token = tokenApiServicio.emitir(paciente.getId(), Rol.PACIENTE, null, Duration.ofMinutes(5));
+        String url = "/api/disponibilidad/" + LocalDate.now().plusDays(1);
+        mvc.perform(get(url).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+
+        paciente.setActivo(false);
+        paciente = pacienteRepository.save(paciente);
+        mvc.perform(get(url).header("Authorization", "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+
+        paciente.setActivo(true);
+        paciente = pacienteRepository.save(paciente);
+        String comoMedico = tokenApiServicio.emitir(paciente.getId(), Rol.MEDICO, null, Duration.ofMinutes(5));
+        mvc.perform(get(url).header("Authorization", "Bearer " + comoMedico))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void demasiadosFallosAlPedirToken_bloqueanAunConLaClaveCorrecta() throws Exception {
+        String correcta = "{\"username\":\"api@prueba.com\",\"password\":\"clave-correcta\"}";
+        String incorrecta = "{\"username\":\"api@prueba.com\",\"password\":\"otra\"}";
+        mvc.perform(post("/api/auth/token").contentType(MediaType.APPLICATION_JSON).content(correcta))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").exists());
+
+        for (int i = 0; i < 5; i++) {
+            mvc.perform(post("/api/auth/token").contentType(MediaType.APPLICATION_JSON).content(incorrecta))
+                    .andExpect(status().isUnauthorized());
+        }
+        mvc.perform(post("/api/auth/token").contentType(MediaType.APPLICATION_JSON).content(correcta))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
+    @Test
+    void disponibilidad_respondeNoModificadoConElMismoEtag() throws Exception {
+        String token = tokenApiServicio.emitir(paciente.getId(), Rol.PACIENTE, null, Duration.ofMinutes(5));
+        String url = "/api/disponibilidad/" + LocalDate.now().plusDays(1);
+
+        String etag = mvc.perform(get(url).header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(get(url).header("Authorization", "Bearer " + token).header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+}
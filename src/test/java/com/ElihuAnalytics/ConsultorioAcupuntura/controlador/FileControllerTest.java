@@ -0,0 +1,135 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.controlador;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Descarga de adjuntos: GET condicional con ETag, peticiones Range, versión de imagen por ancho
+ * y qué se sirve como inmutable.
+ */
+class FileControllerTest {
+
+    @TempDir
+    Path directorio;
+
+    private MockMvc mvc;
+    private byte[] contenido;
+
+    @BeforeEach
+    void preparar() throws IOException {
+        contenido = new byte[100_000];
+        for (int i = 0; i < contenido.length; i++) {
+            contenido[i] = (byte) (i % 251);
+        }
+        Files.write(directorio.resolve("escaneo.pdf"), contenido);
+        mvc = MockMvcBuilders.standaloneSetup(new FileController(directorio.toString())).build();
+    }
+
+    @Test
+    void archivoCompleto_conValidadores() throws Exception {
+        mvc.perform(get("/uploads/escaneo.pdf"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/pdf"))
+                .andExpect(header().longValue("Content-Length", contenido.length))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().exists("ETag"))
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(content().bytes(contenido));
+    }
+
+    @Test
+    void mismoEtag_respondeNoModificado() throws Exception {
+        String etag = mvc.perform(get("/uploads/escaneo.pdf")).andReturn().getResponse().getHeader("ETag");
+
+        mvc.perform(get("/uploads/escaneo.pdf").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void rango_respondeSoloEsaParte() throws Exception {
+        mvc.perform(get("/uploads/escaneo.pdf").header("Range", "bytes=1000-1999"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 1000-1999/100000"))
+                .andExpect(header().longValue("Content-Length", 1000))
+                .andExpect(content().bytes(Arrays.copyOfRange(contenido, 1000, 2000)));
+
+        mvc.perform(get("/uploads/escaneo.pdf").header("Range", "bytes=-500"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(contenido, 99_500, 100_000)));
+
+        mvc.perform(get("/uploads/escaneo.pdf").header("Range", "bytes=200000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */100000"));
+    }
+
+    @Test
+    void rangoDeOtraVersion_enviaElArchivoCompleto() throws Exception {
+        mvc.perform(get("/uploads/escaneo.pdf").header("Range", "bytes=0-9").header("If-Range", "\"otra-version\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(contenido));
+    }
+
+    @Test
+    void anchoPedido_sirveLaVersionMasLivianaQueAlcanza() throws Exception {
+        String foto = "ab".repeat(32) + ".jpg";
+        Files.writeString(directorio.resolve("ab".repeat(32) + "-96.jpg"), "avatar");
+        Files.writeString(directorio.resolve("ab".repeat(32) + "-320.jpg"), "miniatura");
+        Files.writeString(directorio.resolve(foto), "vista");
+
+        mvc.perform(get("/uploads/" + foto).param("w", "72"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, private, immutable"))
+                .andExpect(content().string("avatar"));
+        mvc.perform(get("/uploads/" + foto).param("w", "160"))
+                .andExpect(content().string("miniatura"));
+        mvc.perform(get("/uploads/" + foto).param("w", "800"))
+                .andExpect(content().string("vista"));
+
+        // Más ancho que la vista: la vista, la mayor que se sirve (la original no sale)
+        Files.writeString(directorio.resolve("ab".repeat(32) + "-original.jpg"), "original");
+        mvc.perform(get("/uploads/" + foto).param("w", "2000"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, private, immutable"))
+                .andExpect(content().string("vista"));
+    }
+
+    @Test
+    void rutaGuardada_porContenidoInmutableYLasDemasSeRevalidan() throws Exception {
+        String porContenido = "cd".repeat(32) + ".pdf";
+        Files.write(directorio.resolve(porContenido), contenido);
+        String pendiente = "ef".repeat(32) + ".jpg";
+        Files.createDirectories(directorio.resolve("pendientes"));
+        Files.writeString(directorio.resolve("pendientes").resolve(pendiente), "sin procesar");
+
+        mvc.perform(get("/pacientes-Uploads/" + porContenido))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, private, immutable"));
+        mvc.perform(get("/pacientes-Uploads/escaneo.pdf"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache, private"));
+        mvc.perform(get("/pacientes-Uploads/" + pendiente))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/pacientes-Uploads/pendientes/" + pendiente))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void archivoInexistente_noEncontrado() throws Exception {
+        mvc.perform(get("/uploads/no-existe.pdf"))
+                .andExpect(status().isNotFound());
+    }
+}
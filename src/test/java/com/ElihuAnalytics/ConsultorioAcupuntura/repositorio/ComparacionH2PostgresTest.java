@@ -0,0 +1,194 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.ConsultorioDeAcupunturaApplication;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Las consultas de agenda y de la bandeja de salida, ejecutadas contra H2 embebido y contra
+ * PostgreSQL (binarios embebidos, sin contenedores) con el mismo esquema de migraciones y los
+ * mismos datos: deben devolver lo mismo en ambos. Imprime la latencia mediana de cada una.
+ *
+ * Es lenta (dos aplicaciones completas y 200 000 sesiones por base): solo con -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ComparacionH2PostgresTest {
+
+    private static final int SESIONES = 200_000;
+    private static final int PACIENTES = 100;
+    private static final int NOTIFICACIONES = 20_000;
+    private static final int REPETICIONES = 50;
+
+    // Fechas fijas para que ambas bases reciban exactamente los mismos datos y parámetros
+    private static final LocalDateTime DESDE = LocalDate.now().minusYears(1).atStartOfDay();
+    private static final LocalDateTime AHORA = DESDE.plusYears(1).withHour(10);
+    private static final Set<Sesion.EstadoSesion> ACTIVOS = EnumSet.of(Sesion.EstadoSesion.PROGRAMADA, Sesion.EstadoSesion.CONFIRMADA);
+
+    private record Base(String nombre, ConfigurableApplicationContext contexto, List<Long> pacientes) {
+        <T> T bean(Class<T> tipo) {
+            return contexto.getBean(tipo);
+        }
+    }
+
+    private static EmbeddedPostgres postgres;
+    private static Base h2;
+    private static Base pg;
+
+    @BeforeAll
+    static void iniciar() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        h2 = sembrar("H2", arrancar("test", "jdbc:h2:mem:comparacion;DB_CLOSE_DELAY=-1"));
+        pg = sembrar("PostgreSQL", arrancar("test,postgres", postgres.getJdbcUrl("postgres", "postgres"),
+                "--spring.datasource.username=postgres", "--spring.datasource.password="));
+    }
+
+    @AfterAll
+    static void detener() throws IOException {
+        for (Base base : new Base[]{h2, pg}) {
+            if (base != null) {
+                base.contexto().close();
+            }
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void mismasConsultas_mismosResultados() {
+        Map<String, ToIntFunction<Base>> consultas = new LinkedHashMap<>();
+        consultas.put("agenda del día", b -> b.bean(SesionRepository.class)
+                .findByFechaBetweenAndEstadoIn(AHORA, AHORA.plusDays(1), List.copyOf(ACTIVOS)).size());
+        consultas.put("pendientes de un mes", b -> b.bean(SesionRepository.class)
+                .findByFechaBetweenAndEstadoInOrderByFechaAsc(AHORA, AHORA.plusMonths(1), ACTIVOS).size());
+        consultas.put("confirmación, todos", b -> b.bean(SesionRepository.class)
+                .findConPacienteEntre(AHORA, AHORA.plusMonths(1), ACTIVOS, null).size());
+        consultas.put("confirmación, un paciente", b -> b.bean(SesionRepository.class)
+                .findConPacienteEntre(AHORA, AHORA.plusMonths(3), ACTIVOS, b.pacientes().get(7)).size());
+        consultas.put("citas de un paciente", b -> b.bean(SesionRepository.class)
+                .findByPacienteIdAndFechaBetweenOrderByFechaAsc(b.pacientes().get(7), DESDE, AHORA).size());
+        consultas.put("vencidas sin cerrar", b -> b.bean(SesionRepository.class)
+                .findByFechaBeforeAndEstadoIn(AHORA, ACTIVOS).size());
+        consultas.put("cerrar vencidas", b -> b.bean(SesionRepository.class)
+                .actualizarEstadoAntesDe(AHORA, ACTIVOS, Sesion.EstadoSesion.REALIZADA));
+        consultas.put("confirmadas futuras", b -> b.bean(SesionRepository.class)
+                .findByFechaAfterAndEstadoOrderByFechaAsc(AHORA.plusDays(40), Sesion.EstadoSesion.CONFIRMADA).size());
+        consultas.put("sin reserva", b -> b.bean(SesionRepository.class)
+                .findSinReservaDesde(AHORA.plusDays(40), ACTIVOS).size());
+        consultas.put("lote de la bandeja (SKIP LOCKED)", b -> b.bean(NotificacionEnviadaRepository.class)
+                .findNotificacionesPendientesReintento("SMS", AHORA, 50).size());
+
+        System.out.printf("%-34s %8s %8s %12s %12s%n", "Consulta", "Filas", "", "H2 (µs)", "PG (µs)");
+        List<String> distintas = new ArrayList<>();
+        for (Map.Entry<String, ToIntFunction<Base>> consulta : consultas.entrySet()) {
+            int filasH2 = ejecutar(h2, consulta.getValue());
+            int filasPg = ejecutar(pg, consulta.getValue());
+            long medianaH2 = mediana(h2, consulta.getValue());
+            long medianaPg = mediana(pg, consulta.getValue());
+            System.out.printf("%-34s %8d %8d %12d %12d%n", consulta.getKey(), filasH2, filasPg, medianaH2, medianaPg);
+            if (filasH2 != filasPg) {
+                distintas.add(consulta.getKey() + ": H2=" + filasH2 + ", PostgreSQL=" + filasPg);
+            }
+        }
+        assertEquals(List.of(), distintas, "Consultas con resultados distintos en H2 y PostgreSQL");
+    }
+
+    private static ConfigurableApplicationContext arrancar(String perfiles, String url, String... extra) {
+        List<String> argumentos = new ArrayList<>(List.of(
+                "--spring.profiles.active=" + perfiles, "--spring.datasource.url=" + url, "--server.port=0"));
+        argumentos.addAll(Arrays.asList(extra));
+        return new SpringApplicationBuilder(ConsultorioDeAcupunturaApplication.class).run(argumentos.toArray(String[]::new));
+    }
+
+    // Mismos datos en ambas bases: una sesión cada 3 minutos durante dos años, repartidas entre
+    // los pacientes; las pasadas casi todas REALIZADAS. Más una bandeja de salida con pendientes, por
+    // SMS para que el despachador de correos de la aplicación no la vacíe durante la medición.
+    private static Base sembrar(String nombre, ConfigurableApplicationContext contexto) {
+        PacienteRepository pacienteRepository = contexto.getBean(PacienteRepository.class);
+        JdbcTemplate jdbc = contexto.getBean(JdbcTemplate.class);
+        List<Long> pacientes = new ArrayList<>();
+        for (int i = 0; i < PACIENTES; i++) {
+            Paciente paciente = new Paciente();
+            paciente.setUsername("comparacion" + i + "@prueba.com");
+            paciente.setNombres("Paciente " + i);
+            paciente.setApellidos("Comparación");
+            paciente.setRol(Rol.PACIENTE);
+            pacientes.add(pacienteRepository.save(paciente).getId());
+        }
+
+        List<Object[]> sesiones = new ArrayList<>();
+        for (int i = 0; i < SESIONES; i++) {
+            LocalDateTime fecha = DESDE.plusMinutes(3L * i);
+            String estado = fecha.isBefore(AHORA)
+                    ? (i % 50 == 0 ? "CANCELADA" : i % 500 == 1 ? "PROGRAMADA" : "REALIZADA")
+                    : switch (i % 3) {
+                        case 0 -> "PROGRAMADA";
+                        case 1 -> "CONFIRMADA";
+                        default -> "CANCELADA";
+                    };
+            sesiones.add(new Object[]{Timestamp.valueOf(fecha), "Control", estado, pacientes.get(i % PACIENTES), 3_600_000_000_000L});
+            if (sesiones.size() == 5_000 || i == SESIONES - 1) {
+                jdbc.batchUpdate("INSERT INTO sesion (fecha, motivo, estado, paciente_id, duracion) VALUES (?, ?, ?, ?, ?)", sesiones);
+                sesiones.clear();
+            }
+        }
+
+        List<Object[]> notificaciones = new ArrayList<>();
+        for (int i = 0; i < NOTIFICACIONES; i++) {
+            notificaciones.add(new Object[]{Timestamp.valueOf(AHORA.minusMinutes(i)),
+                    i % 10 == 0 ? "PENDIENTE" : "ENVIADA", "paciente" + (i % PACIENTES) + "@prueba.com"});
+        }
+        jdbc.batchUpdate("INSERT INTO notificacion_enviada (intentos, fecha_envio, canal, estado, tipo, destinatario) " +
+                "VALUES (0, ?, 'SMS', ?, 'RECORDATORIO_PACIENTE', ?)", notificaciones);
+        jdbc.execute("ANALYZE");
+        return new Base(nombre, contexto, pacientes);
+    }
+
+    // Dentro de una transacción que se deshace: la bandeja bloquea filas y "cerrar vencidas" modifica
+    private static int ejecutar(Base base, ToIntFunction<Base> consulta) {
+        Integer filas = base.bean(TransactionTemplate.class).execute(estado -> {
+            estado.setRollbackOnly();
+            return consulta.applyAsInt(base);
+        });
+        return filas == null ? 0 : filas;
+    }
+
+    private static long mediana(Base base, ToIntFunction<Base> consulta) {
+        for (int i = 0; i < 10; i++) {
+            ejecutar(base, consulta); // calentamiento: JIT y caché de sentencias
+        }
+        long[] tiempos = new long[REPETICIONES];
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            ejecutar(base, consulta);
+            tiempos[i] = (System.nanoTime() - inicio) / 1_000;
+        }
+        Arrays.sort(tiempos);
+        return tiempos[REPETICIONES / 2];
+    }
+}
@@ -0,0 +1,189 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.repositorio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Ninguna consulta propia de {@link SesionRepository} debe recorrer la tabla sesion completa.
+ * Se siembra la tabla, se ejecuta cada método, se captura el SQL que genera Hibernate y se
+ * revisa su plan con EXPLAIN de H2.
+ *
+ * Por defecto se siembran 100 000 sesiones; con -Dbenchmark=true, 1 000 000.
+ * Un método nuevo en el repositorio hace fallar la prueba hasta que se agregue aquí.
+ */
+@SpringBootTest(properties = {"spring.profiles.active=test",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PlanConsultasSesionTest$CapturaSql"})
+class PlanConsultasSesionTest {
+
+    private static final int SESIONES = Boolean.getBoolean("benchmark") ? 1_000_000 : 100_000;
+    private static final int PACIENTES = 200;
+
+    private static final Set<Sesion.EstadoSesion> ACTIVOS = EnumSet.of(Sesion.EstadoSesion.PROGRAMADA, Sesion.EstadoSesion.CONFIRMADA);
+
+    /** Guarda el SQL que Hibernate prepara (se registra por nombre en las propiedades de la prueba). */
+    public static class CapturaSql implements StatementInspector {
+        static final List<String> SENTENCIAS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SENTENCIAS.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Paciente> pacientes = new ArrayList<>();
+
+    @BeforeEach
+    void sembrar() {
+        for (int i = 0; i < PACIENTES; i++) {
+            Paciente paciente = new Paciente();
+            paciente.setUsername("plan" + i + "@prueba.com");
+            paciente.setNombres("Paciente " + i);
+            paciente.setApellidos("Plan");
+            paciente.setRol(Rol.PACIENTE);
+            pacientes.add(pacienteRepository.save(paciente));
+        }
+        // Una sesión de plantilla por paciente y el resto por INSERT ... SELECT: cada 2 minutos,
+        // de dos años atrás a dos años adelante. Las pasadas quedan casi todas REALIZADAS.
+        LocalDateTime desde = LocalDateTime.now().minusYears(2);
+        int porPaciente = SESIONES / PACIENTES;
+        for (int i = 0; i < PACIENTES; i++) {
+            Sesion plantilla = sesionRepository.save(new Sesion(desde, "Control", Sesion.EstadoSesion.REALIZADA, pacientes.get(i)));
+            jdbcTemplate.update("INSERT INTO sesion (fecha, motivo, estado, paciente_id, duracion) " +
+                            "SELECT DATEADD(MINUTE, 2 * (X * ? + ?), t.fecha), t.motivo, " +
+                            "CASE WHEN DATEADD(MINUTE, 2 * (X * ? + ?), t.fecha) < ? " +
+                            "THEN (CASE WHEN MOD(X, 50) = 0 THEN 'CANCELADA' WHEN MOD(X, 500) = 1 THEN 'PROGRAMADA' ELSE 'REALIZADA' END) " +
+                            "ELSE (CASE MOD(X, 3) WHEN 0 THEN 'PROGRAMADA' WHEN 1 THEN 'CONFIRMADA' ELSE 'CANCELADA' END) END, " +
+                            "t.paciente_id, t.duracion FROM sesion t, SYSTEM_RANGE(1, ?) WHERE t.id = ?",
+                    PACIENTES, i, PACIENTES, i, Timestamp.valueOf(LocalDateTime.now()), porPaciente - 1, plantilla.getId());
+        }
+        jdbcTemplate.execute("ANALYZE TABLE sesion");
+    }
+
+    @AfterEach
+    void limpiar() {
+        // Por partes: borrar el millón de filas en una sola sentencia agota la memoria de H2
+        while (jdbcTemplate.update("DELETE FROM sesion LIMIT 50000") > 0) {
+        }
+        pacienteRepository.deleteAll(pacientes);
+    }
+
+    @Test
+    void consultasDelRepositorio_usanIndice() throws SQLException {
+        LocalDateTime ahora = LocalDateTime.now();
+        Long pacienteId = pacientes.get(7).getId();
+        Long sesionId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM sesion", Long.class);
+
+        // Método del repositorio -> invocación representativa
+        Map<String, Runnable> invocaciones = new LinkedHashMap<>();
+        invocaciones.put("findByPacienteIdAndFechaBetween",
+                () -> sesionRepository.findByPacienteIdAndFechaBetween(pacienteId, ahora, ahora.plusMonths(1)));
+        invocaciones.put("findByFechaBetweenAndEstadoIn",
+                () -> sesionRepository.findByFechaBetweenAndEstadoIn(ahora, ahora.plusDays(1), List.copyOf(ACTIVOS)));
+        invocaciones.put("findByPacienteIdAndFechaBetweenOrderByFechaAsc",
+                () -> sesionRepository.findByPacienteIdAndFechaBetweenOrderByFechaAsc(pacienteId, ahora, ahora.plusMonths(1)));
+        invocaciones.put("findByFechaBetweenAndEstadoInOrderByFechaAsc",
+                () -> sesionRepository.findByFechaBetweenAndEstadoInOrderByFechaAsc(ahora, ahora.plusDays(1), ACTIVOS));
+        invocaciones.put("findByEstadoOrderByFechaAsc",
+                () -> sesionRepository.findByEstadoOrderByFechaAsc(Sesion.EstadoSesion.PROGRAMADA));
+        invocaciones.put("findByFechaBeforeAndEstadoIn",
+                () -> sesionRepository.findByFechaBeforeAndEstadoIn(ahora, ACTIVOS));
+        invocaciones.put("findConPacienteEntre",
+                () -> sesionRepository.findConPacienteEntre(ahora, ahora.plusDays(1), ACTIVOS, null));
+        invocaciones.put("actualizarEstadoAntesDe",
+                () -> sesionRepository.actualizarEstadoAntesDe(ahora.minusYears(3), ACTIVOS, Sesion.EstadoSesion.REALIZADA));
+        invocaciones.put("findByFechaAfterAndEstadoOrderByFechaAsc",
+                () -> sesionRepository.findByFechaAfterAndEstadoOrderByFechaAsc(ahora.plusYears(1), Sesion.EstadoSesion.CONFIRMADA));
+        invocaciones.put("findSinReservaDesde",
+                () -> sesionRepository.findSinReservaDesde(ahora.plusYears(1).plusMonths(11), ACTIVOS));
+        invocaciones.put("bloquear",
+                () -> sesionRepository.bloquear(sesionId));
+
+        Set<String> declarados = Arrays.stream(SesionRepository.class.getDeclaredMethods())
+                .map(Method::getName).collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(declarados, new TreeSet<>(invocaciones.keySet()), "Métodos de SesionRepository sin plan revisado");
+
+        List<String> recorridos = new ArrayList<>();
+        for (Map.Entry<String, Runnable> invocacion : invocaciones.entrySet()) {
+            CapturaSql.SENTENCIAS.clear();
+            // La actualización se deshace para no alterar la semilla
+            transactionTemplate.executeWithoutResult(estado -> {
+                invocacion.getValue().run();
+                estado.setRollbackOnly();
+            });
+            assertFalse(CapturaSql.SENTENCIAS.isEmpty(), invocacion.getKey() + " no generó SQL");
+            for (String sql : CapturaSql.SENTENCIAS) {
+                String plan = explicar(sql);
+                if (plan.toLowerCase().contains("sesion.tablescan")) {
+                    recorridos.add(invocacion.getKey() + ":\n" + plan);
+                }
+            }
+        }
+        assertEquals(List.of(), recorridos, "Consultas que recorren toda la tabla sesion");
+    }
+
+    // EXPLAIN con parámetros de relleno del tipo que H2 infiere: el plan no depende de los valores
+    private String explicar(String sql) throws SQLException {
+        try (Connection conexion = dataSource.getConnection();
+             PreparedStatement explain = conexion.prepareStatement("EXPLAIN " + sql)) {
+            ParameterMetaData parametros = explain.getParameterMetaData();
+            for (int i = 1; i <= parametros.getParameterCount(); i++) {
+                switch (parametros.getParameterType(i)) {
+                    case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE ->
+                            explain.setTimestamp(i, Timestamp.valueOf(LocalDateTime.now()));
+                    case Types.BIGINT, Types.INTEGER, Types.NUMERIC, Types.DECIMAL -> explain.setLong(i, 1L);
+                    default -> explain.setString(i, "PROGRAMADA");
+                }
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ArchivoAlmacenadoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archivos con nombre por contenido: el mismo archivo subido dos veces se guarda una vez, se
+ * borra al quitar la última referencia y no se sirve sin sesión. Las imágenes se optimizan
+ * después, en varias versiones (la original aparte), y si no se pueden poner en su sitio
+ * {@link FileStorageService#procesado} termina con error.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.profiles.active=test", "app.upload.dir=${java.io.tmpdir}/buenavida-archivos-prueba/"})
+class ArchivosDeduplicadosTest {
+
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private ArchivoAlmacenadoRepository archivoAlmacenadoRepository;
+    @LocalServerPort
+    private int puerto;
+
+    @Value("${app.upload.dir}")
+    private String uploadDir;
+
+    @AfterEach
+    void limpiar() throws IOException {
+        archivoAlmacenadoRepository.deleteAll();
+        FileSystemUtils.deleteRecursively(Paths.get(uploadDir));
+    }
+
+    @Test
+    void mismoContenido_unSoloArchivoHastaQuitarLaUltimaReferencia() throws IOException {
+        String primera = guardar("Laboratorio 2025-01", "laboratorio.pdf");
+        String segunda = guardar("Laboratorio 2025-01", "copia del laboratorio.PDF");
+        String otra = guardar("RX columna AP/LAT", "rx.pdf");
+
+        assertEquals(primera, segunda);
+        assertNotEquals(primera, otra);
+        assertTrue(primera.matches("/pacientes-Uploads/[0-9a-f]{64}\\.pdf"), primera);
+        assertEquals(2, archivosEnDisco());
+        assertEquals(2, archivoAlmacenadoRepository.findById(nombre(primera)).orElseThrow().getReferencias());
+
+        fileStorageService.delete(segunda);
+        assertTrue(Files.exists(Paths.get(uploadDir, nombre(primera))));
+
+        fileStorageService.delete(primera);
+        assertFalse(Files.exists(Paths.get(uploadDir, nombre(primera))));
+        assertFalse(archivoAlmacenadoRepository.existsById(nombre(primera)));
+        assertEquals(1, archivosEnDisco());
+    }
+
+    @Test
+    void imagen_seOptimizaEnSegundoPlano() throws Exception {
+        BufferedImage foto = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D lienzo = foto.createGraphics();
+        lienzo.setPaint(new GradientPaint(0, 0, Color.WHITE, 3000, 2000, Color.DARK_GRAY));
+        lienzo.fillRect(0, 0, 3000, 2000);
+        lienzo.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(foto, "png", png);
+
+        String ruta = fileStorageService.save(new ByteArrayInputStream(png.toByteArray()), "foto.png");
+        // La misma imagen mientras se procesa: misma ruta, se procesa una vez
+        assertEquals(ruta, fileStorageService.save(new ByteArrayInputStream(png.toByteArray()), "foto (1).png"));
+        fileStorageService.procesado(ruta).get(30, TimeUnit.SECONDS);
+
+        BufferedImage optimizada = ImageIO.read(Paths.get(uploadDir, nombre(ruta)).toFile());
+        assertEquals(1024, optimizada.getWidth());
+        assertTrue(optimizada.getHeight() <= 1024);
+        assertFalse(Files.exists(Paths.get(uploadDir, FileStorageService.DIRECTORIO_PENDIENTES, nombre(ruta))));
+        assertEquals(2, archivoAlmacenadoRepository.findById(nombre(ruta)).orElseThrow().getReferencias());
+
+        // Versiones reducidas y la original tal como se subió, que no se sirve; al borrar se van todas
+        assertEquals(96, ImageIO.read(Paths.get(uploadDir, VersionesImagen.reducida(nombre(ruta), 96)).toFile()).getWidth());
+        assertEquals(320, ImageIO.read(Paths.get(uploadDir, VersionesImagen.reducida(nombre(ruta), 320)).toFile()).getWidth());
+        Path original = Paths.get(uploadDir, FileStorageService.DIRECTORIO_ORIGINALES, VersionesImagen.original(nombre(ruta)));
+        assertEquals(3000, ImageIO.read(original.toFile()).getWidth());
+        assertFalse(Files.exists(Paths.get(uploadDir, VersionesImagen.original(nombre(ruta)))));
+        fileStorageService.delete(ruta);
+        fileStorageService.delete(ruta);
+        assertEquals(0, archivosEnDisco());
+        assertFalse(Files.exists(original));
+    }
+
+    @Test
+    void originalJuntoALasVersiones_seApartaAlArrancar() throws Exception {
+        String original = VersionesImagen.original("c".repeat(64) + ".jpg");
+        Files.createDirectories(Paths.get(uploadDir));
+        Files.writeString(Paths.get(uploadDir, original), "con EXIF");
+
+        fileStorageService.reanudarPendientes();
+
+        assertFalse(Files.exists(Paths.get(uploadDir, original)));
+        assertTrue(Files.exists(Paths.get(uploadDir, FileStorageService.DIRECTORIO_ORIGINALES, original)));
+    }
+
+    @Test
+    void imagenQueNoSePuedeProcesar_procesadoTerminaConError() throws Exception {
+        BufferedImage foto = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(foto, "png", png);
+        String nombre = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png.toByteArray())) + ".png";
+        // Un directorio ocupa su nombre definitivo: la versión no se puede poner en su sitio
+        Files.createDirectories(Paths.get(uploadDir, nombre, "ocupado"));
+
+        String ruta = fileStorageService.save(new ByteArrayInputStream(png.toByteArray()), "foto.png");
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> fileStorageService.procesado(ruta).get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        assertTrue(Files.exists(Paths.get(uploadDir, FileStorageService.DIRECTORIO_PENDIENTES, nombre)));
+    }
+
+    @Test
+    void archivoGuardado_noSeSirveSinSesion() throws Exception {
+        String ruta = guardar("Consentimiento informado", "consentimiento.pdf");
+
+        // El nombre es el hash del contenido: sin sesión no debe poder confirmarse que existe
+        HttpClient cliente = HttpClient.newHttpClient();
+        for (String url : new String[]{ruta, "/uploads/" + nombre(ruta)}) {
+            HttpResponse<String> respuesta = cliente.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + puerto + url)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertNotEquals(200, respuesta.statusCode(), url);
+            assertFalse(respuesta.body().contains("Consentimiento informado"), url);
+        }
+    }
+
+    // Un PDF mínimo: lo que importa es la firma del comienzo, el resto es el contenido a comparar
+    private String guardar(String contenido, String nombreOriginal) throws IOException {
+        byte[] pdf = ("%PDF-1.4\n" + contenido).getBytes(StandardCharsets.UTF_8);
+        return fileStorageService.save(new ByteArrayInputStream(pdf), nombreOriginal);
+    }
+
+    private static String nombre(String rutaWeb) {
+        return rutaWeb.substring(rutaWeb.lastIndexOf('/') + 1);
+    }
+
+    private long archivosEnDisco() throws IOException {
+        try (Stream<Path> archivos = Files.list(Paths.get(uploadDir))) {
+            return archivos.filter(Files::isRegularFile).count();
+        }
+    }
+}
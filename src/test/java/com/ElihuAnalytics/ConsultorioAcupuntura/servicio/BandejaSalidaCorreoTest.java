@@ -0,0 +1,247 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.NotificacionEnviada;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.NotificacionEnviadaRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.tareas.RecordatorioCitasScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import sendinblue.ApiException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "spring.profiles.active=test")
+class BandejaSalidaCorreoTest {
+
+    @Autowired
+    private BandejaSalidaCorreo bandejaSalida;
+    @Autowired
+    private NotificacionEnviadaRepository notificacionEnviadaRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private RecordatorioCitasScheduler recordatorios;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private SesionService sesionService;
+
+    @MockitoBean
+    private TransporteCorreoBrevo transporte;
+
+    private Paciente paciente;
+
+    @BeforeEach
+    void transporteResponde() throws Exception {
+        when(transporte.enviarAntesDe(any(), any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void limpiar() {
+        notificacionEnviadaRepository.deleteAll();
+        sesionRepository.deleteAll();
+        if (paciente != null) {
+            pacienteRepository.delete(paciente);
+        }
+    }
+
+    @Test
+    void correoEncolado_terminaEnviado() throws Exception {
+        bandejaSalida.encolar(null, NotificacionEnviada.TipoNotificacion.CODIGO_VERIFICACION,
+                "paciente@prueba.com", "Código", "Tu código es 123456");
+
+        NotificacionEnviada correo = esperar(() -> soloCorreo(NotificacionEnviada.EstadoNotificacion.ENVIADA));
+        assertEquals(1, correo.getIntentos());
+        assertNull(correo.getProximoIntento());
+        assertNull(correo.getContenido()); // el código no queda guardado
+    }
+
+    @Test
+    void falloPermanente_noConservaElCodigo() throws Exception {
+        when(transporte.enviarAntesDe(any(), any())).thenThrow(new ApiException(400, "Destinatario inválido"));
+
+        bandejaSalida.encolar(null, NotificacionEnviada.TipoNotificacion.CODIGO_VERIFICACION,
+                "no-es-un-correo", "Código", "Tu código es 111222");
+
+        NotificacionEnviada correo = esperar(() -> soloCorreo(NotificacionEnviada.EstadoNotificacion.FALLIDA));
+        assertNull(correo.getProximoIntento());
+        assertNull(correo.getContenido());
+    }
+
+    @Test
+    void falloTransitorio_quedaFallidaConReintentoProgramado() throws Exception {
+        when(transporte.enviarAntesDe(any(), any())).thenThrow(new ApiException(503, "Servicio no disponible"));
+        LocalDateTime antes = LocalDateTime.now();
+
+        bandejaSalida.encolar(null, NotificacionEnviada.TipoNotificacion.CODIGO_VERIFICACION,
+                "paciente@prueba.com", "Código", "Tu código es 654321");
+
+        NotificacionEnviada correo = esperar(() -> soloCorreo(NotificacionEnviada.EstadoNotificacion.FALLIDA));
+        assertEquals(1, correo.getIntentos());
+        assertNotNull(correo.getProximoIntento());
+        assertTrue(correo.getProximoIntento().isAfter(antes.plus(BandejaSalidaCorreo.esperaTrasIntentos(1)).minusSeconds(5)));
+        assertTrue(correo.getMensajeError().contains("503"));
+    }
+
+    /**
+     * Un recordatorio que falló por un error transitorio queda FALLIDA con reintento programado: la
+     * bandeja lo volverá a enviar, así que al reprogramar el temporizador o al arrancar no se encola otro.
+     */
+    @Test
+    void recordatorioFallidoConReintento_noSeDuplicaAlReprogramar() throws Exception {
+        Paciente nuevo = new Paciente();
+        nuevo.setUsername("recordatorio@prueba.com");
+        nuevo.setNombres("Prueba");
+        nuevo.setApellidos("Recordatorio");
+        nuevo.setRol(Rol.PACIENTE);
+        paciente = pacienteRepository.save(nuevo);
+        // Dentro de una hora: el momento del recordatorio ya pasó, se despachan enseguida
+        LocalDateTime fecha = LocalDateTime.now().plusHours(1).withNano(0);
+        Sesion conFallo = sesionRepository.save(new Sesion(fecha, "Control", Sesion.EstadoSesion.CONFIRMADA, paciente));
+        Sesion otra = sesionRepository.save(new Sesion(fecha.plusMinutes(30), "Control", Sesion.EstadoSesion.CONFIRMADA, paciente));
+
+        NotificacionEnviada fallido = new NotificacionEnviada(conFallo.getId(),
+                NotificacionEnviada.TipoNotificacion.RECORDATORIO_PACIENTE,
+                NotificacionEnviada.CanalNotificacion.EMAIL, paciente.getUsername());
+        fallido.setEstado(NotificacionEnviada.EstadoNotificacion.FALLIDA);
+        fallido.incrementarIntentos();
+        fallido.setProximoIntento(LocalDateTime.now().plusMinutes(10));
+        notificacionEnviadaRepository.save(fallido);
+
+        recordatorios.programar(conFallo); // temporizador reprogramado
+        recordatorios.recuperarPendientes(); // arranque: programa solo la otra cita
+        // Un solo hilo despacha en orden: cuando la otra cita tiene su recordatorio, la primera ya se revisó
+        esperar(() -> notificacionEnviadaRepository.findBySesionIdAndTipo(otra.getId(),
+                NotificacionEnviada.TipoNotificacion.RECORDATORIO_MEDICO).isEmpty() ? null : true);
+
+        assertEquals(1, notificacionEnviadaRepository.findBySesionIdAndTipo(conFallo.getId(),
+                NotificacionEnviada.TipoNotificacion.RECORDATORIO_PACIENTE).size());
+        assertTrue(notificacionEnviadaRepository.findBySesionIdAndTipo(conFallo.getId(),
+                NotificacionEnviada.TipoNotificacion.RECORDATORIO_MEDICO).isEmpty());
+    }
+
+    /**
+     * El correo va en la transacción de la cita: con un username largo (antes no cabía en
+     * destinatario) la confirmación y su correo se guardan juntos; un destinatario que no cabe se
+     * rechaza antes del INSERT.
+     */
+    @Test
+    void confirmarConUsernameLargo_encolaElCorreoConLaCita() {
+        Paciente nuevo = new Paciente();
+        nuevo.setUsername("a".repeat(150) + "@prueba.com");
+        nuevo.setNombres("Prueba");
+        nuevo.setApellidos("Username largo");
+        nuevo.setRol(Rol.PACIENTE);
+        paciente = pacienteRepository.save(nuevo);
+        Sesion sesion = sesionRepository.save(new Sesion(LocalDateTime.now().plusDays(3).withNano(0),
+                "Control", Sesion.EstadoSesion.PROGRAMADA, paciente));
+
+        assertTrue(sesionService.confirmarSesion(sesion.getId()).isPresent());
+
+        assertEquals(Sesion.EstadoSesion.CONFIRMADA, sesionRepository.findById(sesion.getId()).orElseThrow().getEstado());
+        List<NotificacionEnviada> correos = notificacionEnviadaRepository.findBySesionIdAndTipo(sesion.getId(),
+                NotificacionEnviada.TipoNotificacion.CONFIRMACION_PACIENTE);
+        assertEquals(1, correos.size());
+        assertEquals(paciente.getUsername(), correos.get(0).getDestinatario());
+
+        assertThrows(IllegalArgumentException.class, () -> bandejaSalida.encolar(sesion.getId(),
+                NotificacionEnviada.TipoNotificacion.CONFIRMACION_PACIENTE, "b".repeat(300), "Asunto", "Texto"));
+    }
+
+    @Test
+    void retrocesoExponencialConTope() {
+        assertEquals(Duration.ofMinutes(1), BandejaSalidaCorreo.esperaTrasIntentos(1));
+        assertEquals(Duration.ofMinutes(2), BandejaSalidaCorreo.esperaTrasIntentos(2));
+        assertEquals(Duration.ofMinutes(8), BandejaSalidaCorreo.esperaTrasIntentos(4));
+        assertEquals(Duration.ofHours(1), BandejaSalidaCorreo.esperaTrasIntentos(30));
+    }
+
+    /**
+     * Dos procesos tomando lotes a la vez: el segundo se salta las filas bloqueadas por el primero
+     * en lugar de esperar (SKIP LOCKED). Se usa un canal que el despachador no procesa.
+     */
+    @Test
+    void lotesConcurrentes_noSeSolapanNiSeBloquean() throws Exception {
+        NotificacionEnviada.CanalNotificacion canal = NotificacionEnviada.CanalNotificacion.WHATSAPP;
+        for (int i = 0; i < 10; i++) {
+            notificacionEnviadaRepository.save(new NotificacionEnviada(null,
+                    NotificacionEnviada.TipoNotificacion.RECORDATORIO_PACIENTE, canal, "300000000" + i));
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        CountDownLatch primeroTomado = new CountDownLatch(1);
+        CountDownLatch soltarPrimero = new CountDownLatch(1);
+
+        CompletableFuture<List<Long>> primero = CompletableFuture.supplyAsync(() -> tx.execute(estado -> {
+            List<Long> ids = ids(notificacionEnviadaRepository.findNotificacionesPendientesReintento(
+                    canal.name(), LocalDateTime.now(), 4));
+            primeroTomado.countDown();
+            try {
+                soltarPrimero.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ids;
+        }));
+        assertTrue(primeroTomado.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<List<Long>> segundo = CompletableFuture.supplyAsync(() -> tx.execute(estado ->
+                ids(notificacionEnviadaRepository.findNotificacionesPendientesReintento(
+                        canal.name(), LocalDateTime.now(), 10))));
+        List<Long> idsSegundo = segundo.get(5, TimeUnit.SECONDS); // no espera al primero
+        soltarPrimero.countDown();
+        List<Long> idsPrimero = primero.get(10, TimeUnit.SECONDS);
+
+        assertEquals(4, idsPrimero.size());
+        assertEquals(6, idsSegundo.size());
+        Set<Long> todos = new HashSet<>(idsPrimero);
+        todos.addAll(idsSegundo);
+        assertEquals(10, todos.size());
+    }
+
+    private NotificacionEnviada soloCorreo(NotificacionEnviada.EstadoNotificacion estado) {
+        List<NotificacionEnviada> correos = notificacionEnviadaRepository.findAll();
+        return correos.size() == 1 && correos.get(0).getEstado() == estado ? correos.get(0) : null;
+    }
+
+    private static List<Long> ids(List<NotificacionEnviada> notificaciones) {
+        return notificaciones.stream().map(NotificacionEnviada::getId).toList();
+    }
+
+    private static <T> T esperar(Supplier<T> condicion) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        T valor;
+        while ((valor = condicion.get()) == null && System.nanoTime() < limite) {
+            Thread.sleep(50);
+        }
+        assertNotNull(valor, "La bandeja de salida no procesó el correo a tiempo");
+        return valor;
+    }
+}
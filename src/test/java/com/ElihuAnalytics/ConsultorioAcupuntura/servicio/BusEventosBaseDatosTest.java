@@ -0,0 +1,161 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.EventoBus;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ExcepcionHorario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.EventoBusRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ExcepcionHorarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.util.Broadcaster;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.shared.Registration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Entrega entre instancias: un evento publicado por otro nodo llega a las vistas de este nodo,
+ * uno publicado aquí se entrega una sola vez, un nodo que arranca no repite los anteriores y una
+ * invalidación publicada por otro nodo vacía el día en el índice de disponibilidad de este y un
+ * cambio de horario hecho en otro nodo recompila el calendario laboral de este.
+ */
+@SpringBootTest(properties = {"spring.profiles.active=test", "app.eventos.bus=base-datos", "app.eventos.intervalo=100ms"})
+class BusEventosBaseDatosTest {
+
+    private static final Long USUARIO = 987654L;
+
+    @Autowired
+    private BusEventos busEventos;
+    @Autowired
+    private EventoBusRepository eventoBusRepository;
+    @Autowired
+    private IndiceDisponibilidad indiceDisponibilidad;
+    @Autowired
+    private ApplicationEventPublisher eventos;
+    @Autowired
+    private CalendarioLaboral calendarioLaboral;
+    @Autowired
+    private ExcepcionHorarioRepository excepcionHorarioRepository;
+
+    private final List<String> recibidos = new CopyOnWriteArrayList<>();
+    private Registration registro;
+
+    @AfterEach
+    void limpiar() {
+        if (registro != null) {
+            registro.remove();
+        }
+        eventoBusRepository.deleteAll();
+    }
+
+    @Test
+    void eventoDeOtroNodo_llegaALaVistaDelUsuario() throws Exception {
+        registro = Broadcaster.register(USUARIO, uiQueEjecutaDeInmediato(), recibidos::add);
+
+        eventoBusRepository.save(new EventoBus(USUARIO, "Cita confirmada", "otro-nodo"));
+        eventoBusRepository.save(new EventoBus(USUARIO + 1, "Para otro paciente", "otro-nodo"));
+
+        esperarMensajes(1);
+        assertEquals(List.of("Cita confirmada"), recibidos);
+    }
+
+    @Test
+    void eventoPublicadoAqui_seEntregaUnaSolaVez() throws Exception {
+        registro = Broadcaster.register(USUARIO, uiQueEjecutaDeInmediato(), recibidos::add);
+
+        busEventos.publicar(USUARIO, "Recordatorio");
+
+        esperarMensajes(1);
+        Thread.sleep(500); // varias lecturas del bus: no debe repetirse
+        assertEquals(List.of("Recordatorio"), recibidos);
+    }
+
+    @Test
+    void nodoQueArranca_noRepiteLosEventosAnteriores() throws Exception {
+        eventoBusRepository.save(new EventoBus(USUARIO, "Aviso de antes del arranque", "otro-nodo"));
+        Thread.sleep(500); // el bus de este contexto ya lo leyó
+        registro = Broadcaster.register(USUARIO, uiQueEjecutaDeInmediato(), recibidos::add);
+
+        BusEventosBaseDatos nuevoNodo = new BusEventosBaseDatos(eventoBusRepository, eventos, Duration.ofMillis(100));
+        nuevoNodo.iniciar();
+        try {
+            Thread.sleep(500); // varias lecturas del nodo nuevo, con su margen hacia atrás
+            assertEquals(List.of(), recibidos);
+        } finally {
+            nuevoNodo.detener();
+        }
+    }
+
+    @Test
+    void invalidacionDeOtroNodo_vaciaElDiaEnEsteNodo() throws Exception {
+        LocalDate dia = LocalDate.now().plusDays(5);
+        AtomicInteger cargas = new AtomicInteger();
+        indiceDisponibilidad.obtenerOcupacion(dia, () -> (long) cargas.incrementAndGet());
+        indiceDisponibilidad.obtenerOcupacion(dia, () -> (long) cargas.incrementAndGet());
+        assertEquals(1, cargas.get()); // la segunda sale del índice
+
+        eventoBusRepository.save(EventoBus.cambio(IndiceDisponibilidad.TEMA, dia.toString(), "otro-nodo"));
+
+        long limite = System.currentTimeMillis() + 5000;
+        while (cargas.get() < 2 && System.currentTimeMillis() < limite) {
+            indiceDisponibilidad.obtenerOcupacion(dia, () -> (long) cargas.incrementAndGet());
+            Thread.sleep(20);
+        }
+        assertEquals(2, cargas.get());
+    }
+
+    @Test
+    void cambioDeHorarioEnOtroNodo_recompilaElCalendario() throws Exception {
+        LocalDate martes = LocalDate.now().plusWeeks(2).with(TemporalAdjusters.next(DayOfWeek.TUESDAY));
+        assertTrue(calendarioLaboral.horarioDe(martes).esLaborable());
+        // Lo que guarda el otro nodo: la excepción y el aviso en el bus
+        ExcepcionHorario vacaciones = excepcionHorarioRepository.save(new ExcepcionHorario(
+                ExcepcionHorario.TipoExcepcion.VACACIONES, martes, martes, null, null, "Vacaciones"));
+        try {
+            eventoBusRepository.save(EventoBus.cambio(CalendarioLaboral.TEMA, null, "otro-nodo"));
+
+            long limite = System.currentTimeMillis() + 5000;
+            while (calendarioLaboral.horarioDe(martes).esLaborable() && System.currentTimeMillis() < limite) {
+                Thread.sleep(20);
+            }
+            assertFalse(calendarioLaboral.horarioDe(martes).esLaborable());
+        } finally {
+            excepcionHorarioRepository.delete(vacaciones);
+            calendarioLaboral.recargar();
+        }
+    }
+
+    private static UI uiQueEjecutaDeInmediato() {
+        UI ui = mock(UI.class);
+        when(ui.access(any())).thenAnswer(inv -> {
+            inv.getArgument(0, Command.class).execute();
+            return CompletableFuture.completedFuture(null);
+        });
+        return ui;
+    }
+
+    private void esperarMensajes(int cantidad) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (recibidos.size() < cantidad && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertEquals(cantidad, recibidos.size());
+    }
+}
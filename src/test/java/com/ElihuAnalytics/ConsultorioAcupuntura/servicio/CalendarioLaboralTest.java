@@ -0,0 +1,70 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ExcepcionHorario;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.ExcepcionHorario.TipoExcepcion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.HorarioSemanal;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalendarioLaboralTest {
+
+    private static final Duration UNA_HORA = Duration.ofHours(1);
+    private static final LocalDate HOY = LocalDate.of(2030, 3, 4);      // lunes
+    private static final LocalDate MARTES = HOY.plusDays(1);
+    private static final LocalDate DOMINGO = HOY.plusDays(6);
+
+    @Test
+    void plantillaPredeterminada_conservaElHorarioAnterior() {
+        CalendarioLaboral.AgendaCompilada agenda = CalendarioLaboral.compilar(HorarioSemanal.predeterminados(), List.of(), HOY);
+
+        assertEquals(LocalTime.of(14, 0), agenda.horarioDe(HOY).getFin());
+        assertEquals(LocalTime.of(17, 0), agenda.horarioDe(MARTES).getFin());
+        assertFalse(agenda.horarioDe(DOMINGO).esLaborable());
+        assertEquals(LocalTime.of(13, 0), agenda.horarioDe(HOY).horasInicio(UNA_HORA, Duration.ofMinutes(30)).get(10));
+    }
+
+    @Test
+    void excepciones_vacacionesSobreHorarioEspecialYBloqueosEncima() {
+        List<ExcepcionHorario> excepciones = List.of(
+                new ExcepcionHorario(TipoExcepcion.HORARIO_ESPECIAL, DOMINGO, DOMINGO, LocalTime.of(9, 0), LocalTime.of(12, 0), "Jornada"),
+                new ExcepcionHorario(TipoExcepcion.BLOQUEO, MARTES, MARTES, LocalTime.of(10, 0), LocalTime.of(11, 0), "Reunión"),
+                new ExcepcionHorario(TipoExcepcion.HORARIO_ESPECIAL, HOY.plusDays(2), HOY.plusDays(3), LocalTime.of(8, 0), LocalTime.of(10, 0), null),
+                new ExcepcionHorario(TipoExcepcion.VACACIONES, HOY.plusDays(3), HOY.plusDays(4), null, null, "Vacaciones"));
+
+        CalendarioLaboral.AgendaCompilada agenda = CalendarioLaboral.compilar(HorarioSemanal.predeterminados(), excepciones, HOY);
+
+        assertTrue(agenda.horarioDe(DOMINGO).admite(LocalTime.of(9, 0), UNA_HORA));
+        assertFalse(agenda.horarioDe(DOMINGO).admite(LocalTime.of(11, 30), UNA_HORA));
+
+        assertTrue(agenda.horarioDe(MARTES).admite(LocalTime.of(9, 0), UNA_HORA));
+        assertFalse(agenda.horarioDe(MARTES).admite(LocalTime.of(9, 30), UNA_HORA));
+        assertTrue(agenda.horarioDe(MARTES).admite(LocalTime.of(11, 0), UNA_HORA));
+
+        assertEquals(LocalTime.of(10, 0), agenda.horarioDe(HOY.plusDays(2)).getFin());
+        assertFalse(agenda.horarioDe(HOY.plusDays(3)).esLaborable());
+        assertFalse(agenda.horarioDe(HOY.plusDays(4)).esLaborable());
+        // Una semana después vuelve la plantilla
+        assertTrue(agenda.horarioDe(HOY.plusDays(10)).esLaborable());
+    }
+
+    @Test
+    void soloAdmiteIniciosEnPuntoOYMedia() {
+        List<ExcepcionHorario> excepciones = List.of(
+                new ExcepcionHorario(TipoExcepcion.HORARIO_ESPECIAL, DOMINGO, DOMINGO, LocalTime.of(8, 15), LocalTime.of(12, 0), null));
+        CalendarioLaboral.AgendaCompilada agenda = CalendarioLaboral.compilar(HorarioSemanal.predeterminados(), excepciones, HOY);
+
+        assertTrue(agenda.horarioDe(MARTES).admite(LocalTime.of(10, 30), UNA_HORA));
+        assertFalse(agenda.horarioDe(MARTES).admite(LocalTime.of(10, 15), UNA_HORA));
+        assertFalse(agenda.horarioDe(DOMINGO).admite(LocalTime.of(8, 15), UNA_HORA));
+        // Un horario que abre a las 8:15 ofrece desde las 8:30
+        assertEquals(LocalTime.of(8, 30), agenda.horarioDe(DOMINGO).horasInicio(UNA_HORA, Duration.ofMinutes(30)).get(0));
+    }
+}
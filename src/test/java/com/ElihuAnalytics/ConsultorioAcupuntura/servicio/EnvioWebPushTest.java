@@ -0,0 +1,210 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.SuscripcionPush;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SuscripcionPushRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Envío Web Push contra un servicio de push simulado: el navegador (claves generadas aquí)
+ * debe poder descifrar el mensaje, la firma VAPID debe validar, los envíos a un mismo endpoint
+ * se espacian (sin acumular en espera más de la capacidad de la cola), una suscripción vencida
+ * (410) se elimina y no se aceptan endpoints fuera de los servicios de push.
+ */
+class EnvioWebPushTest {
+
+    private static final Long USUARIO = 7L;
+    private static final Duration INTERVALO = Duration.ofMillis(200);
+    // El servicio de push simulado escucha en 127.0.0.1
+    private static final List<String> SERVICIOS = List.of("fcm.googleapis.com", "127.0.0.1");
+
+    private record Recibido(long instanteNs, String autorizacion, byte[] cuerpo) {
+    }
+
+    private HttpServer servidor;
+    private final BlockingQueue<Recibido> recibidos = new LinkedBlockingQueue<>();
+    private volatile int codigoRespuesta = 201;
+
+    private final KeyPair navegador = CifradoWebPush.generarPar();
+    private final byte[] authNavegador = "secreto-16-bytes".getBytes(StandardCharsets.US_ASCII);
+    private final SuscripcionPushRepository repositorio = mock(SuscripcionPushRepository.class);
+    private final ClavesVapid claves = new ClavesVapid("", "", "mailto:prueba@prueba.com");
+    private EnvioWebPush envio;
+
+    @BeforeEach
+    void iniciar() throws Exception {
+        servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/push", intercambio -> {
+            recibidos.add(new Recibido(System.nanoTime(),
+                    intercambio.getRequestHeaders().getFirst("Authorization"),
+                    intercambio.getRequestBody().readAllBytes()));
+            intercambio.sendResponseHeaders(codigoRespuesta, -1);
+            intercambio.close();
+        });
+        servidor.start();
+
+        String endpoint = "http://127.0.0.1:" + servidor.getAddress().getPort() + "/push/navegador-1";
+        when(repositorio.findByUsuarioId(USUARIO)).thenReturn(List.of(new SuscripcionPush(USUARIO, endpoint,
+                CifradoWebPush.base64Url(CifradoWebPush.sinComprimir((ECPublicKey) navegador.getPublic())),
+                CifradoWebPush.base64Url(authNavegador))));
+
+        envio = new EnvioWebPush(repositorio, claves, 100, INTERVALO, 4, Duration.ofHours(1), SERVICIOS);
+        envio.iniciar();
+    }
+
+    @AfterEach
+    void detener() {
+        envio.detener();
+        servidor.stop(0);
+    }
+
+    @Test
+    void mensaje_llegaCifradoParaElNavegadorYFirmado() throws Exception {
+        envio.enviar(USUARIO, new EnvioWebPush.AvisoPush("Buena Vida", "Recordatorio de cita", 42L, List.of("cancelar")));
+
+        Recibido recibido = recibidos.poll(5, TimeUnit.SECONDS);
+        assertNotNull(recibido);
+        String contenido = new String(descifrar(recibido.cuerpo()), StandardCharsets.UTF_8);
+        assertEquals("{\"titulo\":\"Buena Vida\",\"cuerpo\":\"Recordatorio de cita\",\"sesionId\":42,\"acciones\":[\"cancelar\"]}",
+                contenido);
+
+        // vapid t=<jwt>, k=<clave pública>
+        assertTrue(recibido.autorizacion().endsWith(", k=" + claves.getClavePublica()));
+        String jwt = recibido.autorizacion().substring("vapid t=".length(), recibido.autorizacion().indexOf(','));
+        int ultimoPunto = jwt.lastIndexOf('.');
+        Signature ecdsa = Signature.getInstance("SHA256withECDSAinP1363Format");
+        ecdsa.initVerify(CifradoWebPush.clavePublica(CifradoWebPush.desdeBase64Url(claves.getClavePublica())));
+        ecdsa.update(jwt.substring(0, ultimoPunto).getBytes(StandardCharsets.US_ASCII));
+        assertTrue(ecdsa.verify(CifradoWebPush.desdeBase64Url(jwt.substring(ultimoPunto + 1))));
+        String reclamos = new String(CifradoWebPush.desdeBase64Url(jwt.split("\\.")[1]), StandardCharsets.UTF_8);
+        assertTrue(reclamos.contains("\"aud\":\"http://127.0.0.1:" + servidor.getAddress().getPort() + "\""));
+    }
+
+    @Test
+    void variosMensajesAlMismoEndpoint_respetanElIntervalo() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            envio.enviar(USUARIO, new EnvioWebPush.AvisoPush("Buena Vida", "Mensaje " + i, null, List.of()));
+        }
+        long anterior = 0;
+        for (int i = 0; i < 3; i++) {
+            Recibido recibido = recibidos.poll(5, TimeUnit.SECONDS);
+            assertNotNull(recibido);
+            if (i > 0) {
+                long separacionMs = TimeUnit.NANOSECONDS.toMillis(recibido.instanteNs() - anterior);
+                assertTrue(separacionMs >= INTERVALO.toMillis() - 20, "Separación: " + separacionMs + " ms");
+            }
+            anterior = recibido.instanteNs();
+        }
+    }
+
+    @Test
+    void mensajesEsperandoTurno_noSuperanLaCapacidad() throws Exception {
+        envio.detener();
+        envio = new EnvioWebPush(repositorio, claves, 2, Duration.ofMinutes(1), 4, Duration.ofHours(1), SERVICIOS);
+        envio.iniciar();
+
+        envio.enviar(USUARIO, new EnvioWebPush.AvisoPush("Buena Vida", "Primero", null, List.of()));
+        assertNotNull(recibidos.poll(5, TimeUnit.SECONDS));
+        esperarHasta(() -> envio.estado().esperandoTurno() == 0);
+
+        // El endpoint ya usó su turno: los siguientes esperan un minuto y solo caben dos
+        for (int i = 0; i < 4; i++) {
+            envio.enviar(USUARIO, new EnvioWebPush.AvisoPush("Buena Vida", "Mensaje " + i, null, List.of()));
+            esperarHasta(() -> envio.estado().enCola() == 0); // repartido, no descartado por la cola
+        }
+        esperarHasta(() -> envio.estado().descartados() == 2);
+        assertEquals(2, envio.estado().esperandoTurno());
+    }
+
+    @Test
+    void endpointFueraDeLosServiciosDePush_seRechaza() {
+        String p256dh = CifradoWebPush.base64Url(CifradoWebPush.sinComprimir((ECPublicKey) navegador.getPublic()));
+        String auth = CifradoWebPush.base64Url(authNavegador);
+
+        for (String endpoint : List.of("https://169.254.169.254/latest/meta-data", "https://intranet.local/push",
+                "https://fcm.googleapis.com.atacante.com/x", "https://fcm.googleapis.com@10.0.0.1/x")) {
+            assertThrows(IllegalArgumentException.class, () -> envio.suscribir(USUARIO, endpoint, p256dh, auth), endpoint);
+        }
+        envio.suscribir(USUARIO, "https://fcm.googleapis.com/fcm/send/abc", p256dh, auth);
+        verify(repositorio).save(any());
+    }
+
+    @Test
+    void suscripcionVencida_seElimina() throws Exception {
+        codigoRespuesta = 410;
+        envio.enviar(USUARIO, new EnvioWebPush.AvisoPush("Buena Vida", "Hola", null, List.of()));
+
+        assertNotNull(recibidos.poll(5, TimeUnit.SECONDS));
+        verify(repositorio, timeout(5000)).eliminarPorEndpoint(
+                "http://127.0.0.1:" + servidor.getAddress().getPort() + "/push/navegador-1");
+    }
+
+    private static void esperarHasta(BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (!condicion.getAsBoolean() && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertTrue(condicion.getAsBoolean());
+    }
+
+    // Lo que hace el navegador al recibir el mensaje (RFC 8291, lado del receptor)
+    private byte[] descifrar(byte[] cuerpo) throws Exception {
+        ByteBuffer lector = ByteBuffer.wrap(cuerpo);
+        byte[] sal = new byte[16];
+        lector.get(sal);
+        assertEquals(CifradoWebPush.TAMANO_REGISTRO, lector.getInt());
+        byte[] publicaServidor = new byte[lector.get()];
+        lector.get(publicaServidor);
+        byte[] cifrado = new byte[lector.remaining()];
+        lector.get(cifrado);
+
+        KeyAgreement acuerdo = KeyAgreement.getInstance("ECDH");
+        acuerdo.init(navegador.getPrivate());
+        acuerdo.doPhase(CifradoWebPush.clavePublica(publicaServidor), true);
+        ByteArrayOutputStream info = new ByteArrayOutputStream();
+        info.writeBytes("WebPush: info\0".getBytes(StandardCharsets.US_ASCII));
+        info.writeBytes(CifradoWebPush.sinComprimir((ECPublicKey) navegador.getPublic()));
+        info.writeBytes(publicaServidor);
+        byte[] ikm = CifradoWebPush.hkdf(authNavegador, acuerdo.generateSecret(), info.toByteArray(), 32);
+        byte[] cek = CifradoWebPush.hkdf(sal, ikm, "Content-Encoding: aes128gcm\0".getBytes(StandardCharsets.US_ASCII), 16);
+        byte[] nonce = CifradoWebPush.hkdf(sal, ikm, "Content-Encoding: nonce\0".getBytes(StandardCharsets.US_ASCII), 12);
+
+        Cipher aes = Cipher.getInstance("AES/GCM/NoPadding");
+        aes.init(Cipher.DECRYPT_MODE, new SecretKeySpec(cek, "AES"), new GCMParameterSpec(128, nonce));
+        byte[] claro = aes.doFinal(cifrado);
+        assertArrayEquals(new byte[]{2}, Arrays.copyOfRange(claro, claro.length - 1, claro.length));
+        return Arrays.copyOf(claro, claro.length - 1);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ReservaHorarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Con el día ya en el índice, guardar, cancelar y reprogramar una sesión lo invalidan: las
+ * horas disponibles reflejan el cambio enseguida.
+ */
+@SpringBootTest(properties = "spring.profiles.active=test")
+class IndiceDisponibilidadTest {
+
+    @Autowired
+    private SesionService sesionService;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private ReservaHorarioRepository reservaHorarioRepository;
+
+    @MockitoBean
+    private NotificacionService notificacionService;
+
+    private Paciente paciente;
+    private LocalDate dia;
+    private List<LocalTime> libres;
+
+    @BeforeEach
+    void preparar() {
+        Paciente nuevo = new Paciente();
+        nuevo.setUsername("indice@prueba.com");
+        nuevo.setNombres("Prueba");
+        nuevo.setApellidos("Indice");
+        nuevo.setRol(Rol.PACIENTE);
+        paciente = pacienteRepository.save(nuevo);
+        // Un día con al menos dos horas libres, ya cargado en el índice
+        for (dia = LocalDate.now().plusDays(2); (libres = sesionService.getHorasDisponibles(dia)).size() < 2; dia = dia.plusDays(1)) {
+        }
+    }
+
+    @AfterEach
+    void limpiar() {
+        reservaHorarioRepository.deleteAll();
+        sesionRepository.deleteAll();
+        pacienteRepository.delete(paciente);
+    }
+
+    @Test
+    void guardarYCancelar_invalidanElDia() {
+        LocalTime hora = libres.get(0);
+        Sesion sesion = reservar(hora);
+        assertFalse(sesionService.getHorasDisponibles(dia).contains(hora));
+
+        sesionService.cancelarSesion(sesion.getId());
+        assertTrue(sesionService.getHorasDisponibles(dia).contains(hora));
+    }
+
+    @Test
+    void reprogramar_liberaLaHoraAnteriorYOcupaLaNueva() {
+        LocalTime anterior = libres.get(0);
+        LocalTime nueva = libres.get(libres.size() - 1);
+        Sesion sesion = reservar(anterior);
+
+        assertTrue(sesionService.reprogramarSesion(sesion.getId(), dia.atTime(nueva), Duration.ofHours(1)).isPresent());
+
+        List<LocalTime> despues = sesionService.getHorasDisponibles(dia);
+        assertTrue(despues.contains(anterior));
+        assertFalse(despues.contains(nueva));
+    }
+
+    private Sesion reservar(LocalTime hora) {
+        sesionService.guardarSesion(new Sesion(dia.atTime(hora), "Control", null, paciente));
+        return sesionRepository.findAll().stream()
+                .filter(s -> s.getFecha().equals(dia.atTime(hora)))
+                .findFirst().orElseThrow();
+    }
+}
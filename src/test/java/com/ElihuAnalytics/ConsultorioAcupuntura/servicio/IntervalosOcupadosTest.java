@@ -0,0 +1,136 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntervalosOcupadosTest {
+
+    private static final Duration UNA_HORA = Duration.ofHours(1);
+    private static final Duration DESPLAZAMIENTO = Duration.ofMinutes(30);
+    private static final LocalDate DIA = LocalDate.of(2030, 3, 5);
+
+    @Test
+    void estaLibre_respetaElTiempoDeDesplazamiento() {
+        // Sesión 10:00-11:00 => ocupado 09:30-11:30
+        IntervalosOcupados ocupados = IntervalosOcupados.desdeSesiones(
+                List.of(sesion(1L, DIA.atTime(10, 0))), UNA_HORA, DESPLAZAMIENTO, null);
+
+        assertTrue(ocupados.estaLibre(DIA.atTime(8, 30), DIA.atTime(9, 30)));
+        assertTrue(ocupados.estaLibre(DIA.atTime(11, 30), DIA.atTime(12, 30)));
+        assertFalse(ocupados.estaLibre(DIA.atTime(9, 0), DIA.atTime(10, 0)));
+        assertFalse(ocupados.estaLibre(DIA.atTime(11, 0), DIA.atTime(12, 0)));
+    }
+
+    @Test
+    void desdeSesiones_fusionaRangosQueSeCruzanEIgnoraLaExcluida() {
+        List<Sesion> sesiones = List.of(
+                sesion(1L, DIA.atTime(8, 0)),
+                sesion(2L, DIA.atTime(9, 30)),   // se cruza con la anterior por el desplazamiento
+                sesion(3L, DIA.atTime(14, 0)));
+
+        assertEquals(2, IntervalosOcupados.desdeSesiones(sesiones, UNA_HORA, DESPLAZAMIENTO, null).tamanio());
+
+        IntervalosOcupados sinLaTercera = IntervalosOcupados.desdeSesiones(sesiones, UNA_HORA, DESPLAZAMIENTO, 3L);
+        assertEquals(1, sinLaTercera.tamanio());
+        assertTrue(sinLaTercera.estaLibre(DIA.atTime(14, 0), DIA.atTime(15, 0)));
+    }
+
+    @Test
+    void coincideConLaVerificacionLinealEnAgendasAleatorias() {
+        Random random = new Random(42);
+        for (int caso = 0; caso < 200; caso++) {
+            List<Sesion> sesiones = agendaAleatoria(random, 1 + random.nextInt(12));
+            IntervalosOcupados ocupados = IntervalosOcupados.desdeSesiones(sesiones, UNA_HORA, DESPLAZAMIENTO, null);
+
+            List<LocalDateTime> esperadas = new ArrayList<>();
+            for (LocalDateTime t = DIA.atTime(8, 0); !t.plus(UNA_HORA).isAfter(DIA.atTime(17, 0)); t = t.plusMinutes(30)) {
+                boolean libreLineal = libreLineal(t, t.plus(UNA_HORA), sesiones);
+                assertEquals(libreLineal, ocupados.estaLibre(t, t.plus(UNA_HORA)), "Diferencia en " + t);
+                if (libreLineal) {
+                    esperadas.add(t);
+                }
+            }
+            assertEquals(esperadas, ocupados.horasInicioLibres(DIA.atTime(8, 0), DIA.atTime(17, 0), UNA_HORA, Duration.ofMinutes(30)));
+        }
+    }
+
+    /**
+     * Micro-benchmark: compara la verificación lineal (una pasada por sesión en cada consulta)
+     * con los intervalos fusionados, a medida que crece el número de sesiones.
+     * Ejecutar con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark_lineal_vs_intervalos() {
+        Random random = new Random(7);
+        for (int n : new int[]{10, 100, 1_000, 10_000}) {
+            List<Sesion> sesiones = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                sesiones.add(sesion((long) i, DIA.atStartOfDay().plusMinutes(30L * random.nextInt(48 * 365))));
+            }
+            List<LocalDateTime> consultas = new ArrayList<>();
+            for (int i = 0; i < 20_000; i++) {
+                consultas.add(DIA.atStartOfDay().plusMinutes(30L * random.nextInt(48 * 365)));
+            }
+
+            long t0 = System.nanoTime();
+            int libresLineal = 0;
+            for (LocalDateTime c : consultas) {
+                if (libreLineal(c, c.plus(UNA_HORA), sesiones)) libresLineal++;
+            }
+            long lineal = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            IntervalosOcupados ocupados = IntervalosOcupados.desdeSesiones(sesiones, UNA_HORA, DESPLAZAMIENTO, null);
+            int libresIntervalos = 0;
+            for (LocalDateTime c : consultas) {
+                if (ocupados.estaLibre(c, c.plus(UNA_HORA))) libresIntervalos++;
+            }
+            long intervalos = System.nanoTime() - t0;
+
+            assertEquals(libresLineal, libresIntervalos);
+            System.out.printf("sesiones=%6d  lineal=%8.2f ms  intervalos=%8.2f ms  (x%.1f)%n",
+                    n, lineal / 1e6, intervalos / 1e6, (double) lineal / intervalos);
+        }
+    }
+
+    // Verificación original: recorre todas las sesiones en cada consulta
+    private static boolean libreLineal(LocalDateTime inicio, LocalDateTime fin, List<Sesion> sesiones) {
+        for (Sesion s : sesiones) {
+            LocalDateTime inicioOcupado = s.getFecha().minus(DESPLAZAMIENTO);
+            LocalDateTime finOcupado = s.getFecha().plus(s.getDuracion()).plus(DESPLAZAMIENTO);
+            if (inicio.isBefore(finOcupado) && fin.isAfter(inicioOcupado)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Sesion> agendaAleatoria(Random random, int cantidad) {
+        List<Sesion> sesiones = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            LocalTime hora = LocalTime.of(8, 0).plusMinutes(15L * random.nextInt(36));
+            sesiones.add(sesion((long) i, DIA.atTime(hora)));
+        }
+        return sesiones;
+    }
+
+    private static Sesion sesion(Long id, LocalDateTime fecha) {
+        Sesion sesion = new Sesion(fecha, "Control", Sesion.EstadoSesion.PROGRAMADA, null);
+        sesion.setId(id);
+        return sesion;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Las citas pendientes de un rango (pantalla de confirmación del médico) salen de una sola
+ * consulta, con el paciente ya cargado, sin importar cuántos pacientes ni cuántos meses abarque.
+ */
+@SpringBootTest(properties = {"spring.profiles.active=test", "spring.jpa.properties.hibernate.generate_statistics=true"})
+class PendientesEntreTest {
+
+    @Autowired
+    private SesionService sesionService;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final List<Paciente> pacientes = new ArrayList<>();
+
+    @AfterEach
+    void limpiar() {
+        sesionRepository.deleteAll();
+        pacienteRepository.deleteAll(pacientes);
+    }
+
+    @Test
+    void rangoDeVariosMeses_unaSolaConsulta() {
+        LocalDate inicio = LocalDate.now().plusDays(1);
+        for (int i = 0; i < 5; i++) {
+            Paciente paciente = nuevoPaciente(i);
+            for (int mes = 0; mes < 3; mes++) {
+                LocalDate dia = inicio.plusMonths(mes);
+                sesionRepository.save(new Sesion(dia.atTime(8 + i, 0), "Control", Sesion.EstadoSesion.PROGRAMADA, paciente));
+                sesionRepository.save(new Sesion(dia.atTime(15, 0), "Cancelada", Sesion.EstadoSesion.CANCELADA, paciente));
+            }
+        }
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+
+        List<Sesion> todas = sesionService.buscarPendientesEntre(inicio, inicio.plusMonths(2), null);
+        todas.forEach(s -> s.getPaciente().getNombres()); // el paciente ya viene cargado
+
+        assertEquals(15, todas.size());
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+        for (int i = 1; i < todas.size(); i++) {
+            assertFalse(todas.get(i).getFecha().isBefore(todas.get(i - 1).getFecha()));
+        }
+
+        List<Sesion> deUno = sesionService.buscarPendientesEntre(inicio, inicio, pacientes.get(2).getId());
+        assertEquals(1, deUno.size());
+        assertEquals(pacientes.get(2).getId(), deUno.get(0).getPaciente().getId());
+    }
+
+    private Paciente nuevoPaciente(int i) {
+        Paciente paciente = new Paciente();
+        paciente.setUsername("pendientes" + i + "@prueba.com");
+        paciente.setNombres("Paciente " + i);
+        paciente.setApellidos("Prueba");
+        paciente.setRol(Rol.PACIENTE);
+        Paciente guardado = pacienteRepository.save(paciente);
+        pacientes.add(guardado);
+        return guardado;
+    }
+}
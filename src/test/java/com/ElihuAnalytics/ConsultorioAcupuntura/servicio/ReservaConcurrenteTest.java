@@ -0,0 +1,105 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ReservaHorarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Muchas reservas simultáneas del mismo horario: solo una debe quedar guardada.
+ */
+@SpringBootTest(properties = "spring.profiles.active=test")
+class ReservaConcurrenteTest {
+
+    private static final int RESERVAS = 200;
+
+    @Autowired
+    private SesionService sesionService;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private ReservaHorarioRepository reservaHorarioRepository;
+
+    @MockitoBean
+    private NotificacionService notificacionService;
+
+    @AfterEach
+    void limpiar() {
+        reservaHorarioRepository.deleteAll();
+        sesionRepository.deleteAll();
+    }
+
+    @Test
+    void reservasSimultaneasDelMismoHorario_soloUnaGana() throws Exception {
+        Paciente paciente = new Paciente();
+        paciente.setUsername("concurrencia@prueba.com");
+        paciente.setNombres("Prueba");
+        paciente.setApellidos("Concurrencia");
+        paciente.setRol(Rol.PACIENTE);
+        Paciente guardado = pacienteRepository.save(paciente);
+
+        LocalDateTime horario = primerHorarioLibre();
+
+        ExecutorService hilos = Executors.newFixedThreadPool(50);
+        CountDownLatch salida = new CountDownLatch(1);
+        AtomicInteger ganadoras = new AtomicInteger();
+        AtomicInteger rechazadas = new AtomicInteger();
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int i = 0; i < RESERVAS; i++) {
+            tareas.add(hilos.submit(() -> {
+                salida.await();
+                Sesion sesion = new Sesion(horario, "Reserva concurrente", null, guardado);
+                try {
+                    sesionService.guardarSesion(sesion);
+                    ganadoras.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    rechazadas.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        salida.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        hilos.shutdown();
+
+        assertEquals(1, ganadoras.get());
+        assertEquals(RESERVAS - 1, rechazadas.get());
+        assertEquals(1, sesionRepository.findAll().stream().filter(s -> s.getFecha().equals(horario)).count());
+        assertTrue(reservaHorarioRepository.count() > 0);
+    }
+
+    private LocalDateTime primerHorarioLibre() {
+        for (LocalDate dia = LocalDate.now().plusDays(1); ; dia = dia.plusDays(1)) {
+            List<LocalTime> horas = sesionService.getHorasDisponibles(dia);
+            if (!horas.isEmpty()) {
+                return dia.atTime(horas.get(0));
+            }
+        }
+    }
+}
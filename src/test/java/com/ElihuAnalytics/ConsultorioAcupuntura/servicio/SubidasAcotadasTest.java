@@ -0,0 +1,226 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ArchivoAlmacenadoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * La subida no depende del tamaño del archivo para su memoria: 20 subidas simultáneas de 50 MB
+ * van a disco con un búfer fijo, y cada una reserva en el heap una fracción mínima de lo que
+ * copia (bytes asignados por el hilo que sube, según el ThreadMXBean). Lo que no corresponde
+ * (firma de otro tipo, demasiado grande, imagen de demasiados píxeles) se rechaza sin guardarse
+ * y, en el caso de la imagen, sin decodificarla. Varias fotos grandes subidas a la vez se
+ * decodifican sin pasar juntas del presupuesto de megapíxeles.
+ */
+@SpringBootTest(properties = {"spring.profiles.active=test",
+        "app.upload.dir=${java.io.tmpdir}/buenavida-subidas-prueba/",
+        "app.imagenes.hilos=4", "app.imagenes.max-megapixeles=" + SubidasAcotadasTest.MAX_MEGAPIXELES})
+class SubidasAcotadasTest {
+
+    private static final int SUBIDAS = 20;
+    private static final long TAMANO = 50L * 1024 * 1024;
+    private static final byte[] FIRMA_PDF = "%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII);
+    static final int MAX_MEGAPIXELES = 8;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private ArchivoAlmacenadoRepository archivoAlmacenadoRepository;
+
+    @Value("${app.upload.dir}")
+    private String uploadDir;
+
+    @AfterEach
+    void limpiar() throws IOException {
+        archivoAlmacenadoRepository.deleteAll();
+        FileSystemUtils.deleteRecursively(Paths.get(uploadDir));
+    }
+
+    @Test
+    void veinteSubidasSimultaneasDe50MB_memoriaAcotada() throws Exception {
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ExecutorService pool = Executors.newFixedThreadPool(SUBIDAS);
+        try {
+            CountDownLatch salida = new CountDownLatch(1);
+            List<Future<Long>> asignados = new ArrayList<>();
+            for (int i = 0; i < SUBIDAS; i++) {
+                int semilla = i;
+                asignados.add(pool.submit(() -> {
+                    salida.await();
+                    long antes = hilos.getCurrentThreadAllocatedBytes();
+                    fileStorageService.save(pdfSintetico(TAMANO, semilla), "estudio-" + semilla + ".pdf");
+                    return hilos.getCurrentThreadAllocatedBytes() - antes;
+                }));
+            }
+            salida.countDown();
+
+            for (Future<Long> asignado : asignados) {
+                long bytes = asignado.get();
+                assertTrue(bytes < 4L * 1024 * 1024,
+                        "Una subida de 50 MB asignó " + bytes / 1024 + " KB en el heap");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(SUBIDAS, archivoAlmacenadoRepository.count());
+        assertEquals(SUBIDAS, archivosEnDisco(Paths.get(uploadDir)));
+    }
+
+    @Test
+    void fotosGrandesSimultaneas_decodificanDentroDelPresupuesto() throws Exception {
+        // Cuatro hilos de proceso: sin el presupuesto, las cuatro de 5 MP se decodificarían a la vez
+        List<byte[]> fotos = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            fotos.add(jpeg(2500, 2000, i));
+        }
+        for (int i = 4; i < 8; i++) {
+            fotos.add(jpeg(2000, 1500, i));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(fotos.size());
+        try {
+            CountDownLatch salida = new CountDownLatch(1);
+            List<Future<String>> rutas = new ArrayList<>();
+            for (int i = 0; i < fotos.size(); i++) {
+                byte[] foto = fotos.get(i);
+                String nombre = "foto-" + i + ".jpg";
+                rutas.add(pool.submit(() -> {
+                    salida.await();
+                    return fileStorageService.save(new ByteArrayInputStream(foto), nombre);
+                }));
+            }
+            salida.countDown();
+            for (Future<String> ruta : rutas) {
+                fileStorageService.procesado(ruta.get()).get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int pico = fileStorageService.picoMegapixelesDecodificando();
+        assertTrue(pico <= MAX_MEGAPIXELES, "Se decodificaron " + pico + " megapíxeles a la vez");
+        assertTrue(pico >= 5, "No se decodificó ninguna de 5 MP: pico " + pico);
+        assertEquals(fotos.size(), archivoAlmacenadoRepository.count());
+        assertEquals(0, archivosEnDisco(Paths.get(uploadDir, FileStorageService.DIRECTORIO_PENDIENTES)));
+    }
+
+    @Test
+    void archivoMayorQueElMaximo_seCortaSinGuardarse() {
+        assertThrows(FileStorageService.ArchivoRechazadoException.class,
+                () -> fileStorageService.save(pdfSintetico(TAMANO + 1, 0), "demasiado.pdf"));
+        assertEquals(0, archivoAlmacenadoRepository.count());
+    }
+
+    @Test
+    void extensionQueNoCorrespondeAlContenido_seRechaza() throws IOException {
+        assertThrows(FileStorageService.ArchivoRechazadoException.class,
+                () -> fileStorageService.save(new ByteArrayInputStream(FIRMA_PDF), "foto.png"));
+        assertThrows(FileStorageService.ArchivoRechazadoException.class,
+                () -> fileStorageService.save(new ByteArrayInputStream(FIRMA_PDF), "script.sh"));
+        assertEquals(0, archivoAlmacenadoRepository.count());
+        assertEquals(0, archivosEnDisco(Paths.get(uploadDir, FileStorageService.DIRECTORIO_PENDIENTES)));
+    }
+
+    @Test
+    void imagenDeDemasiadosPixeles_seRechazaPorLaCabecera() throws IOException {
+        // Solo la cabecera de un PNG de 40 000 x 40 000: decodificarlo pediría más de 6 GB de heap
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        DataOutputStream datos = new DataOutputStream(png);
+        datos.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        byte[] ihdr = {'I', 'H', 'D', 'R', 0, 0, (byte) 0x9C, 0x40, 0, 0, (byte) 0x9C, 0x40, 8, 2, 0, 0, 0};
+        CRC32 crc = new CRC32();
+        crc.update(ihdr);
+        datos.writeInt(ihdr.length - 4);
+        datos.write(ihdr);
+        datos.writeInt((int) crc.getValue());
+
+        FileStorageService.ArchivoRechazadoException rechazo = assertThrows(FileStorageService.ArchivoRechazadoException.class,
+                () -> fileStorageService.save(new ByteArrayInputStream(png.toByteArray()), "bomba.png"));
+        assertTrue(rechazo.getMessage().contains("40000 x 40000"), rechazo.getMessage());
+        assertEquals(0, archivoAlmacenadoRepository.count());
+    }
+
+    // Una foto con degradado; la semilla cambia los colores para que cada una tenga su propio nombre
+    private static byte[] jpeg(int ancho, int alto, int semilla) throws IOException {
+        BufferedImage foto = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D lienzo = foto.createGraphics();
+        lienzo.setPaint(new GradientPaint(0, 0, new Color(semilla * 30, 80, 160), ancho, alto, Color.WHITE));
+        lienzo.fillRect(0, 0, ancho, alto);
+        lienzo.dispose();
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        ImageIO.write(foto, "jpg", salida);
+        return salida.toByteArray();
+    }
+
+    // Un PDF de cualquier tamaño generado al leerlo (sin tenerlo en memoria); la semilla lo hace distinto
+    private static InputStream pdfSintetico(long tamano, int semilla) {
+        return new InputStream() {
+            private long posicion;
+
+            @Override
+            public int read() {
+                if (posicion >= tamano) {
+                    return -1;
+                }
+                return byteEn(posicion++) & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] destino, int desde, int cantidad) {
+                if (posicion >= tamano) {
+                    return -1;
+                }
+                int n = (int) Math.min(cantidad, tamano - posicion);
+                for (int i = 0; i < n; i++) {
+                    destino[desde + i] = byteEn(posicion++);
+                }
+                return n;
+            }
+
+            private byte byteEn(long i) {
+                return i < FIRMA_PDF.length ? FIRMA_PDF[(int) i] : (byte) (i * 31 + semilla * 7919 + (i >>> 12));
+            }
+        };
+    }
+
+    private static long archivosEnDisco(Path directorio) throws IOException {
+        if (!Files.isDirectory(directorio)) {
+            return 0;
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            return archivos.filter(Files::isRegularFile).count();
+        }
+    }
+}
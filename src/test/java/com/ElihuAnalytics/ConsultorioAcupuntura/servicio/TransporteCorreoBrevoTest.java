@@ -0,0 +1,197 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.servicio;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import sendinblue.ApiException;
+import sibModel.SendSmtpEmail;
+import sibModel.SendSmtpEmailSender;
+import sibModel.SendSmtpEmailTo;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Banco de pruebas local: un servidor HTTP que imita la API de Brevo y 50 hilos enviando a la vez.
+ * Comprueba el límite de concurrencia y la reutilización de conexiones; con -Dbenchmark=true
+ * además mide rendimiento (envíos por segundo) y latencia p99.
+ */
+class TransporteCorreoBrevoTest {
+
+    private static final int REMITENTES = 50;
+    private static final int ENVIOS_POR_REMITENTE = 2;
+    private static final int ENVIOS_POR_REMITENTE_BENCHMARK = 20;
+    private static final int ENVIOS_SIMULTANEOS = 8;
+    private static final long LATENCIA_SERVIDOR_MS = 2;
+
+    private HttpServer servidor;
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicInteger maximoEnCurso = new AtomicInteger();
+    private final Set<Integer> puertosCliente = ConcurrentHashMap.newKeySet();
+    private volatile int codigoRespuesta = 201;
+    private static String nodelayAnterior;
+
+    @BeforeAll
+    static void sinRetrasoDeNagle() {
+        // Sin esto el servidor de prueba del JDK agrega ~40 ms por respuesta (Nagle + ACK retardado)
+        nodelayAnterior = System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @AfterAll
+    static void restaurarNagle() {
+        if (nodelayAnterior == null) {
+            System.clearProperty("sun.net.httpserver.nodelay");
+        } else {
+            System.setProperty("sun.net.httpserver.nodelay", nodelayAnterior);
+        }
+    }
+
+    @BeforeEach
+    void iniciarServidor() throws Exception {
+        servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        servidor.createContext("/smtp/email", intercambio -> {
+            int actuales = enCurso.incrementAndGet();
+            maximoEnCurso.accumulateAndGet(actuales, Math::max);
+            puertosCliente.add(intercambio.getRemoteAddress().getPort());
+            try {
+                intercambio.getRequestBody().readAllBytes();
+                Thread.sleep(LATENCIA_SERVIDOR_MS);
+                byte[] cuerpo = "{\"messageId\":\"<prueba@smtp-relay>\"}".getBytes(StandardCharsets.UTF_8);
+                intercambio.getResponseHeaders().add("Content-Type", "application/json");
+                intercambio.sendResponseHeaders(codigoRespuesta, cuerpo.length);
+                try (OutputStream salida = intercambio.getResponseBody()) {
+                    salida.write(cuerpo);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                enCurso.decrementAndGet();
+            }
+        });
+        servidor.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        servidor.start();
+    }
+
+    @AfterEach
+    void detenerServidor() {
+        servidor.stop(0);
+    }
+
+    @Test
+    void cincuentaRemitentesConcurrentes_respetanLimiteYReutilizanConexiones() throws Exception {
+        List<Long> latenciasNs = enviarConcurrentemente(nuevoTransporte(), ENVIOS_POR_REMITENTE);
+
+        assertEquals(REMITENTES * ENVIOS_POR_REMITENTE, latenciasNs.size());
+        assertTrue(maximoEnCurso.get() <= ENVIOS_SIMULTANEOS, "Envíos simultáneos: " + maximoEnCurso.get());
+        // Keep-alive: las conexiones se reutilizan, no se abre una por envío
+        assertTrue(puertosCliente.size() <= ENVIOS_SIMULTANEOS * 2, "Conexiones abiertas: " + puertosCliente.size());
+    }
+
+    /**
+     * Rendimiento y latencia con 50 remitentes. Ejecutar con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark_rendimientoYLatencia() throws Exception {
+        TransporteCorreoBrevo transporte = nuevoTransporte();
+        for (int i = 0; i < 200; i++) { // calentamiento (JIT, serialización, conexiones)
+            transporte.enviar(correo("calentamiento@prueba.com"));
+        }
+        long inicio = System.nanoTime();
+        List<Long> latenciasNs = enviarConcurrentemente(transporte, ENVIOS_POR_REMITENTE_BENCHMARK);
+        long totalNs = System.nanoTime() - inicio;
+
+        int envios = latenciasNs.size();
+        assertEquals(REMITENTES * ENVIOS_POR_REMITENTE_BENCHMARK, envios);
+        List<Long> ordenadas = new ArrayList<>(latenciasNs);
+        Collections.sort(ordenadas);
+        long p99 = ordenadas.get((int) Math.ceil(ordenadas.size() * 0.99) - 1);
+        System.out.printf("%d envíos, %d remitentes: %.0f envíos/s, p50=%.2f ms, p99=%.2f ms, %d conexiones%n",
+                envios, REMITENTES, envios / (totalNs / 1e9), ordenadas.get(ordenadas.size() / 2) / 1e6, p99 / 1e6,
+                puertosCliente.size());
+    }
+
+    @Test
+    void sinTiempoParaTerminarAntesDelLimite_noSeEnvia() throws Exception {
+        TransporteCorreoBrevo transporte = nuevoTransporte();
+
+        // El peor caso (2 s de conexión + 10 s de escritura + 10 s de lectura) no cabe en 5 s
+        assertFalse(transporte.enviarAntesDe(correo("a@prueba.com"), LocalDateTime.now().plusSeconds(5)));
+        assertTrue(puertosCliente.isEmpty());
+        assertTrue(transporte.enviarAntesDe(correo("a@prueba.com"), LocalDateTime.now().plusMinutes(1)));
+    }
+
+    @Test
+    void errorDelProveedor_seInformaConSuCodigo() throws Exception {
+        codigoRespuesta = 429;
+        ApiException error = assertThrows(ApiException.class, () -> nuevoTransporte().enviar(correo("a@prueba.com")));
+        assertEquals(429, error.getCode());
+    }
+
+    // Los remitentes arrancan a la vez; devuelve la latencia de cada envío
+    private static List<Long> enviarConcurrentemente(TransporteCorreoBrevo transporte, int enviosPorRemitente)
+            throws Exception {
+        List<Long> latenciasNs = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService hilos = Executors.newFixedThreadPool(REMITENTES);
+        try {
+            CountDownLatch salida = new CountDownLatch(1);
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int r = 0; r < REMITENTES; r++) {
+                int remitente = r;
+                tareas.add(hilos.submit(() -> {
+                    salida.await();
+                    for (int i = 0; i < enviosPorRemitente; i++) {
+                        long t0 = System.nanoTime();
+                        transporte.enviar(correo("paciente" + remitente + "_" + i + "@prueba.com"));
+                        latenciasNs.add(System.nanoTime() - t0);
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> tarea : tareas) {
+                tarea.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            hilos.shutdown();
+        }
+        return latenciasNs;
+    }
+
+    private TransporteCorreoBrevo nuevoTransporte() {
+        return new TransporteCorreoBrevo("clave-prueba", "http://127.0.0.1:" + servidor.getAddress().getPort(),
+                ENVIOS_SIMULTANEOS, Duration.ofMinutes(5), Duration.ofSeconds(2), Duration.ofSeconds(10),
+                ENVIOS_SIMULTANEOS);
+    }
+
+    private static SendSmtpEmail correo(String destinatario) {
+        return new SendSmtpEmail()
+                .sender(new SendSmtpEmailSender().email("no-reply@prueba.com").name("Prueba"))
+                .to(List.of(new SendSmtpEmailTo().email(destinatario)))
+                .subject("Prueba")
+                .textContent("Contenido de prueba");
+    }
+}
@@ -0,0 +1,161 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.tareas;
+
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.NotificacionEnviada;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Paciente;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Rol;
+import com.ElihuAnalytics.ConsultorioAcupuntura.modelo.Sesion;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.NotificacionEnviadaRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.PacienteRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.ReservaHorarioRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.repositorio.SesionRepository;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.NotificacionService;
+import com.ElihuAnalytics.ConsultorioAcupuntura.servicio.SesionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Temporizadores de recordatorio: se programan al confirmar, se quitan al cancelar o reprogramar,
+ * salen enseguida si su momento ya pasó y, con dos instancias disparando a la vez, se encolan una vez.
+ */
+@SpringBootTest(properties = "spring.profiles.active=test")
+class RecordatorioCitasSchedulerTest {
+
+    @Autowired
+    private RecordatorioCitasScheduler recordatorios;
+    @Autowired
+    private SesionService sesionService;
+    @Autowired
+    private SesionRepository sesionRepository;
+    @Autowired
+    private PacienteRepository pacienteRepository;
+    @Autowired
+    private ReservaHorarioRepository reservaHorarioRepository;
+    @Autowired
+    private NotificacionEnviadaRepository notificacionEnviadaRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private NotificacionService notificacionService;
+
+    private Paciente paciente;
+
+    @BeforeEach
+    void preparar() {
+        Paciente nuevo = new Paciente();
+        nuevo.setUsername("temporizador@prueba.com");
+        nuevo.setNombres("Prueba");
+        nuevo.setApellidos("Temporizador");
+        nuevo.setRol(Rol.PACIENTE);
+        paciente = pacienteRepository.save(nuevo);
+    }
+
+    @AfterEach
+    void limpiar() {
+        notificacionEnviadaRepository.deleteAll();
+        reservaHorarioRepository.deleteAll();
+        sesionRepository.deleteAll();
+        pacienteRepository.delete(paciente);
+    }
+
+    @Test
+    void confirmar_programaYCancelar_loQuita() {
+        Sesion sesion = reservar(horariosLibres().get(0));
+
+        sesionService.confirmarSesion(sesion.getId());
+        assertTrue(recordatorios.programado(sesion.getId()));
+
+        sesionService.cancelarSesion(sesion.getId());
+        assertFalse(recordatorios.programado(sesion.getId()));
+    }
+
+    @Test
+    void reprogramar_quitaElRecordatorioHastaReconfirmar() {
+        List<LocalDateTime> libres = horariosLibres();
+        Sesion sesion = reservar(libres.get(0));
+        sesionService.confirmarSesion(sesion.getId());
+
+        sesionService.reprogramarSesion(sesion.getId(), libres.get(1), Duration.ofHours(1));
+        assertFalse(recordatorios.programado(sesion.getId()));
+
+        sesionService.confirmarSesion(sesion.getId());
+        assertTrue(recordatorios.programado(sesion.getId()));
+    }
+
+    @Test
+    void momentoDeEnvioYaPasado_seEnviaEnseguida() {
+        // Dentro de una hora: el recordatorio tocaba hace una hora
+        Sesion sesion = sesionRepository.save(new Sesion(LocalDateTime.now().plusHours(1).withNano(0),
+                "Control", Sesion.EstadoSesion.CONFIRMADA, paciente));
+
+        recordatorios.programar(sesion);
+
+        verify(notificacionService, after(1000).times(1)).enviarRecordatorioPaciente(
+                argThat(s -> s.getId().equals(sesion.getId())));
+        assertFalse(recordatorios.programado(sesion.getId()));
+    }
+
+    @Test
+    void dosInstanciasALaVez_encolanUnSoloRecordatorio() {
+        Sesion sesion = sesionRepository.save(new Sesion(LocalDateTime.now().plusHours(1).withNano(0),
+                "Control", Sesion.EstadoSesion.CONFIRMADA, paciente));
+        // Como la bandeja de salida: el registro entra en la transacción del despacho, que tarda un poco
+        doAnswer(inv -> {
+            notificacionEnviadaRepository.save(new NotificacionEnviada(sesion.getId(),
+                    NotificacionEnviada.TipoNotificacion.RECORDATORIO_PACIENTE,
+                    NotificacionEnviada.CanalNotificacion.EMAIL, paciente.getUsername()));
+            Thread.sleep(200);
+            return null;
+        }).when(notificacionService).enviarRecordatorioPaciente(any());
+
+        RecordatorioCitasScheduler otraInstancia = new RecordatorioCitasScheduler(
+                sesionRepository, notificacionService, notificacionEnviadaRepository, transactionManager);
+        try {
+            otraInstancia.programar(sesion);
+            recordatorios.programar(sesion);
+
+            verify(notificacionService, after(2000).times(1)).enviarRecordatorioPaciente(any());
+        } finally {
+            otraInstancia.detener();
+        }
+    }
+
+    private Sesion reservar(LocalDateTime horario) {
+        Sesion sesion = new Sesion(horario, "Control", null, paciente);
+        sesionService.guardarSesion(sesion);
+        return sesionRepository.findAll().stream()
+                .filter(s -> s.getFecha().equals(horario))
+                .findFirst().orElseThrow();
+    }
+
+    // Dos horarios libres del mismo día, a más de dos días: el momento del recordatorio aún no llega
+    private List<LocalDateTime> horariosLibres() {
+        for (LocalDate dia = LocalDate.now().plusDays(3); ; dia = dia.plusDays(1)) {
+            List<LocalTime> horas = sesionService.getHorasDisponibles(dia);
+            if (horas.size() >= 2) {
+                LocalDate fecha = dia;
+                return List.of(fecha.atTime(horas.get(0)), fecha.atTime(horas.get(horas.size() - 1)));
+            }
+        }
+    }
+}
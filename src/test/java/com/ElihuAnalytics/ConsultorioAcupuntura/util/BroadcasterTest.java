@@ -0,0 +1,123 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.util;
+
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
+import com.vaadin.flow.server.Command;
+import com.vaadin.flow.shared.Registration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mensajes en tiempo real: solo llegan a las pestañas del usuario, una pestaña que no alcanza a
+ * vaciar su cola pierde los más antiguos y una pestaña cerrada deja de estar suscrita.
+ */
+class BroadcasterTest {
+
+    private final List<Registration> registros = new ArrayList<>();
+
+    @AfterEach
+    void limpiar() {
+        registros.forEach(Registration::remove);
+    }
+
+    @Test
+    void mensaje_soloLlegaALasPestanasDelUsuario() throws Exception {
+        BlockingQueue<String> deAna = new LinkedBlockingQueue<>();
+        BlockingQueue<String> otraPestanaDeAna = new LinkedBlockingQueue<>();
+        BlockingQueue<String> deLuis = new LinkedBlockingQueue<>();
+        registros.add(Broadcaster.register(101L, new UiDePrueba(), deAna::add));
+        registros.add(Broadcaster.register(101L, new UiDePrueba(), otraPestanaDeAna::add));
+        registros.add(Broadcaster.register(102L, new UiDePrueba(), deLuis::add));
+
+        Broadcaster.broadcast(101L, "Cita confirmada");
+
+        assertEquals("Cita confirmada", deAna.poll(5, TimeUnit.SECONDS));
+        assertEquals("Cita confirmada", otraPestanaDeAna.poll(5, TimeUnit.SECONDS));
+        assertNull(deLuis.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void colaLlena_seDescartanLosMasAntiguos() throws Exception {
+        // La pestaña no atiende hasta que la prueba lo permite: los mensajes se acumulan en su cola
+        CountDownLatch atender = new CountDownLatch(1);
+        BlockingQueue<String> recibidos = new LinkedBlockingQueue<>();
+        registros.add(Broadcaster.register(201L, new UiDePrueba(atender), recibidos::add));
+
+        for (int i = 0; i < 40; i++) {
+            Broadcaster.broadcast(201L, "mensaje " + i);
+        }
+        atender.countDown();
+
+        // Caben 32: se pierden los 8 primeros y el resto llega en orden
+        for (int i = 8; i < 40; i++) {
+            assertEquals("mensaje " + i, recibidos.poll(5, TimeUnit.SECONDS));
+        }
+        assertNull(recibidos.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void pestanaCerrada_dejaDeEstarSuscrita() throws Exception {
+        int antes = Broadcaster.suscritos();
+        UiDePrueba cerrada = new UiDePrueba();
+        cerrada.cerrar();
+        BlockingQueue<String> recibidos = new LinkedBlockingQueue<>();
+        registros.add(Broadcaster.register(301L, cerrada, recibidos::add));
+        assertEquals(antes + 1, Broadcaster.suscritos());
+
+        Broadcaster.broadcast(301L, "Recordatorio");
+
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Broadcaster.suscritos() > antes && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(antes, Broadcaster.suscritos());
+        assertTrue(recibidos.isEmpty());
+    }
+
+    // UI sin sesión: access corre la tarea en el hilo que entrega (tras esperar si se le pide) o,
+    // si la pestaña se cerró, lanza UIDetachedException como una UI real
+    private static final class UiDePrueba extends UI {
+        private final CountDownLatch atender;
+        private volatile boolean cerrada;
+
+        UiDePrueba() {
+            this(new CountDownLatch(0));
+        }
+
+        UiDePrueba(CountDownLatch atender) {
+            this.atender = atender;
+        }
+
+        void cerrar() {
+            cerrada = true;
+        }
+
+        @Override
+        public Future<Void> access(Command command) {
+            if (cerrada) {
+                throw new UIDetachedException();
+            }
+            try {
+                atender.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return CompletableFuture.failedFuture(e);
+            }
+            command.execute();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
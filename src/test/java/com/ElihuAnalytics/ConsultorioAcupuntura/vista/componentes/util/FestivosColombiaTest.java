@@ -0,0 +1,76 @@
+package com.ElihuAnalytics.ConsultorioAcupuntura.vista.componentes.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FestivosColombiaTest {
+
+    @Test
+    void festivosConocidos2025() {
+        assertTrue(FestivosColombia.esFestivo(LocalDate.of(2025, 1, 6)));   // Epifanía (lunes)
+        assertTrue(FestivosColombia.esFestivo(LocalDate.of(2025, 3, 24)));  // San José trasladado
+        assertTrue(FestivosColombia.esFestivo(LocalDate.of(2025, 4, 17)));  // Jueves Santo
+        assertTrue(FestivosColombia.esFestivo(LocalDate.of(2025, 12, 25)));
+        assertFalse(FestivosColombia.esFestivo(LocalDate.of(2025, 3, 19)));
+        assertEquals("Viernes Santo", FestivosColombia.nombreFestivo(LocalDate.of(2025, 4, 18)).orElseThrow());
+    }
+
+    @Test
+    void bitsetYCacheCoincidenConElCalculoCompleto() {
+        // Incluye años dentro y fuera del rango precalculado
+        for (int anio = 1990; anio <= 2100; anio++) {
+            Map<LocalDate, String> esperados = FestivosColombia.calcularFestivos(anio);
+            assertEquals(esperados, FestivosColombia.festivosPorAnio(anio));
+            for (LocalDate d = LocalDate.of(anio, 1, 1); d.getYear() == anio; d = d.plusDays(1)) {
+                assertEquals(esperados.containsKey(d), FestivosColombia.esFestivo(d), "Diferencia en " + d);
+            }
+        }
+        assertSame(FestivosColombia.festivosPorAnio(2030), FestivosColombia.festivosPorAnio(2030));
+        assertThrows(UnsupportedOperationException.class,
+                () -> FestivosColombia.festivosPorAnio(2030).put(LocalDate.of(2030, 2, 2), "x"));
+    }
+
+    /**
+     * Micro-benchmark: construcción del mapa en cada llamada (comportamiento anterior)
+     * frente a la consulta en el bitset. Ejecutar con -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark_mapaPorLlamada_vs_bitset() {
+        LocalDate inicio = LocalDate.now().withDayOfYear(1);
+        int dias = 365 * 2;
+        for (int ronda = 0; ronda < 5; ronda++) { // las primeras rondas sirven de calentamiento
+            long t0 = System.nanoTime();
+            int festivosMapa = 0;
+            for (int r = 0; r < 20; r++) {
+                for (int i = 0; i < dias; i++) {
+                    LocalDate d = inicio.plusDays(i);
+                    if (FestivosColombia.calcularFestivos(d.getYear()).containsKey(d)) festivosMapa++;
+                }
+            }
+            long mapa = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            int festivosBitset = 0;
+            for (int r = 0; r < 20; r++) {
+                for (int i = 0; i < dias; i++) {
+                    if (FestivosColombia.esFestivo(inicio.plusDays(i))) festivosBitset++;
+                }
+            }
+            long bitset = System.nanoTime() - t0;
+
+            assertEquals(festivosMapa, festivosBitset);
+            System.out.printf("ronda %d  mapa por llamada=%8.2f ms  bitset=%8.2f ms  (x%.1f)%n",
+                    ronda, mapa / 1e6, bitset / 1e6, (double) mapa / bitset);
+        }
+    }
+}